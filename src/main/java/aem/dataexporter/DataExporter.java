@@ -1,13 +1,19 @@
 package aem.dataexporter;
 
+import aem.dataexporter.operations.PackageArchiver;
 import aem.dataexporter.operations.PackageBuilder;
 import aem.dataexporter.operations.PackageCreator;
 import aem.dataexporter.operations.PackageDownloader;
 import aem.dataexporter.operations.PackageRemover;
 import aem.dataexporter.operations.PackageUploader;
 import aem.dataexporter.utilities.ProgramArgument;
+import aem.dataexporter.utilities.ProgramArguments;
+import aem.dataexporter.utilities.Tracer;
 import org.apache.commons.lang3.ArrayUtils;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Data exporter for the {@code JCR}.
  * <p>
@@ -17,7 +23,7 @@ import org.apache.commons.lang3.ArrayUtils;
  * <p>
  * The exporter expects the following program arguments: <ul> <li>host</li> <li>path</li> <li>username</li>
  * <li>password</li> <li>packageName</li> <li>maxPageDepth - i.e. how deep to parse the page structure</li>
- * <li>maxDAMDepth - i.e. how deep to parse the dam structure</li></ul>
+ * <li>maxDAMDepth - i.e. how deep to parse the dam structure</li> <li>trace (optional)</li></ul>
  */
 public class DataExporter {
 
@@ -32,14 +38,79 @@ public class DataExporter {
      * @param args Array of program arguments.
      */
     public static void main(final String[] args) {
+        final ProgramArguments programArguments = new ProgramArguments(args);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // A shutdown hook also reports the runs that are ended by an operation calling System.exit.
+                writeTrace(programArguments);
+            }
+        }));
+        System.out.print(export(args));
+    }
+
+    /**
+     * Runs each operation of the data exporter in turn.
+     *
+     * @param args Array of program arguments.
+     * @return Number of packages that were created, or zero if only a shard of the content paths or the plan of the
+     * export was written.
+     */
+    public static int export(final String[] args) {
+        Tracer.Span span = Tracer.start(Tracer.PHASE, "create");
         PackageCreator.main(args);
+        span.end();
         String[] updatedArgs = ArrayUtils.add(args, "-" + ProgramArgument.NUMBER_OF_PACKAGES.getKey());
         updatedArgs = ArrayUtils.add(updatedArgs, String.valueOf(PackageCreator.numberOfPackages));
-        PackageUploader.main(updatedArgs);
-        PackageBuilder.main(updatedArgs);
-        PackageDownloader.main(updatedArgs);
-        PackageRemover.main(updatedArgs);
-        System.out.print(PackageCreator.numberOfPackages);
+        if (PackageCreator.packagesDeferred) {
+            // A shard only records its content paths (the packages are created when the shards are merged), and a plan
+            // only estimates the export.
+            return 0;
+        }
+        if (!PackageCreator.packageStreamed) {
+            // A streamed package already contains the content, so it does not need to be built on the server.
+            if (!PackageCreator.packagesUploaded) {
+                span = Tracer.start(Tracer.PHASE, "upload");
+                PackageUploader.main(updatedArgs);
+                span.end();
+            }
+            span = Tracer.start(Tracer.PHASE, "build");
+            PackageBuilder.main(updatedArgs);
+            span.end();
+            span = Tracer.start(Tracer.PHASE, "download");
+            PackageDownloader.main(updatedArgs);
+            span.end();
+            span = Tracer.start(Tracer.PHASE, "remove");
+            PackageRemover.main(updatedArgs);
+            span.end();
+        }
+        if (new ProgramArguments(args).has(ProgramArgument.BLOB_STORE)) {
+            span = Tracer.start(Tracer.PHASE, "archive");
+            PackageArchiver.main(updatedArgs);
+            span.end();
+        }
+        return PackageCreator.numberOfPackages;
+    }
+
+    /**
+     * Prints the summary of the timing spans of the run, and writes them as a trace if the trace argument is set.
+     *
+     * @param programArguments Program arguments.
+     */
+    static void writeTrace(final ProgramArguments programArguments) {
+        // The logging may already have been reset by its own shutdown hook, so the summary is printed directly.
+        System.err.println();
+        System.err.print(Tracer.getSummary());
+        if (!programArguments.has(ProgramArgument.TRACE)) {
+            return;
+        }
+        File traceFile = new File(programArguments.get(ProgramArgument.TRACE));
+        try {
+            Tracer.writeTrace(traceFile);
+            System.err.println("Wrote trace to " + traceFile.getPath());
+        } catch (IOException e) {
+            System.err.println("Unable to write trace: [" + traceFile.getPath() + "]. " + e.getMessage());
+        }
     }
 
 }
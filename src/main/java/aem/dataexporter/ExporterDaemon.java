@@ -0,0 +1,710 @@
+package aem.dataexporter;
+
+import aem.dataexporter.http.TransportFactory;
+import aem.dataexporter.operations.PackageArchiver;
+import aem.dataexporter.operations.PackageBuilder;
+import aem.dataexporter.operations.PackageCreator;
+import aem.dataexporter.operations.PackageDownloader;
+import aem.dataexporter.operations.PackageInstaller;
+import aem.dataexporter.operations.PackageRemover;
+import aem.dataexporter.operations.PackageRestorer;
+import aem.dataexporter.operations.PackageUploader;
+import aem.dataexporter.utilities.ExitPolicy;
+import aem.dataexporter.utilities.ProgramArgument;
+import aem.dataexporter.utilities.ProgramArguments;
+import aem.dataexporter.utilities.Tracer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-running data exporter that accepts jobs (i.e. the program arguments of an operation) through a local
+ * {@code HTTP} API, and runs them within the same {@code JVM}, so that the compiled code, the parsers and the
+ * connection pools of the hosts are kept warm across the jobs rather than being paid for by every run.
+ * <p>
+ * The API is only bound to the loopback interface: <ul> <li>{@code POST /jobs/<operation>} submits a job, with a
+ * {@code JSON} array of the program arguments of the operation as its body (the operation is one of {@code export},
+ * {@code create}, {@code upload}, {@code build}, {@code download}, {@code remove}, {@code install}, {@code archive} or
+ * {@code restore})</li> <li>{@code GET /jobs} returns the status of the jobs</li> <li>{@code GET /jobs/<id>} returns
+ * the status of a job</li></ul>
+ * <p>
+ * As any web page can send requests to the loopback interface, each request has to carry the token that is generated
+ * at startup (and written to a file that only the user can read) as a bearer token, and a job submission has to be
+ * declared as {@code application/json} (which a browser cannot send to another origin without a preflight request).
+ * <p>
+ * The queued jobs are started in the order that they were submitted, with at most {@code jobThreads} jobs running at
+ * the same time, and at most {@code maxJobsPerHost} of those running against the same host. The {@code export} and
+ * {@code create} jobs are run one at a time, as the package creator keeps the results of a run in static fields.
+ */
+public class ExporterDaemon implements HttpHandler {
+
+    /**
+     * State of a job.
+     */
+    private enum State {
+        /**
+         * Job is waiting to be started.
+         */
+        QUEUED,
+        /**
+         * Job is running.
+         */
+        RUNNING,
+        /**
+         * Job has finished successfully.
+         */
+        SUCCEEDED,
+        /**
+         * Job has failed.
+         */
+        FAILED
+    }
+
+    /**
+     * Job that runs an operation.
+     */
+    private static final class Job {
+
+        /**
+         * Identifier of the job.
+         */
+        private final int id;
+        /**
+         * Operation that the job runs.
+         */
+        private final String operation;
+        /**
+         * Program arguments of the operation.
+         */
+        private final String[] args;
+        /**
+         * Host that the operation connects to, or null if it does not connect to a host.
+         */
+        private final String host;
+        /**
+         * Time (in milliseconds) that the job was submitted.
+         */
+        private final long submitted = System.currentTimeMillis();
+        /**
+         * State of the job.
+         */
+        private State state = State.QUEUED;
+        /**
+         * Time (in milliseconds) that the job was started, or zero if it has not been started.
+         */
+        private long started;
+        /**
+         * Time (in milliseconds) that the job finished, or zero if it has not finished.
+         */
+        private long finished;
+        /**
+         * Exit status of the operation, or null if it has not finished.
+         */
+        private Integer exitStatus;
+        /**
+         * Number of packages that were created, or null if the operation does not create packages.
+         */
+        private Integer numberOfPackages;
+        /**
+         * Message describing why the job failed, or null.
+         */
+        private String message;
+
+        /**
+         * Constructs a new {@code Job}.
+         *
+         * @param newId Identifier of the job.
+         * @param newOperation Operation that the job runs.
+         * @param newArgs Program arguments of the operation.
+         */
+        private Job(final int newId, final String newOperation, final String[] newArgs) {
+            this.id = newId;
+            this.operation = newOperation;
+            this.args = newArgs;
+            this.host = new ProgramArguments(newArgs).get(ProgramArgument.HOST);
+        }
+
+        /**
+         * Returns whether or not the job has to run on its own, rather than alongside another such job.
+         *
+         * @return True if the job has to run on its own; otherwise false.
+         */
+        private boolean isExclusive() {
+            return EXPORT.equals(operation) || CREATE.equals(operation);
+        }
+
+    }
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ExporterDaemon.class.getName());
+    /**
+     * UTF-8 {@code Charset}.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Default port to accept jobs on.
+     */
+    private static final int DEFAULT_PORT = 9090;
+    /**
+     * Default maximum number of jobs to run at the same time.
+     */
+    private static final int DEFAULT_JOB_THREADS = 4;
+    /**
+     * Default maximum number of jobs to run against the same host at the same time.
+     */
+    private static final int DEFAULT_MAX_JOBS_PER_HOST = 1;
+    /**
+     * Maximum number of finished jobs whose status is kept.
+     */
+    private static final int MAX_FINISHED_JOBS = 1000;
+    /**
+     * Default file to write the token of the jobs API to (in the home directory of the user).
+     */
+    private static final String DEFAULT_TOKEN_FILE = ".data-exporter-daemon.token";
+    /**
+     * Number of random bytes of the token of the jobs API.
+     */
+    private static final int TOKEN_BYTES = 32;
+    /**
+     * Scheme of the {@code Authorization} header that carries the token of the jobs API.
+     */
+    private static final String BEARER = "Bearer ";
+    /**
+     * Content type of the body of a job submission.
+     */
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    /**
+     * Path of the jobs API.
+     */
+    private static final String JOBS_PATH = "/jobs";
+    /**
+     * Export operation, i.e. all of the operations of the {@code DataExporter}.
+     */
+    private static final String EXPORT = "export";
+    /**
+     * Create operation.
+     */
+    private static final String CREATE = "create";
+    /**
+     * Operations that can be run as jobs.
+     */
+    private static final List<String> OPERATIONS = Arrays.asList(EXPORT, CREATE, "upload", "build", "download",
+            "remove", "install", "archive", "restore");
+    /**
+     * {@code ObjectMapper} used to read the program arguments and write the status of the jobs.
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * Maximum number of jobs to run at the same time.
+     */
+    private final int jobThreads;
+    /**
+     * Maximum number of jobs to run against the same host at the same time.
+     */
+    private final int maxJobsPerHost;
+    /**
+     * Token that each request of the jobs API has to carry.
+     */
+    private final byte[] token;
+    /**
+     * {@code ExecutorService} that runs the jobs.
+     */
+    private final ExecutorService executorService;
+    /**
+     * Jobs whose status is kept, by their identifiers, in the order that they were submitted.
+     */
+    private final Map<Integer, Job> jobs = new LinkedHashMap<Integer, Job>();
+    /**
+     * Jobs waiting to be started, in the order that they were submitted.
+     */
+    private final List<Job> queuedJobs = new ArrayList<Job>();
+    /**
+     * Number of running jobs by the host that they connect to.
+     */
+    private final Map<String, Integer> runningJobsPerHost = new HashMap<String, Integer>();
+    /**
+     * Number of running jobs.
+     */
+    private int runningJobs = 0;
+    /**
+     * Whether or not a job that has to run on its own is running.
+     */
+    private boolean exclusiveJobRunning = false;
+    /**
+     * Number of finished jobs whose status is kept.
+     */
+    private int finishedJobs = 0;
+    /**
+     * Identifier of the next job.
+     */
+    private int nextId = 1;
+
+    /**
+     * Constructs a new {@code ExporterDaemon}.
+     *
+     * @param newJobThreads Maximum number of jobs to run at the same time.
+     * @param newMaxJobsPerHost Maximum number of jobs to run against the same host at the same time.
+     * @param newToken Token that each request of the jobs API has to carry.
+     */
+    public ExporterDaemon(final int newJobThreads, final int newMaxJobsPerHost, final String newToken) {
+        this.jobThreads = Math.max(1, newJobThreads);
+        this.maxJobsPerHost = Math.max(1, newMaxJobsPerHost);
+        this.token = newToken.getBytes(UTF_8);
+        this.executorService = Executors.newFixedThreadPool(jobThreads);
+    }
+
+    /**
+     * Run the exporter daemon.
+     *
+     * @param args Array of program arguments.
+     */
+    public static void main(final String[] args) {
+        ProgramArguments programArguments = new ProgramArguments(args);
+        int port = programArguments.getInt(ProgramArgument.DAEMON_PORT, DEFAULT_PORT);
+        File tokenFile = programArguments.has(ProgramArgument.DAEMON_TOKEN_FILE) ?
+                new File(programArguments.get(ProgramArgument.DAEMON_TOKEN_FILE)) :
+                new File(System.getProperty("user.home"), DEFAULT_TOKEN_FILE);
+        String token = createToken();
+        try {
+            writeToken(tokenFile, token);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to write token file: [{0}]. {1}",
+                    new String[]{tokenFile.getPath(), e.getMessage()});
+            programArguments.printDaemonUsageMessage();
+            ExitPolicy.exit(-1);
+            return;
+        }
+        ExporterDaemon exporterDaemon = new ExporterDaemon(
+                programArguments.getInt(ProgramArgument.JOB_THREADS, DEFAULT_JOB_THREADS),
+                programArguments.getInt(ProgramArgument.MAX_JOBS_PER_HOST, DEFAULT_MAX_JOBS_PER_HOST), token);
+        HttpServer httpServer;
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to listen on port: [{0}]. {1}",
+                    new String[]{String.valueOf(port), e.getMessage()});
+            programArguments.printDaemonUsageMessage();
+            ExitPolicy.exit(-1);
+            return;
+        }
+        // A failed job only ends the job, and the jobs share the connection pools of the hosts.
+        ExitPolicy.setThrowOnExit(true);
+        TransportFactory.setShareConnections(true);
+        httpServer.createContext(JOBS_PATH, exporterDaemon);
+        httpServer.start();
+        LOGGER.log(Level.INFO, "Accepting jobs on http://{0}:{1}{2} with the token in {3}",
+                new String[]{InetAddress.getLoopbackAddress().getHostAddress(), String.valueOf(port), JOBS_PATH,
+                        tokenFile.getPath()});
+    }
+
+    /**
+     * Returns a new random token for the jobs API.
+     *
+     * @return New random token for the jobs API.
+     */
+    private static String createToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte value : bytes) {
+            token.append(String.format(Locale.ENGLISH, "%02x", value));
+        }
+        return token.toString();
+    }
+
+    /**
+     * Writes the token of the jobs API to the specified file, which only the user can read, and which is deleted when
+     * the daemon exits.
+     *
+     * @param tokenFile File to write the token to.
+     * @param token Token of the jobs API.
+     * @throws IOException If the token cannot be written.
+     */
+    private static void writeToken(final File tokenFile, final String token) throws IOException {
+        Path path = tokenFile.toPath();
+        Files.deleteIfExists(path);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(path);
+            if (!(tokenFile.setReadable(false, false) && tokenFile.setReadable(true, true) &&
+                    tokenFile.setWritable(false, false) && tokenFile.setWritable(true, true))) {
+                throw new IOException("Unable to restrict the token file to the user");
+            }
+        }
+        tokenFile.deleteOnExit();
+        Files.write(path, token.getBytes(UTF_8));
+    }
+
+    /**
+     * Returns whether or not the specified request carries the token of the jobs API.
+     *
+     * @param exchange {@code HttpExchange} of the request.
+     * @return True if the request carries the token of the jobs API; otherwise false.
+     */
+    private boolean isAuthorized(final HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return (authorization != null) && (authorization.startsWith(BEARER)) &&
+                MessageDigest.isEqual(token, authorization.substring(BEARER.length()).trim().getBytes(UTF_8));
+    }
+
+    /**
+     * Returns whether or not the body of the specified request is declared as {@code JSON} (which a browser cannot
+     * send to another origin without a preflight request).
+     *
+     * @param exchange {@code HttpExchange} of the request.
+     * @return True if the body of the specified request is declared as {@code JSON}; otherwise false.
+     */
+    private static boolean isJson(final HttpExchange exchange) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        return (contentType != null) &&
+                JSON_CONTENT_TYPE.equalsIgnoreCase(contentType.split(";")[0].trim());
+    }
+
+    /**
+     * Handles a request of the jobs API.
+     *
+     * @param exchange {@code HttpExchange} of the request.
+     * @throws IOException If the response cannot be sent.
+     */
+    @Override
+    public final void handle(final HttpExchange exchange) throws IOException {
+        try {
+            // The API is only bound to the loopback interface, but any web page can still send requests to it.
+            if (!isAuthorized(exchange)) {
+                respond(exchange, 401, getMessage("Expected the token of the daemon as a bearer token"));
+                return;
+            }
+            String path = exchange.getRequestURI().getPath().substring(JOBS_PATH.length());
+            String name = path.startsWith("/") ? path.substring(1) : path;
+            if ("GET".equals(exchange.getRequestMethod())) {
+                if (name.isEmpty()) {
+                    respond(exchange, 200, getStatus());
+                } else {
+                    JsonNode status = getStatus(name);
+                    respond(exchange, (status == null) ? 404 : 200,
+                            (status == null) ? getMessage("Unknown job: " + name) : status);
+                }
+            } else if ("POST".equals(exchange.getRequestMethod())) {
+                if (!isJson(exchange)) {
+                    respond(exchange, 415, getMessage("Expected a Content-Type of " + JSON_CONTENT_TYPE));
+                    return;
+                }
+                if (!OPERATIONS.contains(name)) {
+                    respond(exchange, 400, getMessage("Unknown operation: " + name + ", expected one of " +
+                            OPERATIONS));
+                    return;
+                }
+                String[] args;
+                InputStream in = exchange.getRequestBody();
+                try {
+                    args = OBJECT_MAPPER.readValue(in, String[].class);
+                } catch (JsonProcessingException e) {
+                    respond(exchange, 400, getMessage("Expected a JSON array of program arguments. " +
+                            e.getOriginalMessage()));
+                    return;
+                } finally {
+                    in.close();
+                }
+                respond(exchange, 202, submit(name, args));
+            } else {
+                respond(exchange, 405, getMessage("Unsupported method: " + exchange.getRequestMethod()));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Queues a job that runs the specified operation, and starts it if it can be started.
+     *
+     * @param operation Operation that the job runs.
+     * @param args Program arguments of the operation.
+     * @return Status of the job.
+     */
+    public final synchronized JsonNode submit(final String operation, final String[] args) {
+        Job job = new Job(nextId++, operation, (args == null) ? new String[]{} : args);
+        jobs.put(job.id, job);
+        queuedJobs.add(job);
+        LOGGER.log(Level.INFO, "Queued job {0}: {1}", new Object[]{job.id, operation});
+        dispatch();
+        return toJson(job);
+    }
+
+    /**
+     * Returns the status of the jobs, in the order that they were submitted.
+     *
+     * @return Status of the jobs.
+     */
+    public final synchronized JsonNode getStatus() {
+        ArrayNode status = OBJECT_MAPPER.createArrayNode();
+        for (Job job : jobs.values()) {
+            status.add(toJson(job));
+        }
+        return status;
+    }
+
+    /**
+     * Returns the status of the specified job.
+     *
+     * @param id Identifier of the job.
+     * @return Status of the specified job, or null if there is no such job.
+     */
+    public final synchronized JsonNode getStatus(final String id) {
+        Job job;
+        try {
+            job = jobs.get(Integer.valueOf(id));
+        } catch (NumberFormatException e) {
+            job = null;
+        }
+        return (job == null) ? null : toJson(job);
+    }
+
+    /**
+     * Starts the queued jobs (in the order that they were submitted) that can be started without exceeding the
+     * number of jobs that run at the same time, overall and against each host.
+     */
+    private synchronized void dispatch() {
+        Iterator<Job> iterator = queuedJobs.iterator();
+        while ((runningJobs < jobThreads) && (iterator.hasNext())) {
+            final Job job = iterator.next();
+            if ((job.isExclusive() && exclusiveJobRunning) || (getRunningJobs(job.host) >= maxJobsPerHost)) {
+                continue;
+            }
+            iterator.remove();
+            job.state = State.RUNNING;
+            job.started = System.currentTimeMillis();
+            runningJobs++;
+            if (job.host != null) {
+                runningJobsPerHost.put(job.host, getRunningJobs(job.host) + 1);
+            }
+            if (job.isExclusive()) {
+                exclusiveJobRunning = true;
+            }
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runJob(job);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of running jobs that connect to the specified host.
+     *
+     * @param host Host, or null.
+     * @return Number of running jobs that connect to the specified host, or zero if there is no host.
+     */
+    private int getRunningJobs(final String host) {
+        Integer count = (host == null) ? null : runningJobsPerHost.get(host);
+        return (count == null) ? 0 : count;
+    }
+
+    /**
+     * Runs the specified job, and then starts the queued jobs that can now be started.
+     *
+     * @param job Job to run.
+     */
+    private void runJob(final Job job) {
+        LOGGER.log(Level.INFO, "Started job {0}: {1}", new Object[]{job.id, job.operation});
+        State state = State.FAILED;
+        int exitStatus = -1;
+        Integer numberOfPackages = null;
+        String message = null;
+        // The spans of each job are recorded separately, so that the trace of an export only covers its own spans.
+        Tracer.startRecording();
+        try {
+            numberOfPackages = runOperation(job.operation, job.args);
+            state = State.SUCCEEDED;
+            exitStatus = 0;
+        } catch (ExitPolicy.ExitException e) {
+            exitStatus = e.getStatus();
+            message = e.getMessage();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Job " + job.id + " failed", e);
+            message = e.toString();
+        } finally {
+            // The recording is stopped first, as the job threads that are started when it finishes would inherit it.
+            Tracer.stopRecording();
+            finish(job, state, exitStatus, numberOfPackages, message);
+        }
+    }
+
+    /**
+     * Records the outcome of the specified job, discards the status of the oldest finished jobs if too many are kept,
+     * and then starts the queued jobs that can now be started.
+     *
+     * @param job Job that finished.
+     * @param state State the job finished in.
+     * @param exitStatus Exit status of the operation.
+     * @param numberOfPackages Number of packages that were created, or null.
+     * @param message Message describing why the job failed, or null.
+     */
+    private synchronized void finish(final Job job, final State state, final int exitStatus,
+            final Integer numberOfPackages, final String message) {
+        job.state = state;
+        job.finished = System.currentTimeMillis();
+        job.exitStatus = exitStatus;
+        job.numberOfPackages = numberOfPackages;
+        job.message = message;
+        LOGGER.log(Level.INFO, "Finished job {0}: {1} {2} in {3} ms",
+                new Object[]{job.id, job.operation, state, job.finished - job.started});
+        runningJobs--;
+        if (job.host != null) {
+            runningJobsPerHost.put(job.host, getRunningJobs(job.host) - 1);
+        }
+        if (job.isExclusive()) {
+            exclusiveJobRunning = false;
+        }
+        finishedJobs++;
+        Iterator<Job> iterator = jobs.values().iterator();
+        while ((finishedJobs > MAX_FINISHED_JOBS) && (iterator.hasNext())) {
+            if (iterator.next().finished > 0) {
+                iterator.remove();
+                finishedJobs--;
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Runs the specified operation.
+     *
+     * @param operation Operation to run.
+     * @param args Program arguments of the operation.
+     * @return Number of packages that were created, or null if the operation does not create packages.
+     */
+    private static Integer runOperation(final String operation, final String[] args) {
+        switch (operation) {
+            case EXPORT:
+                int numberOfPackages = DataExporter.export(args);
+                DataExporter.writeTrace(new ProgramArguments(args));
+                return numberOfPackages;
+            case CREATE:
+                PackageCreator.main(args);
+                return PackageCreator.numberOfPackages;
+            case "upload":
+                PackageUploader.main(args);
+                return null;
+            case "build":
+                PackageBuilder.main(args);
+                return null;
+            case "download":
+                PackageDownloader.main(args);
+                return null;
+            case "remove":
+                PackageRemover.main(args);
+                return null;
+            case "install":
+                PackageInstaller.main(args);
+                return null;
+            case "archive":
+                PackageArchiver.main(args);
+                return null;
+            case "restore":
+                PackageRestorer.main(args);
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    /**
+     * Returns the status of the specified job.
+     *
+     * @param job Job to return the status of.
+     * @return Status of the specified job.
+     */
+    private static ObjectNode toJson(final Job job) {
+        ObjectNode status = OBJECT_MAPPER.createObjectNode();
+        status.put("id", job.id);
+        status.put("operation", job.operation);
+        status.put("state", job.state.name().toLowerCase(Locale.ENGLISH));
+        if (job.host != null) {
+            status.put("host", job.host);
+        }
+        status.put("submitted", job.submitted);
+        if (job.started > 0) {
+            status.put("started", job.started);
+        }
+        if (job.finished > 0) {
+            status.put("finished", job.finished);
+            status.put("exitStatus", job.exitStatus);
+        }
+        if (job.numberOfPackages != null) {
+            status.put("numberOfPackages", job.numberOfPackages);
+        }
+        if (job.message != null) {
+            status.put("message", job.message);
+        }
+        return status;
+    }
+
+    /**
+     * Returns a {@code JSON} object containing the specified message.
+     *
+     * @param message Message.
+     * @return {@code JSON} object containing the specified message.
+     */
+    private static ObjectNode getMessage(final String message) {
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        node.put("message", message);
+        return node;
+    }
+
+    /**
+     * Sends the specified {@code JSON} response.
+     *
+     * @param exchange {@code HttpExchange} of the request.
+     * @param status Status code of the response.
+     * @param body Body of the response.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void respond(final HttpExchange exchange, final int status, final JsonNode body)
+            throws IOException {
+        byte[] bytes = OBJECT_MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+}
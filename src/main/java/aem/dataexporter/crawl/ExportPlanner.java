@@ -0,0 +1,328 @@
+package aem.dataexporter.crawl;
+
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.utilities.UrlUtilities;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plans an export from the content paths that a crawl discovered, without creating any packages.
+ * <p>
+ * The size of each content path is probed with a single lightweight request: the renditions of a {@code DAM} asset
+ * (whose binary sizes are reported as the {@code :jcr:data} properties), or the {@code JSON} representation of any
+ * other content path. The content paths that the {@code JCR} considers too big to return in one response are counted
+ * as not estimated. The measured latency and throughput of the probes are then used to estimate the duration of each
+ * phase of the export.
+ */
+public class ExportPlanner {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ExportPlanner.class.getName());
+    /**
+     * {@code ObjectMapper} used to parse the probe responses.
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * Name of the property that the {@code JCR} reports the length of a binary as.
+     */
+    private static final String BINARY_LENGTH_PROPERTY = ":jcr:data";
+    /**
+     * Prefix of the {@code DAM} content paths.
+     */
+    private static final String DAM_PREFIX = "/content/dam/";
+    /**
+     * Number of content paths to list as the slowest and largest subtrees.
+     */
+    private static final int TOP_SUBTREES = 10;
+    /**
+     * Name of the host to retrieve content from.
+     */
+    private final String host;
+    /**
+     * {@code Transport} to use to retrieve content.
+     */
+    private final Transport transport;
+    /**
+     * Number of threads to probe the content paths with.
+     */
+    private final int probeThreads;
+
+    /**
+     * Size and latency of the probe of a content path.
+     */
+    private static final class Probe {
+
+        /**
+         * Content path that was probed.
+         */
+        private final String path;
+        /**
+         * Estimated number of bytes of the content path, or -1 if it could not be estimated.
+         */
+        private final long bytes;
+        /**
+         * Number of bytes of the probe response.
+         */
+        private final long responseBytes;
+        /**
+         * Number of milliseconds the probe took.
+         */
+        private final long millis;
+
+        /**
+         * Constructs a new {@code Probe}.
+         *
+         * @param newPath Content path that was probed.
+         * @param newBytes Estimated number of bytes of the content path, or -1 if it could not be estimated.
+         * @param newResponseBytes Number of bytes of the probe response.
+         * @param newMillis Number of milliseconds the probe took.
+         */
+        private Probe(final String newPath, final long newBytes, final long newResponseBytes, final long newMillis) {
+            this.path = newPath;
+            this.bytes = newBytes;
+            this.responseBytes = newResponseBytes;
+            this.millis = newMillis;
+        }
+
+    }
+
+    /**
+     * Constructs a new {@code ExportPlanner}.
+     *
+     * @param newTransport {@code Transport} to use to retrieve content.
+     * @param newHost Name of the host to retrieve content from.
+     * @param newProbeThreads Number of threads to probe the content paths with.
+     */
+    public ExportPlanner(final Transport newTransport, final String newHost, final int newProbeThreads) {
+        this.transport = newTransport;
+        this.host = newHost;
+        this.probeThreads = Math.max(1, newProbeThreads);
+    }
+
+    /**
+     * Returns the plan (i.e. a human readable report) of exporting the specified content paths.
+     *
+     * @param contentPaths Content paths discovered by the crawl.
+     * @param pathsPerPackage Number of content paths per package.
+     * @param crawlMillis Number of milliseconds the crawl took.
+     * @return Plan of exporting the specified content paths.
+     */
+    public final String plan(final Set<String> contentPaths, final int pathsPerPackage, final long crawlMillis) {
+        List<Probe> probes = probe(contentPaths);
+        StringBuilder report = new StringBuilder();
+        int numberOfPackages = (contentPaths.size() + pathsPerPackage - 1) / pathsPerPackage;
+        // The probes stop at the first one that is interrupted or fails, so the estimates may only cover a prefix.
+        int unprobed = contentPaths.size() - probes.size();
+        if (unprobed > 0) {
+            LOGGER.log(Level.WARNING, "Only {0} of {1} content paths were probed",
+                    new Object[]{probes.size(), contentPaths.size()});
+        }
+        long totalBytes = 0;
+        long responseBytes = 0;
+        long probeMillis = 0;
+        int unknown = 0;
+        for (Probe probe : probes) {
+            totalBytes += Math.max(probe.bytes, 0);
+            responseBytes += probe.responseBytes;
+            probeMillis += probe.millis;
+            unknown += (probe.bytes < 0) ? 1 : 0;
+        }
+        report.append(String.format(Locale.ENGLISH, "Content paths: %d%n", contentPaths.size()));
+        if (unprobed > 0) {
+            report.append(String.format(Locale.ENGLISH, "INCOMPLETE: %d content paths were not probed, so the "
+                    + "estimates (and the packages marked *) leave them out%n", unprobed));
+        }
+        report.append(String.format(Locale.ENGLISH, "Packages: %d (%d content paths per package)%n", numberOfPackages,
+                pathsPerPackage));
+        report.append(String.format(Locale.ENGLISH, "Estimated bytes: %s (%d content paths too big to estimate)%n",
+                formatBytes(totalBytes), unknown));
+        report.append(String.format(Locale.ENGLISH, "%nPackage  Content paths  Estimated bytes%n"));
+        for (int index = 0; index < numberOfPackages; index++) {
+            long packageBytes = 0;
+            int start = index * pathsPerPackage;
+            int end = Math.min(contentPaths.size(), start + pathsPerPackage);
+            for (Probe probe : probes.subList(Math.min(probes.size(), start), Math.min(probes.size(), end))) {
+                packageBytes += Math.max(probe.bytes, 0);
+            }
+            report.append(String.format(Locale.ENGLISH, "%7d  %13d  %15s%s%n", index + 1, end - start,
+                    formatBytes(packageBytes), (end > probes.size()) ? "*" : ""));
+        }
+        appendTopSubtrees(report, "Slowest subtrees (probe latency)", probes, new Comparator<Probe>() {
+            @Override
+            public int compare(final Probe probe1, final Probe probe2) {
+                return Long.compare(probe2.millis, probe1.millis);
+            }
+        });
+        appendTopSubtrees(report, "Largest subtrees (estimated bytes)", probes, new Comparator<Probe>() {
+            @Override
+            public int compare(final Probe probe1, final Probe probe2) {
+                return Long.compare(probe2.bytes, probe1.bytes);
+            }
+        });
+        double latency = probes.isEmpty() ? 0 : (double) probeMillis / probes.size();
+        double bytesPerMilli = (probeMillis == 0) ? 0 : (double) responseBytes / probeMillis;
+        long transferMillis = (bytesPerMilli == 0) ? 0 : (long) (totalBytes / bytesPerMilli);
+        long requestMillis = (long) (numberOfPackages * latency);
+        report.append(String.format(Locale.ENGLISH, "%nMeasured latency: %.0f ms per request, throughput: %s/s%n",
+                latency, formatBytes((long) (bytesPerMilli * 1000))));
+        report.append(String.format(Locale.ENGLISH, "Estimated duration:%n"));
+        report.append(String.format(Locale.ENGLISH, "  crawl:    %s (measured)%n", formatMillis(crawlMillis)));
+        report.append(String.format(Locale.ENGLISH, "  upload:   %s%n", formatMillis(requestMillis)));
+        // Building is not probed, so it is assumed to take as long as transferring the same bytes.
+        report.append(String.format(Locale.ENGLISH, "  build:    %s (assumed to take as long as the download)%n",
+                formatMillis(transferMillis)));
+        report.append(String.format(Locale.ENGLISH, "  download: %s%n", formatMillis(transferMillis)));
+        report.append(String.format(Locale.ENGLISH, "  remove:   %s%n", formatMillis(requestMillis)));
+        report.append(String.format(Locale.ENGLISH, "  total:    %s%n",
+                formatMillis(crawlMillis + 2 * requestMillis + 2 * transferMillis)));
+        return report.toString();
+    }
+
+    /**
+     * Probes the size of each of the specified content paths in parallel.
+     *
+     * @param contentPaths Content paths to probe.
+     * @return Probes of the specified content paths, in the same order.
+     */
+    private List<Probe> probe(final Set<String> contentPaths) {
+        List<Probe> probes = new ArrayList<Probe>();
+        ExecutorService executorService = Executors.newFixedThreadPool(probeThreads);
+        List<Future<Probe>> futures = new ArrayList<Future<Probe>>();
+        try {
+            for (Iterator<String> iterator = contentPaths.iterator(); iterator.hasNext() || !futures.isEmpty(); ) {
+                // Only a window of probes is submitted at a time, so that a huge crawl is not held in memory twice.
+                while ((iterator.hasNext()) && (futures.size() < probeThreads * 2)) {
+                    final String contentPath = iterator.next();
+                    futures.add(executorService.submit(new Callable<Probe>() {
+                        @Override
+                        public Probe call() {
+                            return probe(contentPath);
+                        }
+                    }));
+                }
+                probes.add(futures.remove(0).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.SEVERE, "Interrupted while probing content paths: {0}", e.getMessage());
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Unable to probe content paths: {0}", e.getCause().getMessage());
+        } finally {
+            executorService.shutdownNow();
+        }
+        return probes;
+    }
+
+    /**
+     * Probes the size of the specified content path.
+     *
+     * @param contentPath Content path to probe.
+     * @return Probe of the specified content path.
+     */
+    private Probe probe(final String contentPath) {
+        boolean asset = contentPath.startsWith(DAM_PREFIX) && (contentPath.lastIndexOf('.') >
+                contentPath.lastIndexOf('/'));
+        String url = host + UrlUtilities.encodePath(contentPath) +
+                (asset ? "/jcr:content/renditions.2.json" : ".infinity.json");
+        long start = System.currentTimeMillis();
+        byte[] data = transport.getData(url);
+        long millis = System.currentTimeMillis() - start;
+        long bytes = -1;
+        try {
+            JsonNode jsonNode = OBJECT_MAPPER.readTree(data);
+            if ((jsonNode != null) && (jsonNode.isObject())) {
+                bytes = getBinaryBytes(jsonNode) + (asset ? 0 : data.length);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to parse probe of: [{0}]. {1}", new String[]{url, e.getMessage()});
+        }
+        LOGGER.log(Level.FINE, "Probed {0}: {1} bytes in {2} ms", new Object[]{contentPath, bytes, millis});
+        return new Probe(contentPath, bytes, data.length, millis);
+    }
+
+    /**
+     * Returns the total length of the binaries contained within the specified {@code JsonNode}.
+     *
+     * @param jsonNode {@code JsonNode} that represents the {@code JCR} data.
+     * @return Total length of the binaries contained within the specified {@code JsonNode}.
+     */
+    private static long getBinaryBytes(final JsonNode jsonNode) {
+        long bytes = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if ((BINARY_LENGTH_PROPERTY.equals(field.getKey())) && (field.getValue().isNumber())) {
+                bytes += field.getValue().asLong();
+            } else if (field.getValue().isObject()) {
+                bytes += getBinaryBytes(field.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Appends the content paths that are first according to the specified {@code Comparator} to the report.
+     *
+     * @param report Report to append to.
+     * @param title Title of the list.
+     * @param probes Probes of the content paths.
+     * @param comparator {@code Comparator} that orders the probes.
+     */
+    private static void appendTopSubtrees(final StringBuilder report, final String title, final List<Probe> probes,
+            final Comparator<Probe> comparator) {
+        List<Probe> sortedProbes = new ArrayList<Probe>(probes);
+        Collections.sort(sortedProbes, comparator);
+        report.append(String.format(Locale.ENGLISH, "%n%s:%n", title));
+        for (Probe probe : sortedProbes.subList(0, Math.min(TOP_SUBTREES, sortedProbes.size()))) {
+            report.append(String.format(Locale.ENGLISH, "  %8d ms  %12s  %s%n", probe.millis,
+                    (probe.bytes < 0) ? "unknown" : formatBytes(probe.bytes), probe.path));
+        }
+    }
+
+    /**
+     * Returns the specified number of bytes in a human readable form (e.g. {@code 1.5 GB}).
+     *
+     * @param bytes Number of bytes.
+     * @return Specified number of bytes in a human readable form.
+     */
+    private static String formatBytes(final long bytes) {
+        String[] units = {"B", "KB", "MB", "GB", "TB"};
+        double value = bytes;
+        int unit = 0;
+        while ((value >= 1024) && (unit < units.length - 1)) {
+            value /= 1024;
+            unit++;
+        }
+        return (unit == 0) ? bytes + " B" : String.format(Locale.ENGLISH, "%.1f %s", value, units[unit]);
+    }
+
+    /**
+     * Returns the specified number of milliseconds in a human readable form (e.g. {@code 1h 02m 03s}).
+     *
+     * @param millis Number of milliseconds.
+     * @return Specified number of milliseconds in a human readable form.
+     */
+    private static String formatMillis(final long millis) {
+        long seconds = millis / 1000;
+        return String.format(Locale.ENGLISH, "%dh %02dm %02ds", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+}
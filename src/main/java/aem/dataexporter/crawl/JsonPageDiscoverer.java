@@ -0,0 +1,121 @@
+package aem.dataexporter.crawl;
+
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.json.JsonJcrParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of an {@code PageDiscoverer} that walks the page structure level by level by retrieving the
+ * {@code JSON} representation of each page.
+ * <p>
+ * Each page is retrieved using a {@code .<depth>.json} selector that is bounded by both the remaining page depth and
+ * the selector depth, so the {@code JCR} only serializes as much of the page subtree as is required.
+ */
+public class JsonPageDiscoverer implements PageDiscoverer {
+
+    /**
+     * Default maximum depth of the {@code .<depth>.json} selector.
+     */
+    public static final int DEFAULT_SELECTOR_DEPTH = 1;
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(JsonPageDiscoverer.class.getName());
+    /**
+     * Name of the host to retrieve content from.
+     */
+    private final String host;
+    /**
+     * {@code Transport} to use to retrieve content.
+     */
+    private final Transport transport;
+    /**
+     * {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
+     */
+    private final JsonJcrParser jsonJcrParser;
+    /**
+     * Maximum depth of the {@code .<depth>.json} selector.
+     */
+    private final int selectorDepth;
+
+    /**
+     * Constructs a new {@code JsonPageDiscoverer}.
+     *
+     * @param newTransport {@code Transport} to use to retrieve content.
+     * @param newJsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR}
+     * data.
+     * @param newHost Name of the host to retrieve content from.
+     * @param newSelectorDepth Maximum depth of the {@code .<depth>.json} selector.
+     */
+    public JsonPageDiscoverer(final Transport newTransport, final JsonJcrParser newJsonJcrParser,
+            final String newHost, final int newSelectorDepth) {
+        this.transport = newTransport;
+        this.jsonJcrParser = newJsonJcrParser;
+        this.host = newHost;
+        this.selectorDepth = Math.max(1, newSelectorDepth);
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Set<String> getPageContentPaths(final String path, final int maxPageDepth) {
+        Set<String> pageContentPaths = new LinkedHashSet<String>();
+        Map<String, Integer> levelPageContentPaths = Collections.singletonMap(path, 0);
+        while (!levelPageContentPaths.isEmpty()) {
+            Map<String, Integer> deeperPageContentPaths = new LinkedHashMap<String, Integer>();
+            for (Map.Entry<String, Integer> levelPageContentPath : levelPageContentPaths.entrySet()) {
+                populatePageContentPaths(pageContentPaths, deeperPageContentPaths, levelPageContentPath.getKey(),
+                        levelPageContentPath.getValue(), maxPageDepth);
+            }
+            levelPageContentPaths = deeperPageContentPaths;
+        }
+        return pageContentPaths;
+    }
+
+    /**
+     * Populates the {@code Set} that contains the page content paths with the pages below the specified path, and the
+     * {@code Map} that contains the pages whose children are yet to be retrieved.
+     *
+     * @param pageContentPaths {@code Set} that contains the page content paths.
+     * @param deeperPageContentPaths {@code Map} of the pages whose children are yet to be retrieved to their depth.
+     * @param path Path to retrieve content from.
+     * @param pageDepth Depth of the specified path.
+     * @param maxPageDepth Maximum depth to retrieve page content paths for.
+     */
+    private void populatePageContentPaths(final Set<String> pageContentPaths,
+            final Map<String, Integer> deeperPageContentPaths, final String path, final int pageDepth,
+            final int maxPageDepth) {
+        int depth = Math.min(maxPageDepth - pageDepth, selectorDepth);
+        List<String> selectorAlternatives = new ArrayList<String>();
+        Map<String, Integer> pagePaths = jsonJcrParser.getPageContentPaths(path,
+                transport.getJsonData(host + path + "." + depth + ".json"), depth, selectorAlternatives);
+        // Follow the alternatives (deepest first) if the JCR considered the requested depth to be too big.
+        for (int index = 0; (pagePaths.isEmpty()) && (index < selectorAlternatives.size()); index++) {
+            depth = JsonJcrParser.getSelectorDepth(path, selectorAlternatives.get(index));
+            if (depth > 0) {
+                pagePaths = jsonJcrParser.getPageContentPaths(path,
+                        transport.getJsonData(host + selectorAlternatives.get(index)), depth,
+                        new ArrayList<String>());
+            }
+        }
+        for (Map.Entry<String, Integer> pagePath : pagePaths.entrySet()) {
+            LOGGER.log(Level.INFO, "Adding page content path: {0}", pagePath.getKey());
+            pageContentPaths.add(pagePath.getKey());
+            int deeperPageDepth = pageDepth + pagePath.getValue();
+            if ((pagePath.getValue() == depth) && (deeperPageDepth < maxPageDepth)) {
+                deeperPageContentPaths.put(pagePath.getKey(), deeperPageDepth);
+            }
+        }
+    }
+
+}
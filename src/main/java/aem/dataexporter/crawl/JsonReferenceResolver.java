@@ -0,0 +1,90 @@
+package aem.dataexporter.crawl;
+
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.json.JsonJcrParser;
+import aem.dataexporter.json.ReferenceRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of an {@code ReferenceResolver} that retrieves the {@code JSON} representation of the
+ * {@code jcr:content} of each content path individually.
+ */
+public class JsonReferenceResolver implements ReferenceResolver {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(JsonReferenceResolver.class.getName());
+    /**
+     * Name of the {@code jcr:content} node.
+     */
+    private static final String JCR_CONTENT = "/jcr:content";
+    /**
+     * Name of the host to retrieve content from.
+     */
+    private final String host;
+    /**
+     * {@code Transport} to use to retrieve content.
+     */
+    private final Transport transport;
+    /**
+     * {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
+     */
+    private final JsonJcrParser jsonJcrParser;
+
+    /**
+     * Constructs a new {@code JsonReferenceResolver}.
+     *
+     * @param newTransport {@code Transport} to use to retrieve content.
+     * @param newJsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR}
+     * data.
+     * @param newHost Name of the host to retrieve content from.
+     */
+    public JsonReferenceResolver(final Transport newTransport, final JsonJcrParser newJsonJcrParser,
+            final String newHost) {
+        this.transport = newTransport;
+        this.jsonJcrParser = newJsonJcrParser;
+        this.host = newHost;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Map<String, Map<String, ReferenceRule>> getContentPaths(final Collection<String> contentPaths) {
+        Map<String, Map<String, ReferenceRule>> references =
+                new LinkedHashMap<String, Map<String, ReferenceRule>>();
+        for (String contentPath : contentPaths) {
+            LOGGER.log(Level.FINE, "Processing content path: {0}", contentPath);
+            references.put(contentPath, getContentPaths(contentPath + JCR_CONTENT));
+        }
+        return references;
+    }
+
+    /**
+     * Returns the content paths that are referenced within the specified {@code jcr:content} path.
+     *
+     * @param jcrContentPath Path of the {@code jcr:content} to retrieve the references of.
+     * @return {@code Map} of the content paths that are referenced within the specified {@code jcr:content} path to
+     * the {@code ReferenceRule} that they matched.
+     */
+    private Map<String, ReferenceRule> getContentPaths(final String jcrContentPath) {
+        List<String> selectorAlternatives = new ArrayList<String>();
+        Map<String, ReferenceRule> contentPaths = jsonJcrParser.getContentPaths(
+                transport.getJsonData(host + jcrContentPath + ".infinity.json"), selectorAlternatives);
+        // Follow the alternatives (deepest first) if the JCR considered the infinity depth to be too big.
+        for (int index = 0; (contentPaths.isEmpty()) && (index < selectorAlternatives.size()); index++) {
+            contentPaths = jsonJcrParser.getContentPaths(
+                    transport.getJsonData(host + selectorAlternatives.get(index)), new ArrayList<String>());
+        }
+        return contentPaths;
+    }
+
+}
@@ -0,0 +1,19 @@
+package aem.dataexporter.crawl;
+
+import java.util.Set;
+
+/**
+ * Interface for the discovery of the pages that exist below a specified path.
+ */
+public interface PageDiscoverer {
+
+    /**
+     * Returns the page content paths for all of the pages that exist below the specified path.
+     *
+     * @param path Path to discover pages below.
+     * @param maxPageDepth Maximum depth to retrieve page content paths for.
+     * @return Page content paths for all of the pages that exist below the specified path.
+     */
+    Set<String> getPageContentPaths(final String path, final int maxPageDepth);
+
+}
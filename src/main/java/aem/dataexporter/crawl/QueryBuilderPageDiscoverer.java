@@ -0,0 +1,115 @@
+package aem.dataexporter.crawl;
+
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.json.JsonQueryBuilderResponse;
+import aem.dataexporter.utilities.UrlUtilities;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of an {@code PageDiscoverer} that pages through the {@code AEM QueryBuilder} results for all of the
+ * {@code cq:Page} nodes below a path.
+ * <p>
+ * Only the {@code jcr:path} of each hit is requested, so each request returns a large batch of lightweight hits rather
+ * than the entire content of a page subtree. If any request fails, the pages are discovered using the fallback
+ * {@code PageDiscoverer} instead, so that a failed query does not silently leave out the remaining pages.
+ */
+public class QueryBuilderPageDiscoverer implements PageDiscoverer {
+
+    /**
+     * Default number of hits to retrieve per request.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(QueryBuilderPageDiscoverer.class.getName());
+    /**
+     * Number of hits to retrieve per request.
+     */
+    private final int batchSize;
+    /**
+     * {@code PageDiscoverer} to use when a query fails.
+     */
+    private final PageDiscoverer fallbackPageDiscoverer;
+    /**
+     * Name of the host to retrieve content from.
+     */
+    private final String host;
+    /**
+     * {@code Transport} to use to retrieve content.
+     */
+    private final Transport transport;
+
+    /**
+     * Constructs a new {@code QueryBuilderPageDiscoverer}.
+     *
+     * @param newTransport {@code Transport} to use to retrieve content.
+     * @param newHost Name of the host to retrieve content from.
+     * @param newBatchSize Number of hits to retrieve per request.
+     * @param newFallbackPageDiscoverer {@code PageDiscoverer} to use when a query fails.
+     */
+    public QueryBuilderPageDiscoverer(final Transport newTransport, final String newHost, final int newBatchSize,
+            final PageDiscoverer newFallbackPageDiscoverer) {
+        this.transport = newTransport;
+        this.host = newHost;
+        this.batchSize = newBatchSize;
+        this.fallbackPageDiscoverer = newFallbackPageDiscoverer;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Set<String> getPageContentPaths(final String path, final int maxPageDepth) {
+        Set<String> pageContentPaths = new LinkedHashSet<String>();
+        int rootDepth = getDepth(path);
+        long offset = 0;
+        JsonQueryBuilderResponse response;
+        do {
+            String url = getQueryUrl(path, offset);
+            response = JsonQueryBuilderResponse.mapJsonToObject(url, transport.getData(url));
+            if ((response == null) || (!response.getSuccess())) {
+                LOGGER.log(Level.WARNING, "Unable to discover pages using query: [{0}], falling back for path: {1}",
+                        new String[]{url, path});
+                return fallbackPageDiscoverer.getPageContentPaths(path, maxPageDepth);
+            }
+            for (String hitPath : response.getHitPaths()) {
+                if (getDepth(hitPath) - rootDepth <= maxPageDepth) {
+                    LOGGER.log(Level.INFO, "Adding page content path: {0}", hitPath);
+                    pageContentPaths.add(hitPath);
+                }
+            }
+            offset += response.getResults();
+        } while (response.hasNextPage());
+        return pageContentPaths;
+    }
+
+    /**
+     * Returns the url of the {@code QueryBuilder} request for the page of hits starting at the specified offset.
+     *
+     * @param path Path to discover pages below.
+     * @param offset Offset of the first hit to retrieve.
+     * @return Url of the {@code QueryBuilder} request for the page of hits starting at the specified offset.
+     */
+    private String getQueryUrl(final String path, final long offset) {
+        return host + "/bin/querybuilder.json?type=cq:Page&path=" + UrlUtilities.encode(path) +
+                "&orderby=path&p.limit=" + batchSize + "&p.offset=" + offset +
+                "&p.guessTotal=true&p.hits=selective&p.properties=jcr:path";
+    }
+
+    /**
+     * Returns the depth of the specified path (i.e. the number of path segments).
+     *
+     * @param path Path to return the depth of.
+     * @return Depth of the specified path.
+     */
+    private static int getDepth(final String path) {
+        return StringUtils.countMatches(StringUtils.removeEnd(path, "/"), "/");
+    }
+
+}
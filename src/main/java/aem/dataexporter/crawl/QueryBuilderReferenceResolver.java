@@ -0,0 +1,168 @@
+package aem.dataexporter.crawl;
+
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.json.JsonJcrParser;
+import aem.dataexporter.json.JsonQueryBuilderResponse;
+import aem.dataexporter.json.ReferenceRule;
+import aem.dataexporter.utilities.UrlUtilities;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of an {@code ReferenceResolver} that resolves the references of many content paths at once by
+ * querying the {@code AEM QueryBuilder} with a group of {@code path} predicates (one for the {@code jcr:content} of
+ * each content path).
+ * <p>
+ * By default each hit contains all of the properties of a node below a {@code jcr:content}; when reference properties
+ * are specified only those properties are selected. Content paths are only resolved individually (using the fallback
+ * {@code ReferenceResolver}) when the query for their batch fails.
+ */
+public class QueryBuilderReferenceResolver implements ReferenceResolver {
+
+    /**
+     * Default number of content paths to resolve per request.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(QueryBuilderReferenceResolver.class.getName());
+    /**
+     * Name of the {@code jcr:content} node.
+     */
+    private static final String JCR_CONTENT = "/jcr:content";
+    /**
+     * Number of content paths to resolve per request.
+     */
+    private final int batchSize;
+    /**
+     * {@code ReferenceResolver} to use when a query fails.
+     */
+    private final ReferenceResolver fallbackReferenceResolver;
+    /**
+     * Name of the host to retrieve content from.
+     */
+    private final String host;
+    /**
+     * {@code Transport} to use to retrieve content.
+     */
+    private final Transport transport;
+    /**
+     * {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
+     */
+    private final JsonJcrParser jsonJcrParser;
+    /**
+     * Hits parameters of the query (i.e. either all properties, or the selected reference properties).
+     */
+    private final String hitsParameters;
+
+    /**
+     * Constructs a new {@code QueryBuilderReferenceResolver}.
+     *
+     * @param newTransport {@code Transport} to use to retrieve content.
+     * @param newJsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR}
+     * data.
+     * @param newHost Name of the host to retrieve content from.
+     * @param newBatchSize Number of content paths to resolve per request.
+     * @param referenceProperties Names of the properties that can contain references, or null to select all
+     * properties.
+     * @param newFallbackReferenceResolver {@code ReferenceResolver} to use when a query fails.
+     */
+    public QueryBuilderReferenceResolver(final Transport newTransport, final JsonJcrParser newJsonJcrParser,
+            final String newHost, final int newBatchSize, final String[] referenceProperties,
+            final ReferenceResolver newFallbackReferenceResolver) {
+        this.transport = newTransport;
+        this.jsonJcrParser = newJsonJcrParser;
+        this.host = newHost;
+        this.batchSize = newBatchSize;
+        this.fallbackReferenceResolver = newFallbackReferenceResolver;
+        if ((referenceProperties == null) || (referenceProperties.length == 0)) {
+            hitsParameters = "&p.hits=full";
+        } else {
+            hitsParameters = "&p.hits=selective&p.properties=" +
+                    UrlUtilities.encode("jcr:path " + StringUtils.join(referenceProperties, " "));
+        }
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Map<String, Map<String, ReferenceRule>> getContentPaths(final Collection<String> contentPaths) {
+        Map<String, Map<String, ReferenceRule>> references =
+                new LinkedHashMap<String, Map<String, ReferenceRule>>();
+        List<String> batch = new ArrayList<String>(batchSize);
+        for (String contentPath : contentPaths) {
+            batch.add(contentPath);
+            if (batch.size() >= batchSize) {
+                populateContentPaths(references, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            populateContentPaths(references, batch);
+        }
+        return references;
+    }
+
+    /**
+     * Populates the {@code Map} of content paths to the content paths that they reference for a single batch.
+     *
+     * @param references {@code Map} of content paths to the content paths that they reference.
+     * @param batch Content paths to resolve the references of.
+     */
+    private void populateContentPaths(final Map<String, Map<String, ReferenceRule>> references,
+            final List<String> batch) {
+        String url = getQueryUrl(batch);
+        JsonQueryBuilderResponse response = JsonQueryBuilderResponse.mapJsonToObject(url, transport.getData(url));
+        if ((response == null) || (!response.getSuccess()) || (response.hasNextPage())) {
+            LOGGER.log(Level.WARNING, "Unable to resolve references using query, falling back for {0} content paths",
+                    batch.size());
+            references.putAll(fallbackReferenceResolver.getContentPaths(batch));
+            return;
+        }
+        for (String contentPath : batch) {
+            references.put(contentPath, new LinkedHashMap<String, ReferenceRule>());
+        }
+        for (JsonNode hit : response.getHits()) {
+            String hitPath = hit.has("jcr:path") ? hit.get("jcr:path").textValue() : null;
+            int jcrContentIndex = (hitPath == null) ? -1 : hitPath.indexOf(JCR_CONTENT);
+            if (jcrContentIndex > 0) {
+                Map<String, ReferenceRule> contentPathReferences =
+                        references.get(hitPath.substring(0, jcrContentIndex));
+                if (contentPathReferences != null) {
+                    for (Map.Entry<String, ReferenceRule> reference : jsonJcrParser.getContentPaths(hit).entrySet()) {
+                        if (!contentPathReferences.containsKey(reference.getKey())) {
+                            contentPathReferences.put(reference.getKey(), reference.getValue());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the url of the {@code QueryBuilder} request for the specified batch of content paths.
+     *
+     * @param batch Content paths to resolve the references of.
+     * @return Url of the {@code QueryBuilder} request for the specified batch of content paths.
+     */
+    private String getQueryUrl(final List<String> batch) {
+        StringBuilder url = new StringBuilder(host).append("/bin/querybuilder.json?group.p.or=true");
+        for (int index = 0; index < batch.size(); index++) {
+            String predicate = "&group." + (index + 1) + "_path";
+            url.append(predicate).append('=').append(UrlUtilities.encode(batch.get(index) + JCR_CONTENT));
+            url.append(predicate).append(".self=true");
+        }
+        return url.append("&p.limit=-1").append(hitsParameters).toString();
+    }
+
+}
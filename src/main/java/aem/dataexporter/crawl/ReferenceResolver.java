@@ -0,0 +1,24 @@
+package aem.dataexporter.crawl;
+
+import aem.dataexporter.json.ReferenceRule;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Interface for the resolution of the content paths that are referenced within the {@code jcr:content} of other
+ * content paths.
+ */
+public interface ReferenceResolver {
+
+    /**
+     * Returns the content paths that are referenced within the {@code jcr:content} of each of the specified content
+     * paths.
+     *
+     * @param contentPaths Content paths to resolve the references of.
+     * @return {@code Map} of each of the specified content paths to a {@code Map} of the content paths that it
+     * references to the {@code ReferenceRule} that they matched.
+     */
+    Map<String, Map<String, ReferenceRule>> getContentPaths(final Collection<String> contentPaths);
+
+}
@@ -0,0 +1,80 @@
+package aem.dataexporter.crawl;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Assigns content paths to the shards of a distributed crawl using consistent hashing.
+ * <p>
+ * Each shard is placed on a hash ring a number of times (i.e. as virtual nodes), and a content path is assigned to the
+ * first shard that follows the hash of the path on the ring. Every exporter process computes the same assignment
+ * without coordinating with the others, and changing the number of shards only moves the content paths of the shards
+ * that were added or removed.
+ */
+public class ShardAssigner {
+
+    /**
+     * Number of virtual nodes of each shard on the hash ring.
+     */
+    private static final int VIRTUAL_NODES = 160;
+    /**
+     * Charset used to hash the content paths.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Hash ring of the virtual nodes to the number of their shard.
+     */
+    private final SortedMap<Long, Integer> ring = new TreeMap<Long, Integer>();
+
+    /**
+     * Constructs a new {@code ShardAssigner}.
+     *
+     * @param numberOfShards Number of shards (i.e. exporter processes).
+     */
+    public ShardAssigner(final int numberOfShards) {
+        if (numberOfShards < 1) {
+            throw new IllegalArgumentException("Invalid number of shards: " + numberOfShards);
+        }
+        for (int shard = 1; shard <= numberOfShards; shard++) {
+            for (int virtualNode = 0; virtualNode < VIRTUAL_NODES; virtualNode++) {
+                ring.put(hash("shard-" + shard + "#" + virtualNode), shard);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the shard (from {@code 1}) that the specified content path is assigned to.
+     *
+     * @param path Content path to assign.
+     * @return Number of the shard that the specified content path is assigned to.
+     */
+    public final int getShard(final String path) {
+        SortedMap<Long, Integer> tailMap = ring.tailMap(hash(path));
+        Map.Entry<Long, Integer> virtualNode = tailMap.isEmpty() ? null : tailMap.entrySet().iterator().next();
+        return (virtualNode == null) ? ring.get(ring.firstKey()) : virtualNode.getValue();
+    }
+
+    /**
+     * Returns the hash of the specified value on the ring.
+     *
+     * @param value Value to hash.
+     * @return Hash of the specified value.
+     */
+    private static long hash(final String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(UTF_8));
+            long hash = 0;
+            for (int index = 0; index < 8; index++) {
+                hash = (hash << 8) | (digest[index] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,331 @@
+package aem.dataexporter.crawl;
+
+import aem.dataexporter.http.Transport;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Implementation of an {@code PageDiscoverer} that reads the pages from a {@code sitemap.xml} or from a list of page
+ * paths (one per line), rather than walking the page structure.
+ * <p>
+ * The source is read once, as a stream, and the page content paths below the requested path are then returned without
+ * any further requests. A source is either a local file, or a url (or a path relative to the host) that is retrieved
+ * from the host. Sitemap indexes are followed, and {@code gzip} compressed sources are decompressed. The locations of a
+ * sitemap are converted to page content paths by removing their scheme, authority and extension (e.g.
+ * {@code https://www.example.com/en/products.html} becomes {@code /en/products}), and locations that have been
+ * shortened by the resource mapping (i.e. do not start with {@code /content/}) are prefixed with the requested path.
+ * If the source (or one of the sitemaps of an index) cannot be read or parsed, the pages are discovered using the
+ * fallback {@code PageDiscoverer} instead, so that the export does not silently contain no pages.
+ */
+public class SitemapPageDiscoverer implements PageDiscoverer {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(SitemapPageDiscoverer.class.getName());
+    /**
+     * Prefix of the page content paths that have not been shortened by the resource mapping.
+     */
+    private static final String CONTENT_PREFIX = "/content/";
+    /**
+     * Charset of the page path lists.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Name of the host to retrieve content from.
+     */
+    private final String host;
+    /**
+     * {@code Transport} to use to retrieve content.
+     */
+    private final Transport transport;
+    /**
+     * Location of the sitemap or page path list.
+     */
+    private final String source;
+    /**
+     * {@code PageDiscoverer} to use when the source cannot be read.
+     */
+    private final PageDiscoverer fallbackPageDiscoverer;
+    /**
+     * Paths read from the source (i.e. the sitemap locations or listed page paths), read when they are first needed.
+     */
+    private List<String> sourcePaths;
+    /**
+     * Whether or not the whole source was read.
+     */
+    private boolean sourceRead;
+
+    /**
+     * Constructs a new {@code SitemapPageDiscoverer}.
+     *
+     * @param newTransport {@code Transport} to use to retrieve content.
+     * @param newHost Name of the host to retrieve content from.
+     * @param newSource Location (i.e. a local file, a url, or a path relative to the host) of the sitemap or page
+     * path list.
+     * @param newFallbackPageDiscoverer {@code PageDiscoverer} to use when the source cannot be read.
+     */
+    public SitemapPageDiscoverer(final Transport newTransport, final String newHost, final String newSource,
+            final PageDiscoverer newFallbackPageDiscoverer) {
+        this.transport = newTransport;
+        this.host = newHost;
+        this.source = newSource;
+        this.fallbackPageDiscoverer = newFallbackPageDiscoverer;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final synchronized Set<String> getPageContentPaths(final String path, final int maxPageDepth) {
+        if (sourcePaths == null) {
+            sourcePaths = new ArrayList<String>();
+            sourceRead = readSource(source, sourcePaths, new LinkedHashSet<String>());
+            if (sourceRead) {
+                LOGGER.log(Level.INFO, "Read {0} page paths from [{1}]", new Object[]{sourcePaths.size(), source});
+            } else {
+                LOGGER.log(Level.WARNING, "Unable to read all of the pages from [{0}], falling back to crawling them",
+                        source);
+            }
+        }
+        if (!sourceRead) {
+            return fallbackPageDiscoverer.getPageContentPaths(path, maxPageDepth);
+        }
+        String root = StringUtils.removeEnd(path, "/");
+        int rootDepth = getDepth(root);
+        Set<String> pageContentPaths = new LinkedHashSet<String>();
+        for (String sourcePath : sourcePaths) {
+            String pageContentPath = sourcePath.startsWith(CONTENT_PREFIX) ? sourcePath : root + sourcePath;
+            if ((pageContentPath.startsWith(root + "/")) && (getDepth(pageContentPath) - rootDepth <= maxPageDepth) &&
+                    (pageContentPaths.add(pageContentPath))) {
+                LOGGER.log(Level.FINE, "Adding page content path: {0}", pageContentPath);
+            }
+        }
+        return pageContentPaths;
+    }
+
+    /**
+     * Reads the paths from the specified sitemap (following sitemap indexes) or page path list.
+     *
+     * @param location Location of the sitemap or page path list.
+     * @param paths {@code List} to add the paths to.
+     * @param readLocations Locations that have already been read (so that sitemap indexes cannot loop).
+     * @return True if the source (and all of the sitemaps of an index) could be read; otherwise false.
+     */
+    private boolean readSource(final String location, final List<String> paths, final Set<String> readLocations) {
+        if (!readLocations.add(location)) {
+            return true;
+        }
+        File file = new File(location);
+        File downloadedFile = null;
+        try {
+            if (!file.isFile()) {
+                downloadedFile = download(location);
+                file = downloadedFile;
+            }
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                in.mark(2);
+                boolean gzip = (in.read() == 0x1f) && (in.read() == 0x8b);
+                in.reset();
+                if (gzip) {
+                    in = new BufferedInputStream(new GZIPInputStream(in));
+                }
+                if (isXml(in)) {
+                    return readSitemap(in, paths, readLocations);
+                }
+                readPathList(in, paths);
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read pages from: [{0}]. {1}", new String[]{location, e.getMessage()});
+        } catch (XMLStreamException e) {
+            LOGGER.log(Level.SEVERE, "Unable to parse sitemap: [{0}]. {1}", new String[]{location, e.getMessage()});
+        } finally {
+            if ((downloadedFile != null) && (!downloadedFile.delete())) {
+                downloadedFile.deleteOnExit();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Downloads the specified location from the host to a temporary file (so that it can be streamed rather than held
+     * in memory).
+     *
+     * @param location Url, or path relative to the host, to download.
+     * @return Temporary file that contains the downloaded location.
+     * @throws IOException If the location cannot be downloaded.
+     */
+    private File download(final String location) throws IOException {
+        String url = location.startsWith("/") ? host + location : location;
+        File file = File.createTempFile("sitemap", ".tmp");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            transport.getDataAndWriteToOutputSteam(url, out);
+        } finally {
+            out.close();
+        }
+        if ((file.length() == 0) || (transport.getAbandonedUrls().contains(url))) {
+            file.delete();
+            throw new IOException("No data retrieved from " + url);
+        }
+        return file;
+    }
+
+    /**
+     * Returns whether the specified stream contains {@code XML} (i.e. its first non-whitespace character is
+     * {@code <}), without consuming it.
+     *
+     * @param in Stream to check, which must support mark.
+     * @return Whether the specified stream contains {@code XML}.
+     * @throws IOException If the stream cannot be read.
+     */
+    private static boolean isXml(final InputStream in) throws IOException {
+        in.mark(1024);
+        try {
+            for (int index = 0; index < 1024; index++) {
+                int value = in.read();
+                if ((value < 0) || (!Character.isWhitespace(value) && (value != 0xef) && (value != 0xbb) &&
+                        (value != 0xbf))) {
+                    return value == '<';
+                }
+            }
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Reads the paths of the {@code <loc>} elements of the specified sitemap, following the sitemaps of a sitemap
+     * index.
+     *
+     * @param in Stream that contains the sitemap.
+     * @param paths {@code List} to add the paths to.
+     * @param readLocations Locations that have already been read.
+     * @return True if all of the sitemaps of a sitemap index could be read; otherwise false.
+     * @throws XMLStreamException If the sitemap cannot be parsed.
+     */
+    private boolean readSitemap(final InputStream in, final List<String> paths, final Set<String> readLocations)
+            throws XMLStreamException {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+        List<String> childSitemaps = new ArrayList<String>();
+        boolean sitemapIndex = false;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if ("sitemapindex".equals(reader.getLocalName())) {
+                    sitemapIndex = true;
+                } else if ("loc".equals(reader.getLocalName())) {
+                    String location = reader.getElementText().trim();
+                    if (sitemapIndex) {
+                        childSitemaps.add(location);
+                    } else {
+                        addPath(paths, getPath(location));
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        boolean read = true;
+        for (String childSitemap : childSitemaps) {
+            read &= readSource(childSitemap, paths, readLocations);
+        }
+        return read;
+    }
+
+    /**
+     * Reads the paths of the specified page path list (one path per line, ignoring blank lines and lines that start
+     * with {@code #}).
+     *
+     * @param in Stream that contains the page path list.
+     * @param paths {@code List} to add the paths to.
+     * @throws IOException If the page path list cannot be read.
+     */
+    private static void readPathList(final InputStream in, final List<String> paths) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            String path = line.trim();
+            if ((!path.isEmpty()) && (!path.startsWith("#"))) {
+                addPath(paths, path);
+            }
+        }
+    }
+
+    /**
+     * Adds the specified path (without its trailing slash) to the {@code List} of paths.
+     *
+     * @param paths {@code List} to add the path to.
+     * @param path Path to add.
+     */
+    private static void addPath(final List<String> paths, final String path) {
+        String trimmedPath = StringUtils.removeEnd(path, "/");
+        if (trimmedPath.startsWith("/")) {
+            paths.add(trimmedPath);
+        }
+    }
+
+    /**
+     * Returns the path of the specified sitemap location, without its extension (e.g. {@code .html}).
+     *
+     * @param location Location of a page within a sitemap.
+     * @return Path of the specified sitemap location.
+     */
+    private static String getPath(final String location) {
+        String path;
+        try {
+            path = URI.create(location).getPath();
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Invalid sitemap location: {0}", location);
+            return "";
+        }
+        if (path == null) {
+            return "";
+        }
+        int lastSlash = path.lastIndexOf('/');
+        int extension = path.indexOf('.', lastSlash + 1);
+        return (extension < 0) ? path : path.substring(0, extension);
+    }
+
+    /**
+     * Returns the depth of the specified path (i.e. the number of path segments).
+     *
+     * @param path Path to return the depth of.
+     * @return Depth of the specified path.
+     */
+    private static int getDepth(final String path) {
+        return StringUtils.countMatches(StringUtils.removeEnd(path, "/"), "/");
+    }
+
+}
@@ -0,0 +1,132 @@
+package aem.dataexporter.file;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Determines how each entry of a {@code CRX} package is compressed.
+ * <p>
+ * Entries whose content is already compressed (e.g. {@code JPEG}, {@code PNG} and {@code MP4} renditions) are stored
+ * rather than deflated, since deflating them costs a lot of time for almost no reduction in size. All other entries
+ * (e.g. the {@code .content.xml} document views) are deflated using the configured compression level.
+ */
+public class CompressionPolicy {
+
+    /**
+     * Extensions of the files whose content is already compressed.
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif", "jp2", "mp4", "m4v", "mov",
+                    "avi", "mkv", "webm", "flv", "wmv", "mpg", "mpeg", "mp3", "m4a", "aac", "ogg", "oga", "ogv",
+                    "flac", "wma", "zip", "jar", "gz", "tgz", "bz2", "xz", "7z", "rar", "pdf", "woff", "woff2",
+                    "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "swf")));
+    /**
+     * {@code MIME} types of the files whose content is already compressed (in addition to all images, videos and audio
+     * that are not listed as uncompressed).
+     */
+    private static final Set<String> COMPRESSED_MIME_TYPES = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("application/zip", "application/gzip", "application/x-gzip", "application/pdf",
+                    "application/x-7z-compressed", "application/java-archive", "font/woff", "font/woff2",
+                    "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+                    "application/vnd.openxmlformats-officedocument.presentationml.presentation")));
+    /**
+     * {@code MIME} types of images and audio whose content is not compressed.
+     */
+    private static final Set<String> UNCOMPRESSED_MIME_TYPES = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("image/svg+xml", "image/bmp", "image/x-ms-bmp", "image/tiff", "image/x-icon",
+                    "image/vnd.microsoft.icon", "audio/wav", "audio/x-wav", "audio/aiff", "audio/x-aiff")));
+    /**
+     * Compression level used to deflate the entries.
+     */
+    private final int level;
+
+    /**
+     * Constructs a new {@code CompressionPolicy} that uses the default compression level.
+     */
+    public CompressionPolicy() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructs a new {@code CompressionPolicy}.
+     *
+     * @param newLevel Compression level used to deflate the entries (i.e. {@code 1} to {@code 9}, or {@code -1} for
+     * the default compression level).
+     */
+    public CompressionPolicy(final int newLevel) {
+        if ((newLevel < Deflater.DEFAULT_COMPRESSION) || (newLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + newLevel);
+        }
+        this.level = newLevel;
+    }
+
+    /**
+     * Returns the compression level used to deflate the entries.
+     *
+     * @return Compression level used to deflate the entries.
+     */
+    public final int getLevel() {
+        return level;
+    }
+
+    /**
+     * Configures the specified {@code ZipArchiveOutputStream} to use the compression level of the policy.
+     *
+     * @param zipArchiveOutputStream {@code ZipArchiveOutputStream} to configure.
+     */
+    public final void configure(final ZipArchiveOutputStream zipArchiveOutputStream) {
+        zipArchiveOutputStream.setLevel(level);
+    }
+
+    /**
+     * Returns a new {@code ZipArchiveEntry} for the specified entry, whose compression method is set according to the
+     * policy.
+     *
+     * @param name Name of the entry within the package.
+     * @param mimeType {@code MIME} type of the content of the entry, or null if it is not known.
+     * @return New {@code ZipArchiveEntry} for the specified entry.
+     */
+    public final ZipArchiveEntry createEntry(final String name, final String mimeType) {
+        ZipArchiveEntry zipArchiveEntry = new ZipArchiveEntry(name);
+        boolean stored = (zipArchiveEntry.isDirectory()) || (isCompressed(name, mimeType));
+        zipArchiveEntry.setMethod(stored ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        return zipArchiveEntry;
+    }
+
+    /**
+     * Returns a boolean indicating whether or not the content of the specified entry is already compressed.
+     *
+     * @param name Name of the entry within the package.
+     * @param mimeType {@code MIME} type of the content of the entry, or null if it is not known.
+     * @return True if the content of the specified entry is already compressed; otherwise false.
+     */
+    public final boolean isCompressed(final String name, final String mimeType) {
+        if (mimeType != null) {
+            String type = mimeType.toLowerCase(Locale.ENGLISH);
+            int parameterIndex = type.indexOf(';');
+            if (parameterIndex >= 0) {
+                type = type.substring(0, parameterIndex).trim();
+            }
+            if (COMPRESSED_MIME_TYPES.contains(type)) {
+                return true;
+            }
+            if ((type.startsWith("image/")) || (type.startsWith("video/")) || (type.startsWith("audio/"))) {
+                return !UNCOMPRESSED_MIME_TYPES.contains(type);
+            }
+        }
+        int separatorIndex = name.lastIndexOf('/');
+        int extensionIndex = name.lastIndexOf('.');
+        return (extensionIndex > separatorIndex) &&
+                (COMPRESSED_EXTENSIONS.contains(name.substring(extensionIndex + 1).toLowerCase(Locale.ENGLISH)));
+    }
+
+}
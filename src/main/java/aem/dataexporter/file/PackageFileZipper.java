@@ -1,7 +1,7 @@
 package aem.dataexporter.file;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.utils.IOUtils;
 
@@ -20,6 +20,26 @@ public class PackageFileZipper {
      * Logger.
      */
     private static final Logger LOGGER = Logger.getLogger(PackageFileZipper.class.getName());
+    /**
+     * {@code CompressionPolicy} that determines how each entry is compressed.
+     */
+    private final CompressionPolicy compressionPolicy;
+
+    /**
+     * Constructs a new {@code PackageFileZipper} that uses the default compression level.
+     */
+    public PackageFileZipper() {
+        this(new CompressionPolicy());
+    }
+
+    /**
+     * Constructs a new {@code PackageFileZipper}.
+     *
+     * @param newCompressionPolicy {@code CompressionPolicy} that determines how each entry is compressed.
+     */
+    public PackageFileZipper(final CompressionPolicy newCompressionPolicy) {
+        this.compressionPolicy = newCompressionPolicy;
+    }
 
     /**
      * Creates the {@code CRX} package definition.
@@ -28,14 +48,10 @@ public class PackageFileZipper {
      */
     public final void createPackageZip(final String packageName) {
         try {
-            ArchiveOutputStream archiveOutputStream =
+            ZipArchiveOutputStream archiveOutputStream =
                     new ZipArchiveOutputStream(new File("src/main/resources/" + packageName + ".zip"));
-            addZipEntry(archiveOutputStream, "META-INF/vault/definition/.content.xml");
-            addZipEntry(archiveOutputStream, "META-INF/vault/config.xml");
-            addZipEntry(archiveOutputStream, "META-INF/vault/filter.xml");
-            addZipEntry(archiveOutputStream, "META-INF/vault/nodetypes.cnd");
-            addZipEntry(archiveOutputStream, "META-INF/vault/properties.xml");
-            addZipEntry(archiveOutputStream, "jcr_root/.content.xml");
+            compressionPolicy.configure(archiveOutputStream);
+            addPackageFiles(archiveOutputStream);
             archiveOutputStream.finish();
             archiveOutputStream.close();
         } catch (IOException e) {
@@ -43,6 +59,21 @@ public class PackageFileZipper {
         }
     }
 
+    /**
+     * Adds the files of the {@code CRX} package definition to the zip.
+     *
+     * @param archiveOutputStream {@code ArchiveOutputStream} to output the zip entries to.
+     * @throws IOException If an error occurs adding the files to the zip.
+     */
+    public final void addPackageFiles(final ArchiveOutputStream archiveOutputStream) throws IOException {
+        addZipEntry(archiveOutputStream, "META-INF/vault/definition/.content.xml");
+        addZipEntry(archiveOutputStream, "META-INF/vault/config.xml");
+        addZipEntry(archiveOutputStream, "META-INF/vault/filter.xml");
+        addZipEntry(archiveOutputStream, "META-INF/vault/nodetypes.cnd");
+        addZipEntry(archiveOutputStream, "META-INF/vault/properties.xml");
+        addZipEntry(archiveOutputStream, "jcr_root/.content.xml");
+    }
+
     /**
      * Adds an entry to the zip.
      *
@@ -54,7 +85,8 @@ public class PackageFileZipper {
         FileInputStream fileInputStream = null;
         try {
             File file = new File("src/main/resources/" + filename);
-            ArchiveEntry archiveEntry = archiveOutputStream.createArchiveEntry(file, filename);
+            ZipArchiveEntry archiveEntry = new ZipArchiveEntry(file, filename);
+            archiveEntry.setMethod(compressionPolicy.createEntry(filename, null).getMethod());
             archiveOutputStream.putArchiveEntry(archiveEntry);
             fileInputStream = new FileInputStream(file);
             IOUtils.copy(fileInputStream, archiveOutputStream);
@@ -0,0 +1,547 @@
+package aem.dataexporter.file;
+
+import aem.dataexporter.file.xml.DocViewXmlDocumentCreator;
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.json.JsonJcrParser;
+import aem.dataexporter.utilities.UrlUtilities;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStoreSupplier;
+import org.apache.commons.compress.utils.IOUtils;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes a complete {@code CRX} package (i.e. the package definition along with the content) on the client, so that
+ * the package does not need to be uploaded to, built on, and downloaded from the {@code AEM} package manager.
+ * <p>
+ * The content of each content path is retrieved in parallel using the {@code JSON} representation of the {@code JCR}
+ * data, and serialized as FileVault document views ({@code .content.xml}). The binaries of the {@code nt:file} nodes
+ * (e.g. {@code renditions/original}) are streamed into the package as separate files. The entries are written to the
+ * {@code ZipArchiveOutputStream} in the order of the content paths, while the content of the following content paths
+ * is still being retrieved.
+ * <p>
+ * Each entry is compressed according to the {@code CompressionPolicy} (i.e. binaries that are already compressed are
+ * stored), optionally in parallel using a {@code ParallelScatterZipCreator}.
+ */
+public class PackageStreamWriter {
+
+    /**
+     * Default number of threads to retrieve content with.
+     */
+    public static final int DEFAULT_FETCH_THREADS = 8;
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(PackageStreamWriter.class.getName());
+    /**
+     * Name of the document view file.
+     */
+    private static final String CONTENT_XML = ".content.xml";
+    /**
+     * Root directory of the content within the package.
+     */
+    private static final String JCR_ROOT = "jcr_root/";
+    /**
+     * Name of the host to retrieve content from.
+     */
+    private final String host;
+    /**
+     * {@code Transport} to use to retrieve content.
+     */
+    private final Transport transport;
+    /**
+     * {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
+     */
+    private final JsonJcrParser jsonJcrParser;
+    /**
+     * Number of threads to retrieve content with.
+     */
+    private final int fetchThreads;
+    /**
+     * {@code CompressionPolicy} that determines how each entry is compressed.
+     */
+    private final CompressionPolicy compressionPolicy;
+    /**
+     * Whether or not the entries are compressed in parallel.
+     */
+    private final boolean parallelCompression;
+
+    /**
+     * Constructs a new {@code PackageStreamWriter}.
+     *
+     * @param newTransport {@code Transport} to use to retrieve content.
+     * @param newJsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR}
+     * data.
+     * @param newHost Name of the host to retrieve content from.
+     * @param newFetchThreads Number of threads to retrieve content with.
+     * @param newCompressionPolicy {@code CompressionPolicy} that determines how each entry is compressed.
+     * @param newParallelCompression Whether or not the entries are compressed in parallel (using the same number of
+     * threads that content is retrieved with).
+     */
+    public PackageStreamWriter(final Transport newTransport, final JsonJcrParser newJsonJcrParser,
+            final String newHost, final int newFetchThreads, final CompressionPolicy newCompressionPolicy,
+            final boolean newParallelCompression) {
+        this.transport = newTransport;
+        this.jsonJcrParser = newJsonJcrParser;
+        this.host = newHost;
+        this.fetchThreads = Math.max(1, newFetchThreads);
+        this.compressionPolicy = newCompressionPolicy;
+        this.parallelCompression = newParallelCompression;
+    }
+
+    /**
+     * Writes the {@code CRX} package that contains the content of the specified content paths.
+     *
+     * @param contentPaths {@code Set} that contains the {@code JCR DAM} content paths.
+     * @param username Username to authenticate with.
+     * @param packageName Name of the package to create.
+     * @param filename Name of the package file to write.
+     * @return True if the package was written; otherwise false.
+     */
+    public final boolean writePackage(final Set<String> contentPaths, final String username, final String packageName,
+            final String filename) {
+        PackageFileWriter packageFileWriter = new PackageFileWriter();
+        packageFileWriter.writePackageFiles(contentPaths, username, packageName);
+        ExecutorService executorService = Executors.newFixedThreadPool(fetchThreads);
+        ExecutorService compressionExecutorService = null;
+        ZipArchiveOutputStream zipArchiveOutputStream = null;
+        try {
+            zipArchiveOutputStream = new ZipArchiveOutputStream(new File(filename));
+            compressionPolicy.configure(zipArchiveOutputStream);
+            new PackageFileZipper(compressionPolicy).addPackageFiles(zipArchiveOutputStream);
+            ParallelScatterZipCreator parallelScatterZipCreator = null;
+            if (parallelCompression) {
+                compressionExecutorService = Executors.newFixedThreadPool(fetchThreads);
+                parallelScatterZipCreator = new ParallelScatterZipCreator(compressionExecutorService,
+                        new FileScatterGatherBackingStoreSupplier(), compressionPolicy.getLevel());
+            }
+            writeContent(zipArchiveOutputStream, parallelScatterZipCreator, executorService,
+                    getRootPaths(contentPaths));
+            if (parallelScatterZipCreator != null) {
+                parallelScatterZipCreator.writeTo(zipArchiveOutputStream);
+                LOGGER.log(Level.INFO, "Compressed package entries in parallel. {0}",
+                        parallelScatterZipCreator.getStatisticsMessage());
+            }
+            zipArchiveOutputStream.finish();
+            LOGGER.log(Level.INFO, "Finished writing package [{0}]", filename);
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to write package: [{0}]. {1}", new String[]{filename, e.getMessage()});
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.SEVERE, "Interrupted while writing package: {0}", filename);
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Unable to compress package: [{0}]. {1}",
+                    new String[]{filename, e.getCause().getMessage()});
+        } finally {
+            executorService.shutdownNow();
+            if (compressionExecutorService != null) {
+                // The compression threads are only shut down by writeTo, which is not reached if writing fails.
+                compressionExecutorService.shutdownNow();
+            }
+            if (zipArchiveOutputStream != null) {
+                try {
+                    zipArchiveOutputStream.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Unable to close package: [{0}]. {1}",
+                            new String[]{filename, e.getMessage()});
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the content paths that are not contained within another of the specified content paths, since the
+     * content of a content path includes all of its descendants.
+     * <p>
+     * Each content path is checked against all of its ancestors, since a descendant does not necessarily sort directly
+     * after its ancestor (e.g. {@code /a-b} sorts between {@code /a} and {@code /a/b}).
+     *
+     * @param contentPaths {@code Set} that contains the {@code JCR DAM} content paths.
+     * @return {@code Set} that contains the content paths that are not contained within another content path.
+     */
+    static Set<String> getRootPaths(final Set<String> contentPaths) {
+        Set<String> allPaths = new HashSet<String>(contentPaths);
+        Set<String> rootPaths = new TreeSet<String>();
+        for (String contentPath : contentPaths) {
+            boolean contained = false;
+            for (int index = contentPath.lastIndexOf('/'); (index > 0) && (!contained);
+                    index = contentPath.lastIndexOf('/', index - 1)) {
+                contained = allPaths.contains(contentPath.substring(0, index));
+            }
+            if (!contained) {
+                rootPaths.add(contentPath);
+            }
+        }
+        return rootPaths;
+    }
+
+    /**
+     * Writes the content of the specified content paths to the {@code ZipArchiveOutputStream}.
+     * <p>
+     * At most two content paths per thread are retrieved ahead of the one being written, so that the amount of content
+     * that is waiting to be written is bounded.
+     *
+     * @param zipArchiveOutputStream {@code ZipArchiveOutputStream} to write the content to.
+     * @param parallelScatterZipCreator {@code ParallelScatterZipCreator} to compress the content with, or null if the
+     * content is compressed as it is written.
+     * @param executorService {@code ExecutorService} to retrieve the content with.
+     * @param rootPaths {@code Set} that contains the content paths to write the content of.
+     * @throws IOException If an error occurs retrieving or writing the content.
+     */
+    private void writeContent(final ZipArchiveOutputStream zipArchiveOutputStream,
+            final ParallelScatterZipCreator parallelScatterZipCreator, final ExecutorService executorService,
+            final Set<String> rootPaths) throws IOException {
+        LinkedList<Future<List<PackageEntry>>> pendingEntries = new LinkedList<Future<List<PackageEntry>>>();
+        LinkedList<String> pendingRootPaths = new LinkedList<String>();
+        Iterator<String> rootPathsIterator = rootPaths.iterator();
+        while ((rootPathsIterator.hasNext()) || (!pendingEntries.isEmpty())) {
+            while ((rootPathsIterator.hasNext()) && (pendingEntries.size() < fetchThreads * 2)) {
+                final String rootPath = rootPathsIterator.next();
+                pendingRootPaths.add(rootPath);
+                pendingEntries.add(executorService.submit(new Callable<List<PackageEntry>>() {
+                    @Override
+                    public List<PackageEntry> call() throws Exception {
+                        return getPackageEntries(rootPath);
+                    }
+                }));
+            }
+            String rootPath = pendingRootPaths.removeFirst();
+            try {
+                for (PackageEntry packageEntry : pendingEntries.removeFirst().get()) {
+                    ZipArchiveEntry zipArchiveEntry =
+                            compressionPolicy.createEntry(packageEntry.getName(), packageEntry.getMimeType());
+                    if (parallelScatterZipCreator == null) {
+                        writeEntry(zipArchiveOutputStream, zipArchiveEntry, packageEntry);
+                    } else {
+                        parallelScatterZipCreator.addArchiveEntry(zipArchiveEntry, packageEntry);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while retrieving content", e);
+            } catch (ExecutionException e) {
+                // The package would otherwise silently lack the content, as a streamed package is not rebuilt.
+                throw new IOException("Unable to retrieve content for content path: " + rootPath + ". " +
+                        e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Writes the specified {@code PackageEntry} to the {@code ZipArchiveOutputStream}.
+     *
+     * @param zipArchiveOutputStream {@code ZipArchiveOutputStream} to write the entry to.
+     * @param zipArchiveEntry {@code ZipArchiveEntry} to write the entry as.
+     * @param packageEntry {@code PackageEntry} to write.
+     * @throws IOException If an error occurs writing the entry.
+     */
+    private static void writeEntry(final ZipArchiveOutputStream zipArchiveOutputStream,
+            final ZipArchiveEntry zipArchiveEntry, final PackageEntry packageEntry) throws IOException {
+        zipArchiveOutputStream.putArchiveEntry(zipArchiveEntry);
+        InputStream inputStream = packageEntry.get();
+        try {
+            IOUtils.copy(inputStream, zipArchiveOutputStream);
+        } finally {
+            inputStream.close();
+        }
+        zipArchiveOutputStream.closeArchiveEntry();
+    }
+
+    /**
+     * Returns the package entries for the content of the specified content path.
+     *
+     * @param rootPath Content path to retrieve the content of.
+     * @return {@code List} of the package entries for the content of the specified content path.
+     * @throws IOException If the content (i.e. the tree or a binary) cannot be retrieved, since the package would
+     * otherwise silently be missing it.
+     * @throws ParserConfigurationException If an error occurs creating the {@code DocumentBuilder}.
+     * @throws TransformerException If an error occurs transforming a {@code Document} into {@code XML}.
+     */
+    List<PackageEntry> getPackageEntries(final String rootPath)
+            throws IOException, ParserConfigurationException, TransformerException {
+        List<PackageEntry> packageEntries = new ArrayList<PackageEntry>();
+        JsonNode jsonNode = getTree(rootPath);
+        if (jsonNode == null) {
+            throw new IOException("Unable to retrieve content for content path: " + rootPath);
+        }
+        LOGGER.log(Level.FINE, "Retrieved content for content path: {0}", rootPath);
+        DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        DocViewXmlDocumentCreator docViewXmlDocumentCreator = new DocViewXmlDocumentCreator();
+        Map<String, JsonNode> fileNodes = new LinkedHashMap<String, JsonNode>();
+        if (DocViewXmlDocumentCreator.isFileNode(jsonNode)) {
+            fileNodes.put(rootPath, jsonNode);
+        } else {
+            Document document = docViewXmlDocumentCreator.getDocument(documentBuilder, jsonNode, fileNodes);
+            packageEntries.add(new PackageEntry(
+                    JCR_ROOT + PlatformNameFormat.getPlatformPath(rootPath) + "/" + CONTENT_XML,
+                    transform(transformer, document)));
+        }
+        for (Map.Entry<String, JsonNode> fileNode : fileNodes.entrySet()) {
+            String filePath = fileNode.getKey().equals(rootPath) ? rootPath : rootPath + "/" + fileNode.getKey();
+            String platformPath = JCR_ROOT + PlatformNameFormat.getPlatformPath(filePath);
+            JsonNode mimeType = fileNode.getValue().path("jcr:content").get("jcr:mimeType");
+            packageEntries.add(new PackageEntry(platformPath, getBinary(filePath),
+                    (mimeType == null) ? null : mimeType.asText()));
+            Document document = docViewXmlDocumentCreator.getDocument(documentBuilder, fileNode.getValue(), null);
+            packageEntries.add(new PackageEntry(platformPath + ".dir/" + CONTENT_XML,
+                    transform(transformer, document)));
+        }
+        return packageEntries;
+    }
+
+    /**
+     * Returns the {@code JsonNode} that represents the specified content path and all of its descendants.
+     * <p>
+     * The {@code JCR} returns an array of alternative urls rather than the data itself when the requested data is going
+     * to be too big. In that case the deepest alternative is retrieved, and the nodes at that depth (whose children
+     * are not contained within the alternative) are retrieved separately.
+     *
+     * @param path Path to retrieve the content of.
+     * @return {@code JsonNode} that represents the specified content path, or null if it could not be retrieved.
+     * @throws IOException If the content of a descendant could not be retrieved.
+     */
+    private JsonNode getTree(final String path) throws IOException {
+        String encodedPath = UrlUtilities.encodePath(path);
+        List<String> selectorAlternatives = new ArrayList<String>();
+        JsonNode jsonNode =
+                jsonJcrParser.getNode(transport.getJsonData(host + encodedPath + ".infinity.json"),
+                        selectorAlternatives);
+        if ((jsonNode == null) && (!selectorAlternatives.isEmpty())) {
+            int depth = Math.max(1, JsonJcrParser.getSelectorDepth(path, selectorAlternatives.get(0)));
+            jsonNode = jsonJcrParser.getNode(transport.getJsonData(host + encodedPath + "." + depth + ".json"),
+                    new ArrayList<String>());
+            if (jsonNode != null) {
+                expandTree(path, jsonNode, depth);
+            }
+        }
+        return jsonNode;
+    }
+
+    /**
+     * Replaces the child nodes at the specified depth (whose children are not contained within the {@code JSON} data)
+     * with the {@code JsonNode}s that represent them and all of their descendants.
+     *
+     * @param path Path of the specified {@code JsonNode}.
+     * @param jsonNode {@code JsonNode} to expand.
+     * @param depth Depth of the children of the specified {@code JsonNode} that are to be replaced.
+     * @throws IOException If the content of a child could not be retrieved.
+     */
+    private void expandTree(final String path, final JsonNode jsonNode, final int depth) throws IOException {
+        List<String> names = new ArrayList<String>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isObject()) {
+                names.add(field.getKey());
+            }
+        }
+        for (String name : names) {
+            String childPath = path + "/" + name;
+            if (depth > 1) {
+                expandTree(childPath, jsonNode.get(name), depth - 1);
+            } else {
+                JsonNode childNode = getTree(childPath);
+                if (childNode == null) {
+                    throw new IOException("Unable to retrieve content for content path: " + childPath);
+                }
+                ((ObjectNode) jsonNode).set(name, childNode);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the binary of the specified {@code nt:file} into a temporary file.
+     *
+     * @param filePath Path of the {@code nt:file}.
+     * @return Temporary file that contains the binary of the specified {@code nt:file}.
+     * @throws IOException If the binary cannot be retrieved (i.e. its url was given up on), or an error occurs writing
+     * the temporary file.
+     */
+    private File getBinary(final String filePath) throws IOException {
+        String url = host + UrlUtilities.encodePath(filePath);
+        File file = File.createTempFile("data-exporter-", ".bin");
+        file.deleteOnExit();
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        try {
+            transport.getDataAndWriteToOutputSteam(url, fileOutputStream);
+        } finally {
+            fileOutputStream.close();
+        }
+        if (transport.getAbandonedUrls().contains(url)) {
+            if (!file.delete()) {
+                LOGGER.log(Level.FINE, "Unable to delete temporary file: {0}", file.getPath());
+            }
+            throw new IOException("Unable to retrieve binary for content path: " + filePath);
+        }
+        return file;
+    }
+
+    /**
+     * Returns the {@code XML} representation of the specified {@code Document}.
+     *
+     * @param transformer {@code Transformer} to use to transform the {@code Document} into {@code XML}.
+     * @param document {@code Document} to transform.
+     * @return {@code XML} representation of the specified {@code Document}.
+     * @throws TransformerException If an error occurs transforming the {@code Document} into {@code XML}.
+     */
+    private static byte[] transform(final Transformer transformer, final Document document)
+            throws TransformerException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(byteArrayOutputStream));
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Entry of the package, whose content is either held in memory or spooled to a temporary file.
+     * <p>
+     * The temporary file is deleted once its content has been read, so the content of an entry can only be read once.
+     */
+    private static final class PackageEntry implements InputStreamSupplier {
+
+        /**
+         * Name of the entry within the package.
+         */
+        private final String name;
+        /**
+         * Content of the entry, if it is held in memory.
+         */
+        private final byte[] data;
+        /**
+         * Temporary file that contains the content of the entry, if it is not held in memory.
+         */
+        private final File file;
+        /**
+         * {@code MIME} type of the content of the entry, or null if it is not known.
+         */
+        private final String mimeType;
+
+        /**
+         * Constructs a new {@code PackageEntry} whose content is held in memory.
+         *
+         * @param newName Name of the entry within the package.
+         * @param newData Content of the entry.
+         */
+        private PackageEntry(final String newName, final byte[] newData) {
+            this.name = newName;
+            this.data = newData;
+            this.file = null;
+            this.mimeType = null;
+        }
+
+        /**
+         * Constructs a new {@code PackageEntry} whose content is spooled to a temporary file.
+         *
+         * @param newName Name of the entry within the package.
+         * @param newFile Temporary file that contains the content of the entry.
+         * @param newMimeType {@code MIME} type of the content of the entry, or null if it is not known.
+         */
+        private PackageEntry(final String newName, final File newFile, final String newMimeType) {
+            this.name = newName;
+            this.data = null;
+            this.file = newFile;
+            this.mimeType = newMimeType;
+        }
+
+        /**
+         * Returns the name of the entry within the package.
+         *
+         * @return Name of the entry within the package.
+         */
+        private String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the {@code MIME} type of the content of the entry.
+         *
+         * @return {@code MIME} type of the content of the entry, or null if it is not known.
+         */
+        private String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * {@inheritDoc}.
+         */
+        @Override
+        public InputStream get() {
+            if (file == null) {
+                return new ByteArrayInputStream(data);
+            }
+            try {
+                return new FileInputStream(file) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        if (!file.delete()) {
+                            file.deleteOnExit();
+                        }
+                    }
+                };
+            } catch (FileNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+    /**
+     * {@code ScatterGatherBackingStoreSupplier} that stores the compressed entries of each thread in a temporary file.
+     */
+    private static final class FileScatterGatherBackingStoreSupplier implements ScatterGatherBackingStoreSupplier {
+
+        /**
+         * {@inheritDoc}.
+         */
+        @Override
+        public ScatterGatherBackingStore get() throws IOException {
+            return new FileBasedScatterGatherBackingStore(File.createTempFile("data-exporter-scatter-", ".tmp"));
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+package aem.dataexporter.file;
+
+/**
+ * Converts {@code JCR} names and paths into the platform (i.e. file system) names and paths used within the
+ * {@code jcr_root} of a {@code CRX} package, following the same conventions as FileVault (e.g. {@code jcr:content}
+ * becomes {@code _jcr_content}).
+ */
+public final class PlatformNameFormat {
+
+    /**
+     * Constructs a new {@code PlatformNameFormat}.
+     */
+    private PlatformNameFormat() {
+    }
+
+    /**
+     * Returns the platform path for the specified {@code JCR} path.
+     *
+     * @param repositoryPath Absolute {@code JCR} path.
+     * @return Platform path for the specified {@code JCR} path (without a leading slash).
+     */
+    public static String getPlatformPath(final String repositoryPath) {
+        StringBuilder platformPath = new StringBuilder(repositoryPath.length() + 16);
+        for (String name : repositoryPath.split("/")) {
+            if (!name.isEmpty()) {
+                if (platformPath.length() > 0) {
+                    platformPath.append('/');
+                }
+                platformPath.append(getPlatformName(name));
+            }
+        }
+        return platformPath.toString();
+    }
+
+    /**
+     * Returns the platform name for the specified {@code JCR} name.
+     *
+     * @param repositoryName {@code JCR} name.
+     * @return Platform name for the specified {@code JCR} name.
+     */
+    public static String getPlatformName(final String repositoryName) {
+        StringBuilder platformName = new StringBuilder("_");
+        boolean escapeColon = false;
+        boolean useUnderscore = false;
+        int numberOfUnderscores = 0;
+        for (int index = 0; index < repositoryName.length(); index++) {
+            char character = repositoryName.charAt(index);
+            switch (character) {
+                case ':':
+                    if ((!escapeColon) && (index > 0)) {
+                        escapeColon = true;
+                        useUnderscore = true;
+                        numberOfUnderscores = 2;
+                        platformName.append('_');
+                    } else {
+                        platformName.append("%3a");
+                    }
+                    break;
+                case '_':
+                    if (index == 0) {
+                        useUnderscore = true;
+                    }
+                    numberOfUnderscores++;
+                    escapeColon = true;
+                    platformName.append(character);
+                    break;
+                case '\\':
+                    platformName.append("%5c");
+                    break;
+                case '<':
+                    platformName.append("%3c");
+                    break;
+                case '>':
+                    platformName.append("%3e");
+                    break;
+                case '?':
+                    platformName.append("%3f");
+                    break;
+                case '"':
+                    platformName.append("%22");
+                    break;
+                case '|':
+                    platformName.append("%7c");
+                    break;
+                case '*':
+                    platformName.append("%2a");
+                    break;
+                case '%':
+                    platformName.append("%25");
+                    break;
+                default:
+                    platformName.append(character);
+            }
+        }
+        if ((useUnderscore) && (numberOfUnderscores > 1)) {
+            return platformName.toString();
+        }
+        return platformName.substring(1);
+    }
+
+    /**
+     * Returns the {@code JCR} path for the specified platform path (i.e. the reverse of
+     * {@link #getPlatformPath(String)}).
+     *
+     * @param platformPath Platform path, relative to the {@code jcr_root}.
+     * @return Absolute {@code JCR} path for the specified platform path.
+     */
+    public static String getRepositoryPath(final String platformPath) {
+        StringBuilder repositoryPath = new StringBuilder(platformPath.length() + 1);
+        for (String name : platformPath.split("/")) {
+            if (!name.isEmpty()) {
+                repositoryPath.append('/').append(getRepositoryName(name));
+            }
+        }
+        return (repositoryPath.length() == 0) ? "/" : repositoryPath.toString();
+    }
+
+    /**
+     * Returns the {@code JCR} name for the specified platform name (e.g. {@code _jcr_content} becomes
+     * {@code jcr:content}, and {@code __name} becomes {@code _name}).
+     *
+     * @param platformName Platform name.
+     * @return {@code JCR} name for the specified platform name.
+     */
+    public static String getRepositoryName(final String platformName) {
+        String name = platformName;
+        if (name.startsWith("__")) {
+            name = name.substring(1);
+        } else if (name.startsWith("_")) {
+            int underscoreIndex = name.indexOf('_', 2);
+            if (underscoreIndex > 0) {
+                name = name.substring(1, underscoreIndex) + ":" + name.substring(underscoreIndex + 1);
+            }
+        }
+        if (name.indexOf('%') < 0) {
+            return name;
+        }
+        StringBuilder repositoryName = new StringBuilder(name.length());
+        for (int index = 0; index < name.length(); index++) {
+            char character = name.charAt(index);
+            if ((character == '%') && (index + 2 < name.length())) {
+                try {
+                    repositoryName.append((char) Integer.parseInt(name.substring(index + 1, index + 3), 16));
+                    index += 2;
+                    continue;
+                } catch (NumberFormatException e) {
+                    // Not an escape sequence, so the percent sign is retained.
+                }
+            }
+            repositoryName.append(character);
+        }
+        return repositoryName.toString();
+    }
+
+}
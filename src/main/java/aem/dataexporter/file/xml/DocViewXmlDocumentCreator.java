@@ -0,0 +1,343 @@
+package aem.dataexporter.file.xml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the FileVault document view ({@code .content.xml}) for the {@code JSON} representation of a {@code JCR}
+ * node and its descendants.
+ * <p>
+ * The {@code JSON} representation does not contain the property types, so these are derived from the {@code JSON}
+ * values (i.e. booleans, longs, doubles, and dates that are formatted using the {@code ECMA} date format). Binary
+ * properties are not contained within the document; {@code nt:file} nodes are replaced with an ordering placeholder
+ * and returned to the caller so that they can be serialized as separate files.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class DocViewXmlDocumentCreator {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(DocViewXmlDocumentCreator.class.getName());
+    /**
+     * {@code ECMA} date format that dates are serialized with in the {@code JSON} representation.
+     */
+    private static final Pattern ECMA_DATE =
+            Pattern.compile("[A-Z][a-z]{2} [A-Z][a-z]{2} \\d{2} \\d{4} \\d{2}:\\d{2}:\\d{2} GMT[+-]\\d{4}");
+    /**
+     * Name of the property that contains the primary type of a node.
+     */
+    private static final String JCR_PRIMARY_TYPE = "jcr:primaryType";
+    /**
+     * Name of the property that contains the mixin types of a node.
+     */
+    private static final String JCR_MIXIN_TYPES = "jcr:mixinTypes";
+    /**
+     * Namespace {@code URI}s of the namespace prefixes that are commonly used within {@code AEM}.
+     */
+    private static final Map<String, String> NAMESPACES;
+
+    static {
+        Map<String, String> namespaces = new HashMap<String, String>();
+        namespaces.put("jcr", "http://www.jcp.org/jcr/1.0");
+        namespaces.put("nt", "http://www.jcp.org/jcr/nt/1.0");
+        namespaces.put("mix", "http://www.jcp.org/jcr/mix/1.0");
+        namespaces.put("rep", "internal");
+        namespaces.put("sling", "http://sling.apache.org/jcr/sling/1.0");
+        namespaces.put("cq", "http://www.day.com/jcr/cq/1.0");
+        namespaces.put("dam", "http://www.day.com/dam/1.0");
+        namespaces.put("vlt", "http://www.day.com/jcr/vault/1.0");
+        namespaces.put("granite", "http://www.adobe.com/jcr/granite/1.0");
+        namespaces.put("social", "http://www.adobe.com/social/1.0");
+        namespaces.put("dc", "http://purl.org/dc/elements/1.1/");
+        namespaces.put("xmp", "http://ns.adobe.com/xap/1.0/");
+        namespaces.put("xmpMM", "http://ns.adobe.com/xap/1.0/mm/");
+        namespaces.put("xmpRights", "http://ns.adobe.com/xap/1.0/rights/");
+        namespaces.put("xmpTPg", "http://ns.adobe.com/xap/1.0/t/pg/");
+        namespaces.put("xmpDM", "http://ns.adobe.com/xmp/1.0/DynamicMedia/");
+        namespaces.put("stEvt", "http://ns.adobe.com/xap/1.0/sType/ResourceEvent#");
+        namespaces.put("stRef", "http://ns.adobe.com/xap/1.0/sType/ResourceRef#");
+        namespaces.put("stDim", "http://ns.adobe.com/xap/1.0/sType/Dimensions#");
+        namespaces.put("tiff", "http://ns.adobe.com/tiff/1.0/");
+        namespaces.put("exif", "http://ns.adobe.com/exif/1.0/");
+        namespaces.put("aux", "http://ns.adobe.com/exif/1.0/aux/");
+        namespaces.put("crs", "http://ns.adobe.com/camera-raw-settings/1.0/");
+        namespaces.put("photoshop", "http://ns.adobe.com/photoshop/1.0/");
+        namespaces.put("pdf", "http://ns.adobe.com/pdf/1.3/");
+        namespaces.put("pdfx", "http://ns.adobe.com/pdfx/1.3/");
+        namespaces.put("lr", "http://ns.adobe.com/lightroom/1.0/");
+        namespaces.put("Iptc4xmpCore", "http://iptc.org/std/Iptc4xmpCore/1.0/xmlns/");
+        namespaces.put("Iptc4xmpExt", "http://iptc.org/std/Iptc4xmpExt/2008-02-29/");
+        namespaces.put("plus", "http://ns.useplus.org/ldf/xmp/1.0/");
+        namespaces.put("illustrator", "http://ns.adobe.com/illustrator/1.0/");
+        NAMESPACES = Collections.unmodifiableMap(namespaces);
+    }
+
+    /**
+     * {@code SimpleDateFormat} for parsing the {@code ECMA} dates.
+     */
+    private final SimpleDateFormat ecmaDateFormat = new SimpleDateFormat("EEE MMM dd yyyy HH:mm:ss 'GMT'Z", Locale.US);
+    /**
+     * {@code SimpleDateFormat} for formatting the {@code ISO8601} dates.
+     */
+    private final SimpleDateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.US);
+
+    /**
+     * Returns a boolean indicating whether or not the specified {@code JsonNode} represents an {@code nt:file}.
+     *
+     * @param jsonNode {@code JsonNode} to test whether or not it represents an {@code nt:file}.
+     * @return True if the {@code JsonNode} represents an {@code nt:file}; otherwise false.
+     */
+    public static boolean isFileNode(final JsonNode jsonNode) {
+        JsonNode primaryType = jsonNode.get(JCR_PRIMARY_TYPE);
+        return (primaryType != null) && ("nt:file".equals(primaryType.textValue()));
+    }
+
+    /**
+     * Returns an {@code Document} that represents the document view of the specified {@code JsonNode}.
+     *
+     * @param documentBuilder {@code DocumentBuilder} to use to create the {@code Document}.
+     * @param jsonNode {@code JSON} representation of the {@code JCR} node.
+     * @param fileNodes {@code Map} to add the descendant {@code nt:file} nodes to (keyed by their path relative to the
+     * specified {@code JsonNode}), or null if they are to be contained within the document.
+     * @return {@code Document} that represents the document view of the specified {@code JsonNode}.
+     */
+    public final Document getDocument(final DocumentBuilder documentBuilder, final JsonNode jsonNode,
+            final Map<String, JsonNode> fileNodes) {
+        Document document = documentBuilder.newDocument();
+        Set<String> prefixes = new TreeSet<String>();
+        prefixes.add("jcr");
+        Element root = document.createElement("jcr:root");
+        document.appendChild(root);
+        populateElement(document, root, jsonNode, "", fileNodes, prefixes);
+        for (String prefix : prefixes) {
+            String uri = NAMESPACES.get(prefix);
+            if (uri == null) {
+                LOGGER.log(Level.WARNING, "Unknown namespace prefix [{0}], declaring a placeholder namespace", prefix);
+                uri = "urn:aem-data-exporter:" + prefix;
+            }
+            root.setAttribute("xmlns:" + prefix, uri);
+        }
+        return document;
+    }
+
+    /**
+     * Populates the specified {@code Element} with the properties and child nodes of the specified {@code JsonNode}.
+     *
+     * @param document {@code Document} to use to create the child elements.
+     * @param element {@code Element} to populate.
+     * @param jsonNode {@code JSON} representation of the {@code JCR} node.
+     * @param relativePath Path of the {@code JCR} node relative to the root of the document.
+     * @param fileNodes {@code Map} to add the descendant {@code nt:file} nodes to, or null.
+     * @param prefixes {@code Set} to add the namespace prefixes that are used to.
+     */
+    private void populateElement(final Document document, final Element element, final JsonNode jsonNode,
+            final String relativePath, final Map<String, JsonNode> fileNodes, final Set<String> prefixes) {
+        for (Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            JsonNode value = field.getValue();
+            if ((name.isEmpty()) || (name.charAt(0) == ':') || (value.isObject())) {
+                // Binary property lengths (i.e. ":jcr:data") are not serialized, and child nodes are appended below.
+                continue;
+            }
+            if ((JCR_PRIMARY_TYPE.equals(name)) || (JCR_MIXIN_TYPES.equals(name))) {
+                // The namespaces of the node types must also be declared.
+                addValuePrefixes(value, prefixes);
+            }
+            String formattedValue = formatValue(value);
+            if ((formattedValue != null) && (JCR_MIXIN_TYPES.equals(name))) {
+                formattedValue = "{Name}" + formattedValue;
+            }
+            if (formattedValue != null) {
+                element.setAttribute(getElementName(name, prefixes), formattedValue);
+            }
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isObject()) {
+                String childPath = relativePath.isEmpty() ? field.getKey() : relativePath + "/" + field.getKey();
+                Element child = document.createElement(getElementName(field.getKey(), prefixes));
+                element.appendChild(child);
+                if ((fileNodes != null) && (isFileNode(field.getValue()))) {
+                    // An empty element retains the ordering of the file, which is serialized separately.
+                    fileNodes.put(childPath, field.getValue());
+                } else {
+                    populateElement(document, child, field.getValue(), childPath, fileNodes, prefixes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the namespace prefixes of the specified {@code JCR} name value (or values) to the specified {@code Set}.
+     *
+     * @param value {@code JSON} representation of the property value.
+     * @param prefixes {@code Set} to add the namespace prefixes to.
+     */
+    private static void addValuePrefixes(final JsonNode value, final Set<String> prefixes) {
+        if (value.isArray()) {
+            for (JsonNode element : value) {
+                addValuePrefixes(element, prefixes);
+            }
+        } else if (value.isTextual()) {
+            int colonIndex = value.textValue().indexOf(':');
+            if (colonIndex > 0) {
+                prefixes.add(value.textValue().substring(0, colonIndex));
+            }
+        }
+    }
+
+    /**
+     * Returns the document view representation of the specified property value, including its type.
+     *
+     * @param value {@code JSON} representation of the property value.
+     * @return Document view representation of the specified property value, or null if it cannot be represented.
+     */
+    private String formatValue(final JsonNode value) {
+        if (value.isArray()) {
+            String type = null;
+            StringBuilder values = new StringBuilder("[");
+            for (JsonNode element : value) {
+                if (values.length() > 1) {
+                    values.append(',');
+                }
+                if (type == null) {
+                    type = getType(element);
+                }
+                values.append(escape(getValue(element), true));
+            }
+            return ((type == null) ? "" : type) + values.append(']').toString();
+        }
+        if (value.isNull() || value.isContainerNode()) {
+            return null;
+        }
+        String type = getType(value);
+        String formattedValue = escape(getValue(value), false);
+        if ((type == null) && ((formattedValue.startsWith("{")) || (formattedValue.startsWith("[")))) {
+            return "\\" + formattedValue;
+        }
+        return (type == null) ? formattedValue : type + formattedValue;
+    }
+
+    /**
+     * Returns the document view type prefix of the specified value (i.e. {@code {Long}}), or null for strings.
+     *
+     * @param value {@code JSON} representation of the property value.
+     * @return Document view type prefix of the specified value, or null for strings.
+     */
+    private String getType(final JsonNode value) {
+        if (value.isBoolean()) {
+            return "{Boolean}";
+        } else if (value.isIntegralNumber()) {
+            return "{Long}";
+        } else if (value.isNumber()) {
+            return "{Double}";
+        } else if ((value.isTextual()) && (ECMA_DATE.matcher(value.textValue()).matches())) {
+            return "{Date}";
+        }
+        return null;
+    }
+
+    /**
+     * Returns the string representation of the specified value.
+     *
+     * @param value {@code JSON} representation of the property value.
+     * @return String representation of the specified value.
+     */
+    private String getValue(final JsonNode value) {
+        if ((value.isTextual()) && (ECMA_DATE.matcher(value.textValue()).matches())) {
+            try {
+                return isoDateFormat.format(ecmaDateFormat.parse(value.textValue()));
+            } catch (ParseException e) {
+                LOGGER.log(Level.FINE, "Unable to parse date: {0}", value.textValue());
+            }
+        }
+        return value.asText();
+    }
+
+    /**
+     * Returns the escaped representation of the specified value.
+     *
+     * @param value Value to escape.
+     * @param multiple Whether or not the value is part of a multiple value property.
+     * @return Escaped representation of the specified value.
+     */
+    private static String escape(final String value, final boolean multiple) {
+        StringBuilder escapedValue = new StringBuilder(value.length());
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+            if ((character == '\\') || ((multiple) && (character == ','))) {
+                escapedValue.append('\\');
+            }
+            escapedValue.append(character);
+        }
+        return escapedValue.toString();
+    }
+
+    /**
+     * Returns the {@code XML} element (or attribute) name for the specified {@code JCR} name, encoding any characters
+     * that are not valid within an {@code XML} name using {@code ISO 9075} (i.e. {@code _x0020_}).
+     *
+     * @param name {@code JCR} name.
+     * @param prefixes {@code Set} to add the namespace prefix of the name to.
+     * @return {@code XML} element (or attribute) name for the specified {@code JCR} name.
+     */
+    private static String getElementName(final String name, final Set<String> prefixes) {
+        int colonIndex = name.indexOf(':');
+        if (colonIndex > 0) {
+            String prefix = name.substring(0, colonIndex);
+            prefixes.add(prefix);
+            return encode(prefix) + ":" + encode(name.substring(colonIndex + 1));
+        }
+        return encode(name);
+    }
+
+    /**
+     * Returns the {@code ISO 9075} encoded representation of the specified name.
+     *
+     * @param name Name to encode.
+     * @return {@code ISO 9075} encoded representation of the specified name.
+     */
+    private static String encode(final String name) {
+        StringBuilder encodedName = null;
+        for (int index = 0; index < name.length(); index++) {
+            char character = name.charAt(index);
+            boolean valid = (Character.isLetter(character)) || (character == '_') ||
+                    ((index > 0) && ((Character.isDigit(character)) || (character == '-') || (character == '.')));
+            if ((character == '_') && (name.startsWith("_x", index))) {
+                // Escape an existing "_x" so that it is not decoded.
+                valid = false;
+            }
+            if ((!valid) && (encodedName == null)) {
+                encodedName = new StringBuilder(name.substring(0, index));
+            }
+            if (encodedName != null) {
+                if (valid) {
+                    encodedName.append(character);
+                } else {
+                    encodedName.append(String.format("_x%04x_", (int) character));
+                }
+            }
+        }
+        return (encodedName == null) ? name : encodedName.toString();
+    }
+
+}
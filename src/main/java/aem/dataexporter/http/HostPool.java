@@ -0,0 +1,250 @@
+package aem.dataexporter.http;
+
+import org.apache.http.HttpHost;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of equivalent hosts (e.g. publish replicas) that requests are distributed across.
+ * <p>
+ * Each request is sent to the available host with the least outstanding requests, and a host that fails a request is
+ * considered unavailable for a period of time, so that the following requests fail over to the other hosts.
+ * <p>
+ * Each host also has a circuit breaker: once a host has failed a number of requests in a row, its circuit is opened and
+ * it is considered unavailable for an interval that doubles with each further failure. No requests are sent to a host
+ * while its circuit is open, so requests fail over to the healthy hosts straight away (and wait for a circuit to
+ * become half open when there are none, rather than piling up on a host that is down). When the interval has elapsed
+ * a single trial request is sent to the host (i.e. the circuit is half open), which either closes the circuit when it
+ * succeeds, or opens it again when it fails.
+ */
+public class HostPool {
+
+    /**
+     * Default number of milliseconds a host is considered unavailable for after failing a request.
+     */
+    private static final long DEFAULT_UNAVAILABLE_INTERVAL = 30000;
+    /**
+     * Default maximum number of milliseconds a host is considered unavailable for while its circuit is open.
+     */
+    private static final long DEFAULT_MAX_UNAVAILABLE_INTERVAL = 300000;
+    /**
+     * Number of consecutive failed requests after which the circuit of a host is opened.
+     */
+    private static final int CIRCUIT_BREAKER_THRESHOLD = 3;
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(HostPool.class.getName());
+    /**
+     * Hosts contained within the pool.
+     */
+    private final List<HttpHost> hosts;
+    /**
+     * Number of milliseconds a host is considered unavailable for after failing a request.
+     */
+    private final long unavailableInterval;
+    /**
+     * Maximum number of milliseconds a host is considered unavailable for while its circuit is open.
+     */
+    private final long maxUnavailableInterval;
+    /**
+     * Number of outstanding requests of each host.
+     */
+    private final AtomicInteger[] outstandingRequests;
+    /**
+     * Time (in milliseconds) until which each host is considered unavailable.
+     */
+    private final AtomicLongArray unavailableUntil;
+    /**
+     * Number of consecutive failed requests of each host.
+     */
+    private final AtomicIntegerArray consecutiveFailures;
+    /**
+     * Index of the host to start searching from, so that hosts with the same number of outstanding requests are used
+     * in turn.
+     */
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /**
+     * Constructs a new {@code HostPool}.
+     *
+     * @param newHosts Hosts contained within the pool.
+     */
+    public HostPool(final List<HttpHost> newHosts) {
+        this(newHosts, DEFAULT_UNAVAILABLE_INTERVAL, DEFAULT_MAX_UNAVAILABLE_INTERVAL);
+    }
+
+    /**
+     * Constructs a new {@code HostPool}.
+     *
+     * @param newHosts Hosts contained within the pool.
+     * @param newUnavailableInterval Number of milliseconds a host is considered unavailable for after failing a
+     * request.
+     * @param newMaxUnavailableInterval Maximum number of milliseconds a host is considered unavailable for while its
+     * circuit is open.
+     */
+    HostPool(final List<HttpHost> newHosts, final long newUnavailableInterval, final long newMaxUnavailableInterval) {
+        if (newHosts.isEmpty()) {
+            throw new IllegalArgumentException("A host pool must contain at least one host");
+        }
+        this.hosts = Collections.unmodifiableList(new ArrayList<HttpHost>(newHosts));
+        this.outstandingRequests = new AtomicInteger[hosts.size()];
+        for (int index = 0; index < outstandingRequests.length; index++) {
+            outstandingRequests[index] = new AtomicInteger();
+        }
+        this.unavailableUntil = new AtomicLongArray(hosts.size());
+        this.consecutiveFailures = new AtomicIntegerArray(hosts.size());
+        this.unavailableInterval = newUnavailableInterval;
+        this.maxUnavailableInterval = newMaxUnavailableInterval;
+    }
+
+    /**
+     * Returns a new {@code HostPool} that contains the hosts of the specified urls (e.g.
+     * {@code http://localhost:4502}).
+     *
+     * @param urls Urls of the hosts.
+     * @return New {@code HostPool} that contains the hosts of the specified urls.
+     */
+    public static HostPool forUrls(final List<String> urls) {
+        List<HttpHost> httpHosts = new ArrayList<HttpHost>();
+        for (String url : urls) {
+            URI uri = URI.create(url.trim());
+            String scheme = (uri.getScheme() == null) ? "http" : uri.getScheme().toLowerCase(Locale.ENGLISH);
+            int port = uri.getPort();
+            if (port < 0) {
+                port = "https".equals(scheme) ? 443 : 80;
+            }
+            HttpHost httpHost = new HttpHost(uri.getHost(), port, scheme);
+            if (!httpHosts.contains(httpHost)) {
+                httpHosts.add(httpHost);
+            }
+        }
+        return new HostPool(httpHosts);
+    }
+
+    /**
+     * Returns the hosts contained within the pool.
+     *
+     * @return Hosts contained within the pool.
+     */
+    public final List<HttpHost> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Returns the host that is assigned the specified index (e.g. the number of a package), so that all of the
+     * requests for that index are sent to the same host.
+     *
+     * @param index Index to return the host for.
+     * @return Host that is assigned the specified index.
+     */
+    public final HttpHost getHost(final int index) {
+        return hosts.get(Math.abs(index % hosts.size()));
+    }
+
+    /**
+     * Acquires the available host with the least outstanding requests, excluding the specified hosts.
+     * <p>
+     * If none of the hosts are available, the host with the least outstanding requests whose circuit is not open is
+     * acquired regardless, so that requests continue to be attempted while a host has only failed the odd request.
+     * Hosts whose circuit is open are never acquired, so that requests skip straight to a healthy host (or wait for
+     * {@link #getUnavailableMillis(Collection)} when there is none).
+     *
+     * @param excludedHosts Hosts that are not to be acquired (e.g. because they already failed the request).
+     * @return Acquired host, or null if all of the hosts are excluded or their circuit is open.
+     */
+    public final HttpHost acquire(final Collection<HttpHost> excludedHosts) {
+        long now = System.currentTimeMillis();
+        int start = nextIndex.getAndIncrement();
+        int selectedIndex = -1;
+        boolean selectedAvailable = false;
+        for (int offset = 0; offset < hosts.size(); offset++) {
+            int index = Math.abs((start + offset) % hosts.size());
+            if (excludedHosts.contains(hosts.get(index))) {
+                continue;
+            }
+            boolean available = unavailableUntil.get(index) <= now;
+            if ((!available) && (consecutiveFailures.get(index) >= CIRCUIT_BREAKER_THRESHOLD)) {
+                continue;
+            }
+            if ((selectedIndex < 0) || ((available) && (!selectedAvailable)) || ((available == selectedAvailable) &&
+                    (outstandingRequests[index].get() < outstandingRequests[selectedIndex].get()))) {
+                selectedIndex = index;
+                selectedAvailable = available;
+            }
+        }
+        if (selectedIndex < 0) {
+            return null;
+        }
+        long until = unavailableUntil.get(selectedIndex);
+        if ((selectedAvailable) && (consecutiveFailures.get(selectedIndex) >= CIRCUIT_BREAKER_THRESHOLD)) {
+            // The circuit is half open, so the other requests avoid the host until the trial request has finished.
+            unavailableUntil.compareAndSet(selectedIndex, until, now + unavailableInterval);
+        }
+        outstandingRequests[selectedIndex].incrementAndGet();
+        return hosts.get(selectedIndex);
+    }
+
+    /**
+     * Returns the number of milliseconds until the first of the hosts that are not excluded can be acquired again
+     * (i.e. until the earliest of their open circuits becomes half open).
+     *
+     * @param excludedHosts Hosts that are not to be acquired.
+     * @return Number of milliseconds until one of the hosts can be acquired again, zero if one can be acquired now, or
+     * {@code -1} if all of the hosts are excluded.
+     */
+    public final long getUnavailableMillis(final Collection<HttpHost> excludedHosts) {
+        long now = System.currentTimeMillis();
+        long unavailableMillis = -1;
+        for (int index = 0; index < hosts.size(); index++) {
+            if (!excludedHosts.contains(hosts.get(index))) {
+                long millis = Math.max(unavailableUntil.get(index) - now, 0);
+                unavailableMillis = (unavailableMillis < 0) ? millis : Math.min(unavailableMillis, millis);
+            }
+        }
+        return unavailableMillis;
+    }
+
+    /**
+     * Releases the specified host once the request that acquired it has finished.
+     *
+     * @param host Host to release.
+     * @param success Whether or not the request succeeded.
+     */
+    public final void release(final HttpHost host, final boolean success) {
+        int index = hosts.indexOf(host);
+        if (index < 0) {
+            return;
+        }
+        outstandingRequests[index].decrementAndGet();
+        if (success) {
+            if (consecutiveFailures.getAndSet(index, 0) >= CIRCUIT_BREAKER_THRESHOLD) {
+                LOGGER.log(Level.INFO, "Host [{0}] recovered, closing its circuit", host.toURI());
+            }
+            unavailableUntil.set(index, 0);
+            return;
+        }
+        int failures = consecutiveFailures.incrementAndGet(index);
+        long interval = unavailableInterval;
+        if (failures >= CIRCUIT_BREAKER_THRESHOLD) {
+            interval = Math.min(unavailableInterval << Math.min(failures - CIRCUIT_BREAKER_THRESHOLD, 10),
+                    maxUnavailableInterval);
+            LOGGER.log(Level.WARNING, "Host [{0}] failed {1} requests in a row, opening its circuit for {2} seconds",
+                    new Object[]{host.toURI(), failures, interval / 1000});
+        } else if ((hosts.size() > 1) && (unavailableUntil.get(index) <= System.currentTimeMillis())) {
+            LOGGER.log(Level.WARNING, "Host [{0}] failed a request, failing over to the other hosts", host.toURI());
+        }
+        unavailableUntil.set(index, System.currentTimeMillis() + interval);
+    }
+
+}
@@ -1,5 +1,9 @@
 package aem.dataexporter.http;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
@@ -12,6 +16,11 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.FileBody;
@@ -21,36 +30,103 @@ import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Reads the content from a url and returns the appropriate {@code byte[]} data.
+ * <p>
+ * Requests that can safely be repeated (i.e. {@code GET} requests, and uploads that force the package to be replaced)
+ * are retried according to the {@code RetryPolicy} when the host cannot be connected to, or responds with a server
+ * error, and the urls that were finally given up on are recorded so that they can be reported.
+ * <p>
+ * The requests accept {@code gzip} and {@code deflate} encoded responses (which the {@code HttpClient} negotiates and
+ * decompresses transparently), as the {@code JSON} responses of the {@code JCR} usually compress very well.
  */
-public class HttpReader {
+public class HttpReader implements Transport {
+
+    /**
+     * Request that is sent to a host.
+     */
+    private interface Request {
+
+        /**
+         * Sends the request to the specified host.
+         *
+         * @param httpHost {@code HttpHost} to send the request to.
+         * @return True if the request succeeded; otherwise false.
+         */
+        boolean send(HttpHost httpHost);
+
+    }
 
     /**
      * Default timeout.
      */
     private static final int DEFAULT_TIMEOUT = 600000;
+    /**
+     * Maximum number of pooled connections to each host.
+     */
+    private static final int MAX_CONNECTIONS_PER_HOST = 64;
+    /**
+     * HTTP status code of a response that asks for fewer requests to be sent.
+     */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    /**
+     * Maximum number of milliseconds to sleep for at a time while waiting for a host to become available.
+     */
+    private static final long HOST_WAIT_INTERVAL = 1000;
+    /**
+     * Parameter of an upload url that forces the package to be replaced.
+     */
+    private static final String FORCE_PARAMETER = "force=true";
+    /**
+     * {@code ObjectMapper} that parses the {@code JSON} responses.
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     /**
      * Logger.
      */
     private static final Logger LOGGER = Logger.getLogger(HttpReader.class.getName());
     /**
-     * {@code HttpClientContext} that contains the context for all http clients.
+     * {@code AuthCache} that contains the authentication scheme of each host, shared by the contexts of all requests.
+     */
+    private AuthCache authCache;
+    /**
+     * Pattern that matches the scheme and authority of a url.
+     */
+    private static final Pattern URL_AUTHORITY = Pattern.compile("^[A-Za-z][A-Za-z0-9+.\\-]*://[^/?#]*");
+    /**
+     * {@code HostPool} that contains the hosts to connect to.
+     */
+    private HostPool hostPool;
+    /**
+     * {@code RetryPolicy} of the requests that can safely be repeated.
      */
-    private HttpClientContext httpClientContext;
+    private RetryPolicy retryPolicy;
     /**
-     * {@code HttpHost} to connect to.
+     * Urls that were given up on (shared with the {@code HttpReader}s of the individual hosts).
      */
-    private HttpHost httpHost;
+    private Set<String> abandonedUrls;
+    /**
+     * {@code CloseableHttpClient} that sends the requests (shared with the {@code HttpReader}s of the individual
+     * hosts).
+     */
+    private CloseableHttpClient httpClient;
     /**
      * Password to authenticate with.
      */
@@ -59,6 +135,11 @@ public class HttpReader {
      * Username to authenticate with.
      */
     private String username;
+    /**
+     * Whether or not the {@code CloseableHttpClient} is closed along with this {@code HttpReader} (i.e. this is not
+     * the {@code HttpReader} of an individual host, or a session of a shared {@code HttpReader}).
+     */
+    private boolean closeClient;
 
     /**
      * Constructs a new {@code HttpReader}.
@@ -69,73 +150,434 @@ public class HttpReader {
      * @param port Number of the port to connect to.
      */
     public HttpReader(final String newUsername, final String newPassword, String hostname, String port) {
+        this(newUsername, newPassword, "http", hostname, port);
+    }
+
+    /**
+     * Constructs a new {@code HttpReader}.
+     *
+     * @param newUsername Username to authenticate with.
+     * @param newPassword Password to authenticate with.
+     * @param scheme Scheme to connect with (i.e. {@code http} or {@code https}).
+     * @param hostname Name of the host to connect to.
+     * @param port Number of the port to connect to.
+     */
+    public HttpReader(final String newUsername, final String newPassword, final String scheme, final String hostname,
+            final String port) {
+        this(newUsername, newPassword,
+                new HostPool(Collections.singletonList(new HttpHost(hostname, Integer.parseInt(port), scheme))));
+    }
+
+    /**
+     * Constructs a new {@code HttpReader} that distributes the requests across the hosts of the specified
+     * {@code HostPool}.
+     * <p>
+     * The hosts are expected to be equivalent, so the requests are sent to the host with the least outstanding
+     * requests regardless of the host of the url, and {@code GET} requests fail over to the other hosts.
+     *
+     * @param newUsername Username to authenticate with.
+     * @param newPassword Password to authenticate with.
+     * @param newHostPool {@code HostPool} that contains the hosts to connect to.
+     */
+    public HttpReader(final String newUsername, final String newPassword, final HostPool newHostPool) {
+        this(newUsername, newPassword, newHostPool, new RetryPolicy());
+    }
+
+    /**
+     * Constructs a new {@code HttpReader} that distributes the requests across the hosts of the specified
+     * {@code HostPool}, and retries the requests that can safely be repeated according to the specified
+     * {@code RetryPolicy}.
+     *
+     * @param newUsername Username to authenticate with.
+     * @param newPassword Password to authenticate with.
+     * @param newHostPool {@code HostPool} that contains the hosts to connect to.
+     * @param newRetryPolicy {@code RetryPolicy} of the requests that can safely be repeated.
+     */
+    public HttpReader(final String newUsername, final String newPassword, final HostPool newHostPool,
+            final RetryPolicy newRetryPolicy) {
+        this(newUsername, newPassword, newHostPool, newRetryPolicy,
+                Collections.synchronizedSet(new LinkedHashSet<String>()),
+                createHttpClient(newUsername, newPassword, newHostPool), true);
+    }
+
+    /**
+     * Constructs a new {@code HttpReader}.
+     *
+     * @param newUsername Username to authenticate with.
+     * @param newPassword Password to authenticate with.
+     * @param newHostPool {@code HostPool} that contains the hosts to connect to.
+     * @param newRetryPolicy {@code RetryPolicy} of the requests that can safely be repeated.
+     * @param newAbandonedUrls {@code Set} to record the urls that were given up on in.
+     * @param newHttpClient {@code CloseableHttpClient} that sends the requests.
+     * @param newCloseClient Whether or not the {@code CloseableHttpClient} is closed along with this
+     * {@code HttpReader}.
+     */
+    private HttpReader(final String newUsername, final String newPassword, final HostPool newHostPool,
+            final RetryPolicy newRetryPolicy, final Set<String> newAbandonedUrls,
+            final CloseableHttpClient newHttpClient, final boolean newCloseClient) {
         this.username = newUsername;
         this.password = newPassword;
-        httpHost = new HttpHost(hostname, Integer.parseInt(port), "http");
-        AuthCache authCache = new BasicAuthCache();
+        this.hostPool = newHostPool;
+        this.retryPolicy = newRetryPolicy;
+        this.abandonedUrls = newAbandonedUrls;
+        this.httpClient = newHttpClient;
+        this.closeClient = newCloseClient;
+        authCache = new BasicAuthCache();
         BasicScheme basicScheme = new BasicScheme();
-        authCache.put(httpHost, basicScheme);
-        httpClientContext = HttpClientContext.create();
-        httpClientContext.setAuthCache(authCache);
+        for (HttpHost httpHost : hostPool.getHosts()) {
+            authCache.put(httpHost, basicScheme);
+        }
+    }
+
+    /**
+     * Returns the number of hosts that the requests are distributed across.
+     *
+     * @return Number of hosts that the requests are distributed across.
+     */
+    @Override
+    public final int getNumberOfHosts() {
+        return hostPool.getHosts().size();
+    }
+
+    /**
+     * Returns the {@code HttpReader} that sends all of its requests to the host assigned the specified index (e.g. the
+     * number of a package), so that related requests (such as uploading, building and downloading a package) are all
+     * sent to the same host.
+     *
+     * @param index Index to return the {@code HttpReader} for.
+     * @return {@code HttpReader} that sends all of its requests to the host assigned the specified index.
+     */
+    @Override
+    public final HttpReader getHostTransport(final int index) {
+        if (hostPool.getHosts().size() == 1) {
+            return this;
+        }
+        return new HttpReader(username, password,
+                new HostPool(Collections.singletonList(hostPool.getHost(index))), retryPolicy, abandonedUrls,
+                httpClient, false);
+    }
+
+    /**
+     * Returns an {@code HttpReader} that shares the hosts and connection pool of this {@code HttpReader}, but records
+     * the urls that it gives up on separately (e.g. for each job of the {@code ExporterDaemon}, so that the connections
+     * are kept open across the jobs). Closing the session leaves the connection pool open.
+     *
+     * @return {@code HttpReader} that shares the hosts and connection pool of this {@code HttpReader}.
+     */
+    public final HttpReader newSession() {
+        return new HttpReader(username, password, hostPool, retryPolicy,
+                Collections.synchronizedSet(new LinkedHashSet<String>()), httpClient, false);
+    }
+
+    /**
+     * Returns the urls that were given up on (i.e. that still failed after all of the retries), in the order that they
+     * were given up on.
+     *
+     * @return Urls that were given up on.
+     */
+    @Override
+    public final Set<String> getAbandonedUrls() {
+        synchronized (abandonedUrls) {
+            return new LinkedHashSet<String>(abandonedUrls);
+        }
+    }
+
+    /**
+     * Sends the specified request, failing over to the other hosts of the {@code HostPool} when it fails, and
+     * retrying it (after backing off) once all of the hosts have failed it.
+     * <p>
+     * Hosts whose circuit is open are skipped, and while the circuit of all of the hosts is open the request waits for
+     * the first of them to become half open (up to the maximum host wait of the {@code RetryPolicy}) rather than using
+     * up its retries, so that a short outage of a single host does not abandon every request for the whole interval
+     * the circuit is open for.
+     *
+     * @param url Url of the request.
+     * @param maxRetries Maximum number of retries.
+     * @param request Request to send.
+     * @return True if the request succeeded; otherwise false (i.e. the url was given up on).
+     */
+    private boolean send(final String url, final int maxRetries, final Request request) {
+        Set<HttpHost> failedHosts = new HashSet<HttpHost>();
+        long deadline = System.currentTimeMillis() + retryPolicy.getMaxHostWait();
+        for (int retry = 0; retry <= maxRetries; retry++) {
+            if (retry > 0) {
+                LOGGER.log(Level.WARNING, "Retrying url: [{0}] (retry {1} of {2})",
+                        new Object[]{url, retry, maxRetries});
+                if (!retryPolicy.backOff(retry)) {
+                    break;
+                }
+                failedHosts.clear();
+            }
+            for (HttpHost httpHost = acquireHost(url, failedHosts, deadline); httpHost != null;
+                 httpHost = acquireHost(url, failedHosts, deadline)) {
+                boolean success = request.send(httpHost);
+                hostPool.release(httpHost, success);
+                if (success) {
+                    return true;
+                }
+                failedHosts.add(httpHost);
+            }
+            if (failedHosts.isEmpty()) {
+                // No host became available before the deadline (or the thread was interrupted).
+                break;
+            }
+        }
+        LOGGER.log(Level.SEVERE, "Giving up on url: [{0}]", url);
+        abandonedUrls.add(url);
+        return false;
+    }
+
+    /**
+     * Acquires a host of the {@code HostPool} to send the request for the specified url to, waiting for the circuit
+     * of a host to become half open if the circuit of all of the hosts is open and none have failed the request yet.
+     *
+     * @param url Url of the request.
+     * @param failedHosts Hosts that already failed the request.
+     * @param deadline Time (in milliseconds) after which no longer to wait for a host.
+     * @return Acquired host, or null if all of the hosts have failed the request (or their circuit is open), or no
+     * host became available before the deadline.
+     */
+    private HttpHost acquireHost(final String url, final Set<HttpHost> failedHosts, final long deadline) {
+        HttpHost httpHost = hostPool.acquire(failedHosts);
+        boolean waiting = false;
+        while ((httpHost == null) && (failedHosts.isEmpty())) {
+            long unavailableMillis = hostPool.getUnavailableMillis(failedHosts);
+            if (System.currentTimeMillis() + unavailableMillis > deadline) {
+                LOGGER.log(Level.WARNING, "Not sending url: [{0}], no host becomes available within the deadline",
+                        url);
+                return null;
+            }
+            if (!waiting) {
+                LOGGER.log(Level.WARNING, "Waiting {0} ms for a host to become available to send url: [{1}]",
+                        new Object[]{unavailableMillis, url});
+                waiting = true;
+            }
+            try {
+                // The wait is bounded, so that a trial request of another thread that closes a circuit is noticed.
+                Thread.sleep(Math.max(Math.min(unavailableMillis, HOST_WAIT_INTERVAL), 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            httpHost = hostPool.acquire(failedHosts);
+        }
+        return httpHost;
+    }
+
+    /**
+     * Returns the url of the specified host that corresponds to the specified url.
+     *
+     * @param url Url to send a request to.
+     * @param httpHost {@code HttpHost} to send the request to.
+     * @return Url of the specified host that corresponds to the specified url.
+     */
+    private static String getHostUrl(final String url, final HttpHost httpHost) {
+        Matcher matcher = URL_AUTHORITY.matcher(url);
+        if (matcher.find()) {
+            return httpHost.toURI() + url.substring(matcher.end());
+        }
+        return url;
     }
 
     /**
      * Returns the {@code byte[]} that represents the data retrieved from the provided url.
+     * <p>
+     * The request fails over to the other hosts of the {@code HostPool}, and is retried, if a host cannot be connected
+     * to, or responds with a server error.
      *
      * @param url Url to retrieve data from.
-     * @return {@code byte[]} that represents the data retrieved from the provided url.
+     * @return {@code byte[]} that represents the data retrieved from the provided url, or an empty {@code byte[]} if
+     * the url was given up on.
      */
+    @Override
     public final byte[] getData(final String url) {
-        CloseableHttpClient httpClient = getHttpClient();
-        byte[] data = new byte[]{};
+        final byte[][] data = new byte[1][];
+        send(url, retryPolicy.getMaxRetries(), new Request() {
+            @Override
+            public boolean send(final HttpHost httpHost) {
+                data[0] = getData(url, httpHost);
+                return data[0] != null;
+            }
+        });
+        return (data[0] == null) ? new byte[]{} : data[0];
+    }
+
+    /**
+     * Returns the {@code byte[]} that represents the data retrieved from the provided url of the specified host.
+     *
+     * @param url Url to retrieve data from.
+     * @param httpHost {@code HttpHost} to retrieve data from.
+     * @return {@code byte[]} that represents the data retrieved from the provided url, or null if the host cannot be
+     * connected to, or responds with a server error (or asks for fewer requests).
+     */
+    private byte[] getData(final String url, final HttpHost httpHost) {
+        CloseableHttpResponse httpResponse = null;
+        byte[] data = null;
         try {
-            HttpGet httpGet = new HttpGet(url);
-            CloseableHttpResponse httpResponse = httpClient.execute(httpHost, httpGet, httpClientContext);
-            data = EntityUtils.toByteArray(httpResponse.getEntity());
+            HttpGet httpGet = new HttpGet(getHostUrl(url, httpHost));
+            httpResponse = httpClient.execute(httpHost, httpGet, createHttpClientContext());
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+            if (isRetryable(statusCode)) {
+                EntityUtils.consume(httpResponse.getEntity());
+                LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. HTTP status code {1}",
+                        new String[]{getHostUrl(url, httpHost), String.valueOf(statusCode)});
+            } else {
+                data = EntityUtils.toByteArray(httpResponse.getEntity());
+            }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. {1}",
-                    new String[]{url, e.getMessage()});
+                    new String[]{getHostUrl(url, httpHost), e.getMessage()});
         } finally {
+            close(httpResponse, "Unable to retrieve content for url: [{0}]. {1}", url);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the {@code JsonNode} that represents the {@code JSON} data retrieved from the provided url.
+     * <p>
+     * The response is parsed as it is streamed (and decompressed, as the requests accept {@code gzip} and
+     * {@code deflate} encoded responses), rather than being buffered first. The request fails over to the other hosts
+     * of the {@code HostPool}, and is retried, if a host cannot be connected to, responds with a server error, or the
+     * response is cut short.
+     *
+     * @param url Url to retrieve {@code JSON} data from.
+     * @return {@code JsonNode} that represents the data retrieved from the provided url, or a {@code MissingNode} if
+     * the url responded with a client error, did not respond with {@code JSON} data, or was given up on.
+     */
+    @Override
+    public final JsonNode getJsonData(final String url) {
+        final JsonNode[] jsonNode = new JsonNode[1];
+        send(url, retryPolicy.getMaxRetries(), new Request() {
+            @Override
+            public boolean send(final HttpHost httpHost) {
+                jsonNode[0] = getJsonData(url, httpHost);
+                return jsonNode[0] != null;
+            }
+        });
+        return (jsonNode[0] == null) ? MissingNode.getInstance() : jsonNode[0];
+    }
+
+    /**
+     * Returns the {@code JsonNode} that represents the {@code JSON} data retrieved from the provided url of the
+     * specified host.
+     *
+     * @param url Url to retrieve {@code JSON} data from.
+     * @param httpHost {@code HttpHost} to retrieve {@code JSON} data from.
+     * @return {@code JsonNode} that represents the data retrieved from the provided url, a {@code MissingNode} if the
+     * url responded with a client error or did not respond with {@code JSON} data, or null if the host cannot be
+     * connected to, responds with a server error, or the response is cut short.
+     */
+    private JsonNode getJsonData(final String url, final HttpHost httpHost) {
+        CloseableHttpResponse httpResponse = null;
+        try {
+            HttpGet httpGet = new HttpGet(getHostUrl(url, httpHost));
+            httpResponse = httpClient.execute(httpHost, httpGet, createHttpClientContext());
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+            HttpEntity entity = httpResponse.getEntity();
+            if (isRetryable(statusCode)) {
+                EntityUtils.consume(entity);
+                LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. HTTP status code {1}",
+                        new String[]{getHostUrl(url, httpHost), String.valueOf(statusCode)});
+                return null;
+            }
+            if ((statusCode >= HttpStatus.SC_BAD_REQUEST) || (entity == null)) {
+                // This only needs fine logging since it is usually caused by missing content (i.e. a 404).
+                EntityUtils.consume(entity);
+                LOGGER.log(Level.FINE, "No content for url: [{0}]. HTTP status code {1}",
+                        new String[]{getHostUrl(url, httpHost), String.valueOf(statusCode)});
+                return MissingNode.getInstance();
+            }
+            InputStream in = entity.getContent();
             try {
-                httpClient.close();
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. {1}",
-                        new String[]{url, e.getMessage()});
+                JsonNode jsonNode = OBJECT_MAPPER.readTree(in);
+                return (jsonNode == null) ? MissingNode.getInstance() : jsonNode;
+            } finally {
+                in.close();
             }
+        } catch (JsonProcessingException e) {
+            LOGGER.log(Level.WARNING, "Unable to parse JSON data at: [{0}]. {1}",
+                    new String[]{getHostUrl(url, httpHost), e.getMessage()});
+            return MissingNode.getInstance();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. {1}",
+                    new String[]{getHostUrl(url, httpHost), e.getMessage()});
+        } finally {
+            close(httpResponse, "Unable to retrieve content for url: [{0}]. {1}", url);
         }
-        return data;
+        return null;
     }
 
     /**
      * Gets and writes data to a stream using a buffer to handle memory issues when working with large amounts of data.
+     * <p>
+     * The request fails over to the other hosts of the {@code HostPool}, and is retried, if a host cannot be connected
+     * to, or responds with a server error, before any data has been written.
      *
      * @param url URL to retrieve data from.
      * @param out {@code OutputStream} to write data to.
      */
+    @Override
     public final void getDataAndWriteToOutputSteam(final String url, final OutputStream out) {
-        CloseableHttpClient httpClient = getHttpClient();
+        send(url, retryPolicy.getMaxRetries(), new Request() {
+            @Override
+            public boolean send(final HttpHost httpHost) {
+                return getDataAndWriteToOutputSteam(url, httpHost, out);
+            }
+        });
+    }
+
+    /**
+     * Gets and writes data from the specified host to a stream.
+     *
+     * @param url URL to retrieve data from.
+     * @param httpHost {@code HttpHost} to retrieve data from.
+     * @param out {@code OutputStream} to write data to.
+     * @return False if the host cannot be connected to, or responds with a server error, before any data has been
+     * written; otherwise true (the url is recorded as given up on if the host responds with a client error, or fails
+     * after some of the data has been written).
+     */
+    private boolean getDataAndWriteToOutputSteam(final String url, final HttpHost httpHost, final OutputStream out) {
+        CloseableHttpResponse httpResponse = null;
         byte[] buffer = new byte[8192];
+        boolean written = false;
         try {
-            HttpGet httpGet = new HttpGet(url);
-            CloseableHttpResponse httpResponse = httpClient.execute(httpHost, httpGet, httpClientContext);
+            HttpGet httpGet = new HttpGet(getHostUrl(url, httpHost));
+            httpResponse = httpClient.execute(httpHost, httpGet, createHttpClientContext());
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
             HttpEntity entity = httpResponse.getEntity();
+            if (isRetryable(statusCode)) {
+                EntityUtils.consume(entity);
+                LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. HTTP status code {1}",
+                        new String[]{getHostUrl(url, httpHost), String.valueOf(statusCode)});
+                return false;
+            }
+            if (statusCode >= HttpStatus.SC_BAD_REQUEST) {
+                // The body of a client error is not the requested data, and repeating the request will not help.
+                EntityUtils.consume(entity);
+                LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. HTTP status code {1}",
+                        new String[]{getHostUrl(url, httpHost), String.valueOf(statusCode)});
+                abandonedUrls.add(url);
+                return true;
+            }
             InputStream in = entity.getContent();
             int count;
             while ((count = in.read(buffer)) > 0) {
+                written = true;
                 out.write(buffer, 0, count);
             }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. {1}",
-                    new String[]{url, e.getMessage()});
-        } finally {
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Unable to retrieve content for url: [{0}]. {1}",
-                        new String[]{url, e.getMessage()});
+                    new String[]{getHostUrl(url, httpHost), e.getMessage()});
+            if (written) {
+                // The data that has already been written cannot be taken back, so the request cannot be repeated.
+                abandonedUrls.add(url);
             }
+            return written;
+        } finally {
+            close(httpResponse, "Unable to retrieve content for url: [{0}]. {1}", url);
         }
-
+        return true;
     }
 
     /**
@@ -144,12 +586,19 @@ public class HttpReader {
      * @param url Url to post to.
      * @return True if the post was successful; otherwise false.
      */
+    @Override
     public final boolean post(final String url) {
-        CloseableHttpClient httpClient = getHttpClient();
+        CloseableHttpResponse httpResponse = null;
+        HttpHost httpHost = hostPool.acquire(Collections.<HttpHost>emptySet());
+        if (httpHost == null) {
+            LOGGER.log(Level.SEVERE, "Unable to post to url: [{0}]. All of the hosts are unavailable", url);
+            return false;
+        }
+        boolean available = true;
         int statusCode;
         try {
-            HttpPost httpPost = new HttpPost(url);
-            CloseableHttpResponse httpResponse = httpClient.execute(httpHost, httpPost, httpClientContext);
+            HttpPost httpPost = new HttpPost(getHostUrl(url, httpHost));
+            httpResponse = httpClient.execute(httpHost, httpPost, createHttpClientContext());
             statusCode = httpResponse.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
                 EntityUtils.consume(httpResponse.getEntity());
@@ -159,70 +608,163 @@ public class HttpReader {
             LOGGER.log(Level.SEVERE, "Unable to finish posting to {0}. HTTP status code {1}",
                     new String[]{url, String.valueOf(statusCode)});
         } catch (IOException e) {
+            available = false;
             LOGGER.log(Level.SEVERE, "Unable to post to url: [{0}]. {1}", new String[]{url, e.getMessage()});
         } finally {
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Unable to post to url: [{0}]. {1}", new String[]{url, e.getMessage()});
-            }
+            hostPool.release(httpHost, available);
+            close(httpResponse, "Unable to post to url: [{0}]. {1}", url);
         }
         return false;
     }
 
     /**
-     * Post method and return response.
+     * Posts to the provided url and reads the response with the specified {@code ResponseReader} while it is being
+     * received (i.e. without buffering the response).
      *
      * @param url Url to post to.
-     * @return response String or null if post fails.
+     * @param reader {@code ResponseReader} to read the response with.
+     * @param <T> Type of the value read from the response.
+     * @return Value read from the response, or null if the post fails or the response cannot be read.
      */
-    public final String postAndGetResponseString(final String url) {
-        CloseableHttpClient httpClient = getHttpClient();
+    @Override
+    public final <T> T postAndReadResponse(final String url, final ResponseReader<T> reader) {
+        CloseableHttpResponse httpResponse = null;
+        HttpHost httpHost = hostPool.acquire(Collections.<HttpHost>emptySet());
+        if (httpHost == null) {
+            LOGGER.log(Level.SEVERE, "Unable to post to url: [{0}]. All of the hosts are unavailable", url);
+            return null;
+        }
+        boolean available = true;
         int statusCode;
         try {
-            HttpPost httpPost = new HttpPost(url);
-            CloseableHttpResponse httpResponse = httpClient.execute(httpHost, httpPost, httpClientContext);
+            HttpPost httpPost = new HttpPost(getHostUrl(url, httpHost));
+            httpResponse = httpClient.execute(httpHost, httpPost, createHttpClientContext());
             statusCode = httpResponse.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
                 HttpEntity entity = httpResponse.getEntity();
-                String responseMessage = EntityUtils.toString(entity);
-                EntityUtils.consume(httpResponse.getEntity());
+                T response = null;
+                if (entity != null) {
+                    InputStream in = entity.getContent();
+                    try {
+                        response = reader.read(in);
+                    } finally {
+                        in.close();
+                    }
+                }
                 LOGGER.log(Level.INFO, "Finished posting to {0}", new String[]{url});
-                return responseMessage;
+                return response;
             }
             LOGGER.log(Level.SEVERE, "Unable to finish posting to {0}. HTTP status code {1}",
                     new String[]{url, String.valueOf(statusCode)});
         } catch (IOException e) {
+            available = false;
             LOGGER.log(Level.SEVERE, "Unable to post to url: [{0}]. {1}", new String[]{url, e.getMessage()});
         } finally {
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Unable to post to url: [{0}]. {1}", new String[]{url, e.getMessage()});
-            }
+            hostPool.release(httpHost, available);
+            close(httpResponse, "Unable to post to url: [{0}]. {1}", url);
         }
         return null;
     }
 
+    /**
+     * Posts to the provided url without waiting for a long running operation to complete.
+     * <p>
+     * The request is considered to have been triggered if either the server responds within the specified timeout,
+     * or the server accepts the request but does not respond before the timeout expires (i.e. the operation continues
+     * on the server after the connection has been closed).
+     *
+     * @param url Url to post to.
+     * @param timeout Number of milliseconds to wait for a response.
+     * @param reader {@code ResponseReader} to read the response with, which is not called if the response is not
+     * received within the timeout.
+     * @return True if the post was triggered (and its response, if received, could be read); otherwise false.
+     */
+    @Override
+    public final boolean trigger(final String url, final int timeout, final ResponseReader<?> reader) {
+        CloseableHttpResponse httpResponse = null;
+        HttpHost httpHost = hostPool.acquire(Collections.<HttpHost>emptySet());
+        if (httpHost == null) {
+            LOGGER.log(Level.SEVERE, "Unable to post to url: [{0}]. All of the hosts are unavailable", url);
+            return false;
+        }
+        boolean available = true;
+        int statusCode;
+        try {
+            HttpPost httpPost = new HttpPost(getHostUrl(url, httpHost));
+            httpPost.setConfig(getRequestConfig(timeout));
+            httpResponse = httpClient.execute(httpHost, httpPost, createHttpClientContext());
+            statusCode = httpResponse.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_OK) {
+                HttpEntity entity = httpResponse.getEntity();
+                if (entity != null) {
+                    InputStream in = entity.getContent();
+                    try {
+                        reader.read(in);
+                    } finally {
+                        in.close();
+                    }
+                }
+                LOGGER.log(Level.INFO, "Finished posting to {0}", new String[]{url});
+                return true;
+            }
+            LOGGER.log(Level.SEVERE, "Unable to finish posting to {0}. HTTP status code {1}",
+                    new String[]{url, String.valueOf(statusCode)});
+        } catch (SocketTimeoutException e) {
+            LOGGER.log(Level.INFO, "Triggered {0}, not waiting for it to finish", new String[]{url});
+            return true;
+        } catch (IOException e) {
+            available = false;
+            LOGGER.log(Level.SEVERE, "Unable to post to url: [{0}]. {1}", new String[]{url, e.getMessage()});
+        } finally {
+            hostPool.release(httpHost, available);
+            close(httpResponse, "Unable to post to url: [{0}]. {1}", url);
+        }
+        return false;
+    }
+
     /**
      * Writes the file to the provided url.
+     * <p>
+     * The upload is only retried if it forces the package to be replaced (i.e. the url contains {@code force=true}),
+     * as otherwise an upload that reached the server before failing would prevent the retry from succeeding.
      *
      * @param url Url to write data to.
      * @param filename Name of the file to write to provided url.
      * @param packageName Name of the package to upload.
      * @return True if the data was written successfully; otherwise false.
      */
+    @Override
     public final boolean writeData(final String url, final String filename, final String packageName) {
-        CloseableHttpClient httpClient = getHttpClient();
+        int maxRetries = url.contains(FORCE_PARAMETER) ? retryPolicy.getMaxRetries() : 0;
+        return send(url, maxRetries, new Request() {
+            @Override
+            public boolean send(final HttpHost httpHost) {
+                return writeData(url, filename, packageName, httpHost);
+            }
+        });
+    }
+
+    /**
+     * Writes the file to the provided url of the specified host.
+     *
+     * @param url Url to write data to.
+     * @param filename Name of the file to write to provided url.
+     * @param packageName Name of the package to upload.
+     * @param httpHost {@code HttpHost} to write data to.
+     * @return True if the data was written successfully; otherwise false.
+     */
+    private boolean writeData(final String url, final String filename, final String packageName,
+            final HttpHost httpHost) {
+        CloseableHttpResponse httpResponse = null;
         int statusCode;
         try {
-            HttpPost httpPost = new HttpPost(url);
+            HttpPost httpPost = new HttpPost(getHostUrl(url, httpHost));
             FileBody fileBody = new FileBody(new File(filename));
             StringBody stringBody = new StringBody(packageName, ContentType.TEXT_PLAIN);
             HttpEntity httpEntity =
                     MultipartEntityBuilder.create().addPart("package", fileBody).addPart("name", stringBody).build();
             httpPost.setEntity(httpEntity);
-            CloseableHttpResponse httpResponse = httpClient.execute(httpHost, httpPost, httpClientContext);
+            httpResponse = httpClient.execute(httpHost, httpPost, createHttpClientContext());
             statusCode = httpResponse.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
                 EntityUtils.consume(httpResponse.getEntity());
@@ -234,30 +776,105 @@ public class HttpReader {
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Unable to upload content to url: [{0}]. {1}", new String[]{url, e.getMessage()});
         } finally {
-            try {
-                httpClient.close();
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Unable to upload content to url: [{0}]. {1}",
-                        new String[]{url, e.getMessage()});
-            }
+            close(httpResponse, "Unable to upload content to url: [{0}]. {1}", url);
         }
         return false;
     }
 
     /**
-     * Returns the {@code CloseableHttpClient} to use.
+     * Returns whether a response with the specified status code should be retried (i.e. a server error, or a request
+     * to send fewer requests).
+     *
+     * @param statusCode HTTP status code of the response.
+     * @return Whether a response with the specified status code should be retried.
+     */
+    private static boolean isRetryable(final int statusCode) {
+        return (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR) || (statusCode == SC_TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * Creates the {@code HttpClientContext} of a request (i.e. each request has its own context, as the requests are
+     * sent concurrently over the pooled connections), which authenticates preemptively with the cached scheme.
+     *
+     * @return {@code HttpClientContext} of a request.
+     */
+    private HttpClientContext createHttpClientContext() {
+        HttpClientContext httpClientContext = HttpClientContext.create();
+        httpClientContext.setAuthCache(authCache);
+        return httpClientContext;
+    }
+
+    /**
+     * Closes the specified response, which releases its connection back to the pool (so that it can be kept alive for
+     * the following requests if the response was fully consumed).
+     *
+     * @param httpResponse Response to close, or null if there was no response.
+     * @param message Message to log if the response cannot be closed.
+     * @param url Url of the request.
+     */
+    private static void close(final CloseableHttpResponse httpResponse, final String message, final String url) {
+        if (httpResponse == null) {
+            return;
+        }
+        try {
+            httpResponse.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, message, new String[]{url, e.getMessage()});
+        }
+    }
+
+    /**
+     * Closes the {@code CloseableHttpClient} (and the pooled connections) used by this {@code HttpReader} and the
+     * {@code HttpReader}s of its individual hosts, unless this is the {@code HttpReader} of an individual host or a
+     * session of a shared {@code HttpReader}.
+     *
+     * @throws IOException If the {@code CloseableHttpClient} cannot be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        if (closeClient) {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * Returns the {@code RequestConfig} of a request with the specified socket timeout.
+     *
+     * @param socketTimeout Number of milliseconds to wait for data.
+     * @return {@code RequestConfig} of a request with the specified socket timeout.
+     */
+    private static RequestConfig getRequestConfig(final int socketTimeout) {
+        return RequestConfig.custom().setSocketTimeout(socketTimeout).setConnectTimeout(DEFAULT_TIMEOUT)
+                .setConnectionRequestTimeout(DEFAULT_TIMEOUT).build();
+    }
+
+    /**
+     * Creates the {@code CloseableHttpClient} that sends the requests to the hosts of the specified {@code HostPool}.
+     * <p>
+     * The connections are pooled and kept alive between requests, and the {@code https} connections share a single
+     * {@code SSLContext}, so that its {@code TLS} sessions are resumed by the following connections to the same host
+     * rather than paying for a full handshake each time.
      *
-     * @return {@code CloseableHttpClient} to use.
+     * @param username Username to authenticate with.
+     * @param password Password to authenticate with.
+     * @param hostPool {@code HostPool} that contains the hosts to connect to.
+     * @return {@code CloseableHttpClient} that sends the requests to the hosts of the specified {@code HostPool}.
      */
-    private CloseableHttpClient getHttpClient() {
+    private static CloseableHttpClient createHttpClient(final String username, final String password,
+            final HostPool hostPool) {
         CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
         credentialsProvider.setCredentials(new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT, AuthScope.ANY_REALM),
                 new UsernamePasswordCredentials(username, password));
-        RequestConfig requestConfig =
-                RequestConfig.custom().setSocketTimeout(DEFAULT_TIMEOUT).setConnectTimeout(DEFAULT_TIMEOUT)
-                        .setConnectionRequestTimeout(DEFAULT_TIMEOUT).build();
-        return HttpClients.custom().setDefaultCredentialsProvider(credentialsProvider)
-                .setDefaultRequestConfig(requestConfig).build();
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSystemSocketFactory()).build();
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS_PER_HOST * hostPool.getHosts().size());
+        return HttpClients.custom().setConnectionManager(connectionManager)
+                .setDefaultCredentialsProvider(credentialsProvider)
+                .setDefaultRequestConfig(getRequestConfig(DEFAULT_TIMEOUT)).build();
     }
 
 }
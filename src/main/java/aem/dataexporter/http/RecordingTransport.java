@@ -0,0 +1,349 @@
+package aem.dataexporter.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of a {@code Transport} that records each request of another {@code Transport} (i.e. its status, how
+ * long it took, and its body) into a {@code TrafficArchive}, so that it can be replayed by a {@code ReplayTransport}.
+ * <p>
+ * The {@code Transport} does not expose the status codes and headers of the responses, so the status is derived from
+ * the outcome of the request instead: {@code 200} for a response with content (or a successful command), {@code 202}
+ * for a triggered command whose response was not waited for, {@code 404} for a response without content, {@code 500}
+ * for a failed command, and {@code NO_RESPONSE} for a request that was given up on. The {@code JSON} responses are
+ * recorded as they were parsed, so that they are still streamed into the parser while recording.
+ */
+public class RecordingTransport implements Transport {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(RecordingTransport.class.getName());
+    /**
+     * {@code ObjectMapper} used to serialize the {@code JSON} responses.
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * Status of a response with content, or of a successful command.
+     */
+    private static final int OK = 200;
+    /**
+     * Status of a post that was triggered without receiving a response within the timeout.
+     */
+    static final int ACCEPTED = 202;
+    /**
+     * Status of a response without content.
+     */
+    private static final int NOT_FOUND = 404;
+    /**
+     * Status of a failed command.
+     */
+    private static final int FAILED = 500;
+    /**
+     * {@code Transport} whose requests are recorded.
+     */
+    private final Transport transport;
+    /**
+     * {@code TrafficArchive} to record the requests into.
+     */
+    private final TrafficArchive trafficArchive;
+    /**
+     * Whether or not the {@code TrafficArchive} is closed along with this {@code RecordingTransport} (i.e. this is not
+     * the {@code RecordingTransport} of an individual host, or of an archive shared across operations).
+     */
+    private final boolean closeArchive;
+
+    /**
+     * Constructs a new {@code RecordingTransport}.
+     *
+     * @param newTransport {@code Transport} whose requests are recorded.
+     * @param newTrafficArchive {@code TrafficArchive} to record the requests into.
+     */
+    public RecordingTransport(final Transport newTransport, final TrafficArchive newTrafficArchive) {
+        this(newTransport, newTrafficArchive, true);
+    }
+
+    /**
+     * Constructs a new {@code RecordingTransport}.
+     *
+     * @param newTransport {@code Transport} whose requests are recorded.
+     * @param newTrafficArchive {@code TrafficArchive} to record the requests into.
+     * @param newCloseArchive Whether or not the {@code TrafficArchive} is closed along with this
+     * {@code RecordingTransport}.
+     */
+    RecordingTransport(final Transport newTransport, final TrafficArchive newTrafficArchive,
+            final boolean newCloseArchive) {
+        this.transport = newTransport;
+        this.trafficArchive = newTrafficArchive;
+        this.closeArchive = newCloseArchive;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final int getNumberOfHosts() {
+        return transport.getNumberOfHosts();
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Transport getHostTransport(final int index) {
+        return new RecordingTransport(transport.getHostTransport(index), trafficArchive, false);
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Set<String> getAbandonedUrls() {
+        return transport.getAbandonedUrls();
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final byte[] getData(final String url) {
+        long start = System.currentTimeMillis();
+        byte[] data = transport.getData(url);
+        record(TrafficArchive.getKey("GET", url), getStatus(url, data.length > 0), start, data);
+        return data;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final JsonNode getJsonData(final String url) {
+        long start = System.currentTimeMillis();
+        JsonNode jsonNode = transport.getJsonData(url);
+        byte[] data = new byte[]{};
+        if (!jsonNode.isMissingNode()) {
+            try {
+                data = OBJECT_MAPPER.writeValueAsBytes(jsonNode);
+            } catch (JsonProcessingException e) {
+                LOGGER.log(Level.WARNING, "Unable to serialize response of: [{0}]. {1}",
+                        new String[]{url, e.getMessage()});
+            }
+        }
+        record(TrafficArchive.getKey("GET", url), getStatus(url, data.length > 0), start, data);
+        return jsonNode;
+    }
+
+    /**
+     * {@inheritDoc}.
+     * <p>
+     * The data is also written to a temporary file while it is retrieved, and then recorded from that file.
+     */
+    @Override
+    public final void getDataAndWriteToOutputSteam(final String url, final OutputStream out) {
+        long start = System.currentTimeMillis();
+        File file = null;
+        try {
+            file = File.createTempFile("data-exporter-record-", ".tmp");
+            final OutputStream fileOutputStream = new FileOutputStream(file);
+            try {
+                transport.getDataAndWriteToOutputSteam(url, new OutputStream() {
+                    @Override
+                    public void write(final int value) throws IOException {
+                        out.write(value);
+                        fileOutputStream.write(value);
+                    }
+
+                    @Override
+                    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                        out.write(bytes, offset, length);
+                        fileOutputStream.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        out.flush();
+                    }
+                });
+            } finally {
+                fileOutputStream.close();
+            }
+            long elapsedMillis = System.currentTimeMillis() - start;
+            InputStream in = new FileInputStream(file);
+            try {
+                trafficArchive.record(TrafficArchive.getKey("GET", url), getStatus(url, file.length() > 0),
+                        elapsedMillis, in, file.length());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to record url: [{0}]. {1}", new String[]{url, e.getMessage()});
+        } finally {
+            if ((file != null) && (!file.delete())) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean post(final String url) {
+        long start = System.currentTimeMillis();
+        boolean success = transport.post(url);
+        record(TrafficArchive.getKey("POST", url), success ? OK : FAILED, start, new byte[]{});
+        return success;
+    }
+
+    /**
+     * {@inheritDoc}.
+     * <p>
+     * The response is written to a temporary file while it is received, and then recorded from and read from that file.
+     */
+    @Override
+    public final <T> T postAndReadResponse(final String url, final ResponseReader<T> reader) {
+        final long start = System.currentTimeMillis();
+        final String key = TrafficArchive.getKey("POST", url);
+        final AtomicBoolean received = new AtomicBoolean();
+        T response = transport.postAndReadResponse(url, new ResponseReader<T>() {
+            @Override
+            public T read(final InputStream in) throws IOException {
+                received.set(true);
+                File file = File.createTempFile("data-exporter-record-", ".tmp");
+                try {
+                    OutputStream out = new FileOutputStream(file);
+                    try {
+                        IOUtils.copy(in, out);
+                    } finally {
+                        out.close();
+                    }
+                    long elapsedMillis = System.currentTimeMillis() - start;
+                    InputStream fileInputStream = new FileInputStream(file);
+                    try {
+                        trafficArchive.record(key, OK, elapsedMillis, fileInputStream, file.length());
+                    } catch (IOException e) {
+                        LOGGER.log(Level.SEVERE, "Unable to record url: [{0}]. {1}", new String[]{url, e.getMessage()});
+                    } finally {
+                        fileInputStream.close();
+                    }
+                    fileInputStream = new FileInputStream(file);
+                    try {
+                        return reader.read(fileInputStream);
+                    } finally {
+                        fileInputStream.close();
+                    }
+                } finally {
+                    if (!file.delete()) {
+                        file.deleteOnExit();
+                    }
+                }
+            }
+        });
+        if (!received.get()) {
+            record(key, TrafficArchive.NO_RESPONSE, start, new byte[]{});
+        }
+        return response;
+    }
+
+    /**
+     * {@inheritDoc}.
+     * <p>
+     * A response received within the timeout is recorded with its body, whereas a post that was triggered without
+     * receiving a response is recorded as {@code ACCEPTED}.
+     */
+    @Override
+    public final boolean trigger(final String url, final int timeout, final ResponseReader<?> reader) {
+        final long start = System.currentTimeMillis();
+        final String key = TrafficArchive.getKey("POST", url);
+        final AtomicBoolean received = new AtomicBoolean();
+        boolean success = transport.trigger(url, timeout, new ResponseReader<Object>() {
+            @Override
+            public Object read(final InputStream in) throws IOException {
+                received.set(true);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                IOUtils.copy(in, out);
+                record(key, OK, start, out.toByteArray());
+                return reader.read(new ByteArrayInputStream(out.toByteArray()));
+            }
+        });
+        if (!received.get()) {
+            record(key, success ? ACCEPTED : FAILED, start, new byte[]{});
+        }
+        return success;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean writeData(final String url, final String filename, final String packageName) {
+        long start = System.currentTimeMillis();
+        boolean success = transport.writeData(url, filename, packageName);
+        record(TrafficArchive.getKey("POST", url) + " " + packageName, success ? OK : FAILED, start, new byte[]{});
+        return success;
+    }
+
+    /**
+     * Closes the recorded {@code Transport} and the {@code TrafficArchive}.
+     *
+     * @throws IOException If the {@code Transport} or {@code TrafficArchive} cannot be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        try {
+            transport.close();
+        } finally {
+            if (closeArchive) {
+                trafficArchive.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the status to record for a request to the specified url.
+     *
+     * @param url Url of the request.
+     * @param hasContent Whether or not the response has content.
+     * @return Status to record for a request to the specified url.
+     */
+    private int getStatus(final String url, final boolean hasContent) {
+        if (hasContent) {
+            return OK;
+        }
+        return transport.getAbandonedUrls().contains(url) ? TrafficArchive.NO_RESPONSE : NOT_FOUND;
+    }
+
+    /**
+     * Records the response of the specified request, logging (rather than failing the request) if it cannot be
+     * recorded.
+     *
+     * @param key Key of the request.
+     * @param status Status of the response.
+     * @param start Time (in milliseconds) the request was started.
+     * @param body Body of the response.
+     */
+    private void record(final String key, final int status, final long start, final byte[] body) {
+        try {
+            trafficArchive.record(key, status, System.currentTimeMillis() - start, new ByteArrayInputStream(body),
+                    body.length);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to record request: [{0}]. {1}", new String[]{key, e.getMessage()});
+        }
+    }
+
+}
@@ -0,0 +1,311 @@
+package aem.dataexporter.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of a {@code Transport} that serves the responses that were recorded into a {@code TrafficArchive} by
+ * a {@code RecordingTransport}, without any network requests.
+ * <p>
+ * Each response is delayed by the configured latency, or by the time the request took when it was recorded, so that
+ * changes to the crawl can be benchmarked against an identical workload. A request that was not recorded, or that was
+ * given up on when it was recorded, is given up on.
+ */
+public class ReplayTransport implements Transport {
+
+    /**
+     * Latency that delays each response by the time the request took when it was recorded.
+     */
+    public static final long RECORDED_LATENCY = -1;
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ReplayTransport.class.getName());
+    /**
+     * {@code ObjectMapper} used to parse the {@code JSON} responses.
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * {@code TrafficArchive} to replay the responses of.
+     */
+    private final TrafficArchive trafficArchive;
+    /**
+     * Number of milliseconds to delay each response by, or {@code RECORDED_LATENCY}.
+     */
+    private final long latency;
+    /**
+     * Whether or not the {@code TrafficArchive} is closed along with this {@code ReplayTransport} (i.e. the archive is
+     * not shared across operations).
+     */
+    private final boolean closeArchive;
+    /**
+     * Urls that were given up on.
+     */
+    private final Set<String> abandonedUrls = Collections.synchronizedSet(new LinkedHashSet<String>());
+    /**
+     * Number of times each request has been replayed, so that the responses of a request that was recorded more than
+     * once are replayed in the order they were recorded (per {@code ReplayTransport}, since an archive can be shared
+     * by concurrent replays).
+     */
+    private final ConcurrentMap<String, AtomicInteger> replayCounts = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * Constructs a new {@code ReplayTransport}.
+     *
+     * @param newTrafficArchive {@code TrafficArchive} to replay the responses of.
+     * @param newLatency Number of milliseconds to delay each response by, or {@code RECORDED_LATENCY} to delay each
+     * response by the time the request took when it was recorded.
+     */
+    public ReplayTransport(final TrafficArchive newTrafficArchive, final long newLatency) {
+        this(newTrafficArchive, newLatency, true);
+    }
+
+    /**
+     * Constructs a new {@code ReplayTransport}.
+     *
+     * @param newTrafficArchive {@code TrafficArchive} to replay the responses of.
+     * @param newLatency Number of milliseconds to delay each response by, or {@code RECORDED_LATENCY}.
+     * @param newCloseArchive Whether or not the {@code TrafficArchive} is closed along with this
+     * {@code ReplayTransport}.
+     */
+    ReplayTransport(final TrafficArchive newTrafficArchive, final long newLatency, final boolean newCloseArchive) {
+        this.trafficArchive = newTrafficArchive;
+        this.latency = newLatency;
+        this.closeArchive = newCloseArchive;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final int getNumberOfHosts() {
+        return 1;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Transport getHostTransport(final int index) {
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Set<String> getAbandonedUrls() {
+        synchronized (abandonedUrls) {
+            return new LinkedHashSet<String>(abandonedUrls);
+        }
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final byte[] getData(final String url) {
+        TrafficArchive.Entry entry = replay(TrafficArchive.getKey("GET", url), url);
+        if (entry != null) {
+            try {
+                return trafficArchive.readBody(entry);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to replay url: [{0}]. {1}", new String[]{url, e.getMessage()});
+            }
+        }
+        return new byte[]{};
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final JsonNode getJsonData(final String url) {
+        TrafficArchive.Entry entry = replay(TrafficArchive.getKey("GET", url), url);
+        if ((entry != null) && (entry.getLength() > 0)) {
+            try {
+                InputStream in = trafficArchive.openBody(entry);
+                try {
+                    JsonNode jsonNode = OBJECT_MAPPER.readTree(in);
+                    if (jsonNode != null) {
+                        return jsonNode;
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to replay url: [{0}]. {1}", new String[]{url, e.getMessage()});
+            }
+        }
+        return MissingNode.getInstance();
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final void getDataAndWriteToOutputSteam(final String url, final OutputStream out) {
+        TrafficArchive.Entry entry = replay(TrafficArchive.getKey("GET", url), url);
+        if (entry == null) {
+            return;
+        }
+        try {
+            InputStream in = trafficArchive.openBody(entry);
+            try {
+                IOUtils.copy(in, out);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to replay url: [{0}]. {1}", new String[]{url, e.getMessage()});
+        }
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean post(final String url) {
+        return isSuccessful(replay(TrafficArchive.getKey("POST", url), url));
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final <T> T postAndReadResponse(final String url, final ResponseReader<T> reader) {
+        TrafficArchive.Entry entry = replay(TrafficArchive.getKey("POST", url), url);
+        if (entry != null) {
+            try {
+                InputStream in = trafficArchive.openBody(entry);
+                try {
+                    return reader.read(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to replay url: [{0}]. {1}", new String[]{url, e.getMessage()});
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean trigger(final String url, final int timeout, final ResponseReader<?> reader) {
+        TrafficArchive.Entry entry = replay(TrafficArchive.getKey("POST", url), url);
+        if (!isSuccessful(entry)) {
+            return false;
+        }
+        if ((entry.getStatus() != RecordingTransport.ACCEPTED) && (entry.getLength() > 0)) {
+            try {
+                InputStream in = trafficArchive.openBody(entry);
+                try {
+                    reader.read(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to replay url: [{0}]. {1}", new String[]{url, e.getMessage()});
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean writeData(final String url, final String filename, final String packageName) {
+        return isSuccessful(replay(TrafficArchive.getKey("POST", url) + " " + packageName, url));
+    }
+
+    /**
+     * Closes the {@code TrafficArchive}, unless it is shared across operations.
+     *
+     * @throws IOException If the {@code TrafficArchive} cannot be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        if (closeArchive) {
+            trafficArchive.close();
+        }
+    }
+
+    /**
+     * Returns the next recorded response of the specified request, after delaying it by the latency.
+     *
+     * @param key Key of the request.
+     * @param url Url of the request.
+     * @return Recorded response of the specified request, or null if it was not recorded or was given up on.
+     */
+    private TrafficArchive.Entry replay(final String key, final String url) {
+        TrafficArchive.Entry entry;
+        try {
+            entry = trafficArchive.get(key, getReplayCount(key).getAndIncrement());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to replay url: [{0}]. {1}", new String[]{url, e.getMessage()});
+            entry = null;
+        }
+        if (entry == null) {
+            LOGGER.log(Level.WARNING, "Request was not recorded: {0}", key);
+        } else {
+            try {
+                Thread.sleep((latency == RECORDED_LATENCY) ? entry.getElapsedMillis() : latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if ((entry == null) || (entry.getStatus() == TrafficArchive.NO_RESPONSE)) {
+            abandonedUrls.add(url);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the number of times the specified request has been replayed.
+     *
+     * @param key Key of the request.
+     * @return Number of times the specified request has been replayed.
+     */
+    private AtomicInteger getReplayCount(final String key) {
+        AtomicInteger replayCount = replayCounts.get(key);
+        if (replayCount == null) {
+            replayCount = new AtomicInteger();
+            AtomicInteger existingReplayCount = replayCounts.putIfAbsent(key, replayCount);
+            if (existingReplayCount != null) {
+                replayCount = existingReplayCount;
+            }
+        }
+        return replayCount;
+    }
+
+    /**
+     * Returns whether or not the specified recorded response is of a successful command.
+     *
+     * @param entry Recorded response, or null.
+     * @return True if the recorded response is of a successful command; otherwise false.
+     */
+    private static boolean isSuccessful(final TrafficArchive.Entry entry) {
+        return (entry != null) && (entry.getStatus() >= 200) && (entry.getStatus() < 300);
+    }
+
+}
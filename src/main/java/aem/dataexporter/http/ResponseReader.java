@@ -0,0 +1,22 @@
+package aem.dataexporter.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the body of a response while it is being received, so that the body does not have to be held in memory.
+ *
+ * @param <T> Type of the value read from the body.
+ */
+public interface ResponseReader<T> {
+
+    /**
+     * Returns the value read from the specified body of a response.
+     *
+     * @param in {@code InputStream} of the body of the response (which is closed by the {@code Transport}).
+     * @return Value read from the body of the response.
+     * @throws IOException If the body cannot be read.
+     */
+    T read(InputStream in) throws IOException;
+
+}
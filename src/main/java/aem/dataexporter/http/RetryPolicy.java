@@ -0,0 +1,146 @@
+package aem.dataexporter.http;
+
+import java.util.Random;
+
+/**
+ * Policy that determines how many times a failed request is retried, and how long to wait before each retry.
+ * <p>
+ * The delay before each retry grows exponentially (from the base delay up to the maximum delay), and the actual delay
+ * is chosen at random between zero and that bound (i.e. full jitter), so that the requests of many threads that failed
+ * together do not all retry together.
+ */
+public class RetryPolicy {
+
+    /**
+     * Default maximum number of retries.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    /**
+     * Default number of milliseconds that the delay before the first retry is bounded by.
+     */
+    private static final long DEFAULT_BASE_DELAY = 500;
+    /**
+     * Default maximum number of milliseconds to wait before a retry.
+     */
+    private static final long DEFAULT_MAX_DELAY = 30000;
+    /**
+     * Default maximum number of milliseconds to wait for a host to become available when the circuit of all of the
+     * hosts is open (i.e. longer than the longest interval a circuit is open for).
+     */
+    private static final long DEFAULT_MAX_HOST_WAIT = 600000;
+    /**
+     * Maximum number of retries.
+     */
+    private final int maxRetries;
+    /**
+     * Number of milliseconds that the delay before the first retry is bounded by.
+     */
+    private final long baseDelay;
+    /**
+     * Maximum number of milliseconds to wait before a retry.
+     */
+    private final long maxDelay;
+    /**
+     * Maximum number of milliseconds to wait for a host to become available when the circuit of all of the hosts is
+     * open.
+     */
+    private final long maxHostWait;
+    /**
+     * Source of the jitter.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Constructs a new {@code RetryPolicy} with the default maximum number of retries.
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Constructs a new {@code RetryPolicy}.
+     *
+     * @param newMaxRetries Maximum number of retries.
+     */
+    public RetryPolicy(final int newMaxRetries) {
+        this(newMaxRetries, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Constructs a new {@code RetryPolicy}.
+     *
+     * @param newMaxRetries Maximum number of retries.
+     * @param newBaseDelay Number of milliseconds that the delay before the first retry is bounded by.
+     * @param newMaxDelay Maximum number of milliseconds to wait before a retry.
+     */
+    public RetryPolicy(final int newMaxRetries, final long newBaseDelay, final long newMaxDelay) {
+        this(newMaxRetries, newBaseDelay, newMaxDelay, DEFAULT_MAX_HOST_WAIT);
+    }
+
+    /**
+     * Constructs a new {@code RetryPolicy}.
+     *
+     * @param newMaxRetries Maximum number of retries.
+     * @param newBaseDelay Number of milliseconds that the delay before the first retry is bounded by.
+     * @param newMaxDelay Maximum number of milliseconds to wait before a retry.
+     * @param newMaxHostWait Maximum number of milliseconds to wait for a host to become available when the circuit of
+     * all of the hosts is open.
+     */
+    public RetryPolicy(final int newMaxRetries, final long newBaseDelay, final long newMaxDelay,
+            final long newMaxHostWait) {
+        this.maxRetries = Math.max(newMaxRetries, 0);
+        this.baseDelay = newBaseDelay;
+        this.maxDelay = newMaxDelay;
+        this.maxHostWait = newMaxHostWait;
+    }
+
+    /**
+     * Returns the maximum number of retries.
+     *
+     * @return Maximum number of retries.
+     */
+    public final int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Returns the maximum number of milliseconds to wait for a host to become available when the circuit of all of the
+     * hosts is open.
+     *
+     * @return Maximum number of milliseconds to wait for a host to become available.
+     */
+    public final long getMaxHostWait() {
+        return maxHostWait;
+    }
+
+    /**
+     * Returns the number of milliseconds to wait before the specified retry.
+     *
+     * @param retry Number of the retry (from {@code 1}).
+     * @return Number of milliseconds to wait before the specified retry.
+     */
+    public final long getDelay(final int retry) {
+        long bound = baseDelay << Math.min(Math.max(retry - 1, 0), 30);
+        bound = Math.min(Math.max(bound, 1), maxDelay);
+        synchronized (random) {
+            return (long) (random.nextDouble() * bound);
+        }
+    }
+
+    /**
+     * Waits before the specified retry.
+     *
+     * @param retry Number of the retry (from {@code 1}).
+     * @return True if the retry should be attempted; otherwise false (i.e. the thread was interrupted).
+     */
+    public final boolean backOff(final int retry) {
+        try {
+            Thread.sleep(getDelay(retry));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,926 @@
+package aem.dataexporter.http;
+
+import aem.dataexporter.file.PlatformNameFormat;
+import aem.dataexporter.utilities.UrlUtilities;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.compress.utils.IOUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Implementation of a {@code Transport} that serves a snapshot of the {@code JCR} from a local directory or zip file
+ * (e.g. a previously downloaded {@code CRX} package), without any network requests.
+ * <p>
+ * The FileVault serialization within the {@code jcr_root} of the snapshot (i.e. the document views, the files of the
+ * {@code nt:file} nodes and the folders) is read into memory once, and the {@code JSON} representation of the nodes
+ * is then rendered in the same way as the {@code Sling} default {@code GET} servlet (e.g. {@code .1.json} and
+ * {@code .infinity.json}, with the lengths of the binaries as {@code :jcr:data}). The binaries themselves are streamed
+ * from the snapshot when they are requested. {@code QueryBuilder} requests are answered for the {@code path},
+ * {@code type} and paging predicates that the crawl uses.
+ * <p>
+ * The package manager commands succeed without any effect on the snapshot: an uploaded package is remembered (for all
+ * of the {@code SnapshotTransport}s of the process) so that it is listed and can be downloaded again, but it is not
+ * built.
+ */
+public class SnapshotTransport implements Transport {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(SnapshotTransport.class.getName());
+    /**
+     * {@code ObjectMapper} used to serialize the {@code JSON} responses.
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * Root directory of the content within the snapshot.
+     */
+    private static final String JCR_ROOT = "jcr_root/";
+    /**
+     * Name of the document view file.
+     */
+    private static final String CONTENT_XML = ".content.xml";
+    /**
+     * Suffix of the directory that contains the document view of an {@code nt:file} node.
+     */
+    private static final String FILE_DIRECTORY_SUFFIX = ".dir";
+    /**
+     * Name of the property that contains the primary type of a node.
+     */
+    private static final String JCR_PRIMARY_TYPE = "jcr:primaryType";
+    /**
+     * Name of the property that the {@code JCR} reports the length of a binary as.
+     */
+    private static final String BINARY_LENGTH_PROPERTY = ":jcr:data";
+    /**
+     * Pattern of the scheme and authority of a url.
+     */
+    private static final Pattern URL_AUTHORITY = Pattern.compile("^[A-Za-z][A-Za-z0-9+.\\-]*://[^/]*");
+    /**
+     * Pattern of an {@code ISO 9075} encoded character of an {@code XML} name (e.g. {@code _x0020_}).
+     */
+    private static final Pattern ENCODED_CHARACTER = Pattern.compile("_x[0-9A-Fa-f]{4}_");
+    /**
+     * Default number of hits of a {@code QueryBuilder} request.
+     */
+    private static final int DEFAULT_QUERY_LIMIT = 10;
+    /**
+     * Copies of the files of the packages that have been uploaded, by package name (a copy is kept so that downloading
+     * a package into its working directory file does not read the file it is writing to).
+     */
+    private static final Map<String, File> UPLOADED_PACKAGES = new ConcurrentHashMap<String, File>();
+    /**
+     * Successful response of the package manager.
+     */
+    private static final String SUCCESS_RESPONSE = "{\"success\":true,\"msg\":\"Snapshot command accepted\"}";
+    /**
+     * Charset of the package manager responses.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Snapshot (i.e. a directory or zip file) that the content is served from.
+     */
+    private final File snapshot;
+    /**
+     * Zip file that the binaries are read from, or null if the snapshot is a directory.
+     */
+    private ZipFile zipFile;
+    /**
+     * {@code JSON} representation of the root node of the snapshot and all of its descendants.
+     */
+    private final ObjectNode root = JsonNodeFactory.instance.objectNode();
+    /**
+     * Names (i.e. the file or zip entry names) of the binaries of the {@code nt:file} nodes, by path.
+     */
+    private final Map<String, String> binaries = new ConcurrentHashMap<String, String>();
+    /**
+     * Urls that were given up on (i.e. packages that could not be downloaded).
+     */
+    private final Set<String> abandonedUrls = Collections.synchronizedSet(new LinkedHashSet<String>());
+
+    /**
+     * Constructs a new {@code SnapshotTransport}, reading the snapshot into memory.
+     *
+     * @param newSnapshot Directory or zip file that contains the {@code jcr_root} of the snapshot.
+     * @throws IOException If the snapshot cannot be read (rather than serving only the part of it that was read).
+     */
+    public SnapshotTransport(final File newSnapshot) throws IOException {
+        this.snapshot = newSnapshot;
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, String> entries = new TreeMap<String, String>();
+            if (snapshot.isDirectory()) {
+                File jcrRoot = new File(snapshot, JCR_ROOT);
+                listFiles(jcrRoot.isDirectory() ? jcrRoot : snapshot, "", entries);
+            } else {
+                zipFile = new ZipFile(snapshot);
+                for (Enumeration<? extends ZipEntry> zipEntries = zipFile.entries(); zipEntries.hasMoreElements(); ) {
+                    ZipEntry zipEntry = zipEntries.nextElement();
+                    if ((!zipEntry.isDirectory()) && (zipEntry.getName().startsWith(JCR_ROOT))) {
+                        entries.put(zipEntry.getName().substring(JCR_ROOT.length()), zipEntry.getName());
+                    }
+                }
+            }
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                readEntry(entry.getKey(), entry.getValue());
+            }
+            setFolderTypes(root);
+            root.put(JCR_PRIMARY_TYPE, "rep:root");
+            LOGGER.log(Level.INFO, "Read {0} files of snapshot [{1}] in {2} ms",
+                    new Object[]{entries.size(), snapshot.getPath(), System.currentTimeMillis() - start});
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the files below the specified directory to the {@code Map} of entries (keyed by their platform path).
+     *
+     * @param directory Directory to list the files of.
+     * @param platformPath Platform path of the directory (i.e. relative to the {@code jcr_root}).
+     * @param entries {@code Map} of the platform paths to the file names to add the files to.
+     */
+    private static void listFiles(final File directory, final String platformPath, final Map<String, String> entries) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, platformPath + file.getName() + "/", entries);
+            } else {
+                entries.put(platformPath + file.getName(), file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Reads the specified entry of the snapshot into the {@code JSON} representation of the nodes.
+     *
+     * @param platformPath Platform path of the entry (i.e. relative to the {@code jcr_root}).
+     * @param name File or zip entry name of the entry.
+     * @throws IOException If the entry cannot be read.
+     */
+    private void readEntry(final String platformPath, final String name) throws IOException {
+        int lastSlash = platformPath.lastIndexOf('/');
+        String directory = (lastSlash < 0) ? "" : platformPath.substring(0, lastSlash);
+        String fileName = platformPath.substring(lastSlash + 1);
+        if (CONTENT_XML.equals(fileName)) {
+            // The document view of an nt:file node is within the ".dir" directory alongside the file.
+            String nodePlatformPath = directory.endsWith(FILE_DIRECTORY_SUFFIX) ?
+                    directory.substring(0, directory.length() - FILE_DIRECTORY_SUFFIX.length()) : directory;
+            InputStream in = open(name);
+            try {
+                readDocView(in, getOrCreateNode(PlatformNameFormat.getRepositoryPath(nodePlatformPath)));
+            } catch (XMLStreamException e) {
+                LOGGER.log(Level.WARNING, "Unable to parse document view: [{0}]. {1}",
+                        new String[]{platformPath, e.getMessage()});
+            } finally {
+                in.close();
+            }
+        } else if (!(directory + "/").contains(FILE_DIRECTORY_SUFFIX + "/")) {
+            String path = PlatformNameFormat.getRepositoryPath(platformPath);
+            ObjectNode fileNode = getOrCreateNode(path);
+            if (!fileNode.has(JCR_PRIMARY_TYPE)) {
+                fileNode.put(JCR_PRIMARY_TYPE, "nt:file");
+            }
+            ObjectNode contentNode = getOrCreateChild(fileNode, "jcr:content");
+            if (!contentNode.has(JCR_PRIMARY_TYPE)) {
+                contentNode.put(JCR_PRIMARY_TYPE, "nt:resource");
+            }
+            contentNode.put(BINARY_LENGTH_PROPERTY, getLength(name));
+            binaries.put(path, name);
+        }
+    }
+
+    /**
+     * Reads the specified document view into the specified node (and its descendants).
+     *
+     * @param in Stream that contains the document view.
+     * @param node {@code JSON} representation of the root node of the document view.
+     * @throws XMLStreamException If the document view cannot be parsed.
+     */
+    private static void readDocView(final InputStream in, final ObjectNode node) throws XMLStreamException {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+        SimpleDateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.US);
+        SimpleDateFormat ecmaDateFormat = new SimpleDateFormat("EEE MMM dd yyyy HH:mm:ss 'GMT'Z", Locale.US);
+        ecmaDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        List<ObjectNode> nodes = new ArrayList<ObjectNode>();
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    nodes.remove(nodes.size() - 1);
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    ObjectNode elementNode = nodes.isEmpty() ? node : getOrCreateChild(nodes.get(nodes.size() - 1),
+                            getName(reader.getPrefix(), reader.getLocalName()));
+                    nodes.add(elementNode);
+                    for (int index = 0; index < reader.getAttributeCount(); index++) {
+                        JsonNode value = parseValue(reader.getAttributeValue(index), isoDateFormat, ecmaDateFormat);
+                        if (value != null) {
+                            elementNode.set(getName(reader.getAttributePrefix(index),
+                                    reader.getAttributeLocalName(index)), value);
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the {@code JCR} name of the specified {@code XML} name (i.e. decoding the {@code ISO 9075} encoded
+     * characters).
+     *
+     * @param prefix Namespace prefix of the {@code XML} name, or null.
+     * @param localName Local name of the {@code XML} name.
+     * @return {@code JCR} name of the specified {@code XML} name.
+     */
+    private static String getName(final String prefix, final String localName) {
+        String name = ((prefix == null) || (prefix.isEmpty())) ? localName : prefix + ":" + localName;
+        if (!ENCODED_CHARACTER.matcher(name).find()) {
+            return name;
+        }
+        StringBuilder decodedName = new StringBuilder(name.length());
+        for (int index = 0; index < name.length(); index++) {
+            if ((name.startsWith("_x", index)) && (index + 7 <= name.length()) &&
+                    (ENCODED_CHARACTER.matcher(name.substring(index, index + 7)).matches())) {
+                decodedName.append((char) Integer.parseInt(name.substring(index + 2, index + 6), 16));
+                index += 6;
+            } else {
+                decodedName.append(name.charAt(index));
+            }
+        }
+        return decodedName.toString();
+    }
+
+    /**
+     * Returns the {@code JSON} representation of the specified document view property value (e.g. {@code {Long}5} or
+     * {@code {Name}[mix:versionable]}).
+     *
+     * @param value Document view representation of the property value.
+     * @param isoDateFormat {@code SimpleDateFormat} for parsing the {@code ISO8601} dates.
+     * @param ecmaDateFormat {@code SimpleDateFormat} for formatting the {@code ECMA} dates.
+     * @return {@code JSON} representation of the property value, or null if it cannot be represented (i.e. it is a
+     * binary).
+     */
+    private static JsonNode parseValue(final String value, final SimpleDateFormat isoDateFormat,
+            final SimpleDateFormat ecmaDateFormat) {
+        String type = null;
+        String rawValue = value;
+        if ((rawValue.startsWith("{")) && (rawValue.indexOf('}') > 0)) {
+            type = rawValue.substring(1, rawValue.indexOf('}'));
+            rawValue = rawValue.substring(rawValue.indexOf('}') + 1);
+        }
+        if ("Binary".equals(type)) {
+            return null;
+        }
+        if ((rawValue.startsWith("[")) && (rawValue.endsWith("]"))) {
+            ArrayNode arrayNode = JsonNodeFactory.instance.arrayNode();
+            for (String element : split(rawValue.substring(1, rawValue.length() - 1))) {
+                arrayNode.add(convertValue(type, element, isoDateFormat, ecmaDateFormat));
+            }
+            return arrayNode;
+        }
+        return convertValue(type, unescape(rawValue), isoDateFormat, ecmaDateFormat);
+    }
+
+    /**
+     * Returns the {@code JSON} representation of a single property value of the specified type.
+     *
+     * @param type Document view type of the value (e.g. {@code Long}), or null for strings.
+     * @param value Unescaped property value.
+     * @param isoDateFormat {@code SimpleDateFormat} for parsing the {@code ISO8601} dates.
+     * @param ecmaDateFormat {@code SimpleDateFormat} for formatting the {@code ECMA} dates.
+     * @return {@code JSON} representation of the property value.
+     */
+    private static JsonNode convertValue(final String type, final String value, final SimpleDateFormat isoDateFormat,
+            final SimpleDateFormat ecmaDateFormat) {
+        try {
+            if ("Long".equals(type)) {
+                return JsonNodeFactory.instance.numberNode(Long.parseLong(value));
+            } else if (("Double".equals(type)) || ("Decimal".equals(type))) {
+                return JsonNodeFactory.instance.numberNode(Double.parseDouble(value));
+            } else if ("Boolean".equals(type)) {
+                return JsonNodeFactory.instance.booleanNode(Boolean.parseBoolean(value));
+            } else if ("Date".equals(type)) {
+                // The JSON representation of the JCR serializes dates using the ECMA date format.
+                return JsonNodeFactory.instance.textNode(ecmaDateFormat.format(isoDateFormat.parse(value)));
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.FINE, "Invalid {0} value: {1}", new String[]{type, value});
+        } catch (ParseException e) {
+            LOGGER.log(Level.FINE, "Invalid date value: {0}", value);
+        }
+        return JsonNodeFactory.instance.textNode(value);
+    }
+
+    /**
+     * Returns the unescaped values of the specified multiple value property (i.e. split at the unescaped commas).
+     *
+     * @param values Values of the multiple value property, without the enclosing brackets.
+     * @return Unescaped values of the specified multiple value property.
+     */
+    private static List<String> split(final String values) {
+        List<String> splitValues = new ArrayList<String>();
+        if (values.isEmpty()) {
+            return splitValues;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int index = 0; index < values.length(); index++) {
+            char character = values.charAt(index);
+            if ((character == '\\') && (index + 1 < values.length())) {
+                value.append(values.charAt(++index));
+            } else if (character == ',') {
+                splitValues.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(character);
+            }
+        }
+        splitValues.add(value.toString());
+        return splitValues;
+    }
+
+    /**
+     * Returns the unescaped representation of the specified single property value.
+     *
+     * @param value Escaped property value.
+     * @return Unescaped property value.
+     */
+    private static String unescape(final String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescapedValue = new StringBuilder(value.length());
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+            if ((character == '\\') && (index + 1 < value.length())) {
+                character = value.charAt(++index);
+            }
+            unescapedValue.append(character);
+        }
+        return unescapedValue.toString();
+    }
+
+    /**
+     * Sets the primary type of the nodes that were not defined by a document view (i.e. the directories of the
+     * snapshot) to {@code nt:folder}.
+     *
+     * @param node {@code JSON} representation of the node to start from.
+     */
+    private static void setFolderTypes(final ObjectNode node) {
+        if (!node.has(JCR_PRIMARY_TYPE)) {
+            node.put(JCR_PRIMARY_TYPE, "nt:folder");
+        }
+        for (Iterator<JsonNode> children = node.elements(); children.hasNext(); ) {
+            JsonNode child = children.next();
+            if (child.isObject()) {
+                setFolderTypes((ObjectNode) child);
+            }
+        }
+    }
+
+    /**
+     * Returns the {@code JSON} representation of the node at the specified path, creating it (and its ancestors) if
+     * it does not exist.
+     *
+     * @param path Path of the node.
+     * @return {@code JSON} representation of the node at the specified path.
+     */
+    private ObjectNode getOrCreateNode(final String path) {
+        ObjectNode node = root;
+        for (String name : path.split("/")) {
+            if (!name.isEmpty()) {
+                node = getOrCreateChild(node, name);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the {@code JSON} representation of the specified child node, creating it if it does not exist.
+     *
+     * @param node {@code JSON} representation of the parent node.
+     * @param name Name of the child node.
+     * @return {@code JSON} representation of the specified child node.
+     */
+    private static ObjectNode getOrCreateChild(final ObjectNode node, final String name) {
+        JsonNode child = node.get(name);
+        if ((child == null) || (!child.isObject())) {
+            child = node.putObject(name);
+        }
+        return (ObjectNode) child;
+    }
+
+    /**
+     * Returns the {@code JSON} representation of the node at the specified path.
+     *
+     * @param path Path of the node.
+     * @return {@code JSON} representation of the node at the specified path, or null if it does not exist.
+     */
+    private JsonNode getNode(final String path) {
+        JsonNode node = root;
+        for (String name : path.split("/")) {
+            if (!name.isEmpty()) {
+                node = node.get(name);
+                if ((node == null) || (!node.isObject())) {
+                    return null;
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the {@code JSON} representation of the specified node and its descendants up to the specified depth.
+     *
+     * @param node {@code JSON} representation of the node.
+     * @param depth Depth of the descendants to include, or a negative number to include all of the descendants.
+     * @return {@code JSON} representation of the specified node and its descendants up to the specified depth.
+     */
+    private static ObjectNode render(final JsonNode node, final int depth) {
+        ObjectNode renderedNode = JsonNodeFactory.instance.objectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getValue().isObject()) {
+                renderedNode.set(field.getKey(), field.getValue());
+            }
+        }
+        if (depth != 0) {
+            for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getValue().isObject()) {
+                    renderedNode.set(field.getKey(), render(field.getValue(), depth - 1));
+                }
+            }
+        }
+        return renderedNode;
+    }
+
+    /**
+     * Returns the {@code JSON} response to the specified request.
+     *
+     * @param path Decoded path (including the selectors and extension) of the request.
+     * @param parameters Parameters of the request.
+     * @return {@code JSON} response to the specified request, or null if there is no {@code JSON} response.
+     */
+    private JsonNode getJsonResponse(final String path, final Map<String, String> parameters) {
+        if ("/bin/querybuilder.json".equals(path)) {
+            return query(parameters);
+        }
+        if ("/crx/packmgr/list.jsp".equals(path)) {
+            return listPackages(parameters.get("group"));
+        }
+        int lastSlash = path.lastIndexOf('/');
+        // The resource is the longest path that exists, and the remainder contains the selectors and extension.
+        for (int dot = path.lastIndexOf('.'); dot > lastSlash; dot = path.lastIndexOf('.', dot - 1)) {
+            JsonNode node = getNode(path.substring(0, dot));
+            if (node != null) {
+                String[] selectors = path.substring(dot + 1).split("\\.");
+                if (!"json".equals(selectors[selectors.length - 1])) {
+                    return null;
+                }
+                int depth = 0;
+                if (selectors.length > 1) {
+                    String depthSelector = selectors[selectors.length - 2];
+                    depth = "infinity".equals(depthSelector) ? -1 : parseInt(depthSelector, 0);
+                }
+                return render(node, depth);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the {@code QueryBuilder} response of the specified parameters.
+     * <p>
+     * The {@code path} predicates (including those of a group, and whether they include the path itself), the
+     * {@code type} predicate, ordering by path, the paging parameters and the selective hits are supported.
+     *
+     * @param parameters Parameters of the {@code QueryBuilder} request.
+     * @return {@code QueryBuilder} response of the specified parameters.
+     */
+    private JsonNode query(final Map<String, String> parameters) {
+        Map<String, JsonNode> matches = new LinkedHashMap<String, JsonNode>();
+        String type = parameters.get("type");
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (("path".equals(parameter.getKey())) || (parameter.getKey().endsWith("_path"))) {
+                JsonNode node = getNode(parameter.getValue());
+                if (node != null) {
+                    addMatch(matches, parameter.getValue(), node, type,
+                            !Boolean.parseBoolean(parameters.get(parameter.getKey() + ".self")));
+                }
+            }
+        }
+        List<String> paths = new ArrayList<String>(matches.keySet());
+        if ("path".equals(parameters.get("orderby"))) {
+            Collections.sort(paths);
+        }
+        int offset = Math.max(0, parseInt(parameters.get("p.offset"), 0));
+        int limit = parseInt(parameters.get("p.limit"), DEFAULT_QUERY_LIMIT);
+        int end = (limit < 0) ? paths.size() : Math.min(paths.size(), offset + limit);
+        String properties = parameters.get("p.properties");
+        Set<String> selectiveProperties = "selective".equals(parameters.get("p.hits")) && (properties != null) ?
+                new LinkedHashSet<String>(Arrays.asList(properties.trim().split("\\s+"))) : null;
+        ObjectNode response = JsonNodeFactory.instance.objectNode();
+        ArrayNode hits = JsonNodeFactory.instance.arrayNode();
+        for (String path : paths.subList(Math.min(offset, end), end)) {
+            ObjectNode hit = render(matches.get(path), 0);
+            if (selectiveProperties != null) {
+                hit.retain(selectiveProperties);
+            }
+            if ((selectiveProperties == null) || (selectiveProperties.contains("jcr:path"))) {
+                hit.put("jcr:path", path);
+            }
+            hits.add(hit);
+        }
+        response.put("success", true);
+        response.put("results", hits.size());
+        response.put("total", paths.size());
+        response.put("more", false);
+        response.put("offset", offset);
+        response.set("hits", hits);
+        return response;
+    }
+
+    /**
+     * Adds the specified node (unless only its descendants are to be added) and its descendants that are of the
+     * specified type to the matches of a query.
+     *
+     * @param matches {@code Map} of the paths of the matching nodes to their {@code JSON} representation.
+     * @param path Path of the node.
+     * @param node {@code JSON} representation of the node.
+     * @param type Primary type of the matching nodes, or null if they can be of any type.
+     * @param descendantsOnly Whether or not only the descendants of the node are to be added.
+     */
+    private static void addMatch(final Map<String, JsonNode> matches, final String path, final JsonNode node,
+            final String type, final boolean descendantsOnly) {
+        if ((!descendantsOnly) && ((type == null) || (type.equals(node.path(JCR_PRIMARY_TYPE).asText())))) {
+            matches.put(path, node);
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isObject()) {
+                addMatch(matches, path + "/" + field.getKey(), field.getValue(), type, false);
+            }
+        }
+    }
+
+    /**
+     * Returns the package list response of the packages that have been uploaded.
+     *
+     * @param group Group of the packages to list, or null to list all of the packages.
+     * @return Package list response of the packages that have been uploaded.
+     */
+    private static JsonNode listPackages(final String group) {
+        ObjectNode response = JsonNodeFactory.instance.objectNode();
+        ArrayNode results = response.putArray("results");
+        for (String packageName : UPLOADED_PACKAGES.keySet()) {
+            ObjectNode result = results.addObject();
+            result.put("name", packageName);
+            result.put("group", (group == null) ? "data_exporter_packages" : group);
+            // Each listing reports the packages as just built, so that a build being polled for finishes.
+            result.put("lastWrapped", System.currentTimeMillis());
+        }
+        return response;
+    }
+
+    /**
+     * Returns the decoded path of the specified url (i.e. without the scheme, authority and query).
+     *
+     * @param url Url of the request.
+     * @return Decoded path of the specified url.
+     */
+    private static String getPath(final String url) {
+        String path = URL_AUTHORITY.matcher(url).replaceFirst("");
+        int queryIndex = path.indexOf('?');
+        return UrlUtilities.decode((queryIndex < 0) ? path : path.substring(0, queryIndex));
+    }
+
+    /**
+     * Returns the decoded parameters of the query of the specified url.
+     *
+     * @param url Url of the request.
+     * @return Decoded parameters of the query of the specified url.
+     */
+    private static Map<String, String> getParameters(final String url) {
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        int queryIndex = url.indexOf('?');
+        if (queryIndex < 0) {
+            return parameters;
+        }
+        for (String parameter : url.substring(queryIndex + 1).split("&")) {
+            int equalsIndex = parameter.indexOf('=');
+            if (equalsIndex > 0) {
+                parameters.put(UrlUtilities.decode(parameter.substring(0, equalsIndex)),
+                        UrlUtilities.decode(parameter.substring(equalsIndex + 1)));
+            } else if (!parameter.isEmpty()) {
+                parameters.put(UrlUtilities.decode(parameter), "");
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns the integer value of the specified string.
+     *
+     * @param value String to parse.
+     * @param defaultValue Value to return if the string is not an integer.
+     * @return Integer value of the specified string, or the default value if it is not an integer.
+     */
+    private static int parseInt(final String value, final int defaultValue) {
+        try {
+            return (value == null) ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Opens the specified file or zip entry of the snapshot.
+     *
+     * @param name File or zip entry name.
+     * @return Stream of the specified file or zip entry.
+     * @throws IOException If the file or zip entry cannot be opened.
+     */
+    private InputStream open(final String name) throws IOException {
+        if (zipFile == null) {
+            return new FileInputStream(name);
+        }
+        ZipEntry zipEntry = zipFile.getEntry(name);
+        if (zipEntry == null) {
+            throw new IOException("No entry " + name + " in " + snapshot.getPath());
+        }
+        return zipFile.getInputStream(zipEntry);
+    }
+
+    /**
+     * Returns the length of the specified file or zip entry of the snapshot.
+     *
+     * @param name File or zip entry name.
+     * @return Length of the specified file or zip entry.
+     */
+    private long getLength(final String name) {
+        if (zipFile == null) {
+            return new File(name).length();
+        }
+        ZipEntry zipEntry = zipFile.getEntry(name);
+        return (zipEntry == null) ? 0 : Math.max(zipEntry.getSize(), 0);
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final int getNumberOfHosts() {
+        return 1;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Transport getHostTransport(final int index) {
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Set<String> getAbandonedUrls() {
+        synchronized (abandonedUrls) {
+            return new LinkedHashSet<String>(abandonedUrls);
+        }
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final byte[] getData(final String url) {
+        String path = getPath(url);
+        JsonNode jsonNode = getJsonResponse(path, getParameters(url));
+        if (jsonNode != null) {
+            try {
+                return OBJECT_MAPPER.writeValueAsBytes(jsonNode);
+            } catch (JsonProcessingException e) {
+                LOGGER.log(Level.SEVERE, "Unable to serialize response of: [{0}]. {1}",
+                        new String[]{url, e.getMessage()});
+            }
+        }
+        if ((!binaries.containsKey(path)) && (!"/crx/packmgr/service.jsp".equals(path))) {
+            // A missing node is an expected answer of the crawl, rather than a url that could not be retrieved.
+            LOGGER.log(Level.FINE, "No data in snapshot for url: {0}", url);
+            return new byte[]{};
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        getDataAndWriteToOutputSteam(url, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final JsonNode getJsonData(final String url) {
+        JsonNode jsonNode = getJsonResponse(getPath(url), getParameters(url));
+        if (jsonNode == null) {
+            LOGGER.log(Level.FINE, "No JSON data in snapshot for url: {0}", url);
+            return MissingNode.getInstance();
+        }
+        return jsonNode;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final void getDataAndWriteToOutputSteam(final String url, final OutputStream out) {
+        String path = getPath(url);
+        Map<String, String> parameters = getParameters(url);
+        InputStream in = null;
+        try {
+            if (("/crx/packmgr/service.jsp".equals(path)) && (!parameters.containsKey("cmd"))) {
+                File packageFile = UPLOADED_PACKAGES.get(String.valueOf(parameters.get("name")));
+                if (packageFile == null) {
+                    LOGGER.log(Level.SEVERE, "Package was not uploaded to the snapshot: {0}", parameters.get("name"));
+                    abandonedUrls.add(url);
+                    return;
+                }
+                in = new FileInputStream(packageFile);
+            } else if (binaries.containsKey(path)) {
+                in = open(binaries.get(path));
+            } else {
+                JsonNode jsonNode = getJsonResponse(path, parameters);
+                if (jsonNode != null) {
+                    OBJECT_MAPPER.writeValue(out, jsonNode);
+                } else {
+                    LOGGER.log(Level.WARNING, "No data in snapshot for url: {0}", url);
+                    abandonedUrls.add(url);
+                }
+                return;
+            }
+            IOUtils.copy(in, out);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read data from snapshot for url: [{0}]. {1}",
+                    new String[]{url, e.getMessage()});
+            abandonedUrls.add(url);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Unable to close snapshot data: {0}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean post(final String url) {
+        Map<String, String> parameters = getParameters(url);
+        if (("rm".equals(parameters.get("cmd"))) && (parameters.get("name") != null)) {
+            deleteUploadedFile(UPLOADED_PACKAGES.remove(parameters.get("name")));
+        }
+        LOGGER.log(Level.INFO, "Accepted package manager command: {0}", url);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final <T> T postAndReadResponse(final String url, final ResponseReader<T> reader) {
+        LOGGER.log(Level.INFO, "Accepted package manager command: {0}", url);
+        try {
+            return reader.read(new ByteArrayInputStream(SUCCESS_RESPONSE.getBytes(UTF_8)));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read response of url: [{0}]. {1}", new String[]{url, e.getMessage()});
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean trigger(final String url, final int timeout, final ResponseReader<?> reader) {
+        LOGGER.log(Level.INFO, "Accepted package manager command: {0}", url);
+        try {
+            reader.read(new ByteArrayInputStream(SUCCESS_RESPONSE.getBytes(UTF_8)));
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read response of url: [{0}]. {1}", new String[]{url, e.getMessage()});
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean writeData(final String url, final String filename, final String packageName) {
+        File packageFile = new File(filename);
+        if (!packageFile.isFile()) {
+            LOGGER.log(Level.SEVERE, "Unable to upload package to snapshot, no such file: {0}", filename);
+            return false;
+        }
+        File uploadedFile = null;
+        try {
+            uploadedFile = File.createTempFile("data-exporter-snapshot-", ".zip");
+            uploadedFile.deleteOnExit();
+            InputStream in = new FileInputStream(packageFile);
+            try {
+                OutputStream out = new FileOutputStream(uploadedFile);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to upload package to snapshot: [{0}]. {1}",
+                    new String[]{filename, e.getMessage()});
+            deleteUploadedFile(uploadedFile);
+            return false;
+        }
+        deleteUploadedFile(UPLOADED_PACKAGES.put(packageName, uploadedFile));
+        LOGGER.log(Level.INFO, "Uploaded package {0} to snapshot", packageName);
+        return true;
+    }
+
+    /**
+     * Deletes the specified copy of the file of an uploaded package.
+     *
+     * @param uploadedFile Copy of the file of an uploaded package, or null.
+     */
+    private static void deleteUploadedFile(final File uploadedFile) {
+        if ((uploadedFile != null) && (uploadedFile.exists()) && (!uploadedFile.delete())) {
+            LOGGER.log(Level.FINE, "Unable to delete uploaded package: {0}", uploadedFile.getPath());
+        }
+    }
+
+    /**
+     * Closes the zip file of the snapshot.
+     *
+     * @throws IOException If the zip file cannot be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        if (zipFile != null) {
+            zipFile.close();
+        }
+    }
+
+}
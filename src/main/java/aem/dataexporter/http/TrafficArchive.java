@@ -0,0 +1,561 @@
+package aem.dataexporter.http;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Archive of recorded requests and their responses (i.e. the status, the number of milliseconds the response took,
+ * and the body), so that a crawl can be replayed without the hosts.
+ * <p>
+ * The records are appended to a single data file, each one consisting of a header followed by its {@code deflate}
+ * compressed body. As each record is completed its offset is appended to an index file alongside the data file
+ * ({@code <archive>.index}), so that a replay only needs to read the index to locate any response, and reads the
+ * bodies on demand. If the index is missing it is rebuilt by scanning the data file. The archive is appended to, so
+ * that the operations of an export can be recorded into the same archive one after another. A request that is recorded
+ * more than once (e.g. each poll of the package list while a package is building) keeps all of its responses in the
+ * order they were recorded, so that a replay can return them in the same order.
+ */
+public class TrafficArchive implements Closeable {
+
+    /**
+     * Status of a request that was given up on (i.e. did not receive a response).
+     */
+    public static final int NO_RESPONSE = 0;
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TrafficArchive.class.getName());
+    /**
+     * Suffix of the name of the index file.
+     */
+    private static final String INDEX_SUFFIX = ".index";
+    /**
+     * Charset of the keys.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Pattern of the scheme and authority of a url.
+     */
+    private static final Pattern URL_AUTHORITY = Pattern.compile("^[A-Za-z][A-Za-z0-9+.\\-]*://[^/]*");
+    /**
+     * Number of bytes of the fixed part of a record header (i.e. everything but the key).
+     */
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 8 + 8;
+    /**
+     * Data file of the archive.
+     */
+    private final File file;
+    /**
+     * Channel of the data file.
+     */
+    private final FileChannel channel;
+    /**
+     * Writer of the index file, or null if the archive is being replayed.
+     */
+    private final Writer indexWriter;
+    /**
+     * Offsets of the records within the data file, in the order they were recorded, by key.
+     */
+    private final ConcurrentMap<String, List<Long>> offsets = new ConcurrentHashMap<String, List<Long>>();
+    /**
+     * {@code Deflater} that compresses the recorded bodies (guarded by the channel, and ended when the archive is
+     * closed), or null if no response has been recorded yet.
+     */
+    private Deflater deflater;
+
+    /**
+     * Recorded response.
+     */
+    public static final class Entry {
+
+        /**
+         * Status of the response.
+         */
+        private final int status;
+        /**
+         * Number of milliseconds the response took.
+         */
+        private final long elapsedMillis;
+        /**
+         * Number of bytes of the body.
+         */
+        private final long length;
+        /**
+         * Offset of the compressed body within the data file.
+         */
+        private final long bodyOffset;
+        /**
+         * Number of bytes of the compressed body.
+         */
+        private final long compressedLength;
+
+        /**
+         * Constructs a new {@code Entry}.
+         *
+         * @param newStatus Status of the response.
+         * @param newElapsedMillis Number of milliseconds the response took.
+         * @param newLength Number of bytes of the body.
+         * @param newBodyOffset Offset of the compressed body within the data file.
+         * @param newCompressedLength Number of bytes of the compressed body.
+         */
+        private Entry(final int newStatus, final long newElapsedMillis, final long newLength, final long newBodyOffset,
+                final long newCompressedLength) {
+            this.status = newStatus;
+            this.elapsedMillis = newElapsedMillis;
+            this.length = newLength;
+            this.bodyOffset = newBodyOffset;
+            this.compressedLength = newCompressedLength;
+        }
+
+        /**
+         * Returns the status of the response.
+         *
+         * @return Status of the response, or {@code NO_RESPONSE} if the request was given up on.
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the number of milliseconds the response took.
+         *
+         * @return Number of milliseconds the response took.
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Returns the number of bytes of the body.
+         *
+         * @return Number of bytes of the body.
+         */
+        public long getLength() {
+            return length;
+        }
+
+    }
+
+    /**
+     * Constructs a new {@code TrafficArchive}.
+     *
+     * @param newFile Data file of the archive.
+     * @param record Whether the archive is opened to record into (rather than to replay).
+     * @throws IOException If the archive cannot be opened.
+     */
+    private TrafficArchive(final File newFile, final boolean record) throws IOException {
+        this.file = newFile;
+        File indexFile = new File(file.getPath() + INDEX_SUFFIX);
+        if (record) {
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            if (indexFile.length() == 0) {
+                // The index only ever describes the data that precedes it.
+                channel.truncate(0);
+            }
+            this.indexWriter = new OutputStreamWriter(new FileOutputStream(indexFile, true), UTF_8);
+        } else {
+            this.channel = new RandomAccessFile(file, "r").getChannel();
+            this.indexWriter = null;
+            if (indexFile.isFile()) {
+                readIndex(indexFile);
+            } else {
+                LOGGER.log(Level.WARNING, "No index for archive {0}, scanning the records", file.getPath());
+                scan();
+            }
+            LOGGER.log(Level.INFO, "Opened archive {0} with {1} recorded requests",
+                    new Object[]{file.getPath(), offsets.size()});
+        }
+    }
+
+    /**
+     * Returns a {@code TrafficArchive} to record requests into, appending to the specified archive if it exists.
+     *
+     * @param file Data file of the archive.
+     * @return {@code TrafficArchive} to record requests into.
+     * @throws IOException If the archive cannot be opened.
+     */
+    public static TrafficArchive forRecording(final File file) throws IOException {
+        return new TrafficArchive(file, true);
+    }
+
+    /**
+     * Returns a {@code TrafficArchive} to replay the recorded requests of.
+     *
+     * @param file Data file of the archive.
+     * @return {@code TrafficArchive} to replay the recorded requests of.
+     * @throws IOException If the archive cannot be opened.
+     */
+    public static TrafficArchive forReplay(final File file) throws IOException {
+        return new TrafficArchive(file, false);
+    }
+
+    /**
+     * Returns the key of the specified request (i.e. the method followed by the url without its scheme and authority,
+     * so that a recording can be replayed against any host).
+     *
+     * @param method Method of the request (e.g. {@code GET}).
+     * @param url Url of the request.
+     * @return Key of the specified request.
+     */
+    public static String getKey(final String method, final String url) {
+        return method + " " + URL_AUTHORITY.matcher(url).replaceFirst("");
+    }
+
+    /**
+     * Records the response of the specified request, after any earlier responses of the same request.
+     *
+     * @param key Key of the request.
+     * @param status Status of the response, or {@code NO_RESPONSE} if the request was given up on.
+     * @param elapsedMillis Number of milliseconds the response took.
+     * @param body Stream of the body of the response.
+     * @param length Number of bytes of the body.
+     * @throws IOException If the response cannot be recorded.
+     */
+    public final void record(final String key, final int status, final long elapsedMillis, final InputStream body,
+            final long length) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        synchronized (channel) {
+            long offset = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(4 + keyBytes.length + HEADER_LENGTH - 4);
+            header.putInt(keyBytes.length).put(keyBytes).putInt(status).putLong(elapsedMillis).putLong(length);
+            header.putLong(0);
+            header.flip();
+            writeFully(header, offset);
+            long bodyOffset = offset + header.capacity();
+            CountingOutputStream countingOutputStream = new CountingOutputStream(bodyOffset);
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            } else {
+                deflater.reset();
+            }
+            DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(countingOutputStream, deflater);
+            byte[] buffer = new byte[8192];
+            for (int read = body.read(buffer); read >= 0; read = body.read(buffer)) {
+                deflaterOutputStream.write(buffer, 0, read);
+            }
+            deflaterOutputStream.finish();
+            ByteBuffer compressedLength = ByteBuffer.allocate(8);
+            compressedLength.putLong(countingOutputStream.position - bodyOffset).flip();
+            writeFully(compressedLength, bodyOffset - 8);
+            indexWriter.write(offset + "\t" + key + "\n");
+            indexWriter.flush();
+            addOffset(key, offset);
+        }
+    }
+
+    /**
+     * Returns the specified recorded response of the specified request, or its last recorded response if it was
+     * recorded fewer times (i.e. a replay that sends the request more often than it was recorded keeps receiving the
+     * last response).
+     *
+     * @param key Key of the request.
+     * @param ordinal Ordinal of the response (from {@code 0}, in the order the responses were recorded).
+     * @return Recorded response of the specified request, or null if it was not recorded.
+     * @throws IOException If the response cannot be read.
+     */
+    public final Entry get(final String key, final int ordinal) throws IOException {
+        List<Long> keyOffsets = offsets.get(key);
+        if (keyOffsets == null) {
+            return null;
+        }
+        return readEntry(keyOffsets.get(Math.min(Math.max(ordinal, 0), keyOffsets.size() - 1)));
+    }
+
+    /**
+     * Returns the recorded response of the record at the specified offset.
+     *
+     * @param offset Offset of the record.
+     * @return Recorded response of the record.
+     * @throws IOException If the response cannot be read.
+     */
+    private Entry readEntry(final long offset) throws IOException {
+        ByteBuffer keyLength = ByteBuffer.allocate(4);
+        readFully(keyLength, offset);
+        int headerOffset = 4 + keyLength.getInt(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH - 4);
+        readFully(header, offset + headerOffset);
+        header.flip();
+        return new Entry(header.getInt(), header.getLong(), header.getLong(),
+                offset + headerOffset + HEADER_LENGTH - 4, header.getLong());
+    }
+
+    /**
+     * Returns a stream of the (decompressed) body of the specified recorded response.
+     *
+     * @param entry Recorded response.
+     * @return Stream of the body of the specified recorded response.
+     */
+    public final InputStream openBody(final Entry entry) {
+        return new InflaterInputStream(new ChannelInputStream(entry.bodyOffset, entry.compressedLength));
+    }
+
+    /**
+     * Returns the (decompressed) body of the specified recorded response.
+     *
+     * @param entry Recorded response.
+     * @return Body of the specified recorded response.
+     * @throws IOException If the body cannot be read.
+     */
+    public final byte[] readBody(final Entry entry) throws IOException {
+        byte[] body = new byte[(int) entry.length];
+        InputStream in = openBody(entry);
+        try {
+            int offset = 0;
+            while (offset < body.length) {
+                int read = in.read(body, offset, body.length - offset);
+                if (read < 0) {
+                    throw new EOFException("Truncated body in archive " + file.getPath());
+                }
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        return body;
+    }
+
+    /**
+     * Closes the data and index files of the archive, and releases the native memory of its {@code Deflater}.
+     *
+     * @throws IOException If the archive cannot be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        try {
+            if (indexWriter != null) {
+                indexWriter.close();
+            }
+        } finally {
+            synchronized (channel) {
+                if (deflater != null) {
+                    deflater.end();
+                    deflater = null;
+                }
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the offsets of the records from the specified index file (ignoring a partially written last line).
+     *
+     * @param indexFile Index file of the archive.
+     * @throws IOException If the index file cannot be read.
+     */
+    private void readIndex(final File indexFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), UTF_8));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int tabIndex = line.indexOf('\t');
+                if (tabIndex > 0) {
+                    try {
+                        addOffset(line.substring(tabIndex + 1), Long.parseLong(line.substring(0, tabIndex)));
+                    } catch (NumberFormatException e) {
+                        LOGGER.log(Level.WARNING, "Ignoring invalid index line: {0}", line);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Rebuilds the offsets of the records by scanning the data file (ignoring a partially written last record).
+     *
+     * @throws IOException If the data file cannot be read.
+     */
+    private void scan() throws IOException {
+        long offset = 0;
+        long size = channel.size();
+        while (offset + 4 <= size) {
+            ByteBuffer keyLength = ByteBuffer.allocate(4);
+            readFully(keyLength, offset);
+            ByteBuffer key = ByteBuffer.allocate(keyLength.getInt(0));
+            readFully(key, offset + 4);
+            Entry entry = index(offset, new String(key.array(), UTF_8));
+            if ((entry.compressedLength <= 0) || (entry.bodyOffset + entry.compressedLength > size)) {
+                break;
+            }
+            offset = entry.bodyOffset + entry.compressedLength;
+        }
+    }
+
+    /**
+     * Adds the record at the specified offset to the offsets, and returns its recorded response.
+     *
+     * @param offset Offset of the record.
+     * @param key Key of the record.
+     * @return Recorded response of the record.
+     * @throws IOException If the record cannot be read.
+     */
+    private Entry index(final long offset, final String key) throws IOException {
+        addOffset(key, offset);
+        return readEntry(offset);
+    }
+
+    /**
+     * Adds the offset of a record of the specified key, after the offsets of its earlier records.
+     *
+     * @param key Key of the record.
+     * @param offset Offset of the record.
+     */
+    private void addOffset(final String key, final long offset) {
+        List<Long> keyOffsets = offsets.get(key);
+        if (keyOffsets == null) {
+            keyOffsets = new CopyOnWriteArrayList<Long>();
+            List<Long> existingOffsets = offsets.putIfAbsent(key, keyOffsets);
+            if (existingOffsets != null) {
+                keyOffsets = existingOffsets;
+            }
+        }
+        keyOffsets.add(offset);
+    }
+
+    /**
+     * Writes the whole of the specified buffer to the data file at the specified position.
+     *
+     * @param buffer Buffer to write.
+     * @param position Position to write the buffer at.
+     * @throws IOException If the buffer cannot be written.
+     */
+    private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    /**
+     * Fills the specified buffer from the data file at the specified position.
+     *
+     * @param buffer Buffer to fill.
+     * @param position Position to read the buffer from.
+     * @throws IOException If the buffer cannot be filled.
+     */
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                throw new EOFException("Truncated archive " + file.getPath());
+            }
+            readPosition += read;
+        }
+    }
+
+    /**
+     * {@code OutputStream} that writes to the data file from a position, and counts the bytes written.
+     */
+    private final class CountingOutputStream extends OutputStream {
+
+        /**
+         * Position of the next byte to write.
+         */
+        private long position;
+
+        /**
+         * Constructs a new {@code CountingOutputStream}.
+         *
+         * @param newPosition Position of the first byte to write.
+         */
+        private CountingOutputStream(final long newPosition) {
+            this.position = newPosition;
+        }
+
+        /**
+         * {@inheritDoc}.
+         */
+        @Override
+        public void write(final int value) throws IOException {
+            write(new byte[]{(byte) value}, 0, 1);
+        }
+
+        /**
+         * {@inheritDoc}.
+         */
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            writeFully(ByteBuffer.wrap(bytes, offset, length), position);
+            position += length;
+        }
+
+    }
+
+    /**
+     * {@code InputStream} that reads a range of the data file using positional reads (so that many streams can read
+     * the data file at the same time).
+     */
+    private final class ChannelInputStream extends InputStream {
+
+        /**
+         * Position of the next byte to read.
+         */
+        private long position;
+        /**
+         * Position after the last byte to read.
+         */
+        private final long end;
+
+        /**
+         * Constructs a new {@code ChannelInputStream}.
+         *
+         * @param newPosition Position of the first byte to read.
+         * @param length Number of bytes to read.
+         */
+        private ChannelInputStream(final long newPosition, final long length) {
+            this.position = newPosition;
+            this.end = newPosition + length;
+        }
+
+        /**
+         * {@inheritDoc}.
+         */
+        @Override
+        public int read() throws IOException {
+            byte[] value = new byte[1];
+            return (read(value, 0, 1) < 0) ? -1 : (value[0] & 0xff);
+        }
+
+        /**
+         * {@inheritDoc}.
+         */
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position)), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package aem.dataexporter.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * Transport of the {@code JCR} reads and package manager commands of the data exporter.
+ * <p>
+ * The requests are addressed by url (i.e. the host followed by the {@code Sling} path, selectors and query), so that
+ * the crawl and packaging are independent of where the content is actually read from: the {@code HttpReader} sends
+ * them to the {@code AEM} hosts, whereas the {@code SnapshotTransport} serves them from a local snapshot of the
+ * {@code JCR}.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Returns the number of hosts that the requests are distributed across.
+     *
+     * @return Number of hosts that the requests are distributed across.
+     */
+    int getNumberOfHosts();
+
+    /**
+     * Returns the {@code Transport} that sends all of its requests to the host assigned the specified index (e.g. the
+     * number of a package), so that related requests (such as uploading, building and downloading a package) are all
+     * sent to the same host.
+     *
+     * @param index Index to return the {@code Transport} for.
+     * @return {@code Transport} that sends all of its requests to the host assigned the specified index.
+     */
+    Transport getHostTransport(int index);
+
+    /**
+     * Returns the urls that were given up on, in the order that they were given up on.
+     *
+     * @return Urls that were given up on.
+     */
+    Set<String> getAbandonedUrls();
+
+    /**
+     * Returns the {@code byte[]} that represents the data retrieved from the provided url.
+     *
+     * @param url Url to retrieve data from.
+     * @return {@code byte[]} that represents the data retrieved from the provided url, or an empty {@code byte[]} if
+     * the data could not be retrieved.
+     */
+    byte[] getData(String url);
+
+    /**
+     * Returns the {@code JsonNode} that represents the {@code JSON} data retrieved from the provided url.
+     *
+     * @param url Url to retrieve {@code JSON} data from.
+     * @return {@code JsonNode} that represents the data retrieved from the provided url, or a {@code MissingNode} if
+     * the {@code JSON} data could not be retrieved.
+     */
+    JsonNode getJsonData(String url);
+
+    /**
+     * Retrieves the data from the provided url and writes it to the specified {@code OutputStream}.
+     * <p>
+     * If the data cannot be retrieved (e.g. it does not exist), the url is recorded in the abandoned urls, so that the
+     * caller can tell an incomplete or missing body from an empty one.
+     *
+     * @param url URL to retrieve data from.
+     * @param out {@code OutputStream} to write data to.
+     */
+    void getDataAndWriteToOutputSteam(String url, OutputStream out);
+
+    /**
+     * Post method.
+     *
+     * @param url Url to post to.
+     * @return True if the post was successful; otherwise false.
+     */
+    boolean post(String url);
+
+    /**
+     * Posts to the provided url and reads the response with the specified {@code ResponseReader} while it is being
+     * received.
+     *
+     * @param url Url to post to.
+     * @param reader {@code ResponseReader} to read the response with.
+     * @param <T> Type of the value read from the response.
+     * @return Value read from the response, or null if the post fails or the response cannot be read.
+     */
+    <T> T postAndReadResponse(String url, ResponseReader<T> reader);
+
+    /**
+     * Posts to the provided url without waiting longer than the specified timeout for a response, and reads the
+     * response if it is received within the timeout (i.e. the operation has already finished on the server).
+     *
+     * @param url Url to post to.
+     * @param timeout Number of milliseconds to wait for a response.
+     * @param reader {@code ResponseReader} to read the response with, which is not called if the response is not
+     * received within the timeout.
+     * @return True if the post was triggered (and its response, if received, could be read); otherwise false.
+     */
+    boolean trigger(String url, int timeout, ResponseReader<?> reader);
+
+    /**
+     * Uploads the specified package file to the provided url.
+     *
+     * @param url Url to write data to.
+     * @param filename Name of the file to write to provided url.
+     * @param packageName Name of the package to upload.
+     * @return True if the data was written successfully; otherwise false.
+     */
+    boolean writeData(String url, String filename, String packageName);
+
+}
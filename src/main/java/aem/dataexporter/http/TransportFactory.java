@@ -0,0 +1,197 @@
+package aem.dataexporter.http;
+
+import aem.dataexporter.utilities.ExitPolicy;
+import aem.dataexporter.utilities.ProgramArgument;
+import aem.dataexporter.utilities.ProgramArguments;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the {@code Transport} of an operation from its program arguments.
+ */
+public final class TransportFactory {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TransportFactory.class.getName());
+    /**
+     * Value of the replay latency argument that replays the recorded latency of each request.
+     */
+    private static final String RECORDED_LATENCY = "recorded";
+    /**
+     * {@code HttpReader}s that are shared across the operations, by the hosts, credentials and retries they were
+     * created for.
+     */
+    private static final Map<String, HttpReader> SHARED_READERS = new HashMap<String, HttpReader>();
+    /**
+     * {@code TrafficArchive}s that are shared across the operations, by whether they record or replay and their file
+     * (so that concurrent operations that record into the same file append through the same lock).
+     */
+    private static final Map<String, TrafficArchive> SHARED_ARCHIVES = new HashMap<String, TrafficArchive>();
+    /**
+     * Whether or not the {@code HttpReader}s (i.e. their connection pools) and {@code TrafficArchive}s are shared
+     * across the operations.
+     */
+    private static volatile boolean shareConnections = false;
+
+    /**
+     * Constructs a new {@code TransportFactory}.
+     */
+    private TransportFactory() {
+    }
+
+    /**
+     * Sets whether or not the {@code HttpReader}s (i.e. their connection pools) are shared across the operations that
+     * connect to the same hosts with the same credentials, and the {@code TrafficArchive}s across the operations that
+     * record into or replay the same file, e.g. across the jobs of the {@code ExporterDaemon}.
+     *
+     * @param value True to share the {@code HttpReader}s and {@code TrafficArchive}s across the operations; otherwise
+     * false.
+     */
+    public static void setShareConnections(final boolean value) {
+        shareConnections = value;
+    }
+
+    /**
+     * Returns the {@code Transport} for the specified program arguments: a {@code ReplayTransport} if an archive to
+     * replay is specified, a {@code SnapshotTransport} if a snapshot is specified, otherwise an {@code HttpReader} that
+     * distributes the requests across the hosts. The {@code SnapshotTransport} or {@code HttpReader} is wrapped in a
+     * {@code RecordingTransport} if an archive to record into is specified.
+     *
+     * @param programArguments Program arguments.
+     * @return {@code Transport} for the specified program arguments.
+     */
+    public static Transport createTransport(final ProgramArguments programArguments) {
+        try {
+            if (programArguments.has(ProgramArgument.REPLAY)) {
+                File file = new File(programArguments.get(ProgramArgument.REPLAY));
+                return shareConnections ?
+                        new ReplayTransport(getSharedArchive(file, false), getReplayLatency(programArguments), false) :
+                        new ReplayTransport(TrafficArchive.forReplay(file), getReplayLatency(programArguments));
+            }
+            Transport transport;
+            if (programArguments.has(ProgramArgument.SNAPSHOT)) {
+                transport = createSnapshotTransport(new File(programArguments.get(ProgramArgument.SNAPSHOT)));
+            } else if (shareConnections) {
+                transport = getSharedReader(programArguments).newSession();
+            } else {
+                transport = createReader(programArguments);
+            }
+            if (programArguments.has(ProgramArgument.RECORD)) {
+                File file = new File(programArguments.get(ProgramArgument.RECORD));
+                return shareConnections ? new RecordingTransport(transport, getSharedArchive(file, true), false) :
+                        new RecordingTransport(transport, TrafficArchive.forRecording(file));
+            }
+            return transport;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to open archive: {0}", e.getMessage());
+            ExitPolicy.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Closes the specified {@code Transport} of an operation, logging (rather than failing the operation) if it cannot
+     * be closed. A shared connection pool or {@code TrafficArchive} is left open.
+     *
+     * @param transport {@code Transport} to close.
+     */
+    public static void closeTransport(final Transport transport) {
+        try {
+            transport.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to close transport: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the shared {@code TrafficArchive} of the specified file, opening it if it is not open yet.
+     *
+     * @param file Data file of the archive.
+     * @param record True to record into the archive, or false to replay it.
+     * @return Shared {@code TrafficArchive} of the specified file.
+     * @throws IOException If the archive cannot be opened.
+     */
+    private static TrafficArchive getSharedArchive(final File file, final boolean record) throws IOException {
+        String key = (record ? "record\n" : "replay\n") + file.getCanonicalPath();
+        synchronized (SHARED_ARCHIVES) {
+            TrafficArchive trafficArchive = SHARED_ARCHIVES.get(key);
+            if (trafficArchive == null) {
+                trafficArchive = record ? TrafficArchive.forRecording(file) : TrafficArchive.forReplay(file);
+                SHARED_ARCHIVES.put(key, trafficArchive);
+            }
+            return trafficArchive;
+        }
+    }
+
+    /**
+     * Returns a new {@code SnapshotTransport} of the specified snapshot, exiting if the snapshot cannot be read (as an
+     * export of a partly read snapshot would silently leave content out).
+     *
+     * @param snapshot Directory or zip file that contains the {@code jcr_root} of the snapshot.
+     * @return New {@code SnapshotTransport} of the specified snapshot.
+     */
+    private static SnapshotTransport createSnapshotTransport(final File snapshot) {
+        try {
+            return new SnapshotTransport(snapshot);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read snapshot: [{0}]. {1}",
+                    new String[]{snapshot.getPath(), e.getMessage()});
+            ExitPolicy.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a new {@code HttpReader} that distributes the requests across the hosts.
+     *
+     * @param programArguments Program arguments.
+     * @return New {@code HttpReader} that distributes the requests across the hosts.
+     */
+    private static HttpReader createReader(final ProgramArguments programArguments) {
+        return new HttpReader(programArguments.get(ProgramArgument.USERNAME),
+                programArguments.get(ProgramArgument.PASSWORD), HostPool.forUrls(programArguments.getHosts()),
+                new RetryPolicy(programArguments.getInt(ProgramArgument.MAX_RETRIES, RetryPolicy.DEFAULT_MAX_RETRIES)));
+    }
+
+    /**
+     * Returns the shared {@code HttpReader} for the hosts, credentials and retries of the specified program arguments,
+     * creating it if it does not exist yet.
+     *
+     * @param programArguments Program arguments.
+     * @return Shared {@code HttpReader} for the hosts, credentials and retries of the specified program arguments.
+     */
+    private static HttpReader getSharedReader(final ProgramArguments programArguments) {
+        String key = programArguments.getHosts() + "\n" + programArguments.get(ProgramArgument.USERNAME) + "\n"
+                + programArguments.get(ProgramArgument.PASSWORD) + "\n"
+                + programArguments.getInt(ProgramArgument.MAX_RETRIES, RetryPolicy.DEFAULT_MAX_RETRIES);
+        synchronized (SHARED_READERS) {
+            HttpReader httpReader = SHARED_READERS.get(key);
+            if (httpReader == null) {
+                httpReader = createReader(programArguments);
+                SHARED_READERS.put(key, httpReader);
+            }
+            return httpReader;
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds to delay each replayed response by.
+     *
+     * @param programArguments Program arguments.
+     * @return Number of milliseconds to delay each replayed response by, or {@code ReplayTransport.RECORDED_LATENCY}.
+     */
+    private static long getReplayLatency(final ProgramArguments programArguments) {
+        if (RECORDED_LATENCY.equalsIgnoreCase(programArguments.get(ProgramArgument.REPLAY_LATENCY))) {
+            return ReplayTransport.RECORDED_LATENCY;
+        }
+        return programArguments.getInt(ProgramArgument.REPLAY_LATENCY, 0);
+    }
+
+}
@@ -5,10 +5,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,108 +17,332 @@ import java.util.logging.Logger;
  */
 public class JsonJcrParser {
 
+    /**
+     * Default prefix of the content paths that are treated as references.
+     */
+    public static final String DEFAULT_REFERENCE_PREFIX = "/content/dam";
     /**
      * Logger.
      */
     private static final Logger LOGGER = Logger.getLogger(JsonJcrParser.class.getName());
+    /**
+     * Name of the property that contains the path of a node.
+     */
+    private static final String JCR_PATH = "jcr:path";
+    /**
+     * Extension of the {@code JSON} representation of {@code JCR} data.
+     */
+    private static final String JSON_EXTENSION = ".json";
+    /**
+     * Name of the property that contains the primary type of a node.
+     */
+    private static final String JCR_PRIMARY_TYPE = "jcr:primaryType";
+    /**
+     * Namespaces of the {@code cq}, {@code jcr} and {@code sling} properties (and nodes).
+     */
+    private static final String[] SYSTEM_NAMESPACES = {"cq:", "jcr:", "sling:"};
+    /**
+     * {@code ObjectMapper} to use to read the {@code JSON} data (which is thread safe once configured).
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * {@code ReferenceRule}s that determine which property values are treated as references.
+     */
+    private final ReferenceRule[] referenceRules;
+
+    /**
+     * Constructs a new {@code JsonJcrParser} that treats {@code /content/dam} content paths as references.
+     */
+    public JsonJcrParser() {
+        this(DEFAULT_REFERENCE_PREFIX);
+    }
+
+    /**
+     * Constructs a new {@code JsonJcrParser}.
+     *
+     * @param referencePrefixes Prefixes of the content paths that are treated as references.
+     */
+    public JsonJcrParser(final String... referencePrefixes) {
+        this.referenceRules = new ReferenceRule[referencePrefixes.length];
+        for (int index = 0; index < referencePrefixes.length; index++) {
+            referenceRules[index] = ReferenceRule.forPrefix(referencePrefixes[index]);
+        }
+    }
+
+    /**
+     * Constructs a new {@code JsonJcrParser}.
+     *
+     * @param newReferenceRules {@code ReferenceRule}s that determine which property values are treated as references.
+     */
+    public JsonJcrParser(final List<ReferenceRule> newReferenceRules) {
+        this.referenceRules = newReferenceRules.toArray(new ReferenceRule[newReferenceRules.size()]);
+    }
 
     /**
      * Returns the content paths extracted from the specified {@code JCR} data.
+     * <p>
+     * The {@code JCR} returns an array of alternative urls (i.e. {@code <path>.3.json}, {@code <path>.2.json} etc.)
+     * rather than the data itself when the requested data is going to be too big. In that case no content paths are
+     * returned, and the alternatives are added to the specified {@code List} so that they can be followed by the
+     * caller.
      *
      * @param path Path {@code JSON} data was retrieved from.
      * @param data {@code JSON} representation of {@code JCR} data.
-     * @return Content paths extracted from the specified {@code JCR} data.
+     * @param selectorAlternatives {@code List} to add the alternative urls to.
+     * @return {@code Map} of the content paths extracted from the specified {@code JCR} data to the
+     * {@code ReferenceRule} that they matched.
      */
-    public final Set<String> getContentPaths(final String path, final byte[] data) {
-        Set<String> contentPaths = new HashSet<String>();
-        ObjectMapper objectMapper = new ObjectMapper();
+    public final Map<String, ReferenceRule> getContentPaths(final String path, final byte[] data,
+            final List<String> selectorAlternatives) {
         try {
-            JsonNode jsonNode = objectMapper.readTree(data);
-            if (jsonNode.isArray()) {
-                // The first entry will be the most specific.
-                // The CQ json will return numerous versions if the ".inifinity" version is going to be too big. Since
-                // we always want the most specific one, it will always be the first entry (i.e. <path>.3.json).
-                contentPaths.add(jsonNode.get(0).textValue());
-            } else if (jsonNode.isObject()) {
-                contentPaths.addAll(getJcrContentPaths(jsonNode));
-            }
+            return getContentPaths(OBJECT_MAPPER.readTree(data), selectorAlternatives);
         } catch (IOException e) {
             // This only needs fine logging since it is caused by missing asset information, and the JCR returning 404.
             LOGGER.log(Level.FINE, "Unable to parse JSON data at: [{0}], [{1}]. {2}",
                     new String[]{path, new String(data), e.getMessage()});
         }
+        return new LinkedHashMap<String, ReferenceRule>();
+    }
+
+    /**
+     * Returns the content paths extracted from the specified (already parsed) {@code JCR} data.
+     *
+     * @param jsonNode {@code JsonNode} that represents the {@code JCR} data.
+     * @param selectorAlternatives {@code List} to add the alternative urls to.
+     * @return {@code Map} of the content paths extracted from the specified {@code JCR} data to the
+     * {@code ReferenceRule} that they matched.
+     * @see #getContentPaths(String, byte[], List)
+     */
+    public final Map<String, ReferenceRule> getContentPaths(final JsonNode jsonNode,
+            final List<String> selectorAlternatives) {
+        Map<String, ReferenceRule> contentPaths = new LinkedHashMap<String, ReferenceRule>();
+        if ((jsonNode != null) && (jsonNode.isArray())) {
+            addSelectorAlternatives(selectorAlternatives, jsonNode);
+        } else if ((jsonNode != null) && (jsonNode.isObject())) {
+            populateJcrContentPaths(contentPaths, jsonNode);
+        }
         return contentPaths;
     }
 
     /**
-     * Returns the page content paths extracted from the specified {@code JCR} data.
+     * Returns the content paths extracted from the specified {@code JsonNode} (e.g. a {@code QueryBuilder} hit).
+     *
+     * @param jsonNode {@code JsonNode} to extract content paths from.
+     * @return {@code Map} of the content paths extracted from the specified {@code JsonNode} to the
+     * {@code ReferenceRule} that they matched.
+     */
+    public final Map<String, ReferenceRule> getContentPaths(final JsonNode jsonNode) {
+        Map<String, ReferenceRule> contentPaths = new LinkedHashMap<String, ReferenceRule>();
+        populateJcrContentPaths(contentPaths, jsonNode);
+        return contentPaths;
+    }
+
+    /**
+     * Returns the {@code JsonNode} that represents the specified {@code JCR} data.
+     * <p>
+     * The {@code JCR} returns an array of alternative urls rather than the data itself when the requested data is going
+     * to be too big. In that case null is returned, and the alternatives are added to the specified {@code List} so
+     * that they can be followed by the caller.
      *
      * @param path Path {@code JSON} data was retrieved from.
      * @param data {@code JSON} representation of {@code JCR} data.
-     * @return Page content paths extracted from the specified {@code JCR} data.
+     * @param selectorAlternatives {@code List} to add the alternative urls to.
+     * @return {@code JsonNode} that represents the specified {@code JCR} data, or null if it is not a {@code JCR} node.
      */
-    public final Set<String> getPageContentPaths(final String path, final byte[] data) {
-        Set<String> pageContentPaths = new HashSet<String>();
-        ObjectMapper objectMapper = new ObjectMapper();
+    public final JsonNode getNode(final String path, final byte[] data, final List<String> selectorAlternatives) {
         try {
-            JsonNode jsonNode = objectMapper.readTree(data);
-            if (jsonNode.isArray()) {
-                // The first entry will be the most specific.
-                // The CQ json will return numerous versions if the ".inifinity" version is going to be too big. Since
-                // we always want the most specific one, it will always be the first entry (i.e. <path>.3.json).
-                pageContentPaths.add(jsonNode.get(0).textValue());
-            } else if (jsonNode.isObject()) {
-                pageContentPaths.addAll(getPageContentPaths(path, jsonNode));
-            }
+            return getNode(OBJECT_MAPPER.readTree(data), selectorAlternatives);
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Unable to parse JSON data at: [{0}], [{1}]. {2}",
                     new String[]{path, new String(data), e.getMessage()});
         }
+        return null;
+    }
+
+    /**
+     * Returns the specified (already parsed) {@code JCR} data if it is a {@code JCR} node.
+     *
+     * @param jsonNode {@code JsonNode} that represents the {@code JCR} data.
+     * @param selectorAlternatives {@code List} to add the alternative urls to.
+     * @return Specified {@code JsonNode}, or null if it is not a {@code JCR} node.
+     * @see #getNode(String, byte[], List)
+     */
+    public final JsonNode getNode(final JsonNode jsonNode, final List<String> selectorAlternatives) {
+        if ((jsonNode != null) && (jsonNode.isArray())) {
+            addSelectorAlternatives(selectorAlternatives, jsonNode);
+        } else if ((jsonNode != null) && (jsonNode.isObject())) {
+            return jsonNode;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the page content paths extracted from the specified {@code JCR} data, which was retrieved using a
+     * {@code .<depth>.json} selector.
+     * <p>
+     * The {@code JCR} returns an array of alternative urls rather than the data itself when the requested data is going
+     * to be too big. In that case no page content paths are returned, and the alternatives are added to the specified
+     * {@code List} so that they can be followed by the caller.
+     *
+     * @param path Path {@code JSON} data was retrieved from.
+     * @param data {@code JSON} representation of {@code JCR} data.
+     * @param depth Depth of the {@code JCR} data (i.e. the numeric selector it was retrieved with).
+     * @param selectorAlternatives {@code List} to add the alternative urls to.
+     * @return {@code Map} of the page content paths extracted from the specified {@code JCR} data to their depth
+     * relative to the specified path.
+     */
+    public final Map<String, Integer> getPageContentPaths(final String path, final byte[] data, final int depth,
+            final List<String> selectorAlternatives) {
+        try {
+            return getPageContentPaths(path, OBJECT_MAPPER.readTree(data), depth, selectorAlternatives);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to parse JSON data at: [{0}], [{1}]. {2}",
+                    new String[]{path, new String(data), e.getMessage()});
+        }
+        return new LinkedHashMap<String, Integer>();
+    }
+
+    /**
+     * Returns the page content paths extracted from the specified (already parsed) {@code JCR} data, which was
+     * retrieved using a {@code .<depth>.json} selector.
+     *
+     * @param path Path {@code JSON} data was retrieved from.
+     * @param jsonNode {@code JsonNode} that represents the {@code JCR} data.
+     * @param depth Depth of the {@code JCR} data (i.e. the numeric selector it was retrieved with).
+     * @param selectorAlternatives {@code List} to add the alternative urls to.
+     * @return {@code Map} of the page content paths extracted from the specified {@code JCR} data to their depth
+     * relative to the specified path.
+     * @see #getPageContentPaths(String, byte[], int, List)
+     */
+    public final Map<String, Integer> getPageContentPaths(final String path, final JsonNode jsonNode, final int depth,
+            final List<String> selectorAlternatives) {
+        Map<String, Integer> pageContentPaths = new LinkedHashMap<String, Integer>();
+        if ((jsonNode != null) && (jsonNode.isArray())) {
+            addSelectorAlternatives(selectorAlternatives, jsonNode);
+        } else if ((jsonNode != null) && (jsonNode.isObject())) {
+            populatePageContentPaths(pageContentPaths, path, jsonNode, 1, depth);
+        }
         return pageContentPaths;
     }
 
     /**
-     * Returns an {@code Set} that contains the content paths for {@code DAM} based content which is referenced within
-     * the {@code jcr:content} of the specified {@code JsonNode}.
+     * Returns the depth of the specified alternative url (i.e. {@code 3} for {@code <path>.3.json}).
+     *
+     * @param path Path the alternative url was returned for.
+     * @param selectorAlternative Alternative url returned for the path.
+     * @return Depth of the specified alternative url, or -1 if it is not an alternative url for the specified path.
+     */
+    public static int getSelectorDepth(final String path, final String selectorAlternative) {
+        int start = path.length() + 1;
+        int end = selectorAlternative.length() - JSON_EXTENSION.length();
+        if ((end > start) && (selectorAlternative.startsWith(path)) && (selectorAlternative.charAt(start - 1) == '.') &&
+                (selectorAlternative.endsWith(JSON_EXTENSION))) {
+            try {
+                return Integer.parseInt(selectorAlternative.substring(start, end));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, "Unrecognized selector alternative: {0}", selectorAlternative);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the alternative urls contained within the specified {@code JsonNode} to the specified {@code List}.
+     * <p>
+     * The first entry will be the most specific, since the {@code JCR} orders the alternatives from the deepest to the
+     * shallowest.
      *
-     * @param jsonNode {@code JsonNode} to determine content paths for {@code DAM} based content for.
-     * @return {@code Set} that contains the content paths for {@code DAM} based content which is referenced within the
-     * {@code jcr:content} of the specified {@code JsonNode}.
+     * @param selectorAlternatives {@code List} to add the alternative urls to.
+     * @param jsonNode {@code JsonNode} that contains the array of alternative urls.
      */
-    private Set<String> getJcrContentPaths(final JsonNode jsonNode) {
-        Set<String> jcrContentPaths = new HashSet<String>();
+    private void addSelectorAlternatives(final List<String> selectorAlternatives, final JsonNode jsonNode) {
+        for (JsonNode alternative : jsonNode) {
+            if (alternative.isTextual()) {
+                selectorAlternatives.add(alternative.textValue());
+            }
+        }
+    }
+
+    /**
+     * Populates the {@code Map} that contains the content paths which are referenced within the {@code jcr:content} of
+     * the specified {@code JsonNode}.
+     * <p>
+     * Every textual value (including the values of arrays) is tested against the {@code ReferenceRule}s in the same
+     * pass over the {@code JSON} data, and the first matching rule determines the kind of the reference. Content paths
+     * that match an ignored rule are not added.
+     *
+     * @param jcrContentPaths {@code Map} of the content paths to the {@code ReferenceRule} that they matched.
+     * @param jsonNode {@code JsonNode} to determine content paths for.
+     */
+    private void populateJcrContentPaths(final Map<String, ReferenceRule> jcrContentPaths, final JsonNode jsonNode) {
         for (Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields(); fields.hasNext(); ) {
             Map.Entry<String, JsonNode> field = fields.next();
-            if (field.getValue().isObject()) {
-                jcrContentPaths.addAll(getJcrContentPaths(field.getValue()));
-            } else if ((field.getValue().isTextual()) && (field.getValue().textValue().startsWith("/content/dam"))) {
-                jcrContentPaths.add(field.getValue().textValue());
+            if (JCR_PATH.equals(field.getKey())) {
+                // The path of the node itself (e.g. within a QueryBuilder hit) is not a reference.
+                continue;
+            }
+            JsonNode value = field.getValue();
+            if (value.isObject()) {
+                populateJcrContentPaths(jcrContentPaths, value);
+            } else if (value.isTextual()) {
+                addReference(jcrContentPaths, field.getKey(), value.textValue());
+            } else if (value.isArray()) {
+                for (JsonNode element : value) {
+                    if (element.isTextual()) {
+                        addReference(jcrContentPaths, field.getKey(), element.textValue());
+                    }
+                }
             }
         }
-        return jcrContentPaths;
     }
 
     /**
-     * Returns an {@code Set} that contains the content paths for the appropriate pages extracted from the specified
-     * {@code JsonNode}.
+     * Adds the content path that the specified property value refers to, if it matches a {@code ReferenceRule}.
      *
-     * @param path Path {@code JSON} data was retrieved from.
+     * @param jcrContentPaths {@code Map} of the content paths to the {@code ReferenceRule} that they matched.
+     * @param name Name of the property.
+     * @param value Value of the property.
+     */
+    private void addReference(final Map<String, ReferenceRule> jcrContentPaths, final String name,
+            final String value) {
+        for (ReferenceRule referenceRule : referenceRules) {
+            if (referenceRule.matches(name, value)) {
+                if (referenceRule.getInclusion() != ReferenceRule.Inclusion.IGNORE) {
+                    String contentPath = referenceRule.getContentPath(value);
+                    if (!jcrContentPaths.containsKey(contentPath)) {
+                        jcrContentPaths.put(contentPath, referenceRule);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Populates the {@code Map} that contains the content paths for the appropriate pages extracted from the specified
+     * {@code JsonNode}, descending into the child pages until the depth of the {@code JCR} data has been reached.
+     *
+     * @param pageContentPaths {@code Map} of the page content paths to their depth relative to the original path.
+     * @param path Path of the specified {@code JsonNode}.
      * @param jsonNode {@code JsonNode} to determine page content paths for.
-     * @return {@code Set} that contains the content paths for the appropriate pages extracted from the specified {@code
-     * JsonNode}.
+     * @param level Depth of the children of the specified {@code JsonNode} relative to the original path.
+     * @param depth Depth of the {@code JCR} data.
      */
-    private Set<String> getPageContentPaths(final String path, final JsonNode jsonNode) {
-        Set<String> pageContentPaths = new HashSet<String>();
+    private void populatePageContentPaths(final Map<String, Integer> pageContentPaths, final String path,
+            final JsonNode jsonNode, final int level, final int depth) {
         for (Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields(); fields.hasNext(); ) {
             Map.Entry<String, JsonNode> field = fields.next();
+            String key = field.getKey();
             // If the field represents an actual page, and not either jcr or sling properties (or contains a file extension).
-            if (StringUtils.isNotBlank(field.getKey()) &&
-                    ((!field.getKey().matches(".*(cq:|jcr:|sling:).*")) || (field.getKey().contains("."))) &&
+            if (StringUtils.isNotBlank(key) && ((!isSystemName(key)) || (key.indexOf('.') >= 0)) &&
                     (isPageNode(field.getValue()))) {
-                pageContentPaths.add(path + "/" + field.getKey());
+                String pageContentPath = path + "/" + key;
+                pageContentPaths.put(pageContentPath, level);
+                if (level < depth) {
+                    populatePageContentPaths(pageContentPaths, pageContentPath, field.getValue(), level + 1, depth);
+                }
             }
         }
-        return pageContentPaths;
     }
 
     /**
@@ -128,7 +352,24 @@ public class JsonJcrParser {
      * @return True if the {@code JsonNode} represents an {@code cq:Page}; otherwise false.
      */
     private boolean isPageNode(final JsonNode jsonNode) {
-        return ((jsonNode.has("jcr:primaryType")) &&
-                ("cq:Page").equalsIgnoreCase(jsonNode.get("jcr:primaryType").textValue()));
+        JsonNode primaryType = jsonNode.get(JCR_PRIMARY_TYPE);
+        return (primaryType != null) && ("cq:Page").equalsIgnoreCase(primaryType.textValue());
+    }
+
+    /**
+     * Returns a boolean indicating whether or not the specified name contains a {@code cq}, {@code jcr} or
+     * {@code sling} namespace.
+     *
+     * @param name Name of the property (or node) to test.
+     * @return True if the specified name contains a {@code cq}, {@code jcr} or {@code sling} namespace; otherwise
+     * false.
+     */
+    private static boolean isSystemName(final String name) {
+        for (String systemNamespace : SYSTEM_NAMESPACES) {
+            if (name.contains(systemNamespace)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,139 @@
+package aem.dataexporter.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Representation of a {@code JSON} response from the {@code CRX} package manager package list (i.e.
+ * {@code /crx/packmgr/list.jsp}).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class JsonPackageListResponse {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(JsonPackageListResponse.class.getName());
+    /**
+     * Packages contained within the response.
+     */
+    private List<Package> results = new ArrayList<Package>();
+
+    /**
+     * Returns the packages contained within the response.
+     *
+     * @return Packages contained within the response.
+     */
+    public List<Package> getResults() {
+        return results;
+    }
+
+    /**
+     * Sets the packages contained within the response.
+     *
+     * @param value Packages contained within the response.
+     */
+    public void setResults(final List<Package> value) {
+        this.results = value;
+    }
+
+    /**
+     * Returns an {@code JsonPackageListResponse} that was mapped from the specified {@code JSON} response from the
+     * {@code CRX} package manager.
+     *
+     * @param data {@code JSON} response from the {@code CRX} package manager.
+     * @return {@code JsonPackageListResponse} that was mapped from the specified {@code JSON} response, or null if the
+     * response could not be read.
+     */
+    public static JsonPackageListResponse mapJsonToObject(final byte[] data) {
+        ObjectMapper mapper = new ObjectMapper();
+        try {
+            return mapper.readValue(data, JsonPackageListResponse.class);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read Json from package list response. {0}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Representation of a package contained within the package list.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Package {
+
+        /**
+         * Name of the package.
+         */
+        private String name;
+        /**
+         * Group of the package.
+         */
+        private String group;
+        /**
+         * Time the package was last built (in milliseconds), or null if it has never been built.
+         */
+        private Long lastWrapped;
+
+        /**
+         * Returns the name of the package.
+         *
+         * @return Name of the package.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Sets the name of the package.
+         *
+         * @param value Name of the package.
+         */
+        public void setName(final String value) {
+            this.name = value;
+        }
+
+        /**
+         * Returns the group of the package.
+         *
+         * @return Group of the package.
+         */
+        public String getGroup() {
+            return group;
+        }
+
+        /**
+         * Sets the group of the package.
+         *
+         * @param value Group of the package.
+         */
+        public void setGroup(final String value) {
+            this.group = value;
+        }
+
+        /**
+         * Returns the time the package was last built.
+         *
+         * @return Time the package was last built (in milliseconds), or null if it has never been built.
+         */
+        public Long getLastWrapped() {
+            return lastWrapped;
+        }
+
+        /**
+         * Sets the time the package was last built.
+         *
+         * @param value Time the package was last built (in milliseconds), or null if it has never been built.
+         */
+        public void setLastWrapped(final Long value) {
+            this.lastWrapped = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,201 @@
+package aem.dataexporter.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Representation of a {@code JSON} response from the {@code AEM QueryBuilder} servlet (i.e.
+ * {@code /bin/querybuilder.json}).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class JsonQueryBuilderResponse {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(JsonQueryBuilderResponse.class.getName());
+    /**
+     * Whether or not the query was successfully executed.
+     */
+    private boolean success;
+    /**
+     * Number of hits contained within the response.
+     */
+    private int results;
+    /**
+     * Total number of hits for the query (may be a guess).
+     */
+    private long total;
+    /**
+     * Whether or not there are more hits than have been counted for the query.
+     */
+    private boolean more;
+    /**
+     * Offset of the first hit contained within the response.
+     */
+    private long offset;
+    /**
+     * Hits contained within the response.
+     */
+    private List<JsonNode> hits = new ArrayList<JsonNode>();
+
+    /**
+     * Returns a boolean indicating whether or not the query was successfully executed.
+     *
+     * @return True if the query was successfully executed; otherwise false.
+     */
+    public boolean getSuccess() {
+        return success;
+    }
+
+    /**
+     * Sets a boolean indicating whether or not the query was successfully executed.
+     *
+     * @param value True if the query was successfully executed; otherwise false.
+     */
+    public void setSuccess(final boolean value) {
+        this.success = value;
+    }
+
+    /**
+     * Returns the number of hits contained within the response.
+     *
+     * @return Number of hits contained within the response.
+     */
+    public int getResults() {
+        return results;
+    }
+
+    /**
+     * Sets the number of hits contained within the response.
+     *
+     * @param value Number of hits contained within the response.
+     */
+    public void setResults(final int value) {
+        this.results = value;
+    }
+
+    /**
+     * Returns the total number of hits for the query.
+     *
+     * @return Total number of hits for the query.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Sets the total number of hits for the query.
+     *
+     * @param value Total number of hits for the query.
+     */
+    public void setTotal(final long value) {
+        this.total = value;
+    }
+
+    /**
+     * Returns a boolean indicating whether or not there are more hits than have been counted for the query.
+     *
+     * @return True if there are more hits than have been counted for the query; otherwise false.
+     */
+    public boolean getMore() {
+        return more;
+    }
+
+    /**
+     * Sets a boolean indicating whether or not there are more hits than have been counted for the query.
+     *
+     * @param value True if there are more hits than have been counted for the query; otherwise false.
+     */
+    public void setMore(final boolean value) {
+        this.more = value;
+    }
+
+    /**
+     * Returns the offset of the first hit contained within the response.
+     *
+     * @return Offset of the first hit contained within the response.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Sets the offset of the first hit contained within the response.
+     *
+     * @param value Offset of the first hit contained within the response.
+     */
+    public void setOffset(final long value) {
+        this.offset = value;
+    }
+
+    /**
+     * Returns the hits contained within the response.
+     *
+     * @return Hits contained within the response.
+     */
+    public List<JsonNode> getHits() {
+        return hits;
+    }
+
+    /**
+     * Sets the hits contained within the response.
+     *
+     * @param value Hits contained within the response.
+     */
+    public void setHits(final List<JsonNode> value) {
+        this.hits = value;
+    }
+
+    /**
+     * Returns a boolean indicating whether or not further hits exist after the hits contained within the response.
+     *
+     * @return True if further hits exist after the hits contained within the response; otherwise false.
+     */
+    public boolean hasNextPage() {
+        return (results > 0) && (more || (offset + results < total));
+    }
+
+    /**
+     * Returns the {@code jcr:path} values of the hits contained within the response.
+     *
+     * @return {@code jcr:path} values of the hits contained within the response.
+     */
+    public List<String> getHitPaths() {
+        List<String> hitPaths = new ArrayList<String>(hits.size());
+        for (JsonNode hit : hits) {
+            if (hit.has("jcr:path")) {
+                hitPaths.add(hit.get("jcr:path").textValue());
+            }
+        }
+        return hitPaths;
+    }
+
+    /**
+     * Returns an {@code JsonQueryBuilderResponse} that was mapped from the specified {@code JSON} response from the
+     * {@code AEM QueryBuilder}.
+     *
+     * @param path Path of the query that the response was retrieved for.
+     * @param data {@code JSON} response from the {@code AEM QueryBuilder}.
+     * @return {@code JsonQueryBuilderResponse} that was mapped from the specified {@code JSON} response, or null if the
+     * response could not be read.
+     */
+    public static JsonQueryBuilderResponse mapJsonToObject(final String path, final byte[] data) {
+        ObjectMapper mapper = new ObjectMapper();
+        try {
+            return mapper.readValue(data, JsonQueryBuilderResponse.class);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read Json from query builder response at: [{0}]. {1}",
+                    new String[]{path, e.getMessage()});
+        }
+        return null;
+    }
+
+}
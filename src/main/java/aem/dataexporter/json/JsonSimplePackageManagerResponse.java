@@ -1,18 +1,35 @@
 package aem.dataexporter.json;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.compress.utils.IOUtils;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Representation of a {@code JSON} response from the {@code CRX} package manager service (i.e. its status fields).
+ * <p>
+ * The response is read with a streaming parser that only keeps the status fields, so that the rest of a large
+ * response (such as the log of an installation) is never held in memory.
+ */
 public class JsonSimplePackageManagerResponse {
 
     /**
      * Logger.
      */
     private static final Logger LOGGER = Logger.getLogger(JsonSimplePackageManagerResponse.class.getName());
+    /**
+     * {@code JsonFactory} used to create the streaming parsers of the responses.
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
     /**
      * Whether or not the package was successfully installed.
      */
@@ -90,15 +107,93 @@ public class JsonSimplePackageManagerResponse {
      * the {@code CRX} package manager.
      */
     public static JsonSimplePackageManagerResponse mapJsonToObject(final String jsonPackMgrResponse) {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonSimplePackageManagerResponse responseObject = new JsonSimplePackageManagerResponse();
         try {
-            responseObject = mapper.readValue(jsonPackMgrResponse, JsonSimplePackageManagerResponse.class);
+            JsonParser parser = JSON_FACTORY.createParser(jsonPackMgrResponse);
+            try {
+                return read(parser);
+            } finally {
+                parser.close();
+            }
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Unable to read Json from package manager response: . ",
+            LOGGER.log(Level.SEVERE, "Unable to read Json from package manager response: [{0}]. {1}",
                     new String[]{jsonPackMgrResponse, e.getMessage()});
         }
-        return responseObject;
+        return new JsonSimplePackageManagerResponse();
+    }
+
+    /**
+     * Reads the status fields of the specified {@code JSON} response from the {@code CRX} package manager while it is
+     * being received, and copies the whole response to the specified log (if any) as it is read.
+     *
+     * @param in {@code InputStream} of the {@code JSON} response from the {@code CRX} package manager.
+     * @param log {@code OutputStream} to copy the response to, or null if the response is not logged.
+     * @return {@code JsonSimplePackageManagerResponse} that was read from the specified {@code JSON} response.
+     * @throws IOException If the response cannot be read, or cannot be copied to the log.
+     */
+    public static JsonSimplePackageManagerResponse readResponse(final InputStream in, final OutputStream log)
+            throws IOException {
+        InputStream responseStream = in;
+        if (log != null) {
+            responseStream = new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int value = super.read();
+                    if (value != -1) {
+                        log.write(value);
+                    }
+                    return value;
+                }
+
+                @Override
+                public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+                    int read = super.read(bytes, offset, length);
+                    if (read > 0) {
+                        log.write(bytes, offset, read);
+                    }
+                    return read;
+                }
+            };
+        }
+        JsonParser parser = JSON_FACTORY.createParser(responseStream);
+        try {
+            JsonSimplePackageManagerResponse response = read(parser);
+            if (log != null) {
+                // Copy the rest of the response that the parser did not need to read.
+                IOUtils.copy(in, log);
+            }
+            return response;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Reads the status fields of a {@code JSON} response from the {@code CRX} package manager, skipping over any other
+     * fields without binding them.
+     *
+     * @param parser {@code JsonParser} of the {@code JSON} response.
+     * @return {@code JsonSimplePackageManagerResponse} that was read from the {@code JSON} response.
+     * @throws IOException If the response cannot be read.
+     */
+    private static JsonSimplePackageManagerResponse read(final JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected a JSON object", parser.getCurrentLocation());
+        }
+        JsonSimplePackageManagerResponse response = new JsonSimplePackageManagerResponse();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("success".equals(name)) {
+                response.setSuccess(parser.getValueAsBoolean());
+            } else if ("msg".equals(name)) {
+                response.setMessage(parser.getValueAsString());
+            } else if ("path".equals(name)) {
+                response.setPath(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return response;
     }
 
     /**
@@ -113,8 +208,20 @@ public class JsonSimplePackageManagerResponse {
         if (responseString != null) {
             responsePojo = JsonSimplePackageManagerResponse.mapJsonToObject(responseString);
         }
+        return validateAndLogResponse(responsePojo, actionName);
+    }
+
+    /**
+     * Validates the response from the {@code CRX} package manager.
+     *
+     * @param responsePojo Response from the {@code CRX} package manager, or null if it could not be read.
+     * @param actionName Name of the action that was performed.
+     * @return Whether or not the response from the {@code CRX} package manager was valid.
+     */
+    public static boolean validateAndLogResponse(final JsonSimplePackageManagerResponse responsePojo,
+            final String actionName) {
         if (responsePojo == null) {
-            LOGGER.log(Level.SEVERE, "Error: The {0} was unsuccessfull. unable to read response");
+            LOGGER.log(Level.SEVERE, "Error: The {0} was unsuccessfull. unable to read response", actionName);
             return false;
         } else if (!responsePojo.getSuccess()) {
             LOGGER.log(Level.SEVERE, "Error: The {0} was unsuccessfull. Response message: {1}",
@@ -0,0 +1,276 @@
+package aem.dataexporter.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Rule that determines whether or not a property of a {@code JCR} node is a reference to other content, the kind of the
+ * reference, how deep references of that kind are followed, and whether or not they are included in the packages.
+ * <p>
+ * Rules are read from a {@code JSON} file that contains an array of rules, for example:
+ * <pre>
+ * [
+ *   {"kind": "xf", "valuePrefix": "/content/experience-fragments", "maxDepth": 2},
+ *   {"kind": "template", "property": "cq:template", "valuePrefix": "/conf", "inclusion": "IGNORE"},
+ *   {"kind": "tag", "property": "cq:tags", "tagRoot": "/content/cq:tags", "maxDepth": -1},
+ *   {"kind": "dam", "valuePrefix": "/content/dam"}
+ * ]
+ * </pre>
+ * The first rule that matches a property value is used. A negative {@code maxDepth} includes the content path without
+ * following its references.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ReferenceRule {
+
+    /**
+     * Whether or not the content paths that a {@code ReferenceRule} matches are included in the packages.
+     */
+    public enum Inclusion {
+        /**
+         * Include the content path in the packages, and follow its references.
+         */
+        INCLUDE,
+        /**
+         * Follow the references of the content path, but do not include it in the packages.
+         */
+        FOLLOW,
+        /**
+         * Neither include the content path in the packages nor follow its references.
+         */
+        IGNORE
+    }
+
+    /**
+     * Kind of the reference (e.g. {@code dam}, {@code xf} or {@code tag}).
+     */
+    private String kind;
+    /**
+     * Regular expression that the name of the property must match, or null to match all properties.
+     */
+    private Pattern property;
+    /**
+     * Prefix that the value of the property must start with, or null to match all paths.
+     */
+    private String valuePrefix;
+    /**
+     * Root path of the tags that the values of the property refer to, or null if the values are paths.
+     */
+    private String tagRoot;
+    /**
+     * Maximum depth at which references of this kind are followed, or null to use the maximum {@code DAM} depth.
+     */
+    private Integer maxDepth;
+    /**
+     * Whether or not the content paths are included in the packages.
+     */
+    private Inclusion inclusion = Inclusion.INCLUDE;
+
+    /**
+     * Returns the kind of the reference.
+     *
+     * @return Kind of the reference.
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Sets the kind of the reference.
+     *
+     * @param value Kind of the reference.
+     */
+    public void setKind(final String value) {
+        this.kind = value;
+    }
+
+    /**
+     * Returns the regular expression that the name of the property must match.
+     *
+     * @return Regular expression that the name of the property must match, or null to match all properties.
+     */
+    public String getProperty() {
+        return (property == null) ? null : property.pattern();
+    }
+
+    /**
+     * Sets the regular expression that the name of the property must match.
+     *
+     * @param value Regular expression that the name of the property must match, or null to match all properties.
+     */
+    public void setProperty(final String value) {
+        this.property = (value == null) ? null : Pattern.compile(value);
+    }
+
+    /**
+     * Returns the prefix that the value of the property must start with.
+     *
+     * @return Prefix that the value of the property must start with, or null to match all paths.
+     */
+    public String getValuePrefix() {
+        return valuePrefix;
+    }
+
+    /**
+     * Sets the prefix that the value of the property must start with.
+     *
+     * @param value Prefix that the value of the property must start with, or null to match all paths.
+     */
+    public void setValuePrefix(final String value) {
+        this.valuePrefix = value;
+    }
+
+    /**
+     * Returns the root path of the tags that the values of the property refer to.
+     *
+     * @return Root path of the tags that the values of the property refer to, or null if the values are paths.
+     */
+    public String getTagRoot() {
+        return tagRoot;
+    }
+
+    /**
+     * Sets the root path of the tags that the values of the property refer to.
+     *
+     * @param value Root path of the tags that the values of the property refer to, or null if the values are paths.
+     */
+    public void setTagRoot(final String value) {
+        this.tagRoot = value;
+    }
+
+    /**
+     * Returns the maximum depth at which references of this kind are followed.
+     *
+     * @return Maximum depth at which references of this kind are followed, or null to use the maximum {@code DAM}
+     * depth.
+     */
+    public Integer getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets the maximum depth at which references of this kind are followed.
+     *
+     * @param value Maximum depth at which references of this kind are followed, or null to use the maximum
+     * {@code DAM} depth.
+     */
+    public void setMaxDepth(final Integer value) {
+        this.maxDepth = value;
+    }
+
+    /**
+     * Returns whether or not the content paths are included in the packages.
+     *
+     * @return Whether or not the content paths are included in the packages.
+     */
+    public Inclusion getInclusion() {
+        return inclusion;
+    }
+
+    /**
+     * Sets whether or not the content paths are included in the packages.
+     *
+     * @param value Whether or not the content paths are included in the packages.
+     */
+    public void setInclusion(final Inclusion value) {
+        this.inclusion = value;
+    }
+
+    /**
+     * Returns a boolean indicating whether or not the content paths are included in the packages.
+     *
+     * @return True if the content paths are included in the packages; otherwise false.
+     */
+    @JsonIgnore
+    public boolean isIncluded() {
+        return inclusion == Inclusion.INCLUDE;
+    }
+
+    /**
+     * Returns the maximum depth at which references of this kind are followed.
+     *
+     * @param maxDAMDepth Maximum {@code DAM} depth.
+     * @return Maximum depth at which references of this kind are followed, which never exceeds the maximum {@code DAM}
+     * depth.
+     */
+    public int getFollowDepth(final int maxDAMDepth) {
+        if ((inclusion == Inclusion.IGNORE) || ((maxDepth != null) && (maxDepth < 0))) {
+            return -1;
+        }
+        return (maxDepth == null) ? maxDAMDepth : Math.min(maxDepth, maxDAMDepth);
+    }
+
+    /**
+     * Returns a boolean indicating whether or not the specified property matches this rule.
+     *
+     * @param name Name of the property.
+     * @param value Value of the property.
+     * @return True if the specified property matches this rule; otherwise false.
+     */
+    public boolean matches(final String name, final String value) {
+        if ((property != null) && (!property.matcher(name).matches())) {
+            return false;
+        }
+        if (valuePrefix != null) {
+            return value.startsWith(valuePrefix);
+        }
+        return (tagRoot != null) || (value.startsWith("/"));
+    }
+
+    /**
+     * Returns the content path that the specified property value refers to.
+     *
+     * @param value Value of the property.
+     * @return Content path that the specified property value refers to.
+     */
+    public String getContentPath(final String value) {
+        if ((tagRoot == null) || (value.startsWith("/"))) {
+            return value;
+        }
+        int namespaceIndex = value.indexOf(':');
+        if (namespaceIndex < 0) {
+            return tagRoot + "/default/" + value;
+        }
+        return tagRoot + "/" + value.substring(0, namespaceIndex) + "/" + value.substring(namespaceIndex + 1);
+    }
+
+    /**
+     * Returns an {@code ReferenceRule} that includes all of the content paths that start with the specified prefix.
+     *
+     * @param prefix Prefix of the content paths.
+     * @return {@code ReferenceRule} that includes all of the content paths that start with the specified prefix.
+     */
+    public static ReferenceRule forPrefix(final String prefix) {
+        ReferenceRule referenceRule = new ReferenceRule();
+        referenceRule.setKind(prefix);
+        referenceRule.setValuePrefix(prefix);
+        return referenceRule;
+    }
+
+    /**
+     * Returns the {@code ReferenceRule}s contained within the specified {@code JSON} file.
+     *
+     * @param file {@code JSON} file that contains an array of rules.
+     * @return {@code ReferenceRule}s contained within the specified {@code JSON} file.
+     * @throws IOException If an error occurs reading the file.
+     */
+    public static List<ReferenceRule> readRules(final File file) throws IOException {
+        return new ObjectMapper().readValue(file, new TypeReference<List<ReferenceRule>>() {
+        });
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public String toString() {
+        return kind;
+    }
+
+}
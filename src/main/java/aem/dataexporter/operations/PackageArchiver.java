@@ -0,0 +1,73 @@
+package aem.dataexporter.operations;
+
+import aem.dataexporter.DataExporter;
+import aem.dataexporter.store.BlobStore;
+import aem.dataexporter.utilities.ExitPolicy;
+import aem.dataexporter.utilities.ProgramArgument;
+import aem.dataexporter.utilities.ProgramArguments;
+import aem.dataexporter.utilities.Tracer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Package archiver for the {@code DataExporter}.
+ * <p>
+ * This class is designed to supplement the {@code DataExporter} by allowing the ability to individually run specific
+ * operations should the entire data export process fail.
+ * <p>
+ * The downloaded packages are moved into a content addressed {@code BlobStore}, so that the binaries which are
+ * contained within many packages are only stored once. The packages can be rebuilt using the {@code PackageRestorer}.
+ * <p>
+ * The package archiver expects the following program arguments: <ul> <li>packageName</li> <li>numberOfPackages</li>
+ * <li>blobStore</li> <li>workingDirectory (optional)</li> </ul>
+ */
+public class PackageArchiver {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(PackageArchiver.class.getName());
+    /**
+     * Required program arguments.
+     */
+    private static final ProgramArgument[] REQUIRED_ARGUMENTS =
+            {ProgramArgument.PACKAGE_NAME, ProgramArgument.NUMBER_OF_PACKAGES, ProgramArgument.BLOB_STORE};
+
+    /**
+     * Run the package archiver.
+     *
+     * @param args Array of program arguments.
+     */
+    public static void main(final String[] args) {
+        ProgramArguments programArguments = new ProgramArguments(args, REQUIRED_ARGUMENTS);
+        if (!programArguments.hasRequiredArguments()) {
+            programArguments.printPackageUsageMessage();
+            ExitPolicy.exit(-1);
+        }
+        int numberOfPackages = Integer.parseInt(programArguments.get(ProgramArgument.NUMBER_OF_PACKAGES));
+        String workingDirectory = DataExporter.WORKING_DIRECTORY;
+        if (programArguments.has(ProgramArgument.WORKING_DIRECTORY)) {
+            workingDirectory = programArguments.get(ProgramArgument.WORKING_DIRECTORY);
+        }
+        try {
+            BlobStore blobStore = new BlobStore(new File(programArguments.get(ProgramArgument.BLOB_STORE)));
+            for (int index = 1; index <= numberOfPackages; index++) {
+                String packageName = programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index;
+                File packageFile = new File(workingDirectory + packageName + ".zip");
+                Tracer.Span span = Tracer.start("archive", packageName);
+                blobStore.storePackage(packageFile, packageName);
+                span.end();
+                if (!packageFile.delete()) {
+                    LOGGER.log(Level.WARNING, "Unable to delete archived package: {0}", packageFile.getPath());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to archive package. {0}", e.getMessage());
+            ExitPolicy.exit(-1);
+        }
+    }
+
+}
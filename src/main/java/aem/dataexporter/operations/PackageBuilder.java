@@ -1,8 +1,29 @@
 package aem.dataexporter.operations;
 
-import aem.dataexporter.http.HttpReader;
+import aem.dataexporter.http.ResponseReader;
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.http.TransportFactory;
+import aem.dataexporter.json.JsonPackageListResponse;
+import aem.dataexporter.json.JsonSimplePackageManagerResponse;
+import aem.dataexporter.utilities.ExitPolicy;
 import aem.dataexporter.utilities.ProgramArgument;
 import aem.dataexporter.utilities.ProgramArguments;
+import aem.dataexporter.utilities.Tracer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Package builder for the {@code DataExporter}.
@@ -11,15 +32,44 @@ import aem.dataexporter.utilities.ProgramArguments;
  * operations should the entire data export process fail.
  * <p>
  * The package builder expects the following program arguments: <ul> <li>host</li> <li>username</li> <li>password</li>
- * <li>packageName</li> <li>numberOfPackages</li> </ul>
+ * <li>packageName</li> <li>numberOfPackages</li> <li>asyncBuild (optional)</li> <li>maxBuildsInFlight
+ * (optional)</li> <li>buildTimeout (optional)</li> </ul>
  */
 public class PackageBuilder {
 
+    /**
+     * Category of the timing spans of the package builds.
+     */
+    private static final String BUILD_SPAN = "build";
+    /**
+     * Default number of packages that are built at the same time when building asynchronously.
+     */
+    private static final int DEFAULT_MAX_BUILDS_IN_FLIGHT = 4;
+    /**
+     * Default number of seconds to wait for all of the packages to be built when building asynchronously.
+     */
+    private static final int DEFAULT_BUILD_TIMEOUT = (int) TimeUnit.HOURS.toSeconds(24);
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(PackageBuilder.class.getName());
+    /**
+     * Maximum number of milliseconds between polls of the package build status.
+     */
+    private static final long MAXIMUM_POLL_INTERVAL = 30000;
+    /**
+     * Minimum number of milliseconds between polls of the package build status.
+     */
+    private static final long MINIMUM_POLL_INTERVAL = 1000;
     /**
      * Required program arguments.
      */
     private static final ProgramArgument[] REQUIRED_ARGUMENTS =
             {ProgramArgument.HOST, ProgramArgument.USERNAME, ProgramArgument.PASSWORD, ProgramArgument.PACKAGE_NAME};
+    /**
+     * Number of milliseconds to wait for a response when triggering a package build.
+     */
+    private static final int TRIGGER_TIMEOUT = 5000;
 
     /**
      * Run the package builder.
@@ -30,21 +80,192 @@ public class PackageBuilder {
         ProgramArguments programArguments = new ProgramArguments(args, REQUIRED_ARGUMENTS);
         if (!programArguments.hasRequiredArguments()) {
             programArguments.printPackageUsageMessage();
-            System.exit(-1);
+            ExitPolicy.exit(-1);
         }
-        HttpReader httpReader = new HttpReader(programArguments.get(ProgramArgument.USERNAME),
-                programArguments.get(ProgramArgument.PASSWORD), programArguments.get(ProgramArgument.HOSTNAME),
-                programArguments.get(ProgramArgument.PORT));
         int numberOfPackages = Integer.parseInt(programArguments.get(ProgramArgument.NUMBER_OF_PACKAGES));
+        Transport transport = TransportFactory.createTransport(programArguments);
+        try {
+            if (Boolean.parseBoolean(programArguments.get(ProgramArgument.ASYNC_BUILD))) {
+                boolean success = buildPackages(transport, programArguments.get(ProgramArgument.HOST),
+                        programArguments.get(ProgramArgument.PACKAGE_NAME), numberOfPackages,
+                        programArguments.getInt(ProgramArgument.MAX_BUILDS_IN_FLIGHT, DEFAULT_MAX_BUILDS_IN_FLIGHT),
+                        TimeUnit.SECONDS.toMillis(
+                                programArguments.getInt(ProgramArgument.BUILD_TIMEOUT, DEFAULT_BUILD_TIMEOUT)));
+                if (!success) {
+                    ExitPolicy.exit(-1);
+                }
+                return;
+            }
+            for (int index = 1; index <= numberOfPackages; index++) {
+                Tracer.Span span =
+                        Tracer.start(BUILD_SPAN, programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index);
+                boolean success = transport.getHostTransport(index - 1).post(
+                        programArguments.get(ProgramArgument.HOST) + "/crx/packmgr/service.jsp?cmd=build&name=" +
+                        programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index +
+                        "&group=data_exporter_packages");
+                span.end();
+                if (!success) {
+                    ExitPolicy.exit(-1);
+                }
+            }
+        } finally {
+            TransportFactory.closeTransport(transport);
+        }
+    }
+
+    /**
+     * Builds the packages asynchronously.
+     * <p>
+     * Up to the maximum number of builds per host are triggered without waiting for them to finish. A build whose
+     * response is received within the trigger timeout has already finished (or failed), whereas for the other builds
+     * the package lists are polled until the {@code lastWrapped} time of each package has changed, or the package is no
+     * longer listed. The poll interval is
+     * doubled each time no build has finished, and reset whenever a build finishes.
+     *
+     * @param transport {@code Transport} to use to build the packages.
+     * @param host Name of the host to build the packages on.
+     * @param packageName (Base) name of the packages.
+     * @param numberOfPackages Number of packages to build.
+     * @param maxBuildsInFlight Maximum number of packages to build at the same time on each host.
+     * @param buildTimeout Number of milliseconds to wait for all of the packages to be built.
+     * @return True if all of the packages were built; otherwise false.
+     */
+    private static boolean buildPackages(final Transport transport, final String host, final String packageName,
+            final int numberOfPackages, final int maxBuildsInFlight, final long buildTimeout) {
+        int numberOfHosts = transport.getNumberOfHosts();
+        Deque<Integer> pendingPackages = new ArrayDeque<Integer>();
         for (int index = 1; index <= numberOfPackages; index++) {
-            boolean success = httpReader.post(programArguments.get(ProgramArgument.HOST) +
-                    "/crx/packmgr/service.jsp?cmd=build&name=" +
-                    programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index +
-                    "&group=data_exporter_packages");
-            if (!success) {
-                System.exit(-1);
+            pendingPackages.add(index);
+        }
+        List<Map<String, Long>> initialLastWrapped = getHostsLastWrapped(transport, host);
+        if (initialLastWrapped == null) {
+            return false;
+        }
+        Map<Integer, Long> buildingPackages = new LinkedHashMap<Integer, Long>();
+        Map<Integer, Tracer.Span> buildSpans = new HashMap<Integer, Tracer.Span>();
+        int[] buildsInFlight = new int[numberOfHosts];
+        long deadline = System.currentTimeMillis() + buildTimeout;
+        long pollInterval = MINIMUM_POLL_INTERVAL;
+        while ((!pendingPackages.isEmpty()) || (!buildingPackages.isEmpty())) {
+            for (Iterator<Integer> iterator = pendingPackages.iterator(); iterator.hasNext(); ) {
+                int index = iterator.next();
+                int hostIndex = (index - 1) % numberOfHosts;
+                if (buildsInFlight[hostIndex] < Math.max(1, maxBuildsInFlight)) {
+                    buildSpans.put(index, Tracer.start(BUILD_SPAN, packageName + "_" + index));
+                    final AtomicReference<JsonSimplePackageManagerResponse> response =
+                            new AtomicReference<JsonSimplePackageManagerResponse>();
+                    if (!transport.getHostTransport(index - 1).trigger(host +
+                            "/crx/packmgr/service/.json/etc/packages/data_exporter_packages/" + packageName + "_" +
+                            index + ".zip?cmd=build", TRIGGER_TIMEOUT,
+                            new ResponseReader<JsonSimplePackageManagerResponse>() {
+                                @Override
+                                public JsonSimplePackageManagerResponse read(final InputStream in)
+                                        throws IOException {
+                                    response.set(JsonSimplePackageManagerResponse.readResponse(in, null));
+                                    return response.get();
+                                }
+                            })) {
+                        return false;
+                    }
+                    iterator.remove();
+                    if (response.get() != null) {
+                        // The build has already finished (or failed), so there is nothing to wait for.
+                        buildSpans.get(index).end();
+                        if (!JsonSimplePackageManagerResponse.validateAndLogResponse(response.get(),
+                                "build of package " + packageName + "_" + index)) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    buildsInFlight[hostIndex]++;
+                    buildingPackages.put(index, initialLastWrapped.get(hostIndex).get(packageName + "_" + index));
+                }
+            }
+            if (buildingPackages.isEmpty()) {
+                continue;
+            }
+            try {
+                Thread.sleep(pollInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            List<Map<String, Long>> lastWrapped = getHostsLastWrapped(transport, host);
+            boolean finishedBuilding = false;
+            if (lastWrapped != null) {
+                for (Iterator<Map.Entry<Integer, Long>> iterator = buildingPackages.entrySet().iterator();
+                        iterator.hasNext(); ) {
+                    Map.Entry<Integer, Long> buildingPackage = iterator.next();
+                    int hostIndex = (buildingPackage.getKey() - 1) % numberOfHosts;
+                    String buildingPackageName = packageName + "_" + buildingPackage.getKey();
+                    if (!lastWrapped.get(hostIndex).containsKey(buildingPackageName)) {
+                        // A package that is no longer listed is no longer being built.
+                        LOGGER.log(Level.SEVERE, "Package {0} is no longer listed while building",
+                                buildingPackageName);
+                        return false;
+                    }
+                    Long packageLastWrapped = lastWrapped.get(hostIndex).get(buildingPackageName);
+                    if ((packageLastWrapped != null) && (!packageLastWrapped.equals(buildingPackage.getValue()))) {
+                        LOGGER.log(Level.INFO, "Finished building package {0}", buildingPackageName);
+                        buildSpans.get(buildingPackage.getKey()).end();
+                        iterator.remove();
+                        buildsInFlight[hostIndex]--;
+                        finishedBuilding = true;
+                    }
+                }
+            }
+            pollInterval = finishedBuilding ? MINIMUM_POLL_INTERVAL : Math.min(pollInterval * 2, MAXIMUM_POLL_INTERVAL);
+            if (System.currentTimeMillis() > deadline) {
+                LOGGER.log(Level.SEVERE, "Timed out waiting for the packages numbered {0} to build",
+                        buildingPackages.keySet());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the time each of the data exporter packages was last built on each of the hosts.
+     *
+     * @param transport {@code Transport} to use to list the packages.
+     * @param host Name of the host to list the packages on.
+     * @return {@code List} that contains a {@code Map} of the package names to the time they were last built for each
+     * of the hosts, or null if the packages could not be listed.
+     */
+    private static List<Map<String, Long>> getHostsLastWrapped(final Transport transport, final String host) {
+        List<Map<String, Long>> lastWrapped = new ArrayList<Map<String, Long>>();
+        for (int hostIndex = 0; hostIndex < transport.getNumberOfHosts(); hostIndex++) {
+            Map<String, Long> hostLastWrapped = getLastWrapped(transport.getHostTransport(hostIndex), host);
+            if (hostLastWrapped == null) {
+                return null;
+            }
+            lastWrapped.add(hostLastWrapped);
+        }
+        return lastWrapped;
+    }
+
+    /**
+     * Returns the time each of the data exporter packages was last built.
+     *
+     * @param transport {@code Transport} to use to list the packages.
+     * @param host Name of the host to list the packages on.
+     * @return {@code Map} of the package names to the time they were last built, or null if the packages could not be
+     * listed.
+     */
+    private static Map<String, Long> getLastWrapped(final Transport transport, final String host) {
+        JsonPackageListResponse response = JsonPackageListResponse.mapJsonToObject(
+                transport.getData(host + "/crx/packmgr/list.jsp?group=data_exporter_packages"));
+        if (response == null) {
+            LOGGER.log(Level.SEVERE, "Unable to list packages on {0}", host);
+            return null;
+        }
+        Map<String, Long> lastWrapped = new HashMap<String, Long>();
+        for (JsonPackageListResponse.Package listedPackage : response.getResults()) {
+            if ("data_exporter_packages".equals(listedPackage.getGroup())) {
+                lastWrapped.put(listedPackage.getName(), listedPackage.getLastWrapped());
             }
         }
+        return lastWrapped;
     }
 
 }
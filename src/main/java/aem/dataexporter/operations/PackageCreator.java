@@ -1,19 +1,57 @@
 package aem.dataexporter.operations;
 
+import aem.dataexporter.DataExporter;
+import aem.dataexporter.crawl.ExportPlanner;
+import aem.dataexporter.crawl.JsonPageDiscoverer;
+import aem.dataexporter.crawl.JsonReferenceResolver;
+import aem.dataexporter.crawl.PageDiscoverer;
+import aem.dataexporter.crawl.QueryBuilderPageDiscoverer;
+import aem.dataexporter.crawl.QueryBuilderReferenceResolver;
+import aem.dataexporter.crawl.ReferenceResolver;
+import aem.dataexporter.crawl.ShardAssigner;
+import aem.dataexporter.crawl.SitemapPageDiscoverer;
+import aem.dataexporter.file.CompressionPolicy;
 import aem.dataexporter.file.PackageFileWriter;
 import aem.dataexporter.file.PackageFileZipper;
-import aem.dataexporter.http.HttpReader;
+import aem.dataexporter.file.PackageStreamWriter;
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.http.TransportFactory;
 import aem.dataexporter.json.JsonJcrParser;
+import aem.dataexporter.json.ReferenceRule;
+import aem.dataexporter.store.BloomFilteredPathSet;
+import aem.dataexporter.store.ChunkedPathSet;
+import aem.dataexporter.store.OffHeapPathSet;
+import aem.dataexporter.utilities.ExitPolicy;
 import aem.dataexporter.utilities.ProgramArgument;
 import aem.dataexporter.utilities.ProgramArguments;
+import aem.dataexporter.utilities.Tracer;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 /**
  * Package creator for the {@code DataExporter}.
@@ -23,7 +61,19 @@ import java.util.logging.Logger;
  * <p>
  * The package creator expects the following program arguments: <ul> <li>host</li> <li>path</li> <li>username</li>
  * <li>password</li> <li>packageName</li> <li>maxPageDepth - i.e. how deep to parse the page structure</li>
- * <li>maxDAMDepth - i.e. how deep to parse the dam structure</li> </ul>
+ * <li>maxDAMDepth - i.e. how deep to parse the dam structure</li> <li>pageDiscovery (optional) - i.e. either
+ * {@code crawl}, {@code query} or {@code sitemap}</li> <li>pageSource (optional)</li> <li>pageSelectorDepth
+ * (optional)</li> <li>queryBatchSize (optional)</li>
+ * <li>referenceResolution (optional) - i.e. either {@code crawl} or {@code query}</li> <li>referenceBatchSize
+ * (optional)</li> <li>referencePrefixes (optional)</li> <li>referenceProperties (optional)</li> <li>referenceRules
+ * (optional)</li> <li>exportMode (optional) - i.e. either {@code package} or {@code stream}</li> <li>fetchThreads
+ * (optional)</li> <li>compressionLevel (optional)</li> <li>parallelCompression (optional)</li> <li>shard
+ * (optional) - i.e. {@code <shard>/<numberOfShards>}</li> <li>mergeShards (optional) - i.e. the number of shards</li>
+ * <li>offHeapPaths (optional)</li> <li>streamChunks (optional)</li> <li>uploadChunks (optional)</li>
+ * <li>expectedPaths (optional)</li> <li>maxRetries (optional)</li> <li>plan (optional)</li> <li>snapshot
+ * (optional)</li> <li>record (optional)</li> <li>replay (optional)</li> <li>replayLatency (optional) - i.e. a number of
+ * milliseconds or {@code recorded}</li> <li>trace (optional)</li>
+ * </ul>
  */
 public class PackageCreator {
 
@@ -31,6 +81,19 @@ public class PackageCreator {
      * Number of packages that have been created.
      */
     public static int numberOfPackages = 0;
+    /**
+     * Whether or not the package was written on the client, so that it does not need to be built on the server.
+     */
+    public static boolean packageStreamed = false;
+    /**
+     * Whether or not the packages were uploaded as soon as they were written, while the crawl was still running.
+     */
+    public static boolean packagesUploaded = false;
+    /**
+     * Whether or not only the content paths of a shard or the plan of the export were written, so that there are no
+     * packages to export yet.
+     */
+    public static boolean packagesDeferred = false;
     /**
      * Maximum number of content paths that can be defined in an {@code CRX} package definition.
      */
@@ -46,13 +109,45 @@ public class PackageCreator {
             {ProgramArgument.HOST, ProgramArgument.PATH, ProgramArgument.USERNAME, ProgramArgument.PASSWORD,
                     ProgramArgument.PACKAGE_NAME};
     /**
-     * Depth of the {@code JCR DAM} content path crawling.
+     * Page discovery and reference resolution strategy that uses the {@code AEM QueryBuilder}.
+     */
+    private static final String QUERY_STRATEGY = "query";
+    /**
+     * Page discovery strategy that reads a sitemap or page path list.
+     */
+    private static final String SITEMAP_STRATEGY = "sitemap";
+    /**
+     * Suffix of the path of the sitemap that is read when no page source is specified.
+     */
+    private static final String DEFAULT_SITEMAP_SUFFIX = ".sitemap.xml";
+    /**
+     * Export mode that writes a single package containing the content on the client.
+     */
+    private static final String STREAM_EXPORT_MODE = "stream";
+    /**
+     * Extension of the files that contain the content paths of the shards.
+     */
+    private static final String SHARD_FILE_EXTENSION = ".paths";
+    /**
+     * Suffix of the name of the report of the urls that were given up on.
+     */
+    private static final String ABANDONED_URLS_FILE_SUFFIX = "_abandoned.txt";
+    /**
+     * Suffix of the name of the export plan.
+     */
+    private static final String PLAN_FILE_SUFFIX = "_plan.txt";
+    /**
+     * Default number of threads to probe the content paths with when planning an export.
      */
-    private static int damDepth = 0;
+    private static final int DEFAULT_PLAN_THREADS = 8;
     /**
-     * Depth of the page content path crawling.
+     * Charset of the files that contain the content paths of the shards.
      */
-    private static int pageDepth = 0;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Category of the timing spans of the crawl.
+     */
+    private static final String CRAWL_SPAN = "crawl";
 
     /**
      * Run the package creator.
@@ -60,31 +155,292 @@ public class PackageCreator {
      * @param args Array of program arguments.
      */
     public static void main(final String[] args) {
+        // The results of a previous run in the same JVM (e.g. a previous job of the ExporterDaemon) are discarded.
+        numberOfPackages = 0;
+        packageStreamed = false;
+        packagesUploaded = false;
+        packagesDeferred = false;
         ProgramArguments programArguments = new ProgramArguments(args, REQUIRED_ARGUMENTS);
         if (!programArguments.hasRequiredArguments()) {
             programArguments.printUsageMessage();
-            System.exit(-1);
+            ExitPolicy.exit(-1);
         }
+        boolean mergeShards = programArguments.has(ProgramArgument.MERGE_SHARDS);
+        boolean plan = Boolean.parseBoolean(programArguments.get(ProgramArgument.PLAN));
         int maxPageDepth = 0;
         int maxDAMDepth = 0;
         if (programArguments.has(ProgramArgument.MAX_PAGE_DEPTH) ||
                 programArguments.has(ProgramArgument.MAX_DAM_DEPTH)) {
             maxPageDepth = getDepth(programArguments.get(ProgramArgument.MAX_PAGE_DEPTH));
             maxDAMDepth = getDepth(programArguments.get(ProgramArgument.MAX_DAM_DEPTH));
-        } else {
+        } else if (!mergeShards) {
             programArguments.printUsageMessage();
             programArguments.listMissingArgument(ProgramArgument.MAX_PAGE_DEPTH);
             programArguments.listMissingArgument(ProgramArgument.MAX_DAM_DEPTH);
-            System.exit(-1);
+            ExitPolicy.exit(-1);
+        }
+        Transport transport = TransportFactory.createTransport(programArguments);
+        JsonJcrParser jsonJcrParser = getJsonJcrParser(programArguments);
+        Set<String> contentPaths = createPathSet(programArguments, "contentPaths");
+        Set<String> processedContentPaths =
+                getFilteredPathSet(programArguments, createPathSet(programArguments, "processedContentPaths"));
+        long crawlStart = System.currentTimeMillis();
+        try {
+            if (mergeShards) {
+                readShards(contentPaths, programArguments);
+            } else if (programArguments.has(ProgramArgument.SHARD)) {
+                String[] shard = programArguments.get(ProgramArgument.SHARD).split("/");
+                int shardNumber = (shard.length == 2) ? NumberUtils.toInt(shard[0].trim()) : 0;
+                int numberOfShards = (shard.length == 2) ? NumberUtils.toInt(shard[1].trim()) : 0;
+                if ((shardNumber < 1) || (shardNumber > numberOfShards)) {
+                    LOGGER.log(Level.SEVERE, "Invalid shard [{0}], expected <shard>/<numberOfShards> (e.g. 1/4)",
+                            programArguments.get(ProgramArgument.SHARD));
+                    ExitPolicy.exit(-1);
+                }
+                populateContentPaths(contentPaths, getPageDiscoverer(programArguments, transport, jsonJcrParser),
+                        getReferenceResolver(programArguments, transport, jsonJcrParser),
+                        programArguments.get(ProgramArgument.PATH), maxPageDepth, maxDAMDepth,
+                        processedContentPaths, new ShardAssigner(numberOfShards), shardNumber);
+                writeShard(contentPaths, getShardFile(programArguments, shardNumber, numberOfShards));
+                packagesDeferred = true;
+                return;
+            } else if (!plan && Boolean.parseBoolean(programArguments.get(ProgramArgument.STREAM_CHUNKS)) &&
+                    !STREAM_EXPORT_MODE.equalsIgnoreCase(programArguments.get(ProgramArgument.EXPORT_MODE))) {
+                writePackagesWhileCrawling(contentPaths, processedContentPaths, programArguments, transport,
+                        jsonJcrParser, maxPageDepth, maxDAMDepth);
+                return;
+            } else {
+                populateContentPaths(contentPaths, getPageDiscoverer(programArguments, transport, jsonJcrParser),
+                        getReferenceResolver(programArguments, transport, jsonJcrParser),
+                        programArguments.get(ProgramArgument.PATH), maxPageDepth, maxDAMDepth,
+                        processedContentPaths, null, 1);
+            }
+            if (plan) {
+                writePlan(contentPaths, programArguments, transport, System.currentTimeMillis() - crawlStart);
+                packagesDeferred = true;
+                return;
+            }
+            if (STREAM_EXPORT_MODE.equalsIgnoreCase(programArguments.get(ProgramArgument.EXPORT_MODE))) {
+                streamPackage(contentPaths, programArguments, transport, jsonJcrParser);
+            } else {
+                writePackages(contentPaths, programArguments.get(ProgramArgument.USERNAME),
+                        programArguments.get(ProgramArgument.PACKAGE_NAME));
+            }
+        } finally {
+            writeAbandonedUrls(transport.getAbandonedUrls(), programArguments);
+            closePathSet(contentPaths);
+            closePathSet(processedContentPaths);
+            TransportFactory.closeTransport(transport);
+        }
+    }
+
+    /**
+     * Writes the plan of exporting the content paths (i.e. the number of packages, their estimated size, the slowest
+     * subtrees and the estimated duration of each phase) to a report within the working directory, without creating
+     * any packages.
+     *
+     * @param contentPaths Content paths discovered by the crawl.
+     * @param programArguments Program arguments.
+     * @param transport {@code Transport} to use to probe the content paths.
+     * @param crawlMillis Number of milliseconds the crawl took.
+     */
+    private static void writePlan(final Set<String> contentPaths, final ProgramArguments programArguments,
+            final Transport transport, final long crawlMillis) {
+        ExportPlanner exportPlanner = new ExportPlanner(transport, programArguments.get(ProgramArgument.HOST),
+                programArguments.getInt(ProgramArgument.FETCH_THREADS, DEFAULT_PLAN_THREADS));
+        String plan = exportPlanner.plan(contentPaths, MAXIMUM_PACKAGE_CONTENT_PATHS, crawlMillis);
+        LOGGER.log(Level.INFO, "Export plan:\n{0}", plan);
+        File planFile = new File(getWorkingDirectory(programArguments) +
+                programArguments.get(ProgramArgument.PACKAGE_NAME) + PLAN_FILE_SUFFIX);
+        try {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(planFile), UTF_8));
+            try {
+                writer.write(plan);
+            } finally {
+                writer.close();
+            }
+            LOGGER.log(Level.INFO, "Wrote export plan to {0}", planFile.getPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to write export plan: [{0}]. {1}",
+                    new String[]{planFile.getPath(), e.getMessage()});
+        }
+    }
+
+    /**
+     * Writes the urls that were given up on (i.e. whose content is missing from the packages) to a report within the
+     * working directory, so that they can be exported again without rerunning the whole export.
+     *
+     * @param abandonedUrls Urls that were given up on.
+     * @param programArguments Program arguments.
+     */
+    private static void writeAbandonedUrls(final Set<String> abandonedUrls, final ProgramArguments programArguments) {
+        if (abandonedUrls.isEmpty()) {
+            return;
+        }
+        File reportFile = new File(getWorkingDirectory(programArguments) +
+                programArguments.get(ProgramArgument.PACKAGE_NAME) + ABANDONED_URLS_FILE_SUFFIX);
+        try {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), UTF_8));
+            try {
+                for (String abandonedUrl : abandonedUrls) {
+                    writer.write(abandonedUrl);
+                    writer.newLine();
+                }
+            } finally {
+                writer.close();
+            }
+            LOGGER.log(Level.WARNING, "Gave up on {0} urls, which are listed in [{1}]",
+                    new Object[]{abandonedUrls.size(), reportFile.getPath()});
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to write abandoned urls: [{0}]. {1}",
+                    new String[]{reportFile.getPath(), e.getMessage()});
+        }
+    }
+
+    /**
+     * Creates an empty {@code Set} of content paths, which is stored off the heap (within the working directory) when
+     * the off heap paths argument is set.
+     *
+     * @param programArguments Program arguments.
+     * @param name Name of the {@code Set}.
+     * @return Empty {@code Set} of content paths.
+     */
+    private static Set<String> createPathSet(final ProgramArguments programArguments, final String name) {
+        if (!Boolean.parseBoolean(programArguments.get(ProgramArgument.OFF_HEAP_PATHS))) {
+            return new LinkedHashSet<String>();
+        }
+        File directory = new File(getWorkingDirectory(programArguments));
+        try {
+            return new OffHeapPathSet(directory,
+                    programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + name);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to create off heap content paths in: [{0}]. {1}",
+                    new String[]{directory.getPath(), e.getMessage()});
+            ExitPolicy.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the specified {@code Set} of content paths behind a Bloom filter (sized for the expected number of
+     * content paths) when the expected paths argument is set, or the specified {@code Set} of content paths otherwise.
+     *
+     * @param programArguments Program arguments.
+     * @param paths Empty {@code Set} of content paths.
+     * @return {@code Set} of content paths.
+     */
+    private static Set<String> getFilteredPathSet(final ProgramArguments programArguments, final Set<String> paths) {
+        int expectedPaths = programArguments.getInt(ProgramArgument.EXPECTED_PATHS, 0);
+        if (expectedPaths <= 0) {
+            return paths;
+        }
+        return new BloomFilteredPathSet(paths, expectedPaths);
+    }
+
+    /**
+     * Closes the specified {@code Set} of content paths when it is stored off the heap.
+     *
+     * @param paths {@code Set} of content paths to close.
+     */
+    private static void closePathSet(final Set<String> paths) {
+        if (paths instanceof Closeable) {
+            try {
+                ((Closeable) paths).close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to close off heap content paths: {0}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the working directory for the specified program arguments.
+     *
+     * @param programArguments Program arguments.
+     * @return Working directory for the specified program arguments.
+     */
+    private static String getWorkingDirectory(final ProgramArguments programArguments) {
+        if (programArguments.has(ProgramArgument.WORKING_DIRECTORY)) {
+            return programArguments.get(ProgramArgument.WORKING_DIRECTORY);
         }
-        HttpReader httpReader = new HttpReader(programArguments.get(ProgramArgument.USERNAME),
-                programArguments.get(ProgramArgument.PASSWORD), programArguments.get(ProgramArgument.HOSTNAME),
-                programArguments.get(ProgramArgument.PORT));
-        Set<String> contentPaths = new LinkedHashSet<String>();
-        populateContentPaths(contentPaths, httpReader, programArguments.get(ProgramArgument.HOST),
-                programArguments.get(ProgramArgument.PATH), maxPageDepth, maxDAMDepth);
-        writePackages(contentPaths, programArguments.get(ProgramArgument.USERNAME),
-                programArguments.get(ProgramArgument.PACKAGE_NAME));
+        return DataExporter.WORKING_DIRECTORY;
+    }
+
+    /**
+     * Returns the file that contains the content paths of the specified shard.
+     *
+     * @param programArguments Program arguments.
+     * @param shardNumber Number of the shard (from {@code 1}).
+     * @param numberOfShards Number of shards.
+     * @return File that contains the content paths of the specified shard.
+     */
+    private static File getShardFile(final ProgramArguments programArguments, final int shardNumber,
+            final int numberOfShards) {
+        return new File(getWorkingDirectory(programArguments) + programArguments.get(ProgramArgument.PACKAGE_NAME) +
+                "_shard_" + shardNumber + "_of_" + numberOfShards + SHARD_FILE_EXTENSION);
+    }
+
+    /**
+     * Writes the content paths of a shard to the specified file (one content path per line).
+     *
+     * @param contentPaths {@code Set} that contains the {@code JCR DAM} content paths of the shard.
+     * @param shardFile File to write the content paths to.
+     */
+    private static void writeShard(final Set<String> contentPaths, final File shardFile) {
+        try {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(shardFile), UTF_8));
+            try {
+                for (String contentPath : contentPaths) {
+                    writer.write(contentPath);
+                    writer.newLine();
+                }
+            } finally {
+                writer.close();
+            }
+            LOGGER.log(Level.INFO, "Wrote {0} content paths to shard file [{1}]",
+                    new Object[]{contentPaths.size(), shardFile.getPath()});
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to write shard file: [{0}]. {1}",
+                    new String[]{shardFile.getPath(), e.getMessage()});
+            ExitPolicy.exit(-1);
+        }
+    }
+
+    /**
+     * Populates the {@code Set} that contains the {@code JCR DAM} content paths with the union of the content paths of
+     * all of the shards (removing the content paths that more than one shard found).
+     *
+     * @param contentPaths {@code Set} that contains the {@code JCR DAM} content paths.
+     * @param programArguments Program arguments.
+     */
+    private static void readShards(final Set<String> contentPaths, final ProgramArguments programArguments) {
+        int numberOfShards = programArguments.getInt(ProgramArgument.MERGE_SHARDS, 0);
+        if (numberOfShards < 1) {
+            LOGGER.log(Level.SEVERE, "Invalid number of shards to merge: {0}",
+                    programArguments.get(ProgramArgument.MERGE_SHARDS));
+            ExitPolicy.exit(-1);
+        }
+        for (int shardNumber = 1; shardNumber <= numberOfShards; shardNumber++) {
+            File shardFile = getShardFile(programArguments, shardNumber, numberOfShards);
+            try {
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(new FileInputStream(shardFile), UTF_8));
+                try {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (StringUtils.isNotBlank(line)) {
+                            contentPaths.add(line.trim());
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to read shard file: [{0}]. {1}",
+                        new String[]{shardFile.getPath(), e.getMessage()});
+                ExitPolicy.exit(-1);
+            }
+        }
+        LOGGER.log(Level.INFO, "Merged {0} shards into {1} content paths",
+                new Object[]{numberOfShards, contentPaths.size()});
     }
 
     /**
@@ -104,121 +460,256 @@ public class PackageCreator {
         return Integer.MAX_VALUE;
     }
 
+    /**
+     * Returns the {@code JsonJcrParser} to use for the specified program arguments.
+     *
+     * @param programArguments Program arguments.
+     * @return {@code JsonJcrParser} to use for the specified program arguments.
+     */
+    private static JsonJcrParser getJsonJcrParser(final ProgramArguments programArguments) {
+        if (programArguments.has(ProgramArgument.REFERENCE_RULES)) {
+            String referenceRules = programArguments.get(ProgramArgument.REFERENCE_RULES);
+            try {
+                return new JsonJcrParser(ReferenceRule.readRules(new File(referenceRules)));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to read reference rules: [{0}]. {1}",
+                        new String[]{referenceRules, e.getMessage()});
+                ExitPolicy.exit(-1);
+            }
+        }
+        if (programArguments.has(ProgramArgument.REFERENCE_PREFIXES)) {
+            return new JsonJcrParser(
+                    StringUtils.stripAll(programArguments.get(ProgramArgument.REFERENCE_PREFIXES).split(",")));
+        }
+        return new JsonJcrParser();
+    }
+
+    /**
+     * Returns the {@code PageDiscoverer} to use for the specified program arguments.
+     *
+     * @param programArguments Program arguments.
+     * @param transport {@code Transport} to use to retrieve content.
+     * @param jsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
+     * @return {@code PageDiscoverer} to use for the specified program arguments.
+     */
+    private static PageDiscoverer getPageDiscoverer(final ProgramArguments programArguments,
+            final Transport transport, final JsonJcrParser jsonJcrParser) {
+        String host = programArguments.get(ProgramArgument.HOST);
+        PageDiscoverer pageDiscoverer = new JsonPageDiscoverer(transport, jsonJcrParser, host, programArguments
+                .getInt(ProgramArgument.PAGE_SELECTOR_DEPTH, JsonPageDiscoverer.DEFAULT_SELECTOR_DEPTH));
+        if (SITEMAP_STRATEGY.equalsIgnoreCase(programArguments.get(ProgramArgument.PAGE_DISCOVERY))) {
+            String pageSource = programArguments.get(ProgramArgument.PAGE_SOURCE);
+            if (pageSource == null) {
+                pageSource = programArguments.get(ProgramArgument.PATH) + DEFAULT_SITEMAP_SUFFIX;
+            }
+            return new SitemapPageDiscoverer(transport, host, pageSource, pageDiscoverer);
+        }
+        if (QUERY_STRATEGY.equalsIgnoreCase(programArguments.get(ProgramArgument.PAGE_DISCOVERY))) {
+            return new QueryBuilderPageDiscoverer(transport, host, programArguments
+                    .getInt(ProgramArgument.QUERY_BATCH_SIZE, QueryBuilderPageDiscoverer.DEFAULT_BATCH_SIZE),
+                    pageDiscoverer);
+        }
+        return pageDiscoverer;
+    }
+
+    /**
+     * Returns the {@code ReferenceResolver} to use for the specified program arguments.
+     *
+     * @param programArguments Program arguments.
+     * @param transport {@code Transport} to use to retrieve content.
+     * @param jsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
+     * @return {@code ReferenceResolver} to use for the specified program arguments.
+     */
+    private static ReferenceResolver getReferenceResolver(final ProgramArguments programArguments,
+            final Transport transport, final JsonJcrParser jsonJcrParser) {
+        String host = programArguments.get(ProgramArgument.HOST);
+        ReferenceResolver referenceResolver = new JsonReferenceResolver(transport, jsonJcrParser, host);
+        if (QUERY_STRATEGY.equalsIgnoreCase(programArguments.get(ProgramArgument.REFERENCE_RESOLUTION))) {
+            String[] referenceProperties = null;
+            if (programArguments.has(ProgramArgument.REFERENCE_PROPERTIES)) {
+                referenceProperties =
+                        StringUtils.stripAll(programArguments.get(ProgramArgument.REFERENCE_PROPERTIES).split(","));
+            }
+            return new QueryBuilderReferenceResolver(transport, jsonJcrParser, host, programArguments
+                    .getInt(ProgramArgument.REFERENCE_BATCH_SIZE, QueryBuilderReferenceResolver.DEFAULT_BATCH_SIZE),
+                    referenceProperties, referenceResolver);
+        }
+        return referenceResolver;
+    }
+
     /**
      * Populates the {@code Set} that contains the {@code JCR DAM} content paths.
+     * <p>
+     * When the crawl is sharded, only the child pages of the path (and their descendants) that are assigned to the
+     * specified shard are crawled, and the path itself is only added by the first shard.
      *
      * @param contentPaths {@code Set} that contains the {@code JCR DAM} content paths.
-     * @param httpReader {@code HttpReader} to use to retrieve content.
-     * @param host Name of the host to retrieve content from.
+     * @param pageDiscoverer {@code PageDiscoverer} to use to discover the page content paths.
+     * @param referenceResolver {@code ReferenceResolver} to use to resolve the referenced content paths.
      * @param path Path to retrieve content from.
      * @param maxPageDepth Maximum depth to retrieve page content paths for.
      * @param maxDAMDepth Maximum depth to retrieve {@code JCR DAM} content paths for.
+     * @param processedContentPaths {@code Set} to record the already processed {@code JCR DAM} content paths in.
+     * @param shardAssigner {@code ShardAssigner} to use to assign the child pages to the shards, or null if the crawl
+     * is not sharded.
+     * @param shardNumber Number of the shard to crawl (from {@code 1}).
      */
-    private static void populateContentPaths(final Set<String> contentPaths, final HttpReader httpReader,
-            final String host, final String path, final int maxPageDepth, final int maxDAMDepth) {
-        JsonJcrParser jsonJcrParser = new JsonJcrParser();
+    private static void populateContentPaths(final Set<String> contentPaths, final PageDiscoverer pageDiscoverer,
+            final ReferenceResolver referenceResolver, final String path, final int maxPageDepth,
+            final int maxDAMDepth, final Set<String> processedContentPaths, final ShardAssigner shardAssigner,
+            final int shardNumber) {
         Set<String> pageContentPaths = new LinkedHashSet<String>();
-        LOGGER.log(Level.INFO, "Adding page content path: {0}", path);
-        pageContentPaths.add(path);
-        contentPaths.add(path);
-        if (pageDepth < maxPageDepth) {
-            populatePageContentPaths(pageContentPaths, httpReader, jsonJcrParser, host, path, maxPageDepth);
+        if (shardNumber == 1) {
+            LOGGER.log(Level.INFO, "Adding page content path: {0}", path);
+            pageContentPaths.add(path);
+            contentPaths.add(path);
+        }
+        Tracer.Span span = Tracer.start(CRAWL_SPAN, "pages");
+        if ((maxPageDepth > 0) && (shardAssigner == null)) {
+            pageContentPaths.addAll(pageDiscoverer.getPageContentPaths(path, maxPageDepth));
+        } else if (maxPageDepth > 0) {
+            for (String childPageContentPath : pageDiscoverer.getPageContentPaths(path, 1)) {
+                if (shardAssigner.getShard(childPageContentPath) == shardNumber) {
+                    LOGGER.log(Level.FINE, "Crawling subtree of shard {0}: {1}",
+                            new Object[]{shardNumber, childPageContentPath});
+                    pageContentPaths.add(childPageContentPath);
+                    if (maxPageDepth > 1) {
+                        pageContentPaths.addAll(
+                                pageDiscoverer.getPageContentPaths(childPageContentPath, maxPageDepth - 1));
+                    }
+                }
+            }
         }
+        span.end();
         if (maxDAMDepth > 0) {
-            populateContentPaths(contentPaths, pageContentPaths, httpReader, jsonJcrParser, host, maxDAMDepth);
+            populateContentPaths(contentPaths, processedContentPaths, pageContentPaths, referenceResolver, maxDAMDepth);
         }
     }
 
     /**
      * Populates the {@code Set} that contains the {@code JCR DAM} content paths.
+     * <p>
+     * The references are resolved level by level, so that the {@code ReferenceResolver} is able to resolve all of the
+     * content paths at the same depth together. The references of the page content paths are at depth zero, and a
+     * reference is only followed while its depth does not exceed the maximum depth of the {@code ReferenceRule} that it
+     * matched.
      *
      * @param contentPaths {@code Set} that contains the {@code JCR DAM} content paths.
+     * @param processedContentPaths {@code Set} to record the already processed {@code JCR DAM} content paths in.
      * @param pageContentPaths {@code Set} that contains the page content paths.
-     * @param httpReader {@code HttpReader} to use to retrieve content.
-     * @param jsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
-     * @param host Name of the host to retrieve content from.
+     * @param referenceResolver {@code ReferenceResolver} to use to resolve the referenced content paths.
      * @param maxDAMDepth Maximum depth to retrieve {@code JCR DAM} content paths for.
      */
-    private static void populateContentPaths(final Set<String> contentPaths, final Set<String> pageContentPaths,
-            final HttpReader httpReader, final JsonJcrParser jsonJcrParser, final String host, final int maxDAMDepth) {
-        Set<String> processedContentPaths = new HashSet<String>();
-        for (String pageContentPath : pageContentPaths) {
-            LOGGER.log(Level.INFO, "Processing page content path: {0}", pageContentPath);
-            Set<String> pageContents = jsonJcrParser.getContentPaths(pageContentPath,
-                    httpReader.getData(host + pageContentPath + "/jcr:content.infinity.json"));
-            for (String pageContent : pageContents) {
-                LOGGER.log(Level.FINE, "Adding content path: {0}", pageContent);
-                contentPaths.add(pageContent);
-                if (!processedContentPaths.contains(pageContent)) {
-                    damDepth = 0;
-                    populateContentPaths(contentPaths, processedContentPaths, pageContent, httpReader, jsonJcrParser,
-                            host, maxDAMDepth);
-                }
-            }
+    private static void populateContentPaths(final Set<String> contentPaths, final Set<String> processedContentPaths,
+            final Set<String> pageContentPaths, final ReferenceResolver referenceResolver, final int maxDAMDepth) {
+        LOGGER.log(Level.INFO, "Processing {0} page content paths", pageContentPaths.size());
+        Tracer.Span span = Tracer.start(CRAWL_SPAN, "page references");
+        Set<String> levelContentPaths = addContentPaths(contentPaths, processedContentPaths,
+                referenceResolver.getContentPaths(pageContentPaths), 0, maxDAMDepth);
+        span.end();
+        for (int damDepth = 0; !levelContentPaths.isEmpty(); damDepth++) {
+            LOGGER.log(Level.INFO, "Processing {0} content paths at DAM depth {1}",
+                    new Object[]{levelContentPaths.size(), damDepth});
+            span = Tracer.start(CRAWL_SPAN, "references at DAM depth " + damDepth);
+            levelContentPaths = addContentPaths(contentPaths, processedContentPaths,
+                    referenceResolver.getContentPaths(levelContentPaths), damDepth + 1, maxDAMDepth);
+            span.end();
         }
     }
 
     /**
-     * Populates the {@code Set} that contains the {@code JCR DAM} content paths.
+     * Adds the resolved references to the {@code Set} that contains the {@code JCR DAM} content paths.
      *
      * @param contentPaths {@code Set} that contains the {@code JCR DAM} content paths.
      * @param processedContentPaths {@code Set} that contains the already processed {@code JCR DAM} content paths.
-     * @param contentPath Path to retrieve content from.
-     * @param httpReader {@code HttpReader} to use to retrieve content.
-     * @param jsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
-     * @param host Name of the host to retrieve content from.
+     * @param references {@code Map} of content paths to the content paths that they reference.
+     * @param damDepth Depth of the referenced content paths.
      * @param maxDAMDepth Maximum depth to retrieve {@code JCR DAM} content paths for.
+     * @return {@code Set} that contains the referenced content paths that have not already been processed, and that are
+     * to be followed.
      */
-    private static void populateContentPaths(final Set<String> contentPaths, final Set<String> processedContentPaths,
-            final String contentPath, final HttpReader httpReader, final JsonJcrParser jsonJcrParser, final String host,
-            final int maxDAMDepth) {
-        processedContentPaths.add(contentPath);
-        LOGGER.log(Level.FINE, "Processing content path: {0}", contentPath);
-        Set<String> paths = jsonJcrParser
-                .getContentPaths(contentPath, httpReader.getData(host + contentPath + "/jcr:content.infinity.json"));
-        for (String path : paths) {
-            LOGGER.log(Level.FINE, "Adding content path: {0}", contentPath);
-            contentPaths.add(path);
-            if ((!processedContentPaths.contains(path)) && (damDepth < maxDAMDepth)) {
-                damDepth++;
-                populateContentPaths(contentPaths, processedContentPaths, path, httpReader, jsonJcrParser, host,
-                        maxDAMDepth);
+    private static Set<String> addContentPaths(final Set<String> contentPaths, final Set<String> processedContentPaths,
+            final Map<String, Map<String, ReferenceRule>> references, final int damDepth, final int maxDAMDepth) {
+        Set<String> unprocessedContentPaths = new LinkedHashSet<String>();
+        for (Map<String, ReferenceRule> referencedContentPaths : references.values()) {
+            for (Map.Entry<String, ReferenceRule> referencedContentPath : referencedContentPaths.entrySet()) {
+                String path = referencedContentPath.getKey();
+                ReferenceRule referenceRule = referencedContentPath.getValue();
+                if (referenceRule.isIncluded()) {
+                    LOGGER.log(Level.FINE, "Adding {0} content path: {1}", new Object[]{referenceRule, path});
+                    contentPaths.add(path);
+                }
+                if ((processedContentPaths.add(path)) && (damDepth <= referenceRule.getFollowDepth(maxDAMDepth))) {
+                    unprocessedContentPaths.add(path);
+                }
             }
         }
-        damDepth--;
+        return unprocessedContentPaths;
     }
 
     /**
-     * Populates the {@code Set} that contains the page content paths which represent all of the pages that content can
-     * exist for starting at the specified path.
+     * Writes the {@code CRX} package definitions while the crawl is still running.
+     * <p>
+     * The discovered content paths are sealed into chunks as soon as a chunk reaches the maximum number of content
+     * paths of a package, and each chunk is written (and optionally uploaded) by a background thread while the crawl
+     * continues. Only the content paths themselves are kept once their chunk has been sealed, to ignore the content
+     * paths that are discovered again.
      *
-     * @param pageContentPaths {@code Set} that contains the page content paths.
-     * @param httpReader {@code HttpReader} to use to retrieve content.
-     * @param jsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
-     * @param host Name of the host to retrieve content from.
-     * @param path Path to retrieve content from.
+     * @param contentPaths Empty {@code Set} to record the {@code JCR DAM} content paths in.
+     * @param processedContentPaths {@code Set} to record the already processed {@code JCR DAM} content paths in.
+     * @param programArguments Program arguments.
+     * @param transport {@code Transport} to retrieve the content with.
+     * @param jsonJcrParser {@code JsonJcrParser} to parse the content with.
      * @param maxPageDepth Maximum depth to retrieve page content paths for.
+     * @param maxDAMDepth Maximum depth to retrieve {@code JCR DAM} content paths for.
      */
-    private static void populatePageContentPaths(final Set<String> pageContentPaths, final HttpReader httpReader,
-            final JsonJcrParser jsonJcrParser, final String host, final String path, int maxPageDepth) {
-        Set<String> deeperPageContentPaths;
-        if (path.matches(".*(\\.\\d*)?\\.json")) {
-            deeperPageContentPaths = jsonJcrParser
-                    .getPageContentPaths(path.replaceFirst("(\\.\\d*)?\\.json", ""), httpReader.getData(host + path));
-        } else {
-            deeperPageContentPaths =
-                    jsonJcrParser.getPageContentPaths(path, httpReader.getData(host + path + ".infinity.json"));
-        }
-        for (String deeperPageContentPath : deeperPageContentPaths) {
-            if (!deeperPageContentPath.matches(".*(\\.\\d*)?\\.json")) {
-                LOGGER.log(Level.INFO, "Adding page content path: {0}", deeperPageContentPath);
-                pageContentPaths.add(deeperPageContentPath);
-            }
-            if (pageDepth < maxPageDepth) {
-                pageDepth++;
-                populatePageContentPaths(pageContentPaths, httpReader, jsonJcrParser, host, deeperPageContentPath,
-                        maxPageDepth);
+    private static void writePackagesWhileCrawling(final Set<String> contentPaths,
+            final Set<String> processedContentPaths, final ProgramArguments programArguments,
+            final Transport transport, final JsonJcrParser jsonJcrParser, final int maxPageDepth,
+            final int maxDAMDepth) {
+        final String username = programArguments.get(ProgramArgument.USERNAME);
+        final String packageName = programArguments.get(ProgramArgument.PACKAGE_NAME);
+        final boolean uploadChunks = Boolean.parseBoolean(programArguments.get(ProgramArgument.UPLOAD_CHUNKS));
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        ChunkedPathSet chunkedPathSet = new ChunkedPathSet(contentPaths, MAXIMUM_PACKAGE_CONTENT_PATHS,
+                new ChunkedPathSet.ChunkHandler() {
+                    @Override
+                    public void handleChunk(final Set<String> chunk, final int chunkNumber) {
+                        LOGGER.log(Level.INFO, "Sealed package {0} with {1} content paths",
+                                new Object[]{chunkNumber, chunk.size()});
+                        futures.add(executorService.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                writePackage(chunk, username, packageName + "_" + chunkNumber);
+                                if (uploadChunks &&
+                                        !PackageUploader.uploadPackage(transport, programArguments, chunkNumber)) {
+                                    throw new IllegalStateException(
+                                            "Unable to upload package: " + packageName + "_" + chunkNumber);
+                                }
+                            }
+                        }));
+                    }
+                });
+        try {
+            populateContentPaths(chunkedPathSet, getPageDiscoverer(programArguments, transport, jsonJcrParser),
+                    getReferenceResolver(programArguments, transport, jsonJcrParser),
+                    programArguments.get(ProgramArgument.PATH), maxPageDepth, maxDAMDepth, processedContentPaths,
+                    null, 1);
+            numberOfPackages = chunkedPathSet.flush();
+            for (Future<?> future : futures) {
+                future.get();
             }
+            packagesUploaded = uploadChunks;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.SEVERE, "Interrupted while writing packages: {0}", e.getMessage());
+            ExitPolicy.exit(-1);
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Unable to write packages: {0}", e.getCause().getMessage());
+            ExitPolicy.exit(-1);
+        } finally {
+            executorService.shutdownNow();
         }
     }
 
@@ -248,6 +739,50 @@ public class PackageCreator {
         }
     }
 
+    /**
+     * Writes a single {@code CRX} package that contains the content of the {@code JCR DAM} content paths on the
+     * client.
+     *
+     * @param contentPaths {@code Set} that contains the {@code JCR DAM} content paths.
+     * @param programArguments Program arguments.
+     * @param transport {@code Transport} to use to retrieve content.
+     * @param jsonJcrParser {@code JsonJcrParser} to use to parse the {@code JSON} representation of {@code JCR} data.
+     */
+    private static void streamPackage(final Set<String> contentPaths, final ProgramArguments programArguments,
+            final Transport transport, final JsonJcrParser jsonJcrParser) {
+        String workingDirectory = getWorkingDirectory(programArguments);
+        String packageName = programArguments.get(ProgramArgument.PACKAGE_NAME) + "_1";
+        PackageStreamWriter packageStreamWriter = new PackageStreamWriter(transport, jsonJcrParser,
+                programArguments.get(ProgramArgument.HOST),
+                programArguments.getInt(ProgramArgument.FETCH_THREADS, PackageStreamWriter.DEFAULT_FETCH_THREADS),
+                getCompressionPolicy(programArguments),
+                Boolean.parseBoolean(programArguments.get(ProgramArgument.PARALLEL_COMPRESSION)));
+        Tracer.Span span = Tracer.start("stream", packageName);
+        if (!packageStreamWriter.writePackage(contentPaths, programArguments.get(ProgramArgument.USERNAME),
+                packageName, workingDirectory + packageName + ".zip")) {
+            ExitPolicy.exit(-1);
+        }
+        span.end();
+        numberOfPackages = 1;
+        packageStreamed = true;
+    }
+
+    /**
+     * Returns the {@code CompressionPolicy} to use for the specified program arguments.
+     *
+     * @param programArguments Program arguments.
+     * @return {@code CompressionPolicy} to use for the specified program arguments.
+     */
+    static CompressionPolicy getCompressionPolicy(final ProgramArguments programArguments) {
+        try {
+            return new CompressionPolicy(
+                    programArguments.getInt(ProgramArgument.COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "{0}, using the default compression level", e.getMessage());
+            return new CompressionPolicy();
+        }
+    }
+
     /**
      * Writes the files necessary for the {@code CRX} package definition.
      *
@@ -256,10 +791,14 @@ public class PackageCreator {
      * @param packageName Name of the package to create.
      */
     private static void writePackage(final Set<String> contentPaths, final String username, final String packageName) {
+        Tracer.Span span = Tracer.start("write", packageName);
         PackageFileWriter packageFileWriter = new PackageFileWriter();
         packageFileWriter.writePackageFiles(contentPaths, username, packageName);
+        span.end();
+        span = Tracer.start("zip", packageName);
         PackageFileZipper packageFileZipper = new PackageFileZipper();
         packageFileZipper.createPackageZip(packageName);
+        span.end();
     }
 
 }
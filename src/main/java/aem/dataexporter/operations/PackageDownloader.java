@@ -1,9 +1,12 @@
 package aem.dataexporter.operations;
 
 import aem.dataexporter.DataExporter;
-import aem.dataexporter.http.HttpReader;
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.http.TransportFactory;
+import aem.dataexporter.utilities.ExitPolicy;
 import aem.dataexporter.utilities.ProgramArgument;
 import aem.dataexporter.utilities.ProgramArguments;
+import aem.dataexporter.utilities.Tracer;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -42,31 +45,40 @@ public class PackageDownloader {
         ProgramArguments programArguments = new ProgramArguments(args, REQUIRED_ARGUMENTS);
         if (!programArguments.hasRequiredArguments()) {
             programArguments.printPackageUsageMessage();
-            System.exit(-1);
+            ExitPolicy.exit(-1);
         }
-        HttpReader httpReader = new HttpReader(programArguments.get(ProgramArgument.USERNAME),
-                programArguments.get(ProgramArgument.PASSWORD), programArguments.get(ProgramArgument.HOSTNAME),
-                programArguments.get(ProgramArgument.PORT));
         int numberOfPackages = Integer.parseInt(programArguments.get(ProgramArgument.NUMBER_OF_PACKAGES));
         String workingDirectory = DataExporter.WORKING_DIRECTORY;
         if (programArguments.has(ProgramArgument.WORKING_DIRECTORY)) {
             workingDirectory = programArguments.get(ProgramArgument.WORKING_DIRECTORY);
         }
-        for (int index = 1; index <= numberOfPackages; index++) {
-            try {
-                FileOutputStream fileOutputStream = new FileOutputStream(new File(
-                        workingDirectory + programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index + ".zip"));
-                httpReader.getDataAndWriteToOutputSteam(
-                        programArguments.get(ProgramArgument.HOST) + "/crx/packmgr/service.jsp?name=" +
-                                programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index +
-                                "&group=data_exporter_packages", fileOutputStream);
-                fileOutputStream.close();
-                LOGGER.log(Level.INFO, "Finished downloading package [src/main/resources/{0}.zip",
+        Transport transport = TransportFactory.createTransport(programArguments);
+        try {
+            for (int index = 1; index <= numberOfPackages; index++) {
+                Tracer.Span span = Tracer.start("download",
                         programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index);
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Unable to download package. {0}", e.getMessage());
-                System.exit(-1);
+                try {
+                    FileOutputStream fileOutputStream = new FileOutputStream(new File(workingDirectory +
+                            programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index + ".zip"));
+                    transport.getHostTransport(index - 1).getDataAndWriteToOutputSteam(
+                            programArguments.get(ProgramArgument.HOST) + "/crx/packmgr/service.jsp?name=" +
+                                    programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index +
+                                    "&group=data_exporter_packages", fileOutputStream);
+                    fileOutputStream.close();
+                    span.end();
+                    LOGGER.log(Level.INFO, "Finished downloading package [src/main/resources/{0}.zip",
+                            programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index);
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Unable to download package. {0}", e.getMessage());
+                    ExitPolicy.exit(-1);
+                }
             }
+            if (!transport.getAbandonedUrls().isEmpty()) {
+                LOGGER.log(Level.SEVERE, "Unable to download packages: {0}", transport.getAbandonedUrls());
+                ExitPolicy.exit(-1);
+            }
+        } finally {
+            TransportFactory.closeTransport(transport);
         }
     }
 
@@ -1,12 +1,42 @@
 package aem.dataexporter.operations;
 
+import aem.dataexporter.DataExporter;
 import aem.dataexporter.http.HttpReader;
+import aem.dataexporter.http.ResponseReader;
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.http.TransportFactory;
 import aem.dataexporter.json.JsonSimplePackageManagerResponse;
+import aem.dataexporter.utilities.ExitPolicy;
 import aem.dataexporter.utilities.ProgramArgument;
 import aem.dataexporter.utilities.ProgramArguments;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Package uploader for the {@code DataExporter}.
@@ -14,14 +44,68 @@ import java.util.logging.Logger;
  * This class is designed to supplement the {@code DataExporter} by allowing the ability to individually run specific
  * operations should the entire data export process fail.
  * <p>
+ * The packages are installed in order, but up to {@code installThreads} of them are installed at the same time when
+ * the filter roots of their {@code filter.xml} (read from the packages in the working directory) are disjoint. A
+ * package whose filter roots overlap those of an earlier package (or whose filter roots are unknown) is not installed
+ * until the earlier package has been installed. The packages can also be uploaded ahead of their installation.
+ * <p>
  * The package creator expects the following program arguments: <ul> <li>host</li> <li>username</li> <li>password</li>
- * <li>packageName</li> <li>numberOfPackages</li> </ul>
+ * <li>packageName</li> <li>numberOfPackages</li> <li>installLogs (optional)</li> <li>installThreads (optional)</li>
+ * <li>uploadPackages (optional)</li> <li>workingDirectory (optional)</li> </ul>
  */
 public class PackageInstaller {
 
     private static final Logger LOGGER = Logger.getLogger(PackageInstaller.class.getName());
     private final static ProgramArgument[] REQUIRED_ARGUMENTS =
             {ProgramArgument.HOST, ProgramArgument.USERNAME, ProgramArgument.PASSWORD, ProgramArgument.PACKAGE_NAME};
+    /**
+     * Default number of packages that are installed at the same time.
+     */
+    private static final int DEFAULT_INSTALL_THREADS = 1;
+    /**
+     * Name of the {@code filter.xml} entry of a package.
+     */
+    private static final String FILTER_XML = "META-INF/vault/filter.xml";
+
+    /**
+     * Timing of the installation of a package.
+     */
+    private static final class Installation {
+
+        /**
+         * Index of the package (from {@code 1}).
+         */
+        private final int index;
+        /**
+         * Whether or not the package was installed.
+         */
+        private final boolean success;
+        /**
+         * Number of milliseconds spent waiting for the package to be uploaded.
+         */
+        private final long uploadWaitMillis;
+        /**
+         * Number of milliseconds the installation took.
+         */
+        private final long installMillis;
+
+        /**
+         * Constructs a new {@code Installation}.
+         *
+         * @param newIndex Index of the package (from {@code 1}).
+         * @param newSuccess Whether or not the package was installed.
+         * @param newUploadWaitMillis Number of milliseconds spent waiting for the package to be uploaded.
+         * @param newInstallMillis Number of milliseconds the installation took.
+         */
+        private Installation(final int newIndex, final boolean newSuccess, final long newUploadWaitMillis,
+                final long newInstallMillis) {
+            this.index = newIndex;
+            this.success = newSuccess;
+            this.uploadWaitMillis = newUploadWaitMillis;
+            this.installMillis = newInstallMillis;
+        }
+
+    }
 
     /**
      * Run the package uploader.
@@ -32,21 +116,319 @@ public class PackageInstaller {
         ProgramArguments programArguments = new ProgramArguments(args, REQUIRED_ARGUMENTS);
         if (!programArguments.hasRequiredArguments()) {
             programArguments.printPackageUsageMessage();
-            System.exit(-1);
+            ExitPolicy.exit(-1);
+        }
+        File installLogs = programArguments.has(ProgramArgument.INSTALL_LOGS) ?
+                new File(programArguments.get(ProgramArgument.INSTALL_LOGS)) : null;
+        if ((installLogs != null) && (!installLogs.isDirectory()) && (!installLogs.mkdirs())) {
+            LOGGER.log(Level.SEVERE, "Unable to create install log directory: {0}", installLogs.getPath());
+            ExitPolicy.exit(-1);
+        }
+        String workingDirectory = DataExporter.WORKING_DIRECTORY;
+        if (programArguments.has(ProgramArgument.WORKING_DIRECTORY)) {
+            workingDirectory = programArguments.get(ProgramArgument.WORKING_DIRECTORY);
         }
-        HttpReader httpReader = new HttpReader(programArguments.get(ProgramArgument.USERNAME),
-                programArguments.get(ProgramArgument.PASSWORD), programArguments.get(ProgramArgument.HOSTNAME),
-                programArguments.get(ProgramArgument.PORT));
         int numberOfPackages = Integer.parseInt(programArguments.get(ProgramArgument.NUMBER_OF_PACKAGES));
+        int installThreads = programArguments.getInt(ProgramArgument.INSTALL_THREADS, DEFAULT_INSTALL_THREADS);
+        List<List<String>> filterRoots = new ArrayList<List<String>>();
         for (int index = 1; index <= numberOfPackages; index++) {
-            String responseString = httpReader.postAndGetResponseString(programArguments.get(ProgramArgument.HOST) +
-                    "/crx/packmgr/service/.json/etc/packages/data_exporter_packages/" +
-                    programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index + ".zip?cmd=install");
-            if (responseString == null ||
-                    !JsonSimplePackageManagerResponse.validateAndLogResponse(responseString, "Installation")) {
+            filterRoots.add((installThreads > 1) ? readFilterRoots(new File(workingDirectory +
+                    programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index + ".zip")) : null);
+        }
+        Transport transport = programArguments.has(ProgramArgument.SNAPSHOT) ||
+                programArguments.has(ProgramArgument.RECORD) || programArguments.has(ProgramArgument.REPLAY) ?
+                TransportFactory.createTransport(programArguments) :
+                new HttpReader(programArguments.get(ProgramArgument.USERNAME),
+                        programArguments.get(ProgramArgument.PASSWORD), programArguments.get(ProgramArgument.SCHEME),
+                        programArguments.get(ProgramArgument.HOSTNAME), programArguments.get(ProgramArgument.PORT));
+        ExecutorService uploadExecutor = Executors.newSingleThreadExecutor();
+        try {
+            List<Future<Boolean>> uploads = null;
+            if (Boolean.parseBoolean(programArguments.get(ProgramArgument.UPLOAD_PACKAGES))) {
+                uploads = uploadPackages(uploadExecutor, transport, programArguments, numberOfPackages);
+            }
+            if (!installPackages(transport, programArguments, filterRoots, uploads, installLogs, installThreads)) {
                 LOGGER.log(Level.SEVERE, "Unable to install package.");
-                System.exit(-1);
+                ExitPolicy.exit(-1);
+            }
+        } finally {
+            uploadExecutor.shutdownNow();
+            TransportFactory.closeTransport(transport);
+        }
+    }
+
+    /**
+     * Uploads the packages in order in the background, so that each package is uploaded ahead of its installation.
+     *
+     * @param uploadExecutor {@code ExecutorService} to upload the packages with.
+     * @param transport {@code Transport} to upload the packages with.
+     * @param programArguments Program arguments.
+     * @param numberOfPackages Number of packages to upload.
+     * @return {@code Future} of whether or not each of the packages was uploaded (in order).
+     */
+    private static List<Future<Boolean>> uploadPackages(final ExecutorService uploadExecutor,
+            final Transport transport, final ProgramArguments programArguments, final int numberOfPackages) {
+        List<Future<Boolean>> uploads = new ArrayList<Future<Boolean>>();
+        for (int index = 1; index <= numberOfPackages; index++) {
+            final int packageIndex = index;
+            uploads.add(uploadExecutor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    long start = System.currentTimeMillis();
+                    boolean uploaded = PackageUploader.uploadPackage(transport, programArguments, packageIndex);
+                    LOGGER.log(Level.INFO, "Uploaded package {0} in {1} ms",
+                            new Object[]{packageIndex, System.currentTimeMillis() - start});
+                    return uploaded;
+                }
+            }));
+        }
+        return uploads;
+    }
+
+    /**
+     * Installs the packages in order, installing up to the specified number of packages at the same time when their
+     * filter roots are disjoint.
+     * <p>
+     * A package is only installed once every earlier package whose filter roots overlap its own has been installed,
+     * so that the content of overlapping packages is installed in the same order as when installing them one after
+     * another. No further packages are installed once a package fails to install.
+     *
+     * @param transport {@code Transport} to install the packages with.
+     * @param programArguments Program arguments.
+     * @param filterRoots Filter roots of each of the packages (in order), or null for a package whose filter roots are
+     * unknown.
+     * @param uploads {@code Future} of the upload of each of the packages (in order), or null if the packages have
+     * already been uploaded.
+     * @param installLogs Directory to write the package manager response of each installation to, or null.
+     * @param installThreads Maximum number of packages to install at the same time.
+     * @return True if all of the packages were installed; otherwise false.
+     */
+    private static boolean installPackages(final Transport transport, final ProgramArguments programArguments,
+            final List<List<String>> filterRoots, final List<Future<Boolean>> uploads, final File installLogs,
+            final int installThreads) {
+        long start = System.currentTimeMillis();
+        int maxInstalls = Math.max(1, installThreads);
+        ExecutorService installExecutor = Executors.newFixedThreadPool(maxInstalls);
+        CompletionService<Installation> completionService =
+                new ExecutorCompletionService<Installation>(installExecutor);
+        Set<Integer> pendingPackages = new TreeSet<Integer>();
+        for (int index = 1; index <= filterRoots.size(); index++) {
+            pendingPackages.add(index);
+        }
+        Set<Integer> installingPackages = new HashSet<Integer>();
+        int installedPackages = 0;
+        long installMillis = 0;
+        long uploadWaitMillis = 0;
+        boolean success = true;
+        try {
+            while (((success) && (!pendingPackages.isEmpty())) || (!installingPackages.isEmpty())) {
+                for (Iterator<Integer> iterator = pendingPackages.iterator();
+                        (success) && (iterator.hasNext()) && (installingPackages.size() < maxInstalls); ) {
+                    final int index = iterator.next();
+                    if (isBlocked(index, filterRoots, pendingPackages, installingPackages)) {
+                        continue;
+                    }
+                    iterator.remove();
+                    installingPackages.add(index);
+                    final Future<Boolean> upload = (uploads == null) ? null : uploads.get(index - 1);
+                    completionService.submit(new Callable<Installation>() {
+                        @Override
+                        public Installation call() throws Exception {
+                            return installPackage(transport, programArguments, index, upload, installLogs);
+                        }
+                    });
+                }
+                Installation installation = completionService.take().get();
+                installingPackages.remove(installation.index);
+                installMillis += installation.installMillis;
+                uploadWaitMillis += installation.uploadWaitMillis;
+                if (installation.success) {
+                    installedPackages++;
+                } else {
+                    success = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Unable to install package. {0}", e.getCause().getMessage());
+            return false;
+        } finally {
+            installExecutor.shutdownNow();
+        }
+        long elapsedMillis = System.currentTimeMillis() - start;
+        LOGGER.log(Level.INFO, "Installed {0} of {1} packages in {2} ms ({3} ms of installations, i.e. a speedup of " +
+                "{4}, and {5} ms waiting for uploads)", new Object[]{installedPackages, filterRoots.size(),
+                elapsedMillis, installMillis,
+                String.format("%.1fx", installMillis / (double) Math.max(1, elapsedMillis)), uploadWaitMillis});
+        return success;
+    }
+
+    /**
+     * Returns whether or not the specified package has to wait for an earlier package to be installed (i.e. an earlier
+     * package that is yet to be installed has overlapping filter roots).
+     *
+     * @param index Index of the package (from {@code 1}).
+     * @param filterRoots Filter roots of each of the packages (in order), or null for a package whose filter roots are
+     * unknown.
+     * @param pendingPackages Indexes of the packages that have not been installed yet.
+     * @param installingPackages Indexes of the packages that are being installed.
+     * @return True if the specified package has to wait for an earlier package to be installed; otherwise false.
+     */
+    private static boolean isBlocked(final int index, final List<List<String>> filterRoots,
+            final Set<Integer> pendingPackages, final Set<Integer> installingPackages) {
+        for (int earlierIndex = 1; earlierIndex < index; earlierIndex++) {
+            if (((pendingPackages.contains(earlierIndex)) || (installingPackages.contains(earlierIndex))) &&
+                    (overlaps(filterRoots.get(earlierIndex - 1), filterRoots.get(index - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether or not the specified filter roots overlap (i.e. a root of one is the same as, or an ancestor of,
+     * a root of the other).
+     *
+     * @param roots Filter roots, or null if they are unknown.
+     * @param otherRoots Other filter roots, or null if they are unknown.
+     * @return True if the filter roots overlap, or either of them is unknown; otherwise false.
+     */
+    private static boolean overlaps(final List<String> roots, final List<String> otherRoots) {
+        if ((roots == null) || (otherRoots == null)) {
+            return true;
+        }
+        for (String root : roots) {
+            for (String otherRoot : otherRoots) {
+                if ((isSameOrAncestor(root, otherRoot)) || (isSameOrAncestor(otherRoot, root))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether or not the specified path is the same as, or an ancestor of, the other path.
+     *
+     * @param path Path.
+     * @param otherPath Other path.
+     * @return True if the path is the same as, or an ancestor of, the other path; otherwise false.
+     */
+    private static boolean isSameOrAncestor(final String path, final String otherPath) {
+        return otherPath.equals(path) || "/".equals(path) || otherPath.startsWith(path + "/");
+    }
+
+    /**
+     * Returns the filter roots of the {@code filter.xml} of the specified package file.
+     *
+     * @param packageFile Package file.
+     * @return Filter roots of the specified package file, or null if they cannot be read.
+     */
+    private static List<String> readFilterRoots(final File packageFile) {
+        if (!packageFile.isFile()) {
+            LOGGER.log(Level.WARNING, "No package file {0}, so it will not be installed in parallel",
+                    packageFile.getPath());
+            return null;
+        }
+        try {
+            ZipFile zipFile = new ZipFile(packageFile);
+            try {
+                ZipEntry zipEntry = zipFile.getEntry(FILTER_XML);
+                if (zipEntry == null) {
+                    LOGGER.log(Level.WARNING, "No {0} in package file {1}, so it will not be installed in parallel",
+                            new String[]{FILTER_XML, packageFile.getPath()});
+                    return null;
+                }
+                InputStream in = zipFile.getInputStream(zipEntry);
+                try {
+                    XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+                    xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+                    XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+                    List<String> roots = new ArrayList<String>();
+                    while (reader.hasNext()) {
+                        if ((reader.next() == XMLStreamConstants.START_ELEMENT) &&
+                                ("filter".equals(reader.getLocalName())) &&
+                                (reader.getAttributeValue(null, "root") != null)) {
+                            roots.add(reader.getAttributeValue(null, "root"));
+                        }
+                    }
+                    reader.close();
+                    return roots;
+                } finally {
+                    in.close();
+                }
+            } finally {
+                zipFile.close();
             }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read filter of package file: [{0}]. {1}",
+                    new String[]{packageFile.getPath(), e.getMessage()});
+        } catch (XMLStreamException e) {
+            LOGGER.log(Level.WARNING, "Unable to read filter of package file: [{0}]. {1}",
+                    new String[]{packageFile.getPath(), e.getMessage()});
+        }
+        return null;
+    }
+
+    /**
+     * Installs the package with the specified index, once it has been uploaded.
+     *
+     * @param transport {@code Transport} to install the package with.
+     * @param programArguments Program arguments.
+     * @param index Index of the package (from {@code 1}).
+     * @param upload {@code Future} of the upload of the package, or null if the package has already been uploaded.
+     * @param installLogs Directory to write the package manager response of the installation to, or null.
+     * @return Timing of the installation of the package.
+     * @throws InterruptedException If interrupted while waiting for the package to be uploaded.
+     * @throws ExecutionException If the upload of the package failed.
+     */
+    private static Installation installPackage(final Transport transport, final ProgramArguments programArguments,
+            final int index, final Future<Boolean> upload, final File installLogs)
+            throws InterruptedException, ExecutionException {
+        String packageName = programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index;
+        long start = System.currentTimeMillis();
+        if ((upload != null) && (!upload.get())) {
+            LOGGER.log(Level.SEVERE, "Unable to upload package {0}", packageName);
+            return new Installation(index, false, System.currentTimeMillis() - start, 0);
         }
+        long uploadWaitMillis = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        JsonSimplePackageManagerResponse response = transport.getHostTransport(index - 1).postAndReadResponse(
+                programArguments.get(ProgramArgument.HOST) +
+                        "/crx/packmgr/service/.json/etc/packages/data_exporter_packages/" + packageName +
+                        ".zip?cmd=install",
+                getResponseReader((installLogs == null) ? null : new File(installLogs, packageName + ".log")));
+        boolean success = JsonSimplePackageManagerResponse.validateAndLogResponse(response, "Installation");
+        long installMillis = System.currentTimeMillis() - start;
+        LOGGER.log(success ? Level.INFO : Level.SEVERE, "{0} package {1} in {2} ms (after waiting {3} ms for its " +
+                "upload)", new Object[]{success ? "Installed" : "Failed to install", packageName, installMillis,
+                uploadWaitMillis});
+        return new Installation(index, success, uploadWaitMillis, installMillis);
+    }
+
+    /**
+     * Returns the {@code ResponseReader} that reads the status of an installation from the package manager response,
+     * streaming the response to the specified install log (if any) rather than holding it in memory.
+     *
+     * @param installLog File to write the package manager response to, or null if it is not written.
+     * @return {@code ResponseReader} that reads the status of an installation.
+     */
+    private static ResponseReader<JsonSimplePackageManagerResponse> getResponseReader(final File installLog) {
+        return new ResponseReader<JsonSimplePackageManagerResponse>() {
+            @Override
+            public JsonSimplePackageManagerResponse read(final InputStream in) throws IOException {
+                if (installLog == null) {
+                    return JsonSimplePackageManagerResponse.readResponse(in, null);
+                }
+                OutputStream log = new BufferedOutputStream(new FileOutputStream(installLog));
+                try {
+                    return JsonSimplePackageManagerResponse.readResponse(in, log);
+                } finally {
+                    log.close();
+                }
+            }
+        };
     }
 }
@@ -1,8 +1,11 @@
 package aem.dataexporter.operations;
 
-import aem.dataexporter.http.HttpReader;
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.http.TransportFactory;
+import aem.dataexporter.utilities.ExitPolicy;
 import aem.dataexporter.utilities.ProgramArgument;
 import aem.dataexporter.utilities.ProgramArguments;
+import aem.dataexporter.utilities.Tracer;
 
 /**
  * Package remover for the {@code DataExporter}.
@@ -30,20 +33,25 @@ public class PackageRemover {
         ProgramArguments programArguments = new ProgramArguments(args, REQUIRED_ARGUMENTS);
         if (!programArguments.hasRequiredArguments()) {
             programArguments.printPackageUsageMessage();
-            System.exit(-1);
+            ExitPolicy.exit(-1);
         }
-        HttpReader httpReader = new HttpReader(programArguments.get(ProgramArgument.USERNAME),
-                programArguments.get(ProgramArgument.PASSWORD), programArguments.get(ProgramArgument.HOSTNAME),
-                programArguments.get(ProgramArgument.PORT));
         int numberOfPackages = Integer.parseInt(programArguments.get(ProgramArgument.NUMBER_OF_PACKAGES));
-        for (int index = 1; index <= numberOfPackages; index++) {
-            boolean success = httpReader
-                    .post(programArguments.get(ProgramArgument.HOST) + "/crx/packmgr/service.jsp?cmd=rm&name=" +
-                            programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index +
-                            "&group=data_exporter_packages");
-            if (!success) {
-                System.exit(-1);
+        Transport transport = TransportFactory.createTransport(programArguments);
+        try {
+            for (int index = 1; index <= numberOfPackages; index++) {
+                Tracer.Span span =
+                        Tracer.start("remove", programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index);
+                boolean success = transport.getHostTransport(index - 1)
+                        .post(programArguments.get(ProgramArgument.HOST) + "/crx/packmgr/service.jsp?cmd=rm&name=" +
+                                programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index +
+                                "&group=data_exporter_packages");
+                span.end();
+                if (!success) {
+                    ExitPolicy.exit(-1);
+                }
             }
+        } finally {
+            TransportFactory.closeTransport(transport);
         }
     }
 
@@ -0,0 +1,72 @@
+package aem.dataexporter.operations;
+
+import aem.dataexporter.DataExporter;
+import aem.dataexporter.store.BlobStore;
+import aem.dataexporter.utilities.ExitPolicy;
+import aem.dataexporter.utilities.ProgramArgument;
+import aem.dataexporter.utilities.ProgramArguments;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Package restorer for the {@code DataExporter}.
+ * <p>
+ * This class is designed to supplement the {@code DataExporter} by allowing the ability to individually run specific
+ * operations should the entire data export process fail.
+ * <p>
+ * The packages that were archived by the {@code PackageArchiver} are rebuilt from the {@code BlobStore} into the
+ * working directory.
+ * <p>
+ * The package restorer expects the following program arguments: <ul> <li>packageName</li> <li>blobStore</li>
+ * <li>workingDirectory (optional)</li> <li>compressionLevel (optional)</li> </ul>
+ */
+public class PackageRestorer {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(PackageRestorer.class.getName());
+    /**
+     * Required program arguments.
+     */
+    private static final ProgramArgument[] REQUIRED_ARGUMENTS =
+            {ProgramArgument.PACKAGE_NAME, ProgramArgument.BLOB_STORE};
+
+    /**
+     * Run the package restorer.
+     *
+     * @param args Array of program arguments.
+     */
+    public static void main(final String[] args) {
+        ProgramArguments programArguments = new ProgramArguments(args, REQUIRED_ARGUMENTS);
+        if (!programArguments.hasRequiredArguments()) {
+            programArguments.printPackageUsageMessage();
+            ExitPolicy.exit(-1);
+        }
+        String workingDirectory = DataExporter.WORKING_DIRECTORY;
+        if (programArguments.has(ProgramArgument.WORKING_DIRECTORY)) {
+            workingDirectory = programArguments.get(ProgramArgument.WORKING_DIRECTORY);
+        }
+        try {
+            BlobStore blobStore = new BlobStore(new File(programArguments.get(ProgramArgument.BLOB_STORE)));
+            List<String> packageNames = blobStore.getPackageNames(programArguments.get(ProgramArgument.PACKAGE_NAME));
+            if (packageNames.isEmpty()) {
+                LOGGER.log(Level.SEVERE, "No packages found in the blob store for package name: {0}",
+                        programArguments.get(ProgramArgument.PACKAGE_NAME));
+                ExitPolicy.exit(-1);
+            }
+            for (String packageName : packageNames) {
+                blobStore.restorePackage(packageName, new File(workingDirectory + packageName + ".zip"),
+                        PackageCreator.getCompressionPolicy(programArguments));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to restore package. {0}", e.getMessage());
+            ExitPolicy.exit(-1);
+        }
+    }
+
+}
@@ -1,9 +1,12 @@
 package aem.dataexporter.operations;
 
 import aem.dataexporter.DataExporter;
-import aem.dataexporter.http.HttpReader;
+import aem.dataexporter.http.Transport;
+import aem.dataexporter.http.TransportFactory;
+import aem.dataexporter.utilities.ExitPolicy;
 import aem.dataexporter.utilities.ProgramArgument;
 import aem.dataexporter.utilities.ProgramArguments;
+import aem.dataexporter.utilities.Tracer;
 
 /**
  * Package uploader for the {@code DataExporter}.
@@ -32,26 +35,42 @@ public class PackageUploader {
         ProgramArguments programArguments = new ProgramArguments(args, REQUIRED_ARGUMENTS);
         if (!programArguments.hasRequiredArguments()) {
             programArguments.printPackageUsageMessage();
-            System.exit(-1);
-        }
-        HttpReader httpReader = new HttpReader(programArguments.get(ProgramArgument.USERNAME),
-                programArguments.get(ProgramArgument.PASSWORD), programArguments.get(ProgramArgument.HOSTNAME),
-                programArguments.get(ProgramArgument.PORT));
-        String workingDirectory = DataExporter.WORKING_DIRECTORY;
-        if (programArguments.has(ProgramArgument.WORKING_DIRECTORY)) {
-            workingDirectory = programArguments.get(ProgramArgument.WORKING_DIRECTORY);
+            ExitPolicy.exit(-1);
         }
         int numberOfPackages = Integer.parseInt(programArguments.get(ProgramArgument.NUMBER_OF_PACKAGES));
-        for (int index = 1; index <= numberOfPackages; index++) {
-            boolean success = httpReader.writeData(
-                    programArguments.get(ProgramArgument.HOST) + "/crx/packmgr/service/.json/?cmd=upload&force=true",
-                    workingDirectory + programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index + ".zip",
-                    programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index);
-            if (!success) {
-                System.exit(-1);
+        Transport transport = TransportFactory.createTransport(programArguments);
+        try {
+            for (int index = 1; index <= numberOfPackages; index++) {
+                if (!uploadPackage(transport, programArguments, index)) {
+                    ExitPolicy.exit(-1);
+                }
             }
+        } finally {
+            TransportFactory.closeTransport(transport);
         }
+    }
 
+    /**
+     * Uploads the package with the specified index.
+     *
+     * @param transport {@code Transport} to upload the package with.
+     * @param programArguments Program arguments.
+     * @param index Index of the package (from {@code 1}).
+     * @return Whether or not the package was uploaded.
+     */
+    static boolean uploadPackage(final Transport transport, final ProgramArguments programArguments,
+            final int index) {
+        String workingDirectory = DataExporter.WORKING_DIRECTORY;
+        if (programArguments.has(ProgramArgument.WORKING_DIRECTORY)) {
+            workingDirectory = programArguments.get(ProgramArgument.WORKING_DIRECTORY);
+        }
+        Tracer.Span span = Tracer.start("upload", programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index);
+        boolean uploaded = transport.getHostTransport(index - 1).writeData(
+                programArguments.get(ProgramArgument.HOST) + "/crx/packmgr/service/.json/?cmd=upload&force=true",
+                workingDirectory + programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index + ".zip",
+                programArguments.get(ProgramArgument.PACKAGE_NAME) + "_" + index);
+        span.end();
+        return uploaded;
     }
 
 }
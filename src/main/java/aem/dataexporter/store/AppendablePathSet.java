@@ -0,0 +1,20 @@
+package aem.dataexporter.store;
+
+import java.util.Set;
+
+/**
+ * Interface for a {@code Set} of content paths that a content path which is known not to be contained yet can be
+ * added to without looking it up first.
+ */
+public interface AppendablePathSet extends Set<String> {
+
+    /**
+     * Adds the specified content path without checking whether it is already contained (i.e. the caller has already
+     * established that it is not, e.g. using a Bloom filter). Adding a content path that is already contained leaves
+     * a duplicate.
+     *
+     * @param path Content path to add.
+     */
+    void append(final String path);
+
+}
@@ -0,0 +1,397 @@
+package aem.dataexporter.store;
+
+import aem.dataexporter.file.CompressionPolicy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content addressed store for the entries of {@code CRX} packages.
+ * <p>
+ * The content of each entry is stored once as a blob that is named after its {@code SHA-256} hash (i.e.
+ * {@code blobs/ab/cdef...}), so renditions that are contained within many packages (or the packages of successive
+ * exports) are only stored once. Each package is kept as a manifest (i.e. {@code manifests/<packageName>.json}) that
+ * lists its entries in order along with the blobs that contain their content, from which the package can be rebuilt.
+ */
+public class BlobStore {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(BlobStore.class.getName());
+    /**
+     * Algorithm used to hash the content of the entries.
+     */
+    private static final String HASH_ALGORITHM = "SHA-256";
+    /**
+     * Extension of the manifest files.
+     */
+    private static final String MANIFEST_EXTENSION = ".json";
+    /**
+     * {@code ObjectMapper} to use to read and write the manifests.
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * Directory that contains the blobs.
+     */
+    private final File blobDirectory;
+    /**
+     * Directory that contains the manifests.
+     */
+    private final File manifestDirectory;
+    /**
+     * Directory that contains the blobs and manifests that are being written.
+     */
+    private final File temporaryDirectory;
+
+    /**
+     * Constructs a new {@code BlobStore}.
+     *
+     * @param directory Directory of the store.
+     * @throws IOException If the directories of the store cannot be created.
+     */
+    public BlobStore(final File directory) throws IOException {
+        this.blobDirectory = createDirectory(new File(directory, "blobs"));
+        this.manifestDirectory = createDirectory(new File(directory, "manifests"));
+        this.temporaryDirectory = createDirectory(new File(directory, "tmp"));
+    }
+
+    /**
+     * Stores the entries of the specified package, and writes the manifest of the package.
+     *
+     * @param packageFile Package file to store.
+     * @param packageName Name of the package.
+     * @return Manifest of the package.
+     * @throws IOException If an error occurs reading the package or writing the store.
+     */
+    public final PackageManifest storePackage(final File packageFile, final String packageName) throws IOException {
+        PackageManifest packageManifest = new PackageManifest();
+        packageManifest.setName(packageName);
+        long storedBytes = 0;
+        long reusedBytes = 0;
+        ZipFile zipFile = new ZipFile(packageFile);
+        try {
+            for (Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+                 entries.hasMoreElements(); ) {
+                ZipArchiveEntry zipArchiveEntry = entries.nextElement();
+                PackageManifest.Entry entry = new PackageManifest.Entry();
+                entry.setName(zipArchiveEntry.getName());
+                entry.setTime(zipArchiveEntry.getTime());
+                entry.setMethod(zipArchiveEntry.getMethod());
+                if (!zipArchiveEntry.isDirectory()) {
+                    InputStream inputStream = zipFile.getInputStream(zipArchiveEntry);
+                    try {
+                        Blob blob = putBlob(inputStream);
+                        entry.setBlob(blob.getHash());
+                        entry.setSize(blob.getSize());
+                        if (blob.isStored()) {
+                            storedBytes += blob.getSize();
+                        } else {
+                            reusedBytes += blob.getSize();
+                        }
+                    } finally {
+                        inputStream.close();
+                    }
+                }
+                packageManifest.getEntries().add(entry);
+            }
+        } finally {
+            zipFile.close();
+        }
+        File temporaryFile = File.createTempFile(packageName, MANIFEST_EXTENSION, temporaryDirectory);
+        OBJECT_MAPPER.writeValue(temporaryFile, packageManifest);
+        moveFile(temporaryFile, getManifestFile(packageName), true);
+        LOGGER.log(Level.INFO, "Stored package [{0}], {1} bytes stored, {2} bytes already contained within the store",
+                new Object[]{packageName, storedBytes, reusedBytes});
+        return packageManifest;
+    }
+
+    /**
+     * Rebuilds the specified package from the store.
+     * <p>
+     * Each entry is compressed using the compression method it originally had, or otherwise according to the specified
+     * {@code CompressionPolicy}.
+     *
+     * @param packageName Name of the package.
+     * @param packageFile Package file to write.
+     * @param compressionPolicy {@code CompressionPolicy} that determines how each entry is compressed.
+     * @throws IOException If the package is not contained within the store, or an error occurs writing the package.
+     */
+    public final void restorePackage(final String packageName, final File packageFile,
+            final CompressionPolicy compressionPolicy) throws IOException {
+        File manifestFile = getManifestFile(packageName);
+        if (!manifestFile.isFile()) {
+            throw new IOException("Package [" + packageName + "] is not contained within the store");
+        }
+        PackageManifest packageManifest = OBJECT_MAPPER.readValue(manifestFile, PackageManifest.class);
+        ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(packageFile);
+        compressionPolicy.configure(zipArchiveOutputStream);
+        try {
+            for (PackageManifest.Entry entry : packageManifest.getEntries()) {
+                ZipArchiveEntry zipArchiveEntry = compressionPolicy.createEntry(entry.getName(), null);
+                if ((entry.getMethod() != null) && (entry.getMethod() >= 0)) {
+                    zipArchiveEntry.setMethod(entry.getMethod());
+                }
+                zipArchiveEntry.setTime(entry.getTime());
+                zipArchiveOutputStream.putArchiveEntry(zipArchiveEntry);
+                if (entry.getBlob() != null) {
+                    FileInputStream fileInputStream = new FileInputStream(getBlobFile(entry.getBlob()));
+                    try {
+                        IOUtils.copy(fileInputStream, zipArchiveOutputStream);
+                    } finally {
+                        fileInputStream.close();
+                    }
+                }
+                zipArchiveOutputStream.closeArchiveEntry();
+            }
+            zipArchiveOutputStream.finish();
+        } finally {
+            zipArchiveOutputStream.close();
+        }
+        LOGGER.log(Level.INFO, "Restored package [{0}] to [{1}]", new String[]{packageName, packageFile.getPath()});
+    }
+
+    /**
+     * Returns the names of the packages contained within the store that have the specified name, or that are chunks
+     * of it (i.e. {@code <packageName>_<index>}).
+     *
+     * @param packageName Name of the package.
+     * @return {@code List} of the names of the packages, in order (i.e. the package itself, followed by its chunks in
+     * the order of their index).
+     */
+    public final List<String> getPackageNames(final String packageName) {
+        final Pattern pattern = Pattern.compile(Pattern.quote(packageName) + "(?:_(\\d+))?"
+                + Pattern.quote(MANIFEST_EXTENSION));
+        final Map<String, String> indexes = new HashMap<String, String>();
+        List<String> packageNames = new ArrayList<String>();
+        String[] filenames = manifestDirectory.list();
+        if (filenames != null) {
+            for (String filename : filenames) {
+                Matcher matcher = pattern.matcher(filename);
+                if (matcher.matches()) {
+                    String name = filename.substring(0, filename.length() - MANIFEST_EXTENSION.length());
+                    // Leading zeros are stripped so that the indexes can be compared by their length and digits.
+                    indexes.put(name, (matcher.group(1) == null) ? "" : matcher.group(1).replaceFirst("^0+(?=.)", ""));
+                    packageNames.add(name);
+                }
+            }
+        }
+        Collections.sort(packageNames, new Comparator<String>() {
+            @Override
+            public int compare(final String name1, final String name2) {
+                String index1 = indexes.get(name1);
+                String index2 = indexes.get(name2);
+                if (index1.length() != index2.length()) {
+                    return (index1.length() < index2.length()) ? -1 : 1;
+                }
+                int comparison = index1.compareTo(index2);
+                return (comparison != 0) ? comparison : name1.compareTo(name2);
+            }
+        });
+        return packageNames;
+    }
+
+    /**
+     * Stores the content of the specified {@code InputStream} as a blob, unless the store already contains it.
+     *
+     * @param inputStream {@code InputStream} to store the content of.
+     * @return {@code Blob} that contains the content.
+     * @throws IOException If an error occurs writing the blob.
+     */
+    private Blob putBlob(final InputStream inputStream) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        File temporaryFile = File.createTempFile("blob", null, temporaryDirectory);
+        long size;
+        OutputStream outputStream = new DigestOutputStream(new FileOutputStream(temporaryFile), messageDigest);
+        try {
+            size = IOUtils.copy(inputStream, outputStream);
+        } finally {
+            outputStream.close();
+        }
+        String hash = toHex(messageDigest.digest());
+        File blobFile = getBlobFile(hash);
+        if (blobFile.isFile()) {
+            deleteFile(temporaryFile);
+            return new Blob(hash, size, false);
+        }
+        createDirectory(blobFile.getParentFile());
+        return new Blob(hash, size, moveFile(temporaryFile, blobFile, false));
+    }
+
+    /**
+     * Returns the file of the blob with the specified hash.
+     *
+     * @param hash Hash of the blob.
+     * @return File of the blob with the specified hash.
+     */
+    private File getBlobFile(final String hash) {
+        return new File(new File(blobDirectory, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    /**
+     * Returns the manifest file of the specified package.
+     *
+     * @param packageName Name of the package.
+     * @return Manifest file of the specified package.
+     */
+    private File getManifestFile(final String packageName) {
+        return new File(manifestDirectory, packageName + MANIFEST_EXTENSION);
+    }
+
+    /**
+     * Moves the specified temporary file to the specified file.
+     *
+     * @param temporaryFile Temporary file to move.
+     * @param file File to move the temporary file to.
+     * @param replace Whether or not to replace the file if it already exists.
+     * @return True if the temporary file was moved; otherwise false, if the file already exists and is not replaced.
+     * @throws IOException If the temporary file cannot be moved.
+     */
+    private static boolean moveFile(final File temporaryFile, final File file, final boolean replace)
+            throws IOException {
+        if (file.exists()) {
+            if (!replace) {
+                // Another export stored the same blob in the meantime.
+                deleteFile(temporaryFile);
+                return false;
+            }
+            deleteFile(file);
+        }
+        if (!temporaryFile.renameTo(file)) {
+            deleteFile(temporaryFile);
+            if (file.exists() && !replace) {
+                return false;
+            }
+            throw new IOException("Unable to move [" + temporaryFile + "] to [" + file + "]");
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the specified file.
+     *
+     * @param file File to delete.
+     */
+    private static void deleteFile(final File file) {
+        if ((file.exists()) && (!file.delete())) {
+            LOGGER.log(Level.WARNING, "Unable to delete file: {0}", file.getPath());
+        }
+    }
+
+    /**
+     * Creates the specified directory, if it does not already exist.
+     *
+     * @param directory Directory to create.
+     * @return Specified directory.
+     * @throws IOException If the directory cannot be created.
+     */
+    private static File createDirectory(final File directory) throws IOException {
+        if ((!directory.isDirectory()) && (!directory.mkdirs()) && (!directory.isDirectory())) {
+            throw new IOException("Unable to create directory: " + directory.getPath());
+        }
+        return directory;
+    }
+
+    /**
+     * Returns the hexadecimal representation of the specified bytes.
+     *
+     * @param bytes Bytes to represent.
+     * @return Hexadecimal representation of the specified bytes.
+     */
+    private static String toHex(final byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) {
+            hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Blob contained within the store.
+     */
+    private static final class Blob {
+
+        /**
+         * Hash of the content of the blob.
+         */
+        private final String hash;
+        /**
+         * Size of the content of the blob (in bytes).
+         */
+        private final long size;
+        /**
+         * Whether or not the blob was stored, rather than already being contained within the store.
+         */
+        private final boolean stored;
+
+        /**
+         * Constructs a new {@code Blob}.
+         *
+         * @param newHash Hash of the content of the blob.
+         * @param newSize Size of the content of the blob (in bytes).
+         * @param newStored Whether or not the blob was stored, rather than already being contained within the store.
+         */
+        private Blob(final String newHash, final long newSize, final boolean newStored) {
+            this.hash = newHash;
+            this.size = newSize;
+            this.stored = newStored;
+        }
+
+        /**
+         * Returns the hash of the content of the blob.
+         *
+         * @return Hash of the content of the blob.
+         */
+        private String getHash() {
+            return hash;
+        }
+
+        /**
+         * Returns the size of the content of the blob.
+         *
+         * @return Size of the content of the blob (in bytes).
+         */
+        private long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns whether or not the blob was stored, rather than already being contained within the store.
+         *
+         * @return True if the blob was stored; otherwise false.
+         */
+        private boolean isStored() {
+            return stored;
+        }
+
+    }
+
+}
@@ -0,0 +1,194 @@
+package aem.dataexporter.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code Set} of content paths that checks a Bloom filter before the exact {@code Set} of content paths.
+ * <p>
+ * The Bloom filter is sized for the expected number of content paths (with a false positive rate of one percent), so
+ * that a content path which has not been added before is identified without looking it up in the exact {@code Set},
+ * and is appended to it unchecked when the exact {@code Set} is an {@code AppendablePathSet} (e.g. the
+ * {@code OffHeapPathSet}). Most of the repeated content paths are references to a few popular assets (e.g. logos and
+ * icons), so the content paths that were most recently found to be repeats are also kept in a small cache. The exact
+ * {@code Set} is therefore only looked up for the content paths that are neither new nor popular, and can be stored
+ * somewhere slower (e.g. off the heap) without slowing down the crawl.
+ */
+public class BloomFilteredPathSet extends AbstractSet<String> implements Closeable {
+
+    /**
+     * False positive rate of the Bloom filter.
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * Maximum number of repeated content paths to cache.
+     */
+    private static final int REPEATED_PATHS_CACHE_SIZE = 1024;
+    /**
+     * Exact {@code Set} of content paths.
+     */
+    private final Set<String> paths;
+    /**
+     * Bits of the Bloom filter.
+     */
+    private final long[] bits;
+    /**
+     * Number of bits of the Bloom filter.
+     */
+    private final long numberOfBits;
+    /**
+     * Number of hash functions of the Bloom filter.
+     */
+    private final int numberOfHashes;
+    /**
+     * Cache of the content paths that were most recently found to be repeats.
+     */
+    private final Map<String, Boolean> repeatedPaths =
+            new LinkedHashMap<String, Boolean>(REPEATED_PATHS_CACHE_SIZE, 0.75f, true) {
+
+                /**
+                 * Serial version UID.
+                 */
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                    return size() > REPEATED_PATHS_CACHE_SIZE;
+                }
+            };
+
+    /**
+     * Constructs a new {@code BloomFilteredPathSet}.
+     *
+     * @param newPaths Empty exact {@code Set} of content paths.
+     * @param expectedPaths Expected number of content paths.
+     */
+    public BloomFilteredPathSet(final Set<String> newPaths, final long expectedPaths) {
+        paths = newPaths;
+        long expected = Math.max(expectedPaths, 1);
+        long optimalBits = (long) Math.ceil(-expected * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        bits = new long[(int) Math.min((optimalBits + 63) / 64, Integer.MAX_VALUE - 8)];
+        numberOfBits = bits.length * 64L;
+        numberOfHashes = (int) Math.max(1, Math.round((double) numberOfBits / expected * Math.log(2)));
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean add(final String path) {
+        long hash = hash(path);
+        if (!mightContain(hash)) {
+            put(hash);
+            if (paths instanceof AppendablePathSet) {
+                ((AppendablePathSet) paths).append(path);
+            } else {
+                paths.add(path);
+            }
+            return true;
+        }
+        if (repeatedPaths.get(path) != null) {
+            return false;
+        }
+        if (paths.add(path)) {
+            return true;
+        }
+        repeatedPaths.put(path, Boolean.TRUE);
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean contains(final Object path) {
+        if (!(path instanceof String) || !mightContain(hash((String) path))) {
+            return false;
+        }
+        return (repeatedPaths.get(path) != null) || paths.contains(path);
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final int size() {
+        return paths.size();
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Iterator<String> iterator() {
+        return Collections.unmodifiableSet(paths).iterator();
+    }
+
+    /**
+     * Closes the exact {@code Set} of content paths if it is {@code Closeable}.
+     *
+     * @throws IOException If the exact {@code Set} of content paths cannot be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        if (paths instanceof Closeable) {
+            ((Closeable) paths).close();
+        }
+    }
+
+    /**
+     * Returns whether the Bloom filter might contain the content path with the specified hash.
+     *
+     * @param hash Hash of the content path.
+     * @return Whether the Bloom filter might contain the content path with the specified hash.
+     */
+    private boolean mightContain(final long hash) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int index = 1; index <= numberOfHashes; index++) {
+            long bit = ((hash1 + (long) index * hash2) & Long.MAX_VALUE) % numberOfBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the content path with the specified hash to the Bloom filter.
+     *
+     * @param hash Hash of the content path.
+     */
+    private void put(final long hash) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int index = 1; index <= numberOfHashes; index++) {
+            long bit = ((hash1 + (long) index * hash2) & Long.MAX_VALUE) % numberOfBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns the 64-bit hash of the specified content path (i.e. {@code FNV-1a} of its characters with a final mix).
+     *
+     * @param path Content path to hash.
+     * @return Hash of the specified content path.
+     */
+    private static long hash(final String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (int index = 0; index < path.length(); index++) {
+            hash ^= path.charAt(index);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+}
@@ -0,0 +1,130 @@
+package aem.dataexporter.store;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@code Set} of content paths that seals the content paths into chunks as they are added.
+ * <p>
+ * Each content path that has not been added before is appended to the current chunk, and as soon as the chunk reaches
+ * the chunk size it is sealed and handed to the {@code ChunkHandler} (e.g. so that its package can be written while
+ * the crawl is still running). Only the content paths themselves are kept once their chunk has been sealed, within
+ * the {@code Set} that is used to ignore the content paths that have already been added.
+ */
+public class ChunkedPathSet extends AbstractSet<String> {
+
+    /**
+     * Handler of the sealed chunks of a {@code ChunkedPathSet}.
+     */
+    public interface ChunkHandler {
+
+        /**
+         * Handles a sealed chunk of content paths.
+         *
+         * @param chunk {@code Set} that contains the content paths of the chunk.
+         * @param chunkNumber Number of the chunk (from {@code 1}).
+         */
+        void handleChunk(Set<String> chunk, int chunkNumber);
+
+    }
+
+    /**
+     * {@code Set} that contains the content paths that have been added.
+     */
+    private final Set<String> addedPaths;
+    /**
+     * Maximum number of content paths of each chunk.
+     */
+    private final int chunkSize;
+    /**
+     * Handler of the sealed chunks.
+     */
+    private final ChunkHandler chunkHandler;
+    /**
+     * Content paths of the current chunk.
+     */
+    private Set<String> chunk = new LinkedHashSet<String>();
+    /**
+     * Number of chunks that have been sealed.
+     */
+    private int numberOfChunks = 0;
+
+    /**
+     * Constructs a new {@code ChunkedPathSet}.
+     *
+     * @param newAddedPaths Empty {@code Set} to record the content paths that have been added in.
+     * @param newChunkSize Maximum number of content paths of each chunk.
+     * @param newChunkHandler Handler of the sealed chunks.
+     */
+    public ChunkedPathSet(final Set<String> newAddedPaths, final int newChunkSize,
+            final ChunkHandler newChunkHandler) {
+        addedPaths = newAddedPaths;
+        chunkSize = newChunkSize;
+        chunkHandler = newChunkHandler;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean add(final String path) {
+        if (!addedPaths.add(path)) {
+            return false;
+        }
+        chunk.add(path);
+        if (chunk.size() >= chunkSize) {
+            seal();
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean contains(final Object path) {
+        return addedPaths.contains(path);
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final int size() {
+        return addedPaths.size();
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Iterator<String> iterator() {
+        return Collections.unmodifiableSet(addedPaths).iterator();
+    }
+
+    /**
+     * Seals the current chunk if it contains any content paths.
+     *
+     * @return Number of chunks that have been sealed.
+     */
+    public final int flush() {
+        if (!chunk.isEmpty()) {
+            seal();
+        }
+        return numberOfChunks;
+    }
+
+    /**
+     * Seals the current chunk and hands it to the {@code ChunkHandler}.
+     */
+    private void seal() {
+        Set<String> sealedChunk = chunk;
+        chunk = new LinkedHashSet<String>();
+        numberOfChunks++;
+        chunkHandler.handleChunk(sealedChunk, numberOfChunks);
+    }
+
+}
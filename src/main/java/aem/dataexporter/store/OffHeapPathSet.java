@@ -0,0 +1,512 @@
+package aem.dataexporter.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Insertion ordered {@code Set} of content paths that is stored off the heap in memory mapped files.
+ * <p>
+ * The content paths are appended (as a length followed by their {@code UTF-8} bytes) to a data file that is mapped in
+ * segments, and an open addressing hash index of the offsets (and hashes) of the content paths is kept in a second
+ * memory mapped file, so that the membership tests do not need any heap either. The index is doubled (i.e. rehashed
+ * into a new index file) when it becomes half full. The number of content paths is therefore bounded by the disk
+ * rather than the heap, while iteration still returns the content paths in the order that they were added.
+ * <p>
+ * Content paths cannot be removed, and the {@code OffHeapPathSet} is not thread safe. The files are deleted when the
+ * {@code OffHeapPathSet} is closed.
+ */
+public class OffHeapPathSet extends AbstractSet<String> implements AppendablePathSet, Closeable {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(OffHeapPathSet.class.getName());
+    /**
+     * Size (in bytes) of each mapped segment of the data file.
+     */
+    private static final int SEGMENT_SIZE = 1 << 26;
+    /**
+     * Length written to the end of a data segment when the next content path does not fit within it.
+     */
+    private static final int END_OF_SEGMENT = -1;
+    /**
+     * Size (in bytes) of each slot of the index (i.e. the offset of the content path plus one, and its hash).
+     */
+    private static final int SLOT_SIZE = 16;
+    /**
+     * Number of slots within each mapped buffer of the index file.
+     */
+    private static final int SLOTS_PER_BUFFER = 1 << 24;
+    /**
+     * Initial number of slots of the index.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    /**
+     * Charset of the stored content paths.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Directory that contains the files.
+     */
+    private final File directory;
+    /**
+     * Prefix of the names of the files.
+     */
+    private final String name;
+    /**
+     * Data file.
+     */
+    private final RandomAccessFile dataFile;
+    /**
+     * Mapped segments of the data file.
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    /**
+     * Offset within the data file that the next content path is written at.
+     */
+    private long writeOffset = 0;
+    /**
+     * Index file.
+     */
+    private RandomAccessFile indexFile;
+    /**
+     * Mapped buffers of the index file.
+     */
+    private MappedByteBuffer[] index;
+    /**
+     * Number of slots of the index.
+     */
+    private long capacity;
+    /**
+     * Number of content paths.
+     */
+    private int size = 0;
+    /**
+     * Number of times that the index has been rebuilt (used to name the index files).
+     */
+    private int generation = 0;
+
+    /**
+     * Constructs a new {@code OffHeapPathSet}.
+     *
+     * @param newDirectory Directory to create the files in.
+     * @param newName Prefix of the names of the files.
+     * @throws IOException If the files cannot be created.
+     */
+    public OffHeapPathSet(final File newDirectory, final String newName) throws IOException {
+        directory = newDirectory;
+        name = newName;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory: " + directory.getPath());
+        }
+        File file = new File(directory, name + ".data");
+        file.deleteOnExit();
+        dataFile = new RandomAccessFile(file, "rw");
+        dataFile.setLength(0);
+        createIndex(INITIAL_CAPACITY);
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean add(final String path) {
+        byte[] bytes = path.getBytes(UTF_8);
+        long hash = hash(bytes);
+        long slot = findSlot(bytes, hash);
+        if (getSlotOffset(slot) != 0) {
+            return false;
+        }
+        insert(slot, bytes, hash);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}.
+     * <p>
+     * Only the empty slot of the content path is probed for, so none of the stored content paths are read.
+     */
+    @Override
+    public final void append(final String path) {
+        byte[] bytes = path.getBytes(UTF_8);
+        long hash = hash(bytes);
+        long mask = capacity - 1;
+        long slot = hash & mask;
+        while (getSlotOffset(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, bytes, hash);
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final boolean contains(final Object path) {
+        if (!(path instanceof String)) {
+            return false;
+        }
+        byte[] bytes = ((String) path).getBytes(UTF_8);
+        return getSlotOffset(findSlot(bytes, hash(bytes))) != 0;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            /**
+             * Offset of the next content path.
+             */
+            private long offset = 0;
+            /**
+             * Number of content paths returned.
+             */
+            private int returned = 0;
+
+            @Override
+            public boolean hasNext() {
+                return returned < size;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                offset = skipToRecord(offset);
+                byte[] bytes = read(offset);
+                offset += 4 + bytes.length;
+                returned++;
+                return new String(bytes, UTF_8);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Content paths cannot be removed");
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}.
+     */
+    @Override
+    public final void clear() {
+        throw new UnsupportedOperationException("Content paths cannot be removed");
+    }
+
+    /**
+     * Closes and deletes the files.
+     *
+     * @throws IOException If the files cannot be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        segments.clear();
+        index = null;
+        try {
+            dataFile.close();
+            indexFile.close();
+        } finally {
+            delete(new File(directory, name + ".data"));
+            delete(getIndexFile(generation));
+        }
+    }
+
+    /**
+     * Returns the slot that contains the specified content path, or the empty slot that it should be added to.
+     *
+     * @param bytes {@code UTF-8} bytes of the content path.
+     * @param hash Hash of the content path.
+     * @return Slot that contains the specified content path, or the empty slot that it should be added to.
+     */
+    private long findSlot(final byte[] bytes, final long hash) {
+        long mask = capacity - 1;
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long offset = getSlotOffset(slot);
+            if ((offset == 0) || ((getSlotHash(slot) == hash) && equals(offset - 1, bytes))) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Appends the specified content path to the data file and stores its offset in the specified empty slot, doubling
+     * the index when it becomes half full.
+     *
+     * @param slot Empty slot of the index.
+     * @param bytes {@code UTF-8} bytes of the content path.
+     * @param hash Hash of the content path.
+     */
+    private void insert(final long slot, final byte[] bytes, final long hash) {
+        long offset = appendRecord(bytes);
+        setSlot(slot, offset + 1, hash);
+        size++;
+        if (size * 2L > capacity) {
+            rebuildIndex(capacity * 2);
+        }
+    }
+
+    /**
+     * Returns whether the content path stored at the specified offset has the specified bytes.
+     *
+     * @param offset Offset of the stored content path.
+     * @param bytes {@code UTF-8} bytes of the content path.
+     * @return Whether the content path stored at the specified offset has the specified bytes.
+     */
+    private boolean equals(final long offset, final byte[] bytes) {
+        MappedByteBuffer segment = segments.get((int) (offset / SEGMENT_SIZE));
+        int position = (int) (offset % SEGMENT_SIZE);
+        if (segment.getInt(position) != bytes.length) {
+            return false;
+        }
+        for (int index = 0; index < bytes.length; index++) {
+            if (segment.get(position + 4 + index) != bytes[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the specified content path to the data file.
+     *
+     * @param bytes {@code UTF-8} bytes of the content path.
+     * @return Offset of the content path within the data file.
+     */
+    private long appendRecord(final byte[] bytes) {
+        if (bytes.length + 4 > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Content path is too long: " + bytes.length + " bytes");
+        }
+        int position = (int) (writeOffset % SEGMENT_SIZE);
+        if (position + 4 + bytes.length > SEGMENT_SIZE) {
+            if (position + 4 <= SEGMENT_SIZE) {
+                getSegment(writeOffset).putInt(position, END_OF_SEGMENT);
+            }
+            writeOffset += SEGMENT_SIZE - position;
+            position = 0;
+        }
+        MappedByteBuffer segment = getSegment(writeOffset);
+        segment.putInt(position, bytes.length);
+        for (int index = 0; index < bytes.length; index++) {
+            segment.put(position + 4 + index, bytes[index]);
+        }
+        long offset = writeOffset;
+        writeOffset += 4 + bytes.length;
+        return offset;
+    }
+
+    /**
+     * Returns the offset of the content path that is stored at (or after the end of the segment that contains) the
+     * specified offset.
+     *
+     * @param offset Offset within the data file.
+     * @return Offset of the next content path.
+     */
+    private long skipToRecord(final long offset) {
+        int position = (int) (offset % SEGMENT_SIZE);
+        if ((position + 4 > SEGMENT_SIZE) ||
+                (segments.get((int) (offset / SEGMENT_SIZE)).getInt(position) == END_OF_SEGMENT)) {
+            return offset + SEGMENT_SIZE - position;
+        }
+        return offset;
+    }
+
+    /**
+     * Reads the content path that is stored at the specified offset.
+     *
+     * @param offset Offset of the content path.
+     * @return {@code UTF-8} bytes of the content path.
+     */
+    private byte[] read(final long offset) {
+        MappedByteBuffer segment = segments.get((int) (offset / SEGMENT_SIZE));
+        int position = (int) (offset % SEGMENT_SIZE);
+        byte[] bytes = new byte[segment.getInt(position)];
+        for (int index = 0; index < bytes.length; index++) {
+            bytes[index] = segment.get(position + 4 + index);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the segment of the data file that contains the specified offset, mapping it when necessary.
+     *
+     * @param offset Offset within the data file.
+     * @return Segment of the data file that contains the specified offset.
+     */
+    private MappedByteBuffer getSegment(final long offset) {
+        int segmentIndex = (int) (offset / SEGMENT_SIZE);
+        while (segments.size() <= segmentIndex) {
+            segments.add(map(dataFile, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+        }
+        return segments.get(segmentIndex);
+    }
+
+    /**
+     * Returns the offset (plus one) of the content path within the specified slot, or zero if the slot is empty.
+     *
+     * @param slot Slot of the index.
+     * @return Offset (plus one) of the content path within the specified slot.
+     */
+    private long getSlotOffset(final long slot) {
+        return index[(int) (slot / SLOTS_PER_BUFFER)].getLong((int) (slot % SLOTS_PER_BUFFER) * SLOT_SIZE);
+    }
+
+    /**
+     * Returns the hash of the content path within the specified slot.
+     *
+     * @param slot Slot of the index.
+     * @return Hash of the content path within the specified slot.
+     */
+    private long getSlotHash(final long slot) {
+        return index[(int) (slot / SLOTS_PER_BUFFER)].getLong((int) (slot % SLOTS_PER_BUFFER) * SLOT_SIZE + 8);
+    }
+
+    /**
+     * Sets the offset (plus one) and hash of the content path within the specified slot.
+     *
+     * @param slot Slot of the index.
+     * @param offset Offset (plus one) of the content path.
+     * @param hash Hash of the content path.
+     */
+    private void setSlot(final long slot, final long offset, final long hash) {
+        MappedByteBuffer buffer = index[(int) (slot / SLOTS_PER_BUFFER)];
+        int position = (int) (slot % SLOTS_PER_BUFFER) * SLOT_SIZE;
+        buffer.putLong(position, offset);
+        buffer.putLong(position + 8, hash);
+    }
+
+    /**
+     * Creates an empty index file with the specified number of slots.
+     *
+     * @param newCapacity Number of slots of the index.
+     */
+    private void createIndex(final long newCapacity) {
+        try {
+            File file = getIndexFile(generation);
+            file.deleteOnExit();
+            indexFile = new RandomAccessFile(file, "rw");
+            indexFile.setLength(0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create index file: " + e.getMessage(), e);
+        }
+        capacity = newCapacity;
+        int buffers = (int) ((capacity + SLOTS_PER_BUFFER - 1) / SLOTS_PER_BUFFER);
+        index = new MappedByteBuffer[buffers];
+        for (int buffer = 0; buffer < buffers; buffer++) {
+            long slots = Math.min(SLOTS_PER_BUFFER, capacity - (long) buffer * SLOTS_PER_BUFFER);
+            index[buffer] = map(indexFile, (long) buffer * SLOTS_PER_BUFFER * SLOT_SIZE, slots * SLOT_SIZE);
+        }
+    }
+
+    /**
+     * Rebuilds the index with the specified number of slots (using the hashes that are stored in the current index).
+     *
+     * @param newCapacity Number of slots of the index.
+     */
+    private void rebuildIndex(final long newCapacity) {
+        LOGGER.log(Level.FINE, "Rebuilding index of {0} content paths with {1} slots",
+                new Object[]{size, newCapacity});
+        MappedByteBuffer[] oldIndex = index;
+        RandomAccessFile oldIndexFile = indexFile;
+        long oldCapacity = capacity;
+        generation++;
+        createIndex(newCapacity);
+        long mask = capacity - 1;
+        for (long oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            MappedByteBuffer oldBuffer = oldIndex[(int) (oldSlot / SLOTS_PER_BUFFER)];
+            int position = (int) (oldSlot % SLOTS_PER_BUFFER) * SLOT_SIZE;
+            long offset = oldBuffer.getLong(position);
+            if (offset != 0) {
+                long hash = oldBuffer.getLong(position + 8);
+                long slot = hash & mask;
+                while (getSlotOffset(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                setSlot(slot, offset, hash);
+            }
+        }
+        try {
+            oldIndexFile.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to close index file: {0}", e.getMessage());
+        }
+        delete(getIndexFile(generation - 1));
+    }
+
+    /**
+     * Returns the index file of the specified generation.
+     *
+     * @param indexGeneration Generation of the index.
+     * @return Index file of the specified generation.
+     */
+    private File getIndexFile(final int indexGeneration) {
+        return new File(directory, name + ".index." + indexGeneration);
+    }
+
+    /**
+     * Maps the specified region of a file into memory (extending the file when necessary).
+     *
+     * @param file File to map.
+     * @param position Position of the region within the file.
+     * @param length Length of the region.
+     * @return Mapped region of the file.
+     */
+    private static MappedByteBuffer map(final RandomAccessFile file, final long position, final long length) {
+        try {
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, position, length);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the specified file (logging when it cannot be deleted).
+     *
+     * @param file File to delete.
+     */
+    private static void delete(final File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.log(Level.WARNING, "Unable to delete file: {0}", file.getPath());
+        }
+    }
+
+    /**
+     * Returns the 64-bit {@code FNV-1a} hash of the specified bytes.
+     *
+     * @param bytes Bytes to hash.
+     * @return Hash of the specified bytes.
+     */
+    private static long hash(final byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte value : bytes) {
+            hash ^= value & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash ^ (hash >>> 32);
+    }
+
+}
@@ -0,0 +1,179 @@
+package aem.dataexporter.store;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manifest of a {@code CRX} package held in a {@code BlobStore}, which lists the entries of the package in order along
+ * with the blobs that contain their content.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PackageManifest {
+
+    /**
+     * Name of the package.
+     */
+    private String name;
+    /**
+     * Entries of the package.
+     */
+    private List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Returns the name of the package.
+     *
+     * @return Name of the package.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the name of the package.
+     *
+     * @param value Name of the package.
+     */
+    public void setName(final String value) {
+        this.name = value;
+    }
+
+    /**
+     * Returns the entries of the package.
+     *
+     * @return Entries of the package.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Sets the entries of the package.
+     *
+     * @param value Entries of the package.
+     */
+    public void setEntries(final List<Entry> value) {
+        this.entries = value;
+    }
+
+    /**
+     * Representation of an entry contained within the package.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+
+        /**
+         * Name of the entry within the package.
+         */
+        private String name;
+        /**
+         * Hash of the blob that contains the content of the entry, or null if the entry is a directory.
+         */
+        private String blob;
+        /**
+         * Size of the content of the entry (in bytes).
+         */
+        private long size;
+        /**
+         * Time the entry was last modified (in milliseconds).
+         */
+        private long time;
+        /**
+         * Compression method of the entry within the package (i.e. stored or deflated), or null if it is not known.
+         */
+        private Integer method;
+
+        /**
+         * Returns the name of the entry within the package.
+         *
+         * @return Name of the entry within the package.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Sets the name of the entry within the package.
+         *
+         * @param value Name of the entry within the package.
+         */
+        public void setName(final String value) {
+            this.name = value;
+        }
+
+        /**
+         * Returns the hash of the blob that contains the content of the entry.
+         *
+         * @return Hash of the blob that contains the content of the entry, or null if the entry is a directory.
+         */
+        public String getBlob() {
+            return blob;
+        }
+
+        /**
+         * Sets the hash of the blob that contains the content of the entry.
+         *
+         * @param value Hash of the blob that contains the content of the entry, or null if the entry is a directory.
+         */
+        public void setBlob(final String value) {
+            this.blob = value;
+        }
+
+        /**
+         * Returns the size of the content of the entry.
+         *
+         * @return Size of the content of the entry (in bytes).
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Sets the size of the content of the entry.
+         *
+         * @param value Size of the content of the entry (in bytes).
+         */
+        public void setSize(final long value) {
+            this.size = value;
+        }
+
+        /**
+         * Returns the time the entry was last modified.
+         *
+         * @return Time the entry was last modified (in milliseconds).
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Sets the time the entry was last modified.
+         *
+         * @param value Time the entry was last modified (in milliseconds).
+         */
+        public void setTime(final long value) {
+            this.time = value;
+        }
+
+        /**
+         * Returns the compression method of the entry within the package.
+         *
+         * @return Compression method of the entry within the package, or null if it is not known.
+         */
+        public Integer getMethod() {
+            return method;
+        }
+
+        /**
+         * Sets the compression method of the entry within the package.
+         *
+         * @param value Compression method of the entry within the package, or null if it is not known.
+         */
+        public void setMethod(final Integer value) {
+            this.method = value;
+        }
+
+    }
+
+}
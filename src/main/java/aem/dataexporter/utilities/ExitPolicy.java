@@ -0,0 +1,80 @@
+package aem.dataexporter.utilities;
+
+/**
+ * Ends an operation that cannot continue.
+ * <p>
+ * When an operation is run on its own, the {@code JVM} exits with the status of the operation. When the operations are
+ * run as jobs of the {@code ExporterDaemon}, an {@code ExitException} is thrown instead, so that only the job fails
+ * and the daemon (with its warm connections) keeps running.
+ */
+public final class ExitPolicy {
+
+    /**
+     * Whether or not an {@code ExitException} is thrown rather than exiting the {@code JVM}.
+     */
+    private static volatile boolean throwOnExit = false;
+
+    /**
+     * Exception that ends an operation in place of exiting the {@code JVM}.
+     */
+    public static final class ExitException extends RuntimeException {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Exit status of the operation.
+         */
+        private final int status;
+
+        /**
+         * Constructs a new {@code ExitException}.
+         *
+         * @param newStatus Exit status of the operation.
+         */
+        private ExitException(final int newStatus) {
+            super("Operation exited with status " + newStatus);
+            this.status = newStatus;
+        }
+
+        /**
+         * Returns the exit status of the operation.
+         *
+         * @return Exit status of the operation.
+         */
+        public int getStatus() {
+            return status;
+        }
+
+    }
+
+    /**
+     * Constructs a new {@code ExitPolicy}.
+     */
+    private ExitPolicy() {
+    }
+
+    /**
+     * Sets whether or not an {@code ExitException} is thrown rather than exiting the {@code JVM}.
+     *
+     * @param value True to throw an {@code ExitException} rather than exiting the {@code JVM}; otherwise false.
+     */
+    public static void setThrowOnExit(final boolean value) {
+        throwOnExit = value;
+    }
+
+    /**
+     * Ends the operation with the specified status, i.e. exits the {@code JVM}, or throws an {@code ExitException} if
+     * the operations are run as jobs.
+     *
+     * @param status Exit status of the operation.
+     */
+    public static void exit(final int status) {
+        if (throwOnExit) {
+            throw new ExitException(status);
+        }
+        System.exit(status);
+    }
+
+}
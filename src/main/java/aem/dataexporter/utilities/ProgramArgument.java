@@ -4,30 +4,118 @@ package aem.dataexporter.utilities;
  * The program arguments used.
  */
 public enum ProgramArgument {
+    /**
+     * Asynchronous build argument key.
+     */
+    ASYNC_BUILD("asyncBuild"),
+    /**
+     * Blob store argument key.
+     */
+    BLOB_STORE("blobStore"),
+    /**
+     * Build timeout argument key.
+     */
+    BUILD_TIMEOUT("buildTimeout"),
+    /**
+     * Compression level argument key.
+     */
+    COMPRESSION_LEVEL("compressionLevel"),
+    /**
+     * Daemon port argument key.
+     */
+    DAEMON_PORT("daemonPort"),
+    /**
+     * Daemon token file argument key.
+     */
+    DAEMON_TOKEN_FILE("daemonTokenFile"),
+    /**
+     * Expected paths argument key.
+     */
+    EXPECTED_PATHS("expectedPaths"),
+    /**
+     * Export mode argument key.
+     */
+    EXPORT_MODE("exportMode"),
+    /**
+     * Fetch threads argument key.
+     */
+    FETCH_THREADS("fetchThreads"),
     /**
      * Host argument key.
      */
     HOST("host"),
+    /**
+     * Hosts argument key.
+     */
+    HOSTS("hosts"),
     /**
      * Hostname argument key.
      */
     HOSTNAME("hostname"),
+    /**
+     * Install logs argument key.
+     */
+    INSTALL_LOGS("installLogs"),
+    /**
+     * Install threads argument key.
+     */
+    INSTALL_THREADS("installThreads"),
+    /**
+     * Job threads argument key.
+     */
+    JOB_THREADS("jobThreads"),
+    /**
+     * Max builds in flight argument key.
+     */
+    MAX_BUILDS_IN_FLIGHT("maxBuildsInFlight"),
     /**
      * Max DAM depth argument key.
      */
     MAX_DAM_DEPTH("maxDAMDepth"),
+    /**
+     * Max jobs per host argument key.
+     */
+    MAX_JOBS_PER_HOST("maxJobsPerHost"),
     /**
      * Max page depth argument key.
      */
     MAX_PAGE_DEPTH("maxPageDepth"),
+    /**
+     * Max retries argument key.
+     */
+    MAX_RETRIES("maxRetries"),
+    /**
+     * Merge shards argument key.
+     */
+    MERGE_SHARDS("mergeShards"),
     /**
      * Number of packages argument key.
      */
     NUMBER_OF_PACKAGES("numberOfPackages"),
+    /**
+     * Off heap paths argument key.
+     */
+    OFF_HEAP_PATHS("offHeapPaths"),
     /**
      * Package name argument key.
      */
     PACKAGE_NAME("packageName"),
+    /**
+     * Page discovery strategy argument key.
+     */
+    PAGE_DISCOVERY("pageDiscovery"),
+    /**
+     * Page selector depth argument key.
+     */
+    PAGE_SELECTOR_DEPTH("pageSelectorDepth"),
+    /**
+     * Page source argument key.
+     */
+    PAGE_SOURCE("pageSource"),
+    /**
+     * Parallel compression argument key.
+     */
+    PARALLEL_COMPRESSION("parallelCompression"),
     /**
      * Password argument key.
      */
@@ -36,10 +124,78 @@ public enum ProgramArgument {
      * Path argument key.
      */
     PATH("path"),
+    /**
+     * Plan argument key.
+     */
+    PLAN("plan"),
     /**
      * Port argument key.
      */
     PORT("port"),
+    /**
+     * Query batch size argument key.
+     */
+    QUERY_BATCH_SIZE("queryBatchSize"),
+    /**
+     * Record argument key.
+     */
+    RECORD("record"),
+    /**
+     * Reference batch size argument key.
+     */
+    REFERENCE_BATCH_SIZE("referenceBatchSize"),
+    /**
+     * Reference prefixes argument key.
+     */
+    REFERENCE_PREFIXES("referencePrefixes"),
+    /**
+     * Reference properties argument key.
+     */
+    REFERENCE_PROPERTIES("referenceProperties"),
+    /**
+     * Reference resolution strategy argument key.
+     */
+    REFERENCE_RESOLUTION("referenceResolution"),
+    /**
+     * Reference rules argument key.
+     */
+    REFERENCE_RULES("referenceRules"),
+    /**
+     * Replay argument key.
+     */
+    REPLAY("replay"),
+    /**
+     * Replay latency argument key.
+     */
+    REPLAY_LATENCY("replayLatency"),
+    /**
+     * Scheme argument key.
+     */
+    SCHEME("scheme"),
+    /**
+     * Shard argument key.
+     */
+    SHARD("shard"),
+    /**
+     * Snapshot argument key.
+     */
+    SNAPSHOT("snapshot"),
+    /**
+     * Stream chunks argument key.
+     */
+    STREAM_CHUNKS("streamChunks"),
+    /**
+     * Trace argument key.
+     */
+    TRACE("trace"),
+    /**
+     * Upload chunks argument key.
+     */
+    UPLOAD_CHUNKS("uploadChunks"),
+    /**
+     * Upload packages argument key.
+     */
+    UPLOAD_PACKAGES("uploadPackages"),
     /**
      * Username argument key.
      */
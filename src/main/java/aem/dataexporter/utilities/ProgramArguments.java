@@ -3,7 +3,10 @@ package aem.dataexporter.utilities;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -16,7 +19,8 @@ public class ProgramArguments {
     /**
      * Hostname/Port regular expression.
      */
-    private static final Pattern HOSTNAME_PORT = Pattern.compile("^.*://([A-Za-z0-9\\-\\.]+)(:[0-9]+)?.*$");
+    private static final Pattern HOSTNAME_PORT =
+            Pattern.compile("^(?:([A-Za-z][A-Za-z0-9+.\\-]*)://)?([A-Za-z0-9\\-\\.]+)(:[0-9]+)?.*$");
     /**
      * System err output.
      */
@@ -52,6 +56,47 @@ public class ProgramArguments {
         return argumentMap.get(key);
     }
 
+    /**
+     * Returns the urls of the hosts to distribute requests across, i.e. the {@code host} followed by the comma
+     * separated {@code hosts}.
+     *
+     * @return {@code List} of the urls of the hosts to distribute requests across.
+     */
+    public final List<String> getHosts() {
+        List<String> hosts = new ArrayList<String>();
+        if (has(ProgramArgument.HOST)) {
+            hosts.add(get(ProgramArgument.HOST));
+        }
+        if (has(ProgramArgument.HOSTS)) {
+            for (String host : StringUtils.stripAll(get(ProgramArgument.HOSTS).split(","))) {
+                if ((StringUtils.isNotBlank(host)) && (!hosts.contains(host))) {
+                    hosts.add(host);
+                }
+            }
+        }
+        return hosts;
+    }
+
+    /**
+     * Returns the integer value of the specified {@code ProgramArgument}.
+     *
+     * @param key {@code ProgramArgument} to retrieve value of.
+     * @param defaultValue Value to return if no valid integer value has been provided.
+     * @return Integer value of the specified {@code ProgramArgument}, or the default value if no valid integer value
+     * has been provided.
+     */
+    public final int getInt(final ProgramArgument key, final int defaultValue) {
+        String value = argumentMap.get(key);
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                ERR.println("Argument for [" + key.getKey() + "] is not a number, using " + defaultValue + ".");
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Returns a boolean indicating whether or not a value has been provided for the specified {@code ProgramArgument}.
      *
@@ -107,15 +152,67 @@ public class ProgramArguments {
                 "[-maxPageDepth <maxPageDepth>] [-maxDAMDepth <maxDAMDepth>]");
         ERR.println("-host: The host to connect to in order to export data from");
         ERR.println("-path: The content path in the JCR to start data export from");
+        ERR.println("-hosts: Comma separated hosts that are equivalent to the host, which the requests and package " +
+                "builds are distributed across (optional).");
         ERR.println("-username: The username to authenticate with");
         ERR.println("-password: The password to authenticate with");
         ERR.println("-packageName: The name of the package to create");
         ERR.println("-maxPageDepth: The maximum page depth");
         ERR.println("-maxDAMDepth: The maximum DAM depth");
+        ERR.println("-pageDiscovery: The page discovery strategy, either 'crawl' (default), 'query' or 'sitemap' " +
+                "(optional).");
+        ERR.println("-pageSource: The sitemap or page path list (a local file, a url, or a path on the host) to " +
+                "read the pages from when using the 'sitemap' page discovery strategy (optional).");
+        ERR.println("-pageSelectorDepth: The maximum depth of each page JSON request when crawling (optional).");
+        ERR.println("-queryBatchSize: The number of QueryBuilder hits to retrieve per request (optional).");
+        ERR.println("-referenceResolution: The reference resolution strategy, either 'crawl' (default) or 'query' " +
+                "(optional).");
+        ERR.println("-referenceBatchSize: The number of content paths to resolve references for per query (optional).");
+        ERR.println("-referencePrefixes: Comma separated prefixes of the content paths that are treated as " +
+                "references, defaults to /content/dam (optional).");
+        ERR.println("-referenceRules: JSON file of the rules that identify references, replaces referencePrefixes " +
+                "(optional).");
+        ERR.println("-referenceProperties: Comma separated names of the properties that can contain references " +
+                "(optional).");
+        ERR.println("-exportMode: Either 'package' (default) to build the packages on the server, or 'stream' to " +
+                "write a single package containing the content on the client (optional).");
+        ERR.println("-fetchThreads: The number of threads to retrieve content with when streaming (optional).");
+        ERR.println("-compressionLevel: The deflate level (1-9) of the package entries that are not already " +
+                "compressed when streaming (optional).");
+        ERR.println("-parallelCompression: boolean value to determine whether to compress the package entries in " +
+                "parallel when streaming (optional).");
+        ERR.println("-blobStore: The directory of the blob store to archive the downloaded packages in " +
+                "(optional).");
+        ERR.println("-shard: The shard of the crawl to run, as <shard>/<numberOfShards> (e.g. 1/4) (optional).");
+        ERR.println("-mergeShards: The number of shards whose content paths should be merged into packages " +
+                "(optional).");
+        ERR.println("-offHeapPaths: boolean value to determine whether to store the discovered content paths in " +
+                "memory mapped files rather than on the heap (optional).");
+        ERR.println("-streamChunks: boolean value to determine whether to write the packages while the crawl is " +
+                "still running (optional).");
+        ERR.println("-uploadChunks: boolean value to determine whether to upload each package as soon as it has " +
+                "been written when streaming chunks (optional).");
+        ERR.println("-expectedPaths: The expected number of content paths, used to size a Bloom filter in front " +
+                "of the processed content paths (optional).");
+        ERR.println("-maxRetries: The maximum number of times to retry a request that can safely be repeated " +
+                "(optional).");
+        ERR.println("-snapshot: The directory or zip file (e.g. a downloaded package) of a JCR snapshot to serve " +
+                "the requests from instead of the host (optional).");
+        ERR.println("-record: The archive file to record the requests and responses of the host into " +
+                "(optional).");
+        ERR.println("-replay: The archive file of recorded requests and responses to serve the requests from " +
+                "instead of the host (optional).");
+        ERR.println("-replayLatency: The number of milliseconds to delay each replayed response by, or " +
+                "'recorded' to delay it by the time the request took when it was recorded (optional).");
+        ERR.println("-trace: The file to write a JSON trace (in the Chrome trace event format) of the timing of " +
+                "each phase and package of the export to (optional).");
+        ERR.println("-plan: boolean value to determine whether to only crawl, and report the estimated number of " +
+                "packages, bytes and duration of the export rather than creating any packages (optional).");
         ERR.println("-overwritePackages: boolean value to determine wheather to overrite packages (optional).");
         ERR.println(
                 "-uploadFullContent: boolean value to determine wheather to upload content downloaded from another server.");
-        ERR.println("Note that at least one of maxPageDepth and maxDAMDepth must be specified");
+        ERR.println("Note that at least one of maxPageDepth and maxDAMDepth must be specified (unless merging " +
+                "shards)");
         listMissingArguments();
     }
 
@@ -128,9 +225,55 @@ public class ProgramArguments {
         ERR.println("-host: The host to connect to in order to export data from");
         ERR.println("-username: The username to authenticate with");
         ERR.println("-password: The password to authenticate with");
+        ERR.println("-hosts: Comma separated hosts that are equivalent to the host, which the packages are " +
+                "distributed across (optional).");
         ERR.println(
                 "-packageName: The (base) name of the package that was created (i.e. without the '_<packageNumber>' in the name");
         ERR.println("-numberOfPackages: The number of packages that have been created");
+        ERR.println("-asyncBuild: boolean value to determine whether to poll for package builds to finish " +
+                "rather than waiting on each build request (optional).");
+        ERR.println("-maxBuildsInFlight: The maximum number of packages to build at the same time when building " +
+                "asynchronously (optional).");
+        ERR.println("-buildTimeout: The number of seconds to wait for the packages to build when building " +
+                "asynchronously (optional).");
+        ERR.println("-blobStore: The directory of the blob store to archive the packages in, or restore them from " +
+                "(optional).");
+        ERR.println("-maxRetries: The maximum number of times to retry a request that can safely be repeated " +
+                "(optional).");
+        ERR.println("-snapshot: The directory or zip file (e.g. a downloaded package) of a JCR snapshot to serve " +
+                "the requests from instead of the host (optional).");
+        ERR.println("-record: The archive file to record the requests and responses of the host into " +
+                "(optional).");
+        ERR.println("-replay: The archive file of recorded requests and responses to serve the requests from " +
+                "instead of the host (optional).");
+        ERR.println("-replayLatency: The number of milliseconds to delay each replayed response by, or " +
+                "'recorded' to delay it by the time the request took when it was recorded (optional).");
+        ERR.println("-installLogs: The directory to write the package manager response of each installation to " +
+                "(optional).");
+        ERR.println("-installThreads: The maximum number of packages with disjoint filter roots to install at the " +
+                "same time (optional).");
+        ERR.println("-uploadPackages: boolean value to determine whether to upload the packages from the working " +
+                "directory ahead of their installation (optional).");
+        listMissingArguments();
+    }
+
+    /**
+     * Prints the usage message for the exporter daemon.
+     */
+    public final void printDaemonUsageMessage() {
+        ERR.println("Usage:");
+        ERR.println("params are: [-daemonPort <port>] [-daemonTokenFile <file>] [-jobThreads <threads>] " +
+                "[-maxJobsPerHost <jobs>]");
+        ERR.println("-daemonPort: The port on the loopback interface to accept jobs on (optional).");
+        ERR.println("-daemonTokenFile: The file (readable only by the user) to write the token that each request " +
+                "has to carry to (optional).");
+        ERR.println("-jobThreads: The maximum number of jobs to run at the same time (optional).");
+        ERR.println("-maxJobsPerHost: The maximum number of jobs to run against the same host at the same time " +
+                "(optional).");
+        ERR.println("Jobs are submitted as a JSON array of the program arguments of an operation to " +
+                "POST /jobs/<operation>, where the operation is one of export, create, upload, build, download, " +
+                "remove, install, archive or restore, with a Content-Type of application/json and an " +
+                "'Authorization: Bearer <token>' header.");
         listMissingArguments();
     }
 
@@ -155,10 +298,20 @@ public class ProgramArguments {
      * Sets the hostname and port values.
      */
     private void setHostnameAndPort() {
+        if (!has(ProgramArgument.HOST)) {
+            // Operations that only work with local files (e.g. the package archiver) do not require a host.
+            return;
+        }
         Matcher matcher = HOSTNAME_PORT.matcher(get(ProgramArgument.HOST));
         if (matcher.matches()) {
-            argumentMap.put(ProgramArgument.HOSTNAME, matcher.group(1));
-            argumentMap.put(ProgramArgument.PORT, matcher.group(2).replaceAll(":", ""));
+            String scheme = (matcher.group(1) == null) ? "http" : matcher.group(1).toLowerCase(Locale.ENGLISH);
+            argumentMap.put(ProgramArgument.SCHEME, scheme);
+            argumentMap.put(ProgramArgument.HOSTNAME, matcher.group(2));
+            if (matcher.group(3) != null) {
+                argumentMap.put(ProgramArgument.PORT, matcher.group(3).substring(1));
+            } else {
+                argumentMap.put(ProgramArgument.PORT, "https".equals(scheme) ? "443" : "80");
+            }
         }
     }
 
@@ -0,0 +1,272 @@
+package aem.dataexporter.utilities;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records timing spans of a data export (e.g. the crawl, and writing, uploading or building each package), so that a
+ * whole run can be viewed as a timeline and the phase to parallelize first can be found.
+ * <p>
+ * The spans are recorded for every operation that runs within the same {@code JVM} (i.e. all of the operations of the
+ * {@code DataExporter}), and can be written as a {@code JSON} trace in the Chrome trace event format (which can be
+ * opened with {@code chrome://tracing} or Perfetto), with a row for each thread, or summarized as a table.
+ * <p>
+ * A job that shares the {@code JVM} with other jobs (i.e. a job of the {@code ExporterDaemon}) records its spans
+ * separately, from {@link #startRecording()} until {@link #stopRecording()}: the spans that are started on its thread,
+ * or on the threads that it creates, are only added to (and summarized or written from) its own recording.
+ */
+public final class Tracer {
+
+    /**
+     * Category of the spans of the operations of the {@code DataExporter} (i.e. its phases).
+     */
+    public static final String PHASE = "phase";
+    /**
+     * Time (in nanoseconds) that the spans are relative to.
+     */
+    private static final long START_NANOS = System.nanoTime();
+    /**
+     * Spans that have ended, in the order that they ended.
+     */
+    private static final List<Span> SPANS = new ArrayList<Span>();
+    /**
+     * Spans that have ended within the recording of the current job, or null if the current thread is not recording
+     * (inherited by the threads created while recording, e.g. the threads that fetch the content of a package).
+     */
+    private static final InheritableThreadLocal<List<Span>> RECORDING = new InheritableThreadLocal<List<Span>>();
+    /**
+     * {@code JsonFactory} used to write the trace.
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Timing span of a unit of work.
+     */
+    public static final class Span {
+
+        /**
+         * Category of the span (e.g. {@code upload}).
+         */
+        private final String category;
+        /**
+         * Name of the span (e.g. the name of a package).
+         */
+        private final String name;
+        /**
+         * Name of the thread that the span was started on.
+         */
+        private final String threadName;
+        /**
+         * Identifier of the thread that the span was started on.
+         */
+        private final long threadId;
+        /**
+         * Time (in nanoseconds) that the span was started.
+         */
+        private final long startNanos;
+        /**
+         * Spans that the span is added to when it ends.
+         */
+        private final List<Span> spans;
+        /**
+         * Time (in nanoseconds) that the span ended, or zero if it has not ended.
+         */
+        private long endNanos;
+
+        /**
+         * Constructs a new {@code Span}.
+         *
+         * @param newCategory Category of the span.
+         * @param newName Name of the span.
+         */
+        private Span(final String newCategory, final String newName) {
+            this.category = newCategory;
+            this.name = newName;
+            this.threadName = Thread.currentThread().getName();
+            this.threadId = Thread.currentThread().getId();
+            this.startNanos = System.nanoTime();
+            this.spans = getRecordingSpans();
+        }
+
+        /**
+         * Ends the span (if it has not already ended).
+         */
+        public void end() {
+            synchronized (spans) {
+                if (endNanos == 0) {
+                    endNanos = System.nanoTime();
+                    spans.add(this);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of milliseconds the span took.
+         *
+         * @return Number of milliseconds the span took.
+         */
+        private long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+        }
+
+    }
+
+    /**
+     * Constructs a new {@code Tracer}.
+     */
+    private Tracer() {
+    }
+
+    /**
+     * Starts a span on the current thread.
+     *
+     * @param category Category of the span (e.g. {@code upload}).
+     * @param name Name of the span (e.g. the name of a package).
+     * @return {@code Span} that has been started.
+     */
+    public static Span start(final String category, final String name) {
+        return new Span(category, name);
+    }
+
+    /**
+     * Starts a new recording on the current thread (e.g. for each job of the {@code ExporterDaemon}, so that each trace
+     * only covers its own run, whatever the other jobs are doing at the same time).
+     */
+    public static void startRecording() {
+        RECORDING.set(new ArrayList<Span>());
+    }
+
+    /**
+     * Stops the recording of the current thread, and discards its spans.
+     */
+    public static void stopRecording() {
+        RECORDING.remove();
+    }
+
+    /**
+     * Writes the spans that have ended to the specified file as a {@code JSON} trace in the Chrome trace event format.
+     *
+     * @param file File to write the trace to.
+     * @throws IOException If the trace cannot be written.
+     */
+    public static void writeTrace(final File file) throws IOException {
+        List<Span> spans = getSpans();
+        Map<Long, String> threadNames = new TreeMap<Long, String>();
+        JsonGenerator generator = JSON_FACTORY.createGenerator(file, JsonEncoding.UTF8);
+        try {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("traceEvents");
+            for (Span span : spans) {
+                threadNames.put(span.threadId, span.threadName);
+                generator.writeStartObject();
+                generator.writeStringField("name", span.name);
+                generator.writeStringField("cat", span.category);
+                generator.writeStringField("ph", "X");
+                generator.writeNumberField("ts", TimeUnit.NANOSECONDS.toMicros(span.startNanos - START_NANOS));
+                generator.writeNumberField("dur", TimeUnit.NANOSECONDS.toMicros(span.endNanos - span.startNanos));
+                generator.writeNumberField("pid", 1);
+                generator.writeNumberField("tid", span.threadId);
+                generator.writeEndObject();
+            }
+            for (Map.Entry<Long, String> threadName : threadNames.entrySet()) {
+                generator.writeStartObject();
+                generator.writeStringField("name", "thread_name");
+                generator.writeStringField("ph", "M");
+                generator.writeNumberField("pid", 1);
+                generator.writeNumberField("tid", threadName.getKey());
+                generator.writeObjectFieldStart("args");
+                generator.writeStringField("name", threadName.getValue());
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeStringField("displayTimeUnit", "ms");
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Returns a table that summarizes the spans that have ended: the duration of each phase (and its share of the
+     * whole run), followed by the number, total and maximum duration of the spans of each other category.
+     *
+     * @return Table that summarizes the spans that have ended.
+     */
+    public static String getSummary() {
+        List<Span> spans = getSpans();
+        long runMillis = 0;
+        Map<String, List<Span>> categories = new LinkedHashMap<String, List<Span>>();
+        for (Span span : spans) {
+            if (PHASE.equals(span.category)) {
+                runMillis += span.getMillis();
+            }
+            List<Span> categorySpans = categories.get(span.category);
+            if (categorySpans == null) {
+                categorySpans = new ArrayList<Span>();
+                categories.put(span.category, categorySpans);
+            }
+            categorySpans.add(span);
+        }
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format(Locale.ENGLISH, "%-10s %12s %7s%n", "Phase", "Time (ms)", "Share"));
+        List<Span> phases = categories.remove(PHASE);
+        if (phases != null) {
+            for (Span phase : phases) {
+                summary.append(String.format(Locale.ENGLISH, "%-10s %,12d %6.1f%%%n", phase.name, phase.getMillis(),
+                        100.0 * phase.getMillis() / Math.max(1, runMillis)));
+            }
+        }
+        summary.append(String.format(Locale.ENGLISH, "%n%-10s %7s %12s %12s %12s  %s%n", "Span", "Count",
+                "Total (ms)", "Mean (ms)", "Max (ms)", "Slowest"));
+        for (Map.Entry<String, List<Span>> category : categories.entrySet()) {
+            long totalMillis = 0;
+            Span slowest = null;
+            for (Span span : category.getValue()) {
+                totalMillis += span.getMillis();
+                if ((slowest == null) || (span.getMillis() > slowest.getMillis())) {
+                    slowest = span;
+                }
+            }
+            summary.append(String.format(Locale.ENGLISH, "%-10s %,7d %,12d %,12d %,12d  %s%n", category.getKey(),
+                    category.getValue().size(), totalMillis, totalMillis / category.getValue().size(),
+                    slowest.getMillis(), slowest.name));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Returns the spans that the spans of the current thread are added to: those of its recording, if it is recording,
+     * or otherwise those of the whole {@code JVM}.
+     *
+     * @return Spans that the spans of the current thread are added to.
+     */
+    private static List<Span> getRecordingSpans() {
+        List<Span> spans = RECORDING.get();
+        return (spans == null) ? SPANS : spans;
+    }
+
+    /**
+     * Returns a copy of the spans that have ended within the recording of the current thread.
+     *
+     * @return Copy of the spans that have ended.
+     */
+    private static List<Span> getSpans() {
+        List<Span> spans = getRecordingSpans();
+        synchronized (spans) {
+            return new ArrayList<Span>(spans);
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package aem.dataexporter.utilities;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+/**
+ * Utility for dealing with urls.
+ */
+public final class UrlUtilities {
+
+    /**
+     * Constructs a new {@code UrlUtilities}.
+     */
+    private UrlUtilities() {
+    }
+
+    /**
+     * Returns the url encoded representation of the specified {@code JCR} path (i.e. each path segment is encoded, but
+     * the slashes and namespace colons are retained).
+     *
+     * @param path Path to url encode.
+     * @return Url encoded representation of the specified path.
+     */
+    public static String encodePath(final String path) {
+        return encode(path).replace("+", "%20").replace("%2F", "/").replace("%3A", ":");
+    }
+
+    /**
+     * Returns the url encoded representation of the specified value.
+     *
+     * @param value Value to url encode.
+     * @return Url encoded representation of the specified value.
+     */
+    public static String encode(final String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the url decoded representation of the specified value.
+     *
+     * @param value Value to url decode.
+     * @return Url decoded representation of the specified value.
+     */
+    public static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package aem.dataexporter.crawl;
+
+import aem.dataexporter.http.SnapshotTransport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@code ExportPlanner}.
+ */
+public class ExportPlannerTest {
+
+    /**
+     * Directory of the snapshot.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Tests that the packages of a plan are counted from all of the content paths, and that the plan is flagged as
+     * incomplete, when the probes are interrupted.
+     *
+     * @throws IOException If the snapshot cannot be read.
+     */
+    @Test
+    public void testPlanWithInterruptedProbes() throws IOException {
+        Set<String> contentPaths = new LinkedHashSet<String>();
+        for (int index = 0; index < 25; index++) {
+            contentPaths.add("/content/site/page" + index);
+        }
+        SnapshotTransport transport = new SnapshotTransport(temporaryFolder.getRoot());
+        String plan;
+        try {
+            Thread.currentThread().interrupt();
+            plan = new ExportPlanner(transport, "http://localhost:4502", 2).plan(contentPaths, 10, 0);
+        } finally {
+            Thread.interrupted();
+            transport.close();
+        }
+        assertTrue(plan.contains("Content paths: 25"));
+        assertTrue(plan.contains("INCOMPLETE: 25 content paths were not probed"));
+        assertTrue(plan.contains("Packages: 3 (10 content paths per package)"));
+        assertTrue(plan.contains("      3              5"));
+    }
+
+    /**
+     * Tests that a plan whose content paths were all probed is not flagged, and that its build estimate is labelled as
+     * an assumption.
+     *
+     * @throws IOException If the snapshot cannot be read.
+     */
+    @Test
+    public void testPlan() throws IOException {
+        Set<String> contentPaths = new LinkedHashSet<String>();
+        contentPaths.add("/content/site/page");
+        SnapshotTransport transport = new SnapshotTransport(temporaryFolder.getRoot());
+        String plan;
+        try {
+            plan = new ExportPlanner(transport, "http://localhost:4502", 2).plan(contentPaths, 10, 0);
+        } finally {
+            transport.close();
+        }
+        assertTrue(plan.contains("Packages: 1 (10 content paths per package)"));
+        assertFalse(plan.contains("INCOMPLETE"));
+        assertFalse(plan.contains("*"));
+        assertTrue(plan.contains("assumed to take as long as the download"));
+    }
+
+}
@@ -0,0 +1,107 @@
+package aem.dataexporter.crawl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the {@code SitemapPageDiscoverer}.
+ */
+public class SitemapPageDiscovererTest {
+
+    /**
+     * Pages returned by the fallback {@code PageDiscoverer}.
+     */
+    private static final Set<String> FALLBACK_PAGES = Collections.singleton("/content/site/fallback");
+    /**
+     * Directory of the sources.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Tests that the pages are read from a sitemap.
+     *
+     * @throws IOException If the sitemap cannot be written.
+     */
+    @Test
+    public void testGetPageContentPaths() throws IOException {
+        File sitemap = write("sitemap.xml", "<urlset><url><loc>https://www.example.com/en.html</loc></url>"
+                + "<url><loc>https://www.example.com/en/about.html</loc></url></urlset>");
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("/content/site/en", "/content/site/en/about")),
+                createDiscoverer(sitemap.getPath()).getPageContentPaths("/content/site", 5));
+    }
+
+    /**
+     * Tests that the fallback {@code PageDiscoverer} is used when the sitemap cannot be parsed.
+     *
+     * @throws IOException If the sitemap cannot be written.
+     */
+    @Test
+    public void testGetPageContentPathsOfInvalidSitemap() throws IOException {
+        File sitemap = write("sitemap.xml", "<urlset><url><loc>https://www.example.com/en.html</loc></url>");
+        assertEquals(FALLBACK_PAGES, createDiscoverer(sitemap.getPath()).getPageContentPaths("/content/site", 5));
+    }
+
+    /**
+     * Tests that the fallback {@code PageDiscoverer} is used when a sitemap of a sitemap index cannot be parsed.
+     *
+     * @throws IOException If the sitemap index cannot be written.
+     */
+    @Test
+    public void testGetPageContentPathsOfIncompleteSitemapIndex() throws IOException {
+        File sitemap = write("sitemap.xml", "<urlset><url><loc>https://www.example.com/en.html</loc></url></urlset>");
+        File invalidSitemap = write("invalid.xml", "<urlset><url>");
+        File sitemapIndex = write("index.xml", "<sitemapindex><sitemap><loc>" + sitemap.getPath() + "</loc></sitemap>"
+                + "<sitemap><loc>" + invalidSitemap.getPath() + "</loc></sitemap></sitemapindex>");
+        assertEquals(FALLBACK_PAGES, createDiscoverer(sitemapIndex.getPath()).getPageContentPaths("/content/site", 5));
+    }
+
+    /**
+     * Returns a new {@code SitemapPageDiscoverer} of the specified local source, whose fallback returns
+     * {@code FALLBACK_PAGES}.
+     *
+     * @param source Path of the source.
+     * @return New {@code SitemapPageDiscoverer}.
+     */
+    private static SitemapPageDiscoverer createDiscoverer(final String source) {
+        return new SitemapPageDiscoverer(null, "http://localhost:4502", source, new PageDiscoverer() {
+            @Override
+            public Set<String> getPageContentPaths(final String path, final int maxPageDepth) {
+                return FALLBACK_PAGES;
+            }
+        });
+    }
+
+    /**
+     * Writes the specified content to a file within the temporary folder.
+     *
+     * @param name Name of the file.
+     * @param content Content of the file.
+     * @return Written file.
+     * @throws IOException If the file cannot be written.
+     */
+    private File write(final String name, final String content) throws IOException {
+        File file = temporaryFolder.newFile(name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(Charset.forName("UTF-8")));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+}
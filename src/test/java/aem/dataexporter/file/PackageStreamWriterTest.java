@@ -0,0 +1,178 @@
+package aem.dataexporter.file;
+
+import aem.dataexporter.http.SnapshotTransport;
+import aem.dataexporter.json.JsonJcrParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the {@code PackageStreamWriter}.
+ */
+public class PackageStreamWriterTest {
+
+    /**
+     * Host of the content.
+     */
+    private static final String HOST = "http://localhost:4502";
+    /**
+     * Document view of an asset whose original rendition is an {@code nt:file}.
+     */
+    private static final String ASSET_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:dam=\"http://www.day.com/dam/1.0\" "
+            + "jcr:primaryType=\"dam:Asset\">\n"
+            + "    <jcr:content jcr:primaryType=\"dam:AssetContent\">\n"
+            + "        <renditions jcr:primaryType=\"nt:folder\"/>\n"
+            + "    </jcr:content>\n"
+            + "</jcr:root>\n";
+    /**
+     * Document view of the {@code nt:file} of a rendition.
+     */
+    private static final String FILE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:nt=\"http://www.jcp.org/jcr/nt/1.0\" "
+            + "jcr:primaryType=\"nt:file\">\n"
+            + "    <jcr:content jcr:primaryType=\"nt:resource\" jcr:mimeType=\"image/png\"/>\n"
+            + "</jcr:root>\n";
+    /**
+     * Directory of the snapshots.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Tests that a content path is not a root path when its ancestor is, even if a sibling whose name contains a
+     * character that sorts before {@code /} (e.g. {@code -} or {@code .}) sorts between them.
+     */
+    @Test
+    public void testGetRootPathsWithSiblingsSortedBetweenAncestorAndDescendant() {
+        Set<String> contentPaths = new HashSet<String>(Arrays.asList("/content/dam/a", "/content/dam/a-b",
+                "/content/dam/a.c", "/content/dam/a b", "/content/dam/a/x.jpg", "/content/dam/a-b/y.jpg",
+                "/content/dam/a/x.jpg/jcr:content"));
+        assertEquals(new TreeSet<String>(Arrays.asList("/content/dam/a", "/content/dam/a-b", "/content/dam/a.c",
+                "/content/dam/a b")), PackageStreamWriter.getRootPaths(contentPaths));
+    }
+
+    /**
+     * Tests that a content path is a root path when only a sibling with a name that starts with its name is present.
+     */
+    @Test
+    public void testGetRootPathsWithSiblingPrefix() {
+        Set<String> contentPaths = new HashSet<String>(Arrays.asList("/content/dam/a", "/content/dam/ab/x.jpg"));
+        assertEquals(new TreeSet<String>(contentPaths), PackageStreamWriter.getRootPaths(contentPaths));
+    }
+
+    /**
+     * Tests that the package entries of an asset contain its document view, and the binary and document view of its
+     * rendition.
+     *
+     * @throws Exception If the package entries cannot be retrieved.
+     */
+    @Test
+    public void testGetPackageEntries() throws Exception {
+        File snapshot = temporaryFolder.newFolder("snapshot");
+        writeAsset(snapshot, "logo.png", true);
+        SnapshotTransport transport = new SnapshotTransport(snapshot);
+        try {
+            List<?> packageEntries = createWriter(transport).getPackageEntries("/content/dam/site/logo.png");
+            assertEquals(3, packageEntries.size());
+        } finally {
+            transport.close();
+        }
+    }
+
+    /**
+     * Tests that a content path whose content cannot be retrieved fails the package, rather than leaving it out.
+     *
+     * @throws Exception If the package entries cannot be retrieved.
+     */
+    @Test(expected = IOException.class)
+    public void testGetPackageEntriesOfMissingContentPath() throws Exception {
+        File snapshot = temporaryFolder.newFolder("snapshot");
+        writeAsset(snapshot, "logo.png", true);
+        SnapshotTransport transport = new SnapshotTransport(snapshot);
+        try {
+            createWriter(transport).getPackageEntries("/content/dam/site/missing.png");
+        } finally {
+            transport.close();
+        }
+    }
+
+    /**
+     * Tests that a binary that cannot be retrieved fails the package, rather than being written as an empty file.
+     *
+     * @throws Exception If the package entries cannot be retrieved.
+     */
+    @Test(expected = IOException.class)
+    public void testGetPackageEntriesOfMissingBinary() throws Exception {
+        File snapshot = temporaryFolder.newFolder("snapshot");
+        writeAsset(snapshot, "logo.png", false);
+        SnapshotTransport transport = new SnapshotTransport(snapshot);
+        try {
+            createWriter(transport).getPackageEntries("/content/dam/site/logo.png");
+        } finally {
+            transport.close();
+        }
+    }
+
+    /**
+     * Returns a new {@code PackageStreamWriter} that retrieves the content with the specified {@code Transport}.
+     *
+     * @param transport {@code Transport} to retrieve the content with.
+     * @return New {@code PackageStreamWriter}.
+     */
+    private static PackageStreamWriter createWriter(final SnapshotTransport transport) {
+        return new PackageStreamWriter(transport, new JsonJcrParser(), HOST, 1, new CompressionPolicy(), false);
+    }
+
+    /**
+     * Writes an asset with an original rendition to the specified snapshot.
+     *
+     * @param snapshot Directory of the snapshot.
+     * @param name Name of the asset.
+     * @param withBinary Whether or not to write the binary of the original rendition.
+     * @throws IOException If the asset cannot be written.
+     */
+    private static void writeAsset(final File snapshot, final String name, final boolean withBinary)
+            throws IOException {
+        File asset = new File(snapshot, "jcr_root/content/dam/site/" + name);
+        File renditions = new File(asset, "_jcr_content/renditions");
+        write(new File(asset, ".content.xml"), ASSET_XML);
+        write(new File(renditions, "original.dir/.content.xml"), FILE_XML);
+        if (withBinary) {
+            write(new File(renditions, "original"), "PNG");
+        }
+    }
+
+    /**
+     * Writes the specified content to the specified file, creating its parent directories.
+     *
+     * @param file File to write.
+     * @param content Content of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void write(final File file, final String content) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create directory: " + file.getParent());
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(Charset.forName("UTF-8")));
+        } finally {
+            out.close();
+        }
+    }
+
+}
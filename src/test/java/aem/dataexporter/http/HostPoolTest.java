@@ -0,0 +1,68 @@
+package aem.dataexporter.http;
+
+import org.apache.http.HttpHost;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@code HostPool}.
+ */
+public class HostPoolTest {
+
+    /**
+     * Tests that a host that failed a single request is still acquired when it is the only host.
+     */
+    @Test
+    public void testAcquireUnavailableHost() {
+        HostPool hostPool = HostPool.forUrls(Collections.singletonList("http://localhost:4503"));
+        HttpHost httpHost = hostPool.acquire(Collections.<HttpHost>emptySet());
+        hostPool.release(httpHost, false);
+        assertEquals(httpHost, hostPool.acquire(Collections.<HttpHost>emptySet()));
+    }
+
+    /**
+     * Tests that no host is acquired once the circuit of all of the hosts is open.
+     */
+    @Test
+    public void testAcquireWithAllCircuitsOpen() {
+        HostPool hostPool = HostPool.forUrls(Arrays.asList("http://localhost:4503", "http://localhost:4504"));
+        for (HttpHost httpHost : hostPool.getHosts()) {
+            Set<HttpHost> otherHosts = new HashSet<HttpHost>(hostPool.getHosts());
+            otherHosts.remove(httpHost);
+            for (int failure = 0; failure < 3; failure++) {
+                hostPool.release(hostPool.acquire(otherHosts), false);
+            }
+        }
+        assertNull(hostPool.acquire(Collections.<HttpHost>emptySet()));
+    }
+
+    /**
+     * Tests that a single host whose circuit is open is reported as unavailable until the circuit becomes half open,
+     * and is then acquired for the trial request.
+     *
+     * @throws InterruptedException If the test is interrupted.
+     */
+    @Test
+    public void testUnavailableMillisOfSingleHostOutage() throws InterruptedException {
+        HostPool hostPool = new HostPool(Collections.singletonList(new HttpHost("localhost", 4503)), 100, 100);
+        for (int failure = 0; failure < 3; failure++) {
+            hostPool.release(hostPool.acquire(Collections.<HttpHost>emptySet()), false);
+        }
+        assertNull(hostPool.acquire(Collections.<HttpHost>emptySet()));
+        long unavailableMillis = hostPool.getUnavailableMillis(Collections.<HttpHost>emptySet());
+        assertTrue((unavailableMillis > 0) && (unavailableMillis <= 100));
+        assertEquals(-1, hostPool.getUnavailableMillis(hostPool.getHosts()));
+        Thread.sleep(unavailableMillis + 10);
+        assertEquals(0, hostPool.getUnavailableMillis(Collections.<HttpHost>emptySet()));
+        assertEquals(hostPool.getHosts().get(0), hostPool.acquire(Collections.<HttpHost>emptySet()));
+    }
+
+}
@@ -0,0 +1,121 @@
+package aem.dataexporter.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@code HttpReader}.
+ */
+public class HttpReaderTest {
+
+    /**
+     * Body of the responses of the server.
+     */
+    private static final byte[] BODY = "{}".getBytes(Charset.forName("UTF-8"));
+    /**
+     * Server that responds to every request.
+     */
+    private HttpServer httpServer;
+    /**
+     * Url of the server.
+     */
+    private String url;
+
+    /**
+     * Starts the server.
+     *
+     * @throws IOException If the server cannot be started.
+     */
+    @Before
+    public void setUp() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange httpExchange) throws IOException {
+                httpExchange.sendResponseHeaders(200, BODY.length);
+                OutputStream out = httpExchange.getResponseBody();
+                out.write(BODY);
+                out.close();
+            }
+        });
+        httpServer.start();
+        url = "http://127.0.0.1:" + httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server.
+     */
+    @After
+    public void tearDown() {
+        httpServer.stop(0);
+    }
+
+    /**
+     * Tests that a request to a single host whose circuit is open waits for the circuit to become half open rather
+     * than giving up on the url.
+     *
+     * @throws IOException If the {@code HttpReader} cannot be closed.
+     */
+    @Test
+    public void testGetDataWaitsForSingleHostOutage() throws IOException {
+        HostPool hostPool = openCircuits(200);
+        HttpReader httpReader = new HttpReader("admin", "admin", hostPool, new RetryPolicy(3, 1, 1, 10000));
+        try {
+            long start = System.currentTimeMillis();
+            assertArrayEquals(BODY, httpReader.getData(url + "/content.json"));
+            assertTrue(System.currentTimeMillis() - start >= 100);
+            assertTrue(httpReader.getAbandonedUrls().isEmpty());
+        } finally {
+            httpReader.close();
+        }
+    }
+
+    /**
+     * Tests that a request is given up on when no host becomes available within the maximum host wait.
+     *
+     * @throws IOException If the {@code HttpReader} cannot be closed.
+     */
+    @Test
+    public void testGetDataGivesUpAfterMaxHostWait() throws IOException {
+        HostPool hostPool = openCircuits(60000);
+        HttpReader httpReader = new HttpReader("admin", "admin", hostPool, new RetryPolicy(3, 1, 1, 100));
+        try {
+            assertEquals(0, httpReader.getData(url + "/content.json").length);
+            assertEquals(Collections.singleton(url + "/content.json"), httpReader.getAbandonedUrls());
+        } finally {
+            httpReader.close();
+        }
+    }
+
+    /**
+     * Returns a {@code HostPool} of the server whose circuit is open.
+     *
+     * @param unavailableInterval Number of milliseconds the circuit is open for.
+     * @return {@code HostPool} of the server whose circuit is open.
+     */
+    private HostPool openCircuits(final long unavailableInterval) {
+        HostPool hostPool = new HostPool(Collections.singletonList(
+                new HttpHost("127.0.0.1", httpServer.getAddress().getPort())), unavailableInterval,
+                unavailableInterval);
+        for (int failure = 0; failure < 3; failure++) {
+            hostPool.release(hostPool.acquire(Collections.<HttpHost>emptySet()), false);
+        }
+        return hostPool;
+    }
+
+}
@@ -0,0 +1,40 @@
+package aem.dataexporter.http;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Tests the {@code SnapshotTransport}.
+ */
+public class SnapshotTransportTest {
+
+    /**
+     * Directory of the snapshots.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Tests that a snapshot that cannot be read fails, rather than serving an empty or partial tree.
+     *
+     * @throws IOException If the snapshot cannot be read.
+     */
+    @Test(expected = IOException.class)
+    public void testUnreadableSnapshot() throws IOException {
+        File snapshot = temporaryFolder.newFile("snapshot.zip");
+        OutputStream out = new FileOutputStream(snapshot);
+        try {
+            out.write("not a zip file".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        new SnapshotTransport(snapshot).close();
+    }
+
+}
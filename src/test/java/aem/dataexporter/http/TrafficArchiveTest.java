@@ -0,0 +1,104 @@
+package aem.dataexporter.http;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@code TrafficArchive}.
+ */
+public class TrafficArchiveTest {
+
+    /**
+     * Charset of the bodies.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Key of the polled request.
+     */
+    private static final String KEY = TrafficArchive.getKey("GET", "http://localhost:4502/crx/packmgr/list.jsp");
+    /**
+     * Directory of the archives.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Tests that the responses of a request that was recorded more than once are returned in the order they were
+     * recorded, with the last one repeated.
+     *
+     * @throws IOException If the archive cannot be recorded or replayed.
+     */
+    @Test
+    public void testGetRepeatedRequest() throws IOException {
+        File file = record();
+        TrafficArchive trafficArchive = TrafficArchive.forReplay(file);
+        try {
+            assertResponses(trafficArchive);
+        } finally {
+            trafficArchive.close();
+        }
+    }
+
+    /**
+     * Tests that the order of the responses is kept when the index is rebuilt by scanning the data file.
+     *
+     * @throws IOException If the archive cannot be recorded or replayed.
+     */
+    @Test
+    public void testGetRepeatedRequestWithoutIndex() throws IOException {
+        File file = record();
+        assertTrue(new File(file.getPath() + ".index").delete());
+        TrafficArchive trafficArchive = TrafficArchive.forReplay(file);
+        try {
+            assertResponses(trafficArchive);
+        } finally {
+            trafficArchive.close();
+        }
+    }
+
+    /**
+     * Records three responses of the polled request.
+     *
+     * @return Data file of the archive.
+     * @throws IOException If the archive cannot be recorded.
+     */
+    private File record() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "traffic.arc");
+        TrafficArchive trafficArchive = TrafficArchive.forRecording(file);
+        try {
+            for (String body : new String[]{"building", "building", "built"}) {
+                byte[] bytes = body.getBytes(UTF_8);
+                trafficArchive.record(KEY, 200, 0, new ByteArrayInputStream(bytes), bytes.length);
+            }
+        } finally {
+            trafficArchive.close();
+        }
+        return file;
+    }
+
+    /**
+     * Asserts that the specified archive returns the recorded responses of the polled request in order.
+     *
+     * @param trafficArchive Archive to replay.
+     * @throws IOException If the archive cannot be replayed.
+     */
+    private static void assertResponses(final TrafficArchive trafficArchive) throws IOException {
+        String[] expected = {"building", "building", "built", "built"};
+        for (int ordinal = 0; ordinal < expected.length; ordinal++) {
+            assertEquals(expected[ordinal],
+                    new String(trafficArchive.readBody(trafficArchive.get(KEY, ordinal)), UTF_8));
+        }
+        assertNull(trafficArchive.get("GET /missing.json", 0));
+    }
+
+}
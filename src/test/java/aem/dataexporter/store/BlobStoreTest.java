@@ -0,0 +1,42 @@
+package aem.dataexporter.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@code BlobStore}.
+ */
+public class BlobStoreTest {
+
+    /**
+     * Directory of the store.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Tests that only the package and its numbered chunks are returned, in the order of their index.
+     *
+     * @throws IOException If the manifests cannot be created.
+     */
+    @Test
+    public void testGetPackageNames() throws IOException {
+        BlobStore blobStore = new BlobStore(temporaryFolder.getRoot());
+        File manifestDirectory = new File(temporaryFolder.getRoot(), "manifests");
+        for (String name : Arrays.asList("dam_10", "dam_2", "dam", "dam_1", "dam_backup", "dam_old_1", "dam_3.zip",
+                "dam_assets_1", "dam.x_1", "other_1")) {
+            assertTrue(new File(manifestDirectory, name + ".json").createNewFile());
+        }
+        assertEquals(Arrays.asList("dam", "dam_1", "dam_2", "dam_10"), blobStore.getPackageNames("dam"));
+        assertEquals(Arrays.asList("dam.x_1"), blobStore.getPackageNames("dam.x"));
+    }
+
+}
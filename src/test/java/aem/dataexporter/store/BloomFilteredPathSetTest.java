@@ -0,0 +1,72 @@
+package aem.dataexporter.store;
+
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@code BloomFilteredPathSet}.
+ */
+public class BloomFilteredPathSetTest {
+
+    /**
+     * {@code AppendablePathSet} that counts the calls into it.
+     */
+    private static final class CountingPathSet extends LinkedHashSet<String> implements AppendablePathSet {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * Number of calls to {@code add}.
+         */
+        private int adds;
+        /**
+         * Number of calls to {@code append}.
+         */
+        private int appends;
+
+        @Override
+        public boolean add(final String path) {
+            adds++;
+            return super.add(path);
+        }
+
+        @Override
+        public void append(final String path) {
+            appends++;
+            super.add(path);
+        }
+
+    }
+
+    /**
+     * Tests that new content paths are appended without an exact lookup, and that a popular repeat is only looked up
+     * once.
+     */
+    @Test
+    public void testAddLooksUpOnlyPossibleRepeats() {
+        CountingPathSet paths = new CountingPathSet();
+        BloomFilteredPathSet bloomFilteredPathSet = new BloomFilteredPathSet(paths, 100000);
+        for (int index = 0; index < 1000; index++) {
+            assertTrue(bloomFilteredPathSet.add("/content/dam/asset" + index + ".jpg"));
+        }
+        assertEquals(1000, paths.adds + paths.appends);
+        // At a false positive rate of one percent, only a handful of the new content paths are looked up.
+        assertTrue(paths.appends >= 980);
+        int adds = paths.adds;
+        for (int repeat = 0; repeat < 100; repeat++) {
+            assertFalse(bloomFilteredPathSet.add("/content/dam/asset0.jpg"));
+        }
+        assertEquals(adds + 1, paths.adds);
+        assertEquals(1000, bloomFilteredPathSet.size());
+        assertTrue(bloomFilteredPathSet.contains("/content/dam/asset999.jpg"));
+        assertFalse(bloomFilteredPathSet.contains("/content/dam/asset1000.jpg"));
+    }
+
+}
@@ -0,0 +1,198 @@
+package aem.dataexporter.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@code OffHeapPathSet}.
+ */
+public class OffHeapPathSetTest {
+
+    /**
+     * Size (in bytes) of each mapped segment of the data file.
+     */
+    private static final int SEGMENT_SIZE = 1 << 26;
+    /**
+     * Size (in bytes) of the records (i.e. the length and the bytes of a content path) that fill the first segment.
+     */
+    private static final int RECORD_SIZE = 1 << 20;
+    /**
+     * Directory of the files.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Tests that adding the same content path again leaves the set unchanged, and that iteration returns the content
+     * paths in the order they were first added.
+     *
+     * @throws IOException If the files cannot be created.
+     */
+    @Test
+    public void testAddDuplicates() throws IOException {
+        OffHeapPathSet paths = new OffHeapPathSet(temporaryFolder.getRoot(), "paths");
+        try {
+            assertTrue(paths.add("/content/site/b"));
+            assertTrue(paths.add("/content/site/a"));
+            assertFalse(paths.add("/content/site/b"));
+            paths.append("/content/site/c");
+            assertFalse(paths.add("/content/site/c"));
+            assertTrue(paths.add("/content/site/\u00e9"));
+            assertFalse(paths.add("/content/site/a"));
+            assertEquals(4, paths.size());
+            assertArrayEquals(new String[]{"/content/site/b", "/content/site/a", "/content/site/c",
+                    "/content/site/\u00e9"}, paths.toArray());
+            assertFalse(paths.contains("/content/site"));
+            assertFalse(paths.contains(1));
+        } finally {
+            paths.close();
+        }
+    }
+
+    /**
+     * Tests that all of the content paths are still found, in order, after the index has been rebuilt several times,
+     * and that only the index file of the latest generation is kept.
+     *
+     * @throws IOException If the files cannot be created.
+     */
+    @Test
+    public void testRebuildIndex() throws IOException {
+        OffHeapPathSet paths = new OffHeapPathSet(temporaryFolder.getRoot(), "paths");
+        try {
+            // The index starts with 65536 slots, so it is doubled at 32769, 65537 and 131073 content paths.
+            int count = 200000;
+            for (int index = 0; index < count; index++) {
+                if ((index % 2) == 0) {
+                    assertTrue(paths.add("/content/dam/asset" + index + ".jpg"));
+                } else {
+                    paths.append("/content/dam/asset" + index + ".jpg");
+                }
+            }
+            assertEquals(count, paths.size());
+            for (int index = 0; index < count; index++) {
+                assertTrue(paths.contains("/content/dam/asset" + index + ".jpg"));
+            }
+            assertFalse(paths.add("/content/dam/asset0.jpg"));
+            assertFalse(paths.add("/content/dam/asset" + (count - 1) + ".jpg"));
+            assertFalse(paths.contains("/content/dam/asset" + count + ".jpg"));
+            int index = 0;
+            for (String path : paths) {
+                assertEquals("/content/dam/asset" + index++ + ".jpg", path);
+            }
+            assertEquals(count, index);
+            assertEquals(Arrays.asList("paths.data", "paths.index.3"), listFiles());
+        } finally {
+            paths.close();
+        }
+        assertEquals(0, listFiles().size());
+    }
+
+    /**
+     * Tests a content path that does not fit within the rest of the first segment, when there is room left for the
+     * end of segment marker.
+     *
+     * @throws IOException If the files cannot be created.
+     */
+    @Test
+    public void testSegmentRolloverWithMarker() throws IOException {
+        assertSegmentRollover(100);
+    }
+
+    /**
+     * Tests a content path that does not fit within the rest of the first segment, when there is not even room left
+     * for the end of segment marker.
+     *
+     * @throws IOException If the files cannot be created.
+     */
+    @Test
+    public void testSegmentRolloverWithoutMarker() throws IOException {
+        assertSegmentRollover(2);
+    }
+
+    /**
+     * Tests a content path that starts exactly at the start of the second segment.
+     *
+     * @throws IOException If the files cannot be created.
+     */
+    @Test
+    public void testSegmentRolloverAtBoundary() throws IOException {
+        assertSegmentRollover(0);
+    }
+
+    /**
+     * Fills the first segment up to the specified number of bytes before its end, adds content paths that continue
+     * into the second segment, and asserts that they are all found and iterated in order.
+     *
+     * @param remainingBytes Number of bytes left at the end of the first segment.
+     * @throws IOException If the files cannot be created.
+     */
+    private void assertSegmentRollover(final int remainingBytes) throws IOException {
+        int records = SEGMENT_SIZE / RECORD_SIZE;
+        int[] lengths = new int[records + 3];
+        for (int record = 0; record < records; record++) {
+            lengths[record] = RECORD_SIZE - 4;
+        }
+        lengths[records - 1] -= remainingBytes;
+        // The first of these does not fit within the remaining bytes (unless none remain), the others follow it.
+        lengths[records] = 200;
+        lengths[records + 1] = RECORD_SIZE - 4;
+        lengths[records + 2] = 30;
+        OffHeapPathSet paths = new OffHeapPathSet(temporaryFolder.getRoot(), "paths");
+        try {
+            for (int record = 0; record < lengths.length; record++) {
+                assertTrue(paths.add(getPath(record, lengths[record])));
+            }
+            assertEquals(lengths.length, paths.size());
+            for (int record = lengths.length - 1; record >= 0; record--) {
+                assertFalse(paths.add(getPath(record, lengths[record])));
+                assertTrue(paths.contains(getPath(record, lengths[record])));
+            }
+            assertEquals(lengths.length, paths.size());
+            Iterator<String> iterator = paths.iterator();
+            for (int record = 0; record < lengths.length; record++) {
+                assertEquals(getPath(record, lengths[record]), iterator.next());
+            }
+            assertFalse(iterator.hasNext());
+        } finally {
+            paths.close();
+        }
+    }
+
+    /**
+     * Returns a distinct content path of the specified length.
+     *
+     * @param record Number of the content path.
+     * @param length Length (in bytes) of the content path.
+     * @return Content path of the specified length.
+     */
+    private static String getPath(final int record, final int length) {
+        StringBuilder path = new StringBuilder("/content/dam/").append(record).append('/');
+        char[] padding = new char[length - path.length()];
+        Arrays.fill(padding, 'a');
+        return path.append(padding).toString();
+    }
+
+    /**
+     * Returns the sorted names of the files within the directory.
+     *
+     * @return Sorted names of the files within the directory.
+     */
+    private List<String> listFiles() {
+        String[] names = temporaryFolder.getRoot().list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+}
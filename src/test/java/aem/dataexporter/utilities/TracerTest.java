@@ -0,0 +1,100 @@
+package aem.dataexporter.utilities;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@code Tracer}.
+ */
+public class TracerTest {
+
+    /**
+     * Tests that concurrent recordings (e.g. two jobs of the {@code ExporterDaemon}) only summarize their own spans,
+     * including those of the threads that they create, and that nothing is left once they have stopped.
+     *
+     * @throws InterruptedException If the test is interrupted.
+     */
+    @Test
+    public void testConcurrentRecordings() throws InterruptedException {
+        final CountDownLatch spansEnded = new CountDownLatch(2);
+        final AtomicReference<String> firstSummary = new AtomicReference<String>();
+        final AtomicReference<String> secondSummary = new AtomicReference<String>();
+        Thread first = new Thread(new Recording("first", spansEnded, firstSummary));
+        Thread second = new Thread(new Recording("second", spansEnded, secondSummary));
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+        assertTrue(firstSummary.get().contains("first_job"));
+        assertTrue(firstSummary.get().contains("first_child"));
+        assertFalse(firstSummary.get().contains("second_"));
+        assertTrue(secondSummary.get().contains("second_child"));
+        assertFalse(secondSummary.get().contains("first_"));
+        assertFalse(Tracer.getSummary().contains("_job"));
+    }
+
+    /**
+     * Job that records a span on its own thread and on a thread that it creates.
+     */
+    private static final class Recording implements Runnable {
+
+        /**
+         * Prefix of the names of the spans.
+         */
+        private final String name;
+        /**
+         * Latch that is counted down once the spans of the job have ended.
+         */
+        private final CountDownLatch spansEnded;
+        /**
+         * Summary of the recording.
+         */
+        private final AtomicReference<String> summary;
+
+        /**
+         * Constructs a new {@code Recording}.
+         *
+         * @param newName Prefix of the names of the spans.
+         * @param newSpansEnded Latch that is counted down once the spans of the job have ended.
+         * @param newSummary Summary of the recording.
+         */
+        private Recording(final String newName, final CountDownLatch newSpansEnded,
+                final AtomicReference<String> newSummary) {
+            this.name = newName;
+            this.spansEnded = newSpansEnded;
+            this.summary = newSummary;
+        }
+
+        @Override
+        public void run() {
+            Tracer.startRecording();
+            try {
+                Tracer.start("job", name + "_job").end();
+                Thread child = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Tracer.start("child", name + "_child").end();
+                    }
+                });
+                child.start();
+                child.join();
+                // Both jobs have ended their spans before either summarizes its recording.
+                spansEnded.countDown();
+                spansEnded.await();
+                summary.set(Tracer.getSummary());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                Tracer.stopRecording();
+            }
+        }
+
+    }
+
+}